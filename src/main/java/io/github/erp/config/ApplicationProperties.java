@@ -18,6 +18,7 @@ package io.github.erp.config;
  * along with this program. If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.time.Duration;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 /**
@@ -28,7 +29,634 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
  */
 @ConfigurationProperties(prefix = "application", ignoreUnknownFields = false)
 public class ApplicationProperties {
+
+    private final BulkImport bulkImport = new BulkImport();
+
+    private final Count count = new Count();
+
+    private final PlaceholderLookup placeholderLookup = new PlaceholderLookup();
+
+    private final SearchIndexer searchIndexer = new SearchIndexer();
+
+    private final SearchReindex searchReindex = new SearchReindex();
+
+    private final Search search = new Search();
+
+    private final TokenCache tokenCache = new TokenCache();
+
+    private final PasswordHashing passwordHashing = new PasswordHashing();
+
+    private final LoginThrottling loginThrottling = new LoginThrottling();
+
+    private final UserDetailsCache userDetailsCache = new UserDetailsCache();
+
+    private final TokenRevocation tokenRevocation = new TokenRevocation();
+
     // jhipster-needle-application-properties-property
+
+    public BulkImport getBulkImport() {
+        return bulkImport;
+    }
+
+    public Count getCount() {
+        return count;
+    }
+
+    public PlaceholderLookup getPlaceholderLookup() {
+        return placeholderLookup;
+    }
+
+    public SearchIndexer getSearchIndexer() {
+        return searchIndexer;
+    }
+
+    public SearchReindex getSearchReindex() {
+        return searchReindex;
+    }
+
+    public Search getSearch() {
+        return search;
+    }
+
+    public TokenCache getTokenCache() {
+        return tokenCache;
+    }
+
+    public PasswordHashing getPasswordHashing() {
+        return passwordHashing;
+    }
+
+    public LoginThrottling getLoginThrottling() {
+        return loginThrottling;
+    }
+
+    public UserDetailsCache getUserDetailsCache() {
+        return userDetailsCache;
+    }
+
+    public TokenRevocation getTokenRevocation() {
+        return tokenRevocation;
+    }
+
     // jhipster-needle-application-properties-property-getter
+
+    public static class BulkImport {
+
+        /**
+         * Rows inserted, and indexed, per transaction.
+         */
+        private int batchSize = 500;
+
+        /**
+         * Largest batch size a request may ask for, as a batch is buffered in memory before it is inserted.
+         */
+        private int maxBatchSize = 5000;
+
+        /**
+         * Row errors listed in an import report, the further errors are only counted.
+         */
+        private int maxReportedErrors = 1000;
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public int getMaxBatchSize() {
+            return maxBatchSize;
+        }
+
+        public void setMaxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+        }
+
+        public int getMaxReportedErrors() {
+            return maxReportedErrors;
+        }
+
+        public void setMaxReportedErrors(int maxReportedErrors) {
+            this.maxReportedErrors = maxReportedErrors;
+        }
+    }
+
+    public static class Count {
+
+        /**
+         * Count mode of the paginated listings when the request does not pick one: exact, estimate or none.
+         */
+        private String defaultMode = "exact";
+
+        /**
+         * How long an exact count is served from the cache. The count is evicted sooner by the writes of this
+         * instance, the writes of other instances are only seen once it expires.
+         */
+        private Duration cacheTtl = Duration.ofSeconds(30);
+
+        public String getDefaultMode() {
+            return defaultMode;
+        }
+
+        public void setDefaultMode(String defaultMode) {
+            this.defaultMode = defaultMode;
+        }
+
+        public Duration getCacheTtl() {
+            return cacheTtl;
+        }
+
+        public void setCacheTtl(Duration cacheTtl) {
+            this.cacheTtl = cacheTtl;
+        }
+    }
+
+    public static class PlaceholderLookup {
+
+        /**
+         * Placeholders held by the lookup cache, a cached lookup finding nothing counting as one.
+         */
+        private int maxEntries = 10000;
+
+        /**
+         * How long a lookup is served from the cache. The lookup is evicted sooner by the writes of this instance, the
+         * writes of other instances are only seen once it expires.
+         */
+        private Duration ttl = Duration.ofMinutes(5);
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        public Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+    }
+
+    public static class SearchIndexer {
+
+        /**
+         * Outbox entries claimed, and entities indexed with one bulk request, per batch.
+         */
+        private int batchSize = 500;
+
+        /**
+         * How often the outbox is polled. The writes of this instance wake the indexer up on commit, the writes of
+         * other instances are only seen on the next poll.
+         */
+        private Duration pollInterval = Duration.ofSeconds(1);
+
+        /**
+         * Retries of a failed batch before its entities are indexed one by one.
+         */
+        private int maxRetries = 5;
+
+        /**
+         * Delay before the first retry of a failed batch, doubled on each further retry. Also the delay before an entity
+         * failing on its own is attempted again, doubled on each further attempt.
+         */
+        private Duration retryBackoff = Duration.ofMillis(500);
+
+        /**
+         * Attempts of an entity failing on its own before its outbox entries are set aside, so that they no longer hold
+         * the others back.
+         */
+        private int maxAttempts = 15;
+
+        /**
+         * How long the entries claimed by an instance are leased to it, before another instance may claim them again.
+         */
+        private Duration claimTimeout = Duration.ofMinutes(5);
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public Duration getPollInterval() {
+            return pollInterval;
+        }
+
+        public void setPollInterval(Duration pollInterval) {
+            this.pollInterval = pollInterval;
+        }
+
+        public int getMaxRetries() {
+            return maxRetries;
+        }
+
+        public void setMaxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+        }
+
+        public Duration getRetryBackoff() {
+            return retryBackoff;
+        }
+
+        public void setRetryBackoff(Duration retryBackoff) {
+            this.retryBackoff = retryBackoff;
+        }
+
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        public void setMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+        }
+
+        public Duration getClaimTimeout() {
+            return claimTimeout;
+        }
+
+        public void setClaimTimeout(Duration claimTimeout) {
+            this.claimTimeout = claimTimeout;
+        }
+    }
+
+    public static class SearchReindex {
+
+        /**
+         * Rows read from the database per keyset page, and indexed with one bulk request.
+         */
+        private int pageSize = 1000;
+
+        /**
+         * Bulk requests in flight at once. The pages are read ahead of the bulk requests only up to this limit.
+         */
+        private int parallelism = 4;
+
+        /**
+         * How long a running job may go without recording progress before it is considered abandoned by its
+         * instance, and may be resumed from its last checkpoint.
+         */
+        private Duration staleAfter = Duration.ofMinutes(2);
+
+        public int getPageSize() {
+            return pageSize;
+        }
+
+        public void setPageSize(int pageSize) {
+            this.pageSize = pageSize;
+        }
+
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        public void setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+        }
+
+        public Duration getStaleAfter() {
+            return staleAfter;
+        }
+
+        public void setStaleAfter(Duration staleAfter) {
+            this.staleAfter = staleAfter;
+        }
+    }
+
+    public static class Search {
+
+        /**
+         * Hits counted by a search in the estimate count mode. Past this number, the total is a lower bound.
+         */
+        private int estimateTrackTotalHits = 10000;
+
+        /**
+         * Hits reachable with page and size, the max_result_window of the indices. The deeper hits are paged with a
+         * cursor.
+         */
+        private int maxResultWindow = 10000;
+
+        /**
+         * How long the point in time of a cursor paged search is kept between two pages.
+         */
+        private Duration pointInTimeKeepAlive = Duration.ofMinutes(1);
+
+        /**
+         * Suggestions returned by a typeahead request which does not ask for a number of them.
+         */
+        private int suggestDefaultLimit = 10;
+
+        /**
+         * Suggestions returned at most by a typeahead request, whatever number it asks for.
+         */
+        private int suggestMaxLimit = 20;
+
+        public int getEstimateTrackTotalHits() {
+            return estimateTrackTotalHits;
+        }
+
+        public void setEstimateTrackTotalHits(int estimateTrackTotalHits) {
+            this.estimateTrackTotalHits = estimateTrackTotalHits;
+        }
+
+        public int getMaxResultWindow() {
+            return maxResultWindow;
+        }
+
+        public void setMaxResultWindow(int maxResultWindow) {
+            this.maxResultWindow = maxResultWindow;
+        }
+
+        public Duration getPointInTimeKeepAlive() {
+            return pointInTimeKeepAlive;
+        }
+
+        public void setPointInTimeKeepAlive(Duration pointInTimeKeepAlive) {
+            this.pointInTimeKeepAlive = pointInTimeKeepAlive;
+        }
+
+        public int getSuggestDefaultLimit() {
+            return suggestDefaultLimit;
+        }
+
+        public void setSuggestDefaultLimit(int suggestDefaultLimit) {
+            this.suggestDefaultLimit = suggestDefaultLimit;
+        }
+
+        public int getSuggestMaxLimit() {
+            return suggestMaxLimit;
+        }
+
+        public void setSuggestMaxLimit(int suggestMaxLimit) {
+            this.suggestMaxLimit = suggestMaxLimit;
+        }
+    }
+
+    public static class TokenCache {
+
+        /**
+         * Verified tokens held by the cache of the JWT filter, each until it expires. The least recently used token is
+         * verified again once evicted.
+         */
+        private int maxEntries = 10000;
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+    }
+
+    public static class PasswordHashing {
+
+        /**
+         * Threads hashing and checking the passwords, which are CPU bound.
+         */
+        private int threads = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * Passwords waiting for a hashing thread. Past this number, the requests are rejected with 503.
+         */
+        private int queueCapacity = 100;
+
+        /**
+         * The delay the clients rejected are told to wait before retrying, in the Retry-After header.
+         */
+        private Duration retryAfter = Duration.ofSeconds(1);
+
+        /**
+         * The encoding of the new hashes, bcrypt or pbkdf2. The passwords hashed otherwise are hashed again with it
+         * on the next successful login.
+         */
+        private String encodingId = "bcrypt";
+
+        /**
+         * The cost of the bcrypt hashes, the passwords hashed at a lower cost are hashed again on the next successful
+         * login.
+         */
+        private int bcryptStrength = 10;
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public void setThreads(int threads) {
+            this.threads = threads;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public Duration getRetryAfter() {
+            return retryAfter;
+        }
+
+        public void setRetryAfter(Duration retryAfter) {
+            this.retryAfter = retryAfter;
+        }
+
+        public String getEncodingId() {
+            return encodingId;
+        }
+
+        public void setEncodingId(String encodingId) {
+            this.encodingId = encodingId;
+        }
+
+        public int getBcryptStrength() {
+            return bcryptStrength;
+        }
+
+        public void setBcryptStrength(int bcryptStrength) {
+            this.bcryptStrength = bcryptStrength;
+        }
+    }
+
+    public static class LoginThrottling {
+
+        /**
+         * Login attempts a client address may make at once, its bucket then refilling over the client period.
+         */
+        private int clientCapacity = 30;
+
+        /**
+         * Time taken by the bucket of a client address to refill entirely.
+         */
+        private Duration clientPeriod = Duration.ofMinutes(1);
+
+        /**
+         * Login attempts a login may be tried with at once, from any address, its bucket then refilling over the
+         * login period.
+         */
+        private int loginCapacity = 10;
+
+        /**
+         * Time taken by the bucket of a login to refill entirely.
+         */
+        private Duration loginPeriod = Duration.ofMinutes(1);
+
+        /**
+         * Client addresses, and logins, whose buckets are held. Past this number, the least recently used buckets are
+         * forgotten, as if full.
+         */
+        private int maxKeys = 100000;
+
+        public int getClientCapacity() {
+            return clientCapacity;
+        }
+
+        public void setClientCapacity(int clientCapacity) {
+            this.clientCapacity = clientCapacity;
+        }
+
+        public Duration getClientPeriod() {
+            return clientPeriod;
+        }
+
+        public void setClientPeriod(Duration clientPeriod) {
+            this.clientPeriod = clientPeriod;
+        }
+
+        public int getLoginCapacity() {
+            return loginCapacity;
+        }
+
+        public void setLoginCapacity(int loginCapacity) {
+            this.loginCapacity = loginCapacity;
+        }
+
+        public Duration getLoginPeriod() {
+            return loginPeriod;
+        }
+
+        public void setLoginPeriod(Duration loginPeriod) {
+            this.loginPeriod = loginPeriod;
+        }
+
+        public int getMaxKeys() {
+            return maxKeys;
+        }
+
+        public void setMaxKeys(int maxKeys) {
+            this.maxKeys = maxKeys;
+        }
+    }
+
+    public static class UserDetailsCache {
+
+        /**
+         * Users held by the cache of the logins and of the current account, a user looked up both by login and by
+         * email counting twice.
+         */
+        private int maxEntries = 10000;
+
+        /**
+         * How long a user is served from the cache. The user is evicted sooner by the writes of this instance, the
+         * writes of other instances are only seen once it expires.
+         */
+        private Duration ttl = Duration.ofSeconds(30);
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        public Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+    }
+
+    public static class TokenRevocation {
+
+        /**
+         * Revoked tokens the in-memory filter is sized for. Past this number, its false positives, each checked
+         * against the database, grow until the next rebuild sizes it for the tokens then revoked.
+         */
+        private int expectedRevocations = 100000;
+
+        /**
+         * Share of the tokens not revoked which the in-memory filter reports as possibly revoked, and which are
+         * checked against the database.
+         */
+        private double falsePositiveProbability = 0.001;
+
+        /**
+         * How often the revocations are read from the database. The revocations of this instance apply at once, those
+         * of other instances are only seen on the next poll.
+         */
+        private Duration pollInterval = Duration.ofSeconds(5);
+
+        /**
+         * How often the in-memory filter is rebuilt from the database, dropping the revocations of the expired
+         * tokens.
+         */
+        private Duration rebuildInterval = Duration.ofHours(1);
+
+        /**
+         * Tokens whose database check is remembered, so that a token wrongly reported as possibly revoked is not
+         * checked on each of its requests.
+         */
+        private int maxCheckedTokens = 10000;
+
+        public int getExpectedRevocations() {
+            return expectedRevocations;
+        }
+
+        public void setExpectedRevocations(int expectedRevocations) {
+            this.expectedRevocations = expectedRevocations;
+        }
+
+        public double getFalsePositiveProbability() {
+            return falsePositiveProbability;
+        }
+
+        public void setFalsePositiveProbability(double falsePositiveProbability) {
+            this.falsePositiveProbability = falsePositiveProbability;
+        }
+
+        public Duration getPollInterval() {
+            return pollInterval;
+        }
+
+        public void setPollInterval(Duration pollInterval) {
+            this.pollInterval = pollInterval;
+        }
+
+        public Duration getRebuildInterval() {
+            return rebuildInterval;
+        }
+
+        public void setRebuildInterval(Duration rebuildInterval) {
+            this.rebuildInterval = rebuildInterval;
+        }
+
+        public int getMaxCheckedTokens() {
+            return maxCheckedTokens;
+        }
+
+        public void setMaxCheckedTokens(int maxCheckedTokens) {
+            this.maxCheckedTokens = maxCheckedTokens;
+        }
+    }
     // jhipster-needle-application-properties-property-class
 }
@@ -33,6 +33,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.core.convert.converter.Converter;
 import org.springframework.data.convert.CustomConversions;
 import org.springframework.data.convert.ReadingConverter;
@@ -47,7 +48,10 @@ import org.springframework.data.r2dbc.query.UpdateMapper;
 import org.springframework.data.r2dbc.repository.config.EnableR2dbcRepositories;
 import org.springframework.data.relational.core.dialect.RenderContextFactory;
 import org.springframework.data.relational.core.sql.render.SqlRenderer;
+import org.springframework.transaction.ReactiveTransactionManager;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
 import tech.jhipster.config.JHipsterConstants;
 
 @Configuration
@@ -87,6 +91,20 @@ public class DatabaseConfiguration {
         return SqlRenderer.create(factory.createRenderContext());
     }
 
+    @Bean
+    @Primary
+    public TransactionalOperator transactionalOperator(ReactiveTransactionManager transactionManager) {
+        return TransactionalOperator.create(transactionManager);
+    }
+
+    // Opened by the in-process caches around their loads only, so that their hits take no connection
+    @Bean
+    public TransactionalOperator readOnlyTransactionalOperator(ReactiveTransactionManager transactionManager) {
+        DefaultTransactionDefinition definition = new DefaultTransactionDefinition();
+        definition.setReadOnly(true);
+        return TransactionalOperator.create(transactionManager, definition);
+    }
+
     @WritingConverter
     public enum InstantWriteConverter implements Converter<Instant, LocalDateTime> {
         INSTANCE;
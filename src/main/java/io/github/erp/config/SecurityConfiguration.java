@@ -21,9 +21,15 @@ package io.github.erp.config;
 import static org.springframework.security.web.server.util.matcher.ServerWebExchangeMatchers.pathMatchers;
 
 import io.github.erp.security.AuthoritiesConstants;
+import io.github.erp.security.LoginThrottle;
+import io.github.erp.security.PasswordHashingScheduler;
 import io.github.erp.security.jwt.JWTFilter;
 import io.github.erp.security.jwt.TokenProvider;
+import io.github.erp.security.jwt.TokenRevocationList;
+import io.github.erp.web.filter.LoginThrottlingFilter;
 import io.github.erp.web.filter.SpaWebFilter;
+import java.util.HashMap;
+import java.util.Map;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Import;
 import org.springframework.http.HttpMethod;
@@ -33,9 +39,12 @@ import org.springframework.security.config.annotation.method.configuration.Enabl
 import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
 import org.springframework.security.config.web.server.SecurityWebFiltersOrder;
 import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.core.userdetails.ReactiveUserDetailsPasswordService;
 import org.springframework.security.core.userdetails.ReactiveUserDetailsService;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.crypto.password.Pbkdf2PasswordEncoder;
 import org.springframework.security.web.server.SecurityWebFilterChain;
 import org.springframework.security.web.server.header.ReferrerPolicyServerHttpHeadersWriter;
 import org.springframework.security.web.server.header.XFrameOptionsServerHttpHeadersWriter.Mode;
@@ -54,28 +63,59 @@ public class SecurityConfiguration {
 
     private final ReactiveUserDetailsService userDetailsService;
 
+    private final ReactiveUserDetailsPasswordService userDetailsPasswordService;
+
+    private final PasswordHashingScheduler passwordHashingScheduler;
+
+    private final LoginThrottle loginThrottle;
+
+    private final ApplicationProperties applicationProperties;
+
     private final TokenProvider tokenProvider;
 
+    private final TokenRevocationList tokenRevocationList;
+
     private final SecurityProblemSupport problemSupport;
     private final CorsWebFilter corsWebFilter;
 
     public SecurityConfiguration(
         ReactiveUserDetailsService userDetailsService,
+        ReactiveUserDetailsPasswordService userDetailsPasswordService,
+        PasswordHashingScheduler passwordHashingScheduler,
+        LoginThrottle loginThrottle,
+        ApplicationProperties applicationProperties,
         TokenProvider tokenProvider,
+        TokenRevocationList tokenRevocationList,
         JHipsterProperties jHipsterProperties,
         SecurityProblemSupport problemSupport,
         CorsWebFilter corsWebFilter
     ) {
         this.userDetailsService = userDetailsService;
+        this.userDetailsPasswordService = userDetailsPasswordService;
+        this.passwordHashingScheduler = passwordHashingScheduler;
+        this.loginThrottle = loginThrottle;
+        this.applicationProperties = applicationProperties;
         this.tokenProvider = tokenProvider;
+        this.tokenRevocationList = tokenRevocationList;
         this.jHipsterProperties = jHipsterProperties;
         this.problemSupport = problemSupport;
         this.corsWebFilter = corsWebFilter;
     }
 
+    /**
+     * Hashes the new passwords with the configured encoding, prefixing the hash with its id. The hashes without an id
+     * are bcrypt hashes, from before the prefix: they are still checked, and hashed again on the next login.
+     */
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        ApplicationProperties.PasswordHashing passwordHashing = applicationProperties.getPasswordHashing();
+        BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder(passwordHashing.getBcryptStrength());
+        Map<String, PasswordEncoder> encoders = new HashMap<>();
+        encoders.put("bcrypt", bcrypt);
+        encoders.put("pbkdf2", new Pbkdf2PasswordEncoder());
+        DelegatingPasswordEncoder passwordEncoder = new DelegatingPasswordEncoder(passwordHashing.getEncodingId(), encoders);
+        passwordEncoder.setDefaultPasswordEncoderForMatches(bcrypt);
+        return passwordEncoder;
     }
 
     @Bean
@@ -84,7 +124,9 @@ public class SecurityConfiguration {
             userDetailsService
         );
         authenticationManager.setPasswordEncoder(passwordEncoder());
-        return authenticationManager;
+        authenticationManager.setUserDetailsPasswordService(userDetailsPasswordService);
+        authenticationManager.setScheduler(passwordHashingScheduler.getScheduler());
+        return authentication -> passwordHashingScheduler.onRejection(authenticationManager.authenticate(authentication));
     }
 
     @Bean
@@ -99,7 +141,8 @@ public class SecurityConfiguration {
                 .disable()
             .addFilterBefore(corsWebFilter, SecurityWebFiltersOrder.REACTOR_CONTEXT)
             .addFilterAt(new SpaWebFilter(), SecurityWebFiltersOrder.AUTHENTICATION)
-            .addFilterAt(new JWTFilter(tokenProvider), SecurityWebFiltersOrder.HTTP_BASIC)
+            .addFilterBefore(new LoginThrottlingFilter(loginThrottle), SecurityWebFiltersOrder.HTTP_BASIC)
+            .addFilterAt(new JWTFilter(tokenProvider, tokenRevocationList), SecurityWebFiltersOrder.HTTP_BASIC)
             .authenticationManager(reactiveAuthenticationManager())
             .exceptionHandling()
                 .accessDeniedHandler(problemSupport)
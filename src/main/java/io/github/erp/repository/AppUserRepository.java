@@ -74,6 +74,25 @@ interface AppUserRepositoryInternal {
 
     Flux<AppUser> findAllBy(Pageable pageable);
 
+    Flux<AppUser> findAllAfter(KeysetCursor cursor, int pageSize);
+
+    Flux<AppUser> streamAll(Long organizationId);
+
+    /**
+     * Finds the members of an organisation subtree, at any depth, excluding the organisation itself.
+     * @param organizationId the id of the root of the subtree.
+     * @param pageable the pagination information.
+     * @return the members of the subtree.
+     */
+    Flux<AppUser> findAllInOrganizationSubtree(Long organizationId, Pageable pageable);
+
+    /**
+     * Finds the ancestors of an AppUser: its organisation, the organisation of its organisation, and so on.
+     * @param id the id of the AppUser.
+     * @return the ancestors, nearest first.
+     */
+    Flux<AppUser> findAncestors(Long id);
+
     Flux<AppUser> findAll();
 
     Mono<AppUser> findById(Long id);
@@ -45,6 +45,8 @@ import org.springframework.data.relational.core.sql.Comparison;
 import org.springframework.data.relational.core.sql.Condition;
 import org.springframework.data.relational.core.sql.Conditions;
 import org.springframework.data.relational.core.sql.Expression;
+import org.springframework.data.relational.core.sql.Expressions;
+import org.springframework.data.relational.core.sql.SQL;
 import org.springframework.data.relational.core.sql.Select;
 import org.springframework.data.relational.core.sql.SelectBuilder.SelectFromAndJoinCondition;
 import org.springframework.data.relational.core.sql.Table;
@@ -67,9 +69,19 @@ class AppUserRepositoryInternalImpl extends SimpleR2dbcRepository<AppUser, Long>
     private final AppUserRowMapper appuserMapper;
     private final UserRowMapper userMapper;
 
+    private static final String ALL_SHAPE = "all";
+    private static final String BY_ID_SHAPE = "by-id";
+    private static final String BY_ORGANIZATION_SHAPE = "by-organization";
+    private static final String IN_ORGANIZATION_SUBTREE_SHAPE = "in-organization-subtree";
+    private static final String ANCESTORS_SHAPE = "ancestors";
+    private static final String ID_PARAMETER = "id";
+    private static final String ORGANIZATION_ID_PARAMETER = "organizationId";
+    private static final int STREAM_FETCH_SIZE = 500;
+
     private static final Table entityTable = Table.aliased("app_user", EntityManager.ENTITY_ALIAS);
     private static final Table organizationTable = Table.aliased("app_user", "e_organization");
     private static final Table systemUserTable = Table.aliased("jhi_user", "systemUser");
+    private static final Table closureTable = Table.create(OrganizationHierarchyRepository.CLOSURE_TABLE);
 
     public AppUserRepositoryInternalImpl(
         R2dbcEntityTemplate template,
@@ -96,11 +108,105 @@ class AppUserRepositoryInternalImpl extends SimpleR2dbcRepository<AppUser, Long>
         return createQuery(pageable, null).all();
     }
 
+    @Override
+    public Flux<AppUser> findAllAfter(KeysetCursor cursor, int pageSize) {
+        return createQuery(pageSize, cursor, null).all();
+    }
+
+    @Override
+    public Flux<AppUser> streamAll(Long organizationId) {
+        Condition whereClause = organizationId == null
+            ? null
+            : Conditions.isEqual(entityTable.column("organization_id"), Expressions.just(":" + ORGANIZATION_ID_PARAMETER));
+        String shape = organizationId == null ? ALL_SHAPE : BY_ORGANIZATION_SHAPE;
+        String select = entityManager.createSelect(shape, this::createSelectFrom, AppUser.class, null, whereClause);
+        // fetch the rows by chunks, as they are requested downstream, instead of buffering the whole result
+        DatabaseClient.GenericExecuteSpec spec = db.sql(select).filter(statement -> statement.fetchSize(STREAM_FETCH_SIZE));
+        if (organizationId != null) {
+            spec = spec.bind(ORGANIZATION_ID_PARAMETER, organizationId);
+        }
+        return spec.map(this::process).all();
+    }
+
+    @Override
+    public Flux<AppUser> findAllInOrganizationSubtree(Long organizationId, Pageable pageable) {
+        Select descendants = Select
+            .builder()
+            .select(closureTable.column("descendant_id"))
+            .from(closureTable)
+            .where(
+                Conditions
+                    .isEqual(closureTable.column("ancestor_id"), Expressions.just(":" + ORGANIZATION_ID_PARAMETER))
+                    .and(Conditions.isGreater(closureTable.column("depth"), SQL.literalOf(0)))
+            )
+            .build();
+        Condition whereClause = Conditions.in(entityTable.column("id"), descendants);
+        String select = entityManager.createSelect(
+            IN_ORGANIZATION_SUBTREE_SHAPE,
+            this::createSelectFrom,
+            AppUser.class,
+            pageable,
+            whereClause
+        );
+        return entityManager
+            .bindPaging(db.sql(select), pageable)
+            .bind(ORGANIZATION_ID_PARAMETER, organizationId)
+            .map(this::process)
+            .all();
+    }
+
+    @Override
+    public Flux<AppUser> findAncestors(Long id) {
+        Select ancestors = Select
+            .builder()
+            .select(closureTable.column("ancestor_id"))
+            .from(closureTable)
+            .where(Conditions.isEqual(closureTable.column("descendant_id"), Expressions.just(":" + ID_PARAMETER)))
+            .build();
+        Condition whereClause = Conditions.in(entityTable.column("id"), ancestors);
+        String select = entityManager.createSelect(ANCESTORS_SHAPE, this::createSelectFrom, AppUser.class, null, whereClause);
+        return db
+            .sql(select)
+            .bind(ID_PARAMETER, id)
+            .map(this::process)
+            .all()
+            .collectMap(AppUser::getId)
+            .flatMapIterable(byId -> {
+                // the ancestors come unordered, they are ordered by walking up from the AppUser itself
+                List<AppUser> ordered = new ArrayList<>();
+                AppUser node = byId.get(id);
+                while (node != null && node.getOrganizationId() != null && ordered.size() < byId.size()) {
+                    node = byId.get(node.getOrganizationId());
+                    if (node != null) {
+                        ordered.add(node);
+                    }
+                }
+                return ordered;
+            });
+    }
+
     RowsFetchSpec<AppUser> createQuery(Pageable pageable, Condition whereClause) {
+        if (whereClause == null) {
+            String select = entityManager.createSelect(ALL_SHAPE, this::createSelectFrom, AppUser.class, pageable, null);
+            return entityManager.bindPaging(db.sql(select), pageable).map(this::process);
+        }
+        SelectFromAndJoinCondition selectFrom = createSelectFrom();
+        // we do not support Criteria here for now as of https://github.com/jhipster/generator-jhipster/issues/18269
+        String select = entityManager.createSelect(selectFrom, AppUser.class, pageable, whereClause);
+        return db.sql(select).map(this::process);
+    }
+
+    RowsFetchSpec<AppUser> createQuery(int pageSize, KeysetCursor cursor, Condition whereClause) {
+        String shape = whereClause == null ? ALL_SHAPE : null;
+        String select = entityManager.createKeysetSelect(shape, this::createSelectFrom, AppUser.class, cursor, whereClause);
+        return entityManager.bindKeyset(db.sql(select), AppUser.class, cursor, pageSize).map(this::process);
+    }
+
+    private SelectFromAndJoinCondition createSelectFrom() {
         List<Expression> columns = AppUserSqlHelper.getColumns(entityTable, EntityManager.ENTITY_ALIAS);
         columns.addAll(AppUserSqlHelper.getColumns(organizationTable, "organization"));
         columns.addAll(UserSqlHelper.getColumns(systemUserTable, "systemUser"));
-        SelectFromAndJoinCondition selectFrom = Select
+        return Select
             .builder()
             .select(columns)
             .from(entityTable)
@@ -110,9 +216,6 @@ class AppUserRepositoryInternalImpl extends SimpleR2dbcRepository<AppUser, Long>
             .leftOuterJoin(systemUserTable)
             .on(Column.create("system_user_id", entityTable))
             .equals(Column.create("id", systemUserTable));
-        // we do not support Criteria here for now as of https://github.com/jhipster/generator-jhipster/issues/18269
-        String select = entityManager.createSelect(selectFrom, AppUser.class, pageable, whereClause);
-        return db.sql(select).map(this::process);
     }
 
     @Override
@@ -122,8 +225,9 @@ class AppUserRepositoryInternalImpl extends SimpleR2dbcRepository<AppUser, Long>
 
     @Override
     public Mono<AppUser> findById(Long id) {
-        Comparison whereClause = Conditions.isEqual(entityTable.column("id"), Conditions.just(id.toString()));
-        return createQuery(null, whereClause).one();
+        Comparison whereClause = Conditions.isEqual(entityTable.column("id"), Expressions.just(":" + ID_PARAMETER));
+        String select = entityManager.createSelect(BY_ID_SHAPE, this::createSelectFrom, AppUser.class, null, whereClause);
+        return db.sql(select).bind(ID_PARAMETER, id).map(this::process).one();
     }
 
     @Override
@@ -142,9 +246,9 @@ class AppUserRepositoryInternalImpl extends SimpleR2dbcRepository<AppUser, Long>
     }
 
     private AppUser process(Row row, RowMetadata metadata) {
-        AppUser entity = appuserMapper.apply(row, "e");
-        entity.setOrganization(appuserMapper.apply(row, "organization"));
-        entity.setSystemUser(userMapper.apply(row, "systemUser"));
+        AppUser entity = appuserMapper.apply(row, metadata, "e");
+        entity.setOrganization(appuserMapper.apply(row, metadata, "organization"));
+        entity.setSystemUser(userMapper.apply(row, metadata, "systemUser"));
         return entity;
     }
 
@@ -0,0 +1,363 @@
+package io.github.erp.repository;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import io.github.erp.domain.AppUser;
+import io.github.erp.domain.Placeholder;
+import io.github.erp.domain.User;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.r2dbc.convert.R2dbcConverter;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.data.r2dbc.dialect.PostgresDialect;
+import org.springframework.data.r2dbc.dialect.R2dbcDialect;
+import org.springframework.data.relational.core.mapping.RelationalPersistentEntity;
+import org.springframework.data.relational.core.mapping.RelationalPersistentProperty;
+import org.springframework.data.util.ClassTypeInformation;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Fast loader of CSV records into the {@code placeholder}, {@code app_user} and {@code jhi_user} tables, for seed data
+ * and large imports.
+ * <p>
+ * The first record is the header, naming the columns of the table which the following records hold. On PostgreSQL
+ * the records are staged into a temporary copy of the table, {@value #STAGE_BATCH_SIZE} rows per statement bound as
+ * one text array per column, then merged into the table with a single {@code INSERT ... SELECT}, which turns into an
+ * upsert on the id when asked to. On other databases the records are written with batched multi-row inserts, an
+ * upsert deleting the rows with the same id first. Either way the load runs in a single transaction: it applies
+ * entirely or not at all.
+ * <p>
+ * The rows are written as they are, bypassing the validation of the services and the search index.
+ */
+@Component
+public class BulkLoader {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkLoader.class);
+
+    static final int STAGE_BATCH_SIZE = 10000;
+
+    private static final String STAGE_PREFIX = "bulk_load_";
+    private static final String ID_COLUMN = "id";
+    private static final String COLUMN_PARAMETER_PREFIX = "column";
+    private static final String TABLE_PARAMETER = "table";
+    private static final String ID_PARAMETER = "ids";
+    private static final Pattern TYPE_NAME = Pattern.compile("[a-z0-9_]+");
+
+    private static final Map<String, Class<?>> LOADABLE_TABLES = Map.of(
+        "placeholder",
+        Placeholder.class,
+        "app_user",
+        AppUser.class,
+        "jhi_user",
+        User.class
+    );
+
+    private final R2dbcEntityTemplate r2dbcEntityTemplate;
+    private final R2dbcDialect dialect;
+    private final TransactionalOperator transactionalOperator;
+    private final OrganizationHierarchyRepository organizationHierarchyRepository;
+
+    public BulkLoader(
+        R2dbcEntityTemplate r2dbcEntityTemplate,
+        R2dbcDialect dialect,
+        TransactionalOperator transactionalOperator,
+        OrganizationHierarchyRepository organizationHierarchyRepository
+    ) {
+        this.r2dbcEntityTemplate = r2dbcEntityTemplate;
+        this.dialect = dialect;
+        this.transactionalOperator = transactionalOperator;
+        this.organizationHierarchyRepository = organizationHierarchyRepository;
+    }
+
+    /**
+     * Loads the records into the table.
+     * @param table the name of the table, one of {@code placeholder}, {@code app_user} and {@code jhi_user}.
+     * @param records the records, the first one being the header with the column names.
+     * @param upsert whether the rows with an existing id replace the stored ones, which requires the {@code id} column.
+     * @return the number of loaded rows.
+     * @throws IllegalArgumentException if the table cannot be loaded, or the header names unknown columns.
+     */
+    public Mono<Long> load(String table, Flux<List<String>> records, boolean upsert) {
+        RelationalPersistentEntity<?> entity = loadableEntity(table);
+        Flux<Long> loaded = records.switchOnFirst((header, all) -> {
+            if (!header.hasValue()) {
+                return all.then(Mono.just(0L));
+            }
+            List<RelationalPersistentProperty> columns = columns(entity, header.get(), upsert);
+            Flux<List<String>> rows = all.skip(1);
+            return dialect instanceof PostgresDialect
+                ? loadStaged(entity, columns, rows, upsert)
+                : loadBatched(entity, columns, rows, upsert);
+        });
+        Mono<Long> total = loaded.single();
+        if (entity.getType() == AppUser.class) {
+            // the rows bypass the AppUser service, the organisation tree is rebuilt as a whole in the same transaction
+            total = total.flatMap(count -> organizationHierarchyRepository.rebuild().thenReturn(count));
+        }
+        return transactionalOperator.transactional(total);
+    }
+
+    private RelationalPersistentEntity<?> loadableEntity(String table) {
+        Class<?> type = table == null ? null : LOADABLE_TABLES.get(table.toLowerCase(Locale.ROOT));
+        if (type == null) {
+            throw new IllegalArgumentException("The table " + table + " cannot be bulk loaded");
+        }
+        return r2dbcEntityTemplate.getConverter().getMappingContext().getRequiredPersistentEntity(type);
+    }
+
+    private List<RelationalPersistentProperty> columns(RelationalPersistentEntity<?> entity, List<String> header, boolean upsert) {
+        Map<String, RelationalPersistentProperty> properties = new HashMap<>();
+        for (RelationalPersistentProperty property : entity) {
+            properties.put(property.getColumnName().getReference().toLowerCase(Locale.ROOT), property);
+        }
+        Map<String, RelationalPersistentProperty> columns = new LinkedHashMap<>();
+        for (String name : header) {
+            String column = name == null ? "" : name.trim().toLowerCase(Locale.ROOT);
+            RelationalPersistentProperty property = properties.get(column);
+            if (property == null) {
+                throw new IllegalArgumentException("Unknown column " + name + " of table " + entity.getTableName().getReference());
+            }
+            if (columns.put(column, property) != null) {
+                throw new IllegalArgumentException("Duplicate column " + name);
+            }
+        }
+        if (upsert && !columns.containsKey(ID_COLUMN)) {
+            throw new IllegalArgumentException("An upsert requires the id column");
+        }
+        return new ArrayList<>(columns.values());
+    }
+
+    private Mono<Long> loadStaged(
+        RelationalPersistentEntity<?> entity,
+        List<RelationalPersistentProperty> columns,
+        Flux<List<String>> rows,
+        boolean upsert
+    ) {
+        DatabaseClient client = r2dbcEntityTemplate.getDatabaseClient();
+        String table = entity.getTableName().getReference();
+        String stage = STAGE_PREFIX + table;
+        return columnTypes(table)
+            .flatMap(types -> {
+                String stageInsert = createStageInsert(stage, columns, types);
+                return client
+                    .sql("CREATE TEMPORARY TABLE " + stage + " (LIKE " + table + " INCLUDING DEFAULTS) ON COMMIT DROP")
+                    .then()
+                    .thenMany(rows.buffer(STAGE_BATCH_SIZE).concatMap(batch -> bindColumns(client.sql(stageInsert), columns, batch).then()))
+                    .then(client.sql(createMerge(table, stage, columns, upsert)).fetch().rowsUpdated());
+            })
+            .flatMap(loaded -> {
+                log.debug("Loaded {} rows into {}", loaded, table);
+                if (idIndex(columns) < 0) {
+                    return Mono.just(loaded.longValue());
+                }
+                return client
+                    .sql(
+                        "SELECT setval(pg_get_serial_sequence('" +
+                        table +
+                        "', 'id'), MAX(id)) FROM " +
+                        table +
+                        " HAVING MAX(id) IS NOT NULL"
+                    )
+                    .then()
+                    .thenReturn(loaded.longValue());
+            });
+    }
+
+    private Mono<Map<String, String>> columnTypes(String table) {
+        return r2dbcEntityTemplate
+            .getDatabaseClient()
+            .sql(
+                "SELECT column_name, udt_name FROM information_schema.columns WHERE table_schema = current_schema() AND table_name = :" +
+                TABLE_PARAMETER
+            )
+            .bind(TABLE_PARAMETER, table)
+            .map(row -> Map.entry(row.get(0, String.class), row.get(1, String.class)))
+            .all()
+            .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+    }
+
+    private DatabaseClient.GenericExecuteSpec bindColumns(
+        DatabaseClient.GenericExecuteSpec spec,
+        List<RelationalPersistentProperty> columns,
+        List<List<String>> batch
+    ) {
+        for (int column = 0; column < columns.size(); column++) {
+            String[] values = new String[batch.size()];
+            for (int row = 0; row < batch.size(); row++) {
+                values[row] = value(batch.get(row), column);
+            }
+            spec = spec.bind(COLUMN_PARAMETER_PREFIX + column, values);
+        }
+        return spec;
+    }
+
+    /**
+     * Creates the statement staging a batch of rows, bound as one text array per column, each value cast to the type
+     * of its column.
+     */
+    static String createStageInsert(String stage, List<RelationalPersistentProperty> columns, Map<String, String> types) {
+        StringBuilder select = new StringBuilder(" SELECT ");
+        StringBuilder arrays = new StringBuilder(" FROM unnest(");
+        StringBuilder alias = new StringBuilder(") AS record(");
+        for (int column = 0; column < columns.size(); column++) {
+            String name = columnName(columns.get(column));
+            String type = types.get(name);
+            if (type == null || !TYPE_NAME.matcher(type).matches()) {
+                throw new IllegalStateException("Unsupported type " + type + " of column " + name);
+            }
+            String separator = column > 0 ? ", " : "";
+            select.append(separator).append("CAST(").append(name).append(" AS ").append(type).append(')');
+            arrays.append(separator).append("CAST(:").append(COLUMN_PARAMETER_PREFIX).append(column).append(" AS text[])");
+            alias.append(separator).append(name);
+        }
+        return "INSERT INTO " + stage + " (" + columnList(columns) + ")" + select + arrays + alias + ")";
+    }
+
+    /**
+     * Creates the statement merging the staged rows into the table, updating the rows with the same id on upserts.
+     */
+    static String createMerge(String table, String stage, List<RelationalPersistentProperty> columns, boolean upsert) {
+        String columnList = columnList(columns);
+        StringBuilder merge = new StringBuilder("INSERT INTO ")
+            .append(table)
+            .append(" (")
+            .append(columnList)
+            .append(") SELECT ")
+            .append(columnList)
+            .append(" FROM ")
+            .append(stage);
+        if (upsert) {
+            merge.append(" ON CONFLICT (").append(ID_COLUMN).append(") ");
+            String assignments = columns
+                .stream()
+                .map(BulkLoader::columnName)
+                .filter(name -> !ID_COLUMN.equals(name))
+                .map(name -> name + " = EXCLUDED." + name)
+                .reduce((left, right) -> left + ", " + right)
+                .orElse(null);
+            merge.append(assignments == null ? "DO NOTHING" : "DO UPDATE SET " + assignments);
+        }
+        return merge.toString();
+    }
+
+    private Mono<Long> loadBatched(
+        RelationalPersistentEntity<?> entity,
+        List<RelationalPersistentProperty> columns,
+        Flux<List<String>> rows,
+        boolean upsert
+    ) {
+        String table = entity.getTableName().getReference();
+        int rowsPerStatement = Math.max(1, EntityManager.INSERT_MAX_PARAMETERS / Math.max(1, columns.size()));
+        return rows
+            .buffer(rowsPerStatement)
+            .concatMap(batch -> (upsert ? deleteExisting(table, columns, batch) : Mono.<Void>empty()).then(insert(table, columns, batch)))
+            .reduce(0L, Long::sum);
+    }
+
+    private Mono<Void> deleteExisting(String table, List<RelationalPersistentProperty> columns, List<List<String>> batch) {
+        int idColumn = idIndex(columns);
+        List<Object> ids = new ArrayList<>(batch.size());
+        for (List<String> row : batch) {
+            Object id = convert(value(row, idColumn), columns.get(idColumn).getType());
+            if (id != null) {
+                ids.add(id);
+            }
+        }
+        if (ids.isEmpty()) {
+            return Mono.empty();
+        }
+        return r2dbcEntityTemplate
+            .getDatabaseClient()
+            .sql("DELETE FROM " + table + " WHERE " + ID_COLUMN + " IN (:" + ID_PARAMETER + ")")
+            .bind(ID_PARAMETER, ids)
+            .then();
+    }
+
+    private Mono<Long> insert(String table, List<RelationalPersistentProperty> columns, List<List<String>> batch) {
+        StringBuilder insert = new StringBuilder("INSERT INTO ").append(table).append(" (").append(columnList(columns)).append(") VALUES ");
+        for (int row = 0; row < batch.size(); row++) {
+            insert.append(row > 0 ? ", (" : "(");
+            for (int column = 0; column < columns.size(); column++) {
+                insert.append(column > 0 ? ", :" : ":").append(COLUMN_PARAMETER_PREFIX).append(row).append('_').append(column);
+            }
+            insert.append(')');
+        }
+        R2dbcConverter converter = r2dbcEntityTemplate.getConverter();
+        DatabaseClient.GenericExecuteSpec spec = r2dbcEntityTemplate.getDatabaseClient().sql(insert.toString());
+        for (int row = 0; row < batch.size(); row++) {
+            for (int column = 0; column < columns.size(); column++) {
+                String name = COLUMN_PARAMETER_PREFIX + row + "_" + column;
+                Class<?> type = columns.get(column).getType();
+                Object value = convert(value(batch.get(row), column), type);
+                spec =
+                    value == null
+                        ? spec.bindNull(name, converter.getTargetType(type))
+                        : spec.bind(name, converter.writeValue(value, ClassTypeInformation.from(type)));
+            }
+        }
+        return spec.fetch().rowsUpdated().map(Integer::longValue);
+    }
+
+    private Object convert(String value, Class<?> type) {
+        if (value == null) {
+            return null;
+        }
+        if (Instant.class.equals(type)) {
+            return Instant.parse(value);
+        }
+        return r2dbcEntityTemplate.getConverter().getConversionService().convert(value, type);
+    }
+
+    private static String value(List<String> row, int column) {
+        return column < row.size() ? row.get(column) : null;
+    }
+
+    private static int idIndex(List<RelationalPersistentProperty> columns) {
+        for (int column = 0; column < columns.size(); column++) {
+            if (ID_COLUMN.equals(columnName(columns.get(column)))) {
+                return column;
+            }
+        }
+        return -1;
+    }
+
+    private static String columnName(RelationalPersistentProperty property) {
+        return property.getColumnName().getReference().toLowerCase(Locale.ROOT);
+    }
+
+    private static String columnList(List<RelationalPersistentProperty> columns) {
+        StringBuilder list = new StringBuilder();
+        for (RelationalPersistentProperty column : columns) {
+            list.append(list.length() > 0 ? ", " : "").append(columnName(column));
+        }
+        return list.toString();
+    }
+}
@@ -18,12 +18,27 @@ package io.github.erp.repository;
  * along with this program. If not, see <http://www.gnu.org/licenses/>.
  */
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.beans.PropertyDescriptor;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.core.convert.ConversionService;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.r2dbc.convert.R2dbcConverter;
@@ -32,9 +47,13 @@ import org.springframework.data.r2dbc.core.StatementMapper;
 import org.springframework.data.r2dbc.mapping.OutboundRow;
 import org.springframework.data.r2dbc.query.UpdateMapper;
 import org.springframework.data.relational.core.mapping.RelationalPersistentEntity;
+import org.springframework.data.relational.core.mapping.RelationalPersistentProperty;
 import org.springframework.data.relational.core.query.Criteria;
+import org.springframework.data.relational.core.sql.Column;
 import org.springframework.data.relational.core.sql.Condition;
 import org.springframework.data.relational.core.sql.Conditions;
+import org.springframework.data.relational.core.sql.Expression;
+import org.springframework.data.relational.core.sql.Expressions;
 import org.springframework.data.relational.core.sql.OrderByField;
 import org.springframework.data.relational.core.sql.Select;
 import org.springframework.data.relational.core.sql.SelectBuilder.SelectFromAndJoin;
@@ -43,6 +62,7 @@ import org.springframework.data.relational.core.sql.SelectBuilder.SelectOrdered;
 import org.springframework.data.relational.core.sql.SqlIdentifier;
 import org.springframework.data.relational.core.sql.Table;
 import org.springframework.data.relational.core.sql.render.SqlRenderer;
+import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.r2dbc.core.Parameter;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
@@ -56,8 +76,84 @@ import reactor.core.publisher.Mono;
 @Component
 public class EntityManager {
 
+    private static final Logger log = LoggerFactory.getLogger(EntityManager.class);
+
     public static final String ENTITY_ALIAS = "e";
     public static final String ALIAS_PREFIX = "e_";
+    public static final String LIMIT_PARAMETER = "limit";
+    public static final String OFFSET_PARAMETER = "offset";
+    public static final String KEYSET_ID_PARAMETER = "keysetId";
+    public static final String KEYSET_VALUE_PARAMETER = "keysetValue";
+
+    public static final String STATEMENT_CACHE_METER_PREFIX = "repository.statement-cache";
+    static final int STATEMENT_CACHE_MAX_SIZE = 512;
+
+    public static final String LINK_TABLE_METER_PREFIX = "repository.link-table";
+    // the protocol counts the bind parameters of a statement on 16 bits: Postgres accepts up to 65535 in a statement
+    static final int MAX_BIND_PARAMETERS = 65535;
+    // half of the limit, leaving room for the parameters of a statement other than its rows
+    static final int INSERT_MAX_PARAMETERS = MAX_BIND_PARAMETERS / 2;
+    // two bind parameters per row at most
+    static final int LINK_TABLE_BATCH_SIZE = INSERT_MAX_PARAMETERS / 2;
+    private static final String INSERT_PARAMETER_PREFIX = "row";
+    private static final String LINK_ID_PARAMETER = "linkId";
+    private static final String LINK_REFERENCE_PARAMETER = "linkReference";
+
+    private static final String PAGED_VARIANT = "paged";
+    private static final String UNPAGED_VARIANT = "unpaged";
+    private static final String KEYSET_START_VARIANT = "keyset-start";
+    private static final String KEYSET_NULL_VARIANT = "keyset-null";
+    private static final String KEYSET_VALUE_VARIANT = "keyset-value";
+
+    /**
+     * Outcome of a link table update: the rows it changed, and the statements it took compared to deleting the links
+     * and inserting them back one row at a time.
+     */
+    public static class LinkTableUpdate {
+
+        private final int inserted;
+        private final int deleted;
+        private final int rowByRowStatements;
+        private final int statements;
+
+        LinkTableUpdate(int inserted, int deleted, int rowByRowStatements, int statements) {
+            this.inserted = inserted;
+            this.deleted = deleted;
+            this.rowByRowStatements = rowByRowStatements;
+            this.statements = statements;
+        }
+
+        public int getInserted() {
+            return inserted;
+        }
+
+        public int getDeleted() {
+            return deleted;
+        }
+
+        public int getStatements() {
+            return statements;
+        }
+
+        public int getRoundTripsSaved() {
+            return Math.max(0, rowByRowStatements - statements);
+        }
+
+        @Override
+        public String toString() {
+            return (
+                "LinkTableUpdate{inserted=" +
+                inserted +
+                ", deleted=" +
+                deleted +
+                ", statements=" +
+                statements +
+                ", roundTripsSaved=" +
+                getRoundTripsSaved() +
+                "}"
+            );
+        }
+    }
 
     public static class LinkTable {
 
@@ -75,16 +171,80 @@ public class EntityManager {
         }
     }
 
+    /**
+     * Identifies a rendered statement: the entity, the named join and where shape, the sort and the paging variant.
+     */
+    private static final class StatementKey {
+
+        private final Class<?> entityType;
+        private final String shape;
+        private final Sort sort;
+        private final String variant;
+
+        StatementKey(Class<?> entityType, String shape, Sort sort, String variant) {
+            this.entityType = entityType;
+            this.shape = shape;
+            this.sort = sort;
+            this.variant = variant;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof StatementKey)) {
+                return false;
+            }
+            StatementKey that = (StatementKey) o;
+            return (
+                entityType.equals(that.entityType) &&
+                shape.equals(that.shape) &&
+                Objects.equals(sort, that.sort) &&
+                variant.equals(that.variant)
+            );
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(entityType, shape, sort, variant);
+        }
+    }
+
     private final SqlRenderer sqlRenderer;
     private final UpdateMapper updateMapper;
     private final R2dbcEntityTemplate r2dbcEntityTemplate;
     private final StatementMapper statementMapper;
 
-    public EntityManager(SqlRenderer sqlRenderer, UpdateMapper updateMapper, R2dbcEntityTemplate r2dbcEntityTemplate) {
+    private final Map<StatementKey, String> statementCache = new ConcurrentHashMap<>();
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+    private final Counter linkTableRoundTripsSaved;
+
+    public EntityManager(
+        SqlRenderer sqlRenderer,
+        UpdateMapper updateMapper,
+        R2dbcEntityTemplate r2dbcEntityTemplate,
+        MeterRegistry registry
+    ) {
         this.sqlRenderer = sqlRenderer;
         this.updateMapper = updateMapper;
         this.r2dbcEntityTemplate = r2dbcEntityTemplate;
         this.statementMapper = r2dbcEntityTemplate.getDataAccessStrategy().getStatementMapper();
+
+        Gauge
+            .builder(STATEMENT_CACHE_METER_PREFIX + ".size", statementCache, Map::size)
+            .description("Number of rendered SQL statements held in the statement cache")
+            .register(registry);
+        Gauge
+            .builder(STATEMENT_CACHE_METER_PREFIX + ".hit-ratio", this, EntityManager::statementCacheHitRatio)
+            .description("Ratio of the SQL statements served from the statement cache")
+            .register(registry);
+        this.linkTableRoundTripsSaved =
+            Counter
+                .builder(LINK_TABLE_METER_PREFIX + ".round-trips-saved")
+                .description("Round trips saved by batching the link table updates, compared to one insert per link")
+                .register(registry);
     }
 
     /**
@@ -151,6 +311,198 @@ public class EntityManager {
         }
     }
 
+    /**
+     * Creates an SQL select statement from the given fragment, with the paging rendered as {@code :limit} and
+     * {@code :offset} bind markers, see {@link #bindPaging(DatabaseClient.GenericExecuteSpec, Pageable)}.
+     * <p>
+     * When a shape is given, the rendered statement is cached under the entity type, the shape, the sort and whether
+     * the statement is paged: the select fragment is then only built on the first call, and every further call returns
+     * the same SQL string so the driver can reuse its prepared statement.
+     * @param shape the name identifying the joins and the where clause of the statement, or null if the statement must not be cached.
+     * @param selectFrom supplier of the select statement fragment, called only when the statement is not cached.
+     * @param entityType the entity type which holds the table name.
+     * @param pageable page parameter, or null, if everything needs to be returned.
+     * @param where condition or null. The condition to apply as where clause, it may only hold bind markers when the statement is cached.
+     * @return sql select statement
+     */
+    public String createSelect(
+        String shape,
+        Supplier<SelectFromAndJoinCondition> selectFrom,
+        Class<?> entityType,
+        Pageable pageable,
+        Condition where
+    ) {
+        Sort sort = pageable != null ? pageable.getSort() : null;
+        return cachedStatement(
+            shape == null ? null : new StatementKey(entityType, shape, sort, pageable != null ? PAGED_VARIANT : UNPAGED_VARIANT),
+            () -> {
+                SelectFromAndJoinCondition from = selectFrom.get();
+                String select = createSelectImpl(where != null ? from.where(where) : from, entityType, sort);
+                return pageable != null ? select + " LIMIT :" + LIMIT_PARAMETER + " OFFSET :" + OFFSET_PARAMETER : select;
+            }
+        );
+    }
+
+    /**
+     * Binds the paging parameters to a statement created by
+     * {@link #createSelect(String, Supplier, Class, Pageable, Condition)}.
+     * @param spec the statement to bind the parameters to.
+     * @param pageable page parameter, or null, if everything needs to be returned.
+     * @return the statement with the paging parameters bound.
+     */
+    public DatabaseClient.GenericExecuteSpec bindPaging(DatabaseClient.GenericExecuteSpec spec, Pageable pageable) {
+        if (pageable == null) {
+            return spec;
+        }
+        return spec.bind(LIMIT_PARAMETER, pageable.getPageSize()).bind(OFFSET_PARAMETER, pageable.getOffset());
+    }
+
+    /**
+     * Creates an SQL select statement which reads the page following the given keyset cursor. Instead of skipping the
+     * rows of the previous pages with an offset, the rows are sought by the sort key and the id of the last row read,
+     * so every page costs the same as the first one. The statement is cached like
+     * {@link #createSelect(String, Supplier, Class, Pageable, Condition)}, the cursor contributing its sort and
+     * whether it holds a sort value to the cache key.
+     * @param shape the name identifying the joins and the where clause of the statement, or null if the statement must not be cached.
+     * @param selectFrom supplier of the select statement fragment, called only when the statement is not cached.
+     * @param entityType the entity type which holds the table name.
+     * @param cursor the position to read from, see {@link #bindKeyset(DatabaseClient.GenericExecuteSpec, Class, KeysetCursor, int)}.
+     * @param where condition or null. The condition to apply as where clause.
+     * @return sql select statement
+     */
+    public String createKeysetSelect(
+        String shape,
+        Supplier<SelectFromAndJoinCondition> selectFrom,
+        Class<?> entityType,
+        KeysetCursor cursor,
+        Condition where
+    ) {
+        String variant = cursor.isStart() ? KEYSET_START_VARIANT : cursor.getValue() == null ? KEYSET_NULL_VARIANT : KEYSET_VALUE_VARIANT;
+        return cachedStatement(
+            shape == null ? null : new StatementKey(entityType, shape, cursor.getSort(), variant),
+            () -> {
+                RelationalPersistentEntity<?> entity = getRequiredPersistentEntity(entityType);
+                Table table = Table.create(entity.getTableName()).as(EntityManager.ENTITY_ALIAS);
+                Condition condition = where;
+                Condition keyset = createKeysetCondition(entity, table, cursor);
+                if (keyset != null) {
+                    condition = condition != null ? condition.and(Conditions.nest(keyset)) : keyset;
+                }
+                SelectFromAndJoinCondition from = selectFrom.get();
+                return (
+                    createSelectImpl(condition != null ? from.where(condition) : from, entityType, cursor.getSort()) +
+                    " LIMIT :" +
+                    LIMIT_PARAMETER
+                );
+            }
+        );
+    }
+
+    /**
+     * Lists the properties a keyset listing can be sorted by: the persistent columns of the entity holding a scalar
+     * value, which the rows of the listing expose too, as the cursor of the following page is read from the last row.
+     * @param entityType the entity type which holds the sort property.
+     * @param rowType the type of the rows of the listing, the entity or its DTO.
+     * @return the names of the properties.
+     */
+    public Set<String> getKeysetSortableProperties(Class<?> entityType, Class<?> rowType) {
+        ConversionService conversionService = r2dbcEntityTemplate.getConverter().getConversionService();
+        Set<String> properties = new LinkedHashSet<>();
+        for (RelationalPersistentProperty property : getRequiredPersistentEntity(entityType)) {
+            PropertyDescriptor row = BeanUtils.getPropertyDescriptor(rowType, property.getName());
+            if (
+                !property.isEntity() &&
+                BeanUtils.isSimpleValueType(property.getType()) &&
+                conversionService.canConvert(String.class, property.getType()) &&
+                row != null &&
+                row.getReadMethod() != null &&
+                BeanUtils.isSimpleValueType(row.getPropertyType())
+            ) {
+                properties.add(property.getName());
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Binds the sort key and the id of the keyset cursor, and the page size, to a statement created by
+     * {@link #createKeysetSelect(String, Supplier, Class, KeysetCursor, Condition)}.
+     * @param spec the statement to bind the parameters to.
+     * @param entityType the entity type which holds the sort property.
+     * @param cursor the position to read from.
+     * @param pageSize the number of rows to read.
+     * @return the statement with the keyset parameters bound.
+     */
+    public DatabaseClient.GenericExecuteSpec bindKeyset(
+        DatabaseClient.GenericExecuteSpec spec,
+        Class<?> entityType,
+        KeysetCursor cursor,
+        int pageSize
+    ) {
+        spec = spec.bind(LIMIT_PARAMETER, pageSize);
+        if (cursor.isStart()) {
+            return spec;
+        }
+        spec = spec.bind(KEYSET_ID_PARAMETER, cursor.getId());
+        if (!cursor.isSortedById() && cursor.getValue() != null) {
+            RelationalPersistentProperty property = getRequiredPersistentEntity(entityType)
+                .getRequiredPersistentProperty(cursor.getProperty());
+            Object value = r2dbcEntityTemplate.getConverter().getConversionService().convert(cursor.getValue(), property.getType());
+            spec = spec.bind(KEYSET_VALUE_PARAMETER, value);
+        }
+        return spec;
+    }
+
+    private String cachedStatement(StatementKey key, Supplier<String> renderer) {
+        if (key == null) {
+            return renderer.get();
+        }
+        String statement = statementCache.get(key);
+        if (statement != null) {
+            statementCacheHits.increment();
+            return statement;
+        }
+        statementCacheMisses.increment();
+        statement = renderer.get();
+        // the sort comes from the clients, so the number of shapes is bounded to keep the cache from growing without limit
+        if (statementCache.size() < STATEMENT_CACHE_MAX_SIZE) {
+            statementCache.putIfAbsent(key, statement);
+        }
+        return statement;
+    }
+
+    private double statementCacheHitRatio() {
+        double hits = statementCacheHits.doubleValue();
+        double total = hits + statementCacheMisses.doubleValue();
+        return total == 0 ? 0 : hits / total;
+    }
+
+    /**
+     * Postgres sorts nulls last in ascending and first in descending order, the condition follows the same rule so
+     * that rows with a null sort key are neither skipped nor read twice.
+     */
+    private static Condition createKeysetCondition(RelationalPersistentEntity<?> entity, Table table, KeysetCursor cursor) {
+        if (cursor.isStart()) {
+            return null;
+        }
+        Column id = table.column(entity.getRequiredIdProperty().getColumnName());
+        Expression idMarker = Expressions.just(":" + KEYSET_ID_PARAMETER);
+        if (cursor.isSortedById()) {
+            return cursor.getDirection().isAscending() ? id.isGreater(idMarker) : id.isLess(idMarker);
+        }
+        Column column = table.column(entity.getRequiredPersistentProperty(cursor.getProperty()).getColumnName());
+        Expression valueMarker = Expressions.just(":" + KEYSET_VALUE_PARAMETER);
+        Condition sameValueAfterId = column.isEqualTo(valueMarker).and(id.isGreater(idMarker));
+        if (cursor.getDirection().isAscending()) {
+            return cursor.getValue() == null
+                ? column.isNull().and(id.isGreater(idMarker))
+                : column.isGreater(valueMarker).or(sameValueAfterId).or(column.isNull());
+        }
+        return cursor.getValue() == null
+            ? Conditions.nest(column.isNull().and(id.isGreater(idMarker))).or(column.isNotNull())
+            : column.isLess(valueMarker).or(sameValueAfterId);
+    }
+
     /**
      * Generate an actual SQL from the given {@link Select}.
      * @param select a representation of a select statement.
@@ -190,30 +542,254 @@ public class EntityManager {
     }
 
     /**
-     * Updates the table, which links the entity with the referred entities.
+     * Inserts the given new entities of the same type with multi-row inserts - and sets their ids, if it's an
+     * autoincrement field. A statement holds at most {@value #INSERT_MAX_PARAMETERS} bind parameters, so large lists
+     * take several statements, run one after the other.
+     * @param <S> the type of the persisted entities.
+     * @param entities the entities to be inserted into the database, all without id.
+     * @return the persisted entities, in the given order.
+     */
+    public <S> Flux<S> insertAll(List<S> entities) {
+        if (entities.isEmpty()) {
+            return Flux.empty();
+        }
+        RelationalPersistentEntity<?> entity = getRequiredPersistentEntity(entities.get(0).getClass());
+        List<OutboundRow> rows = new ArrayList<>(entities.size());
+        for (S bean : entities) {
+            OutboundRow row = r2dbcEntityTemplate.getDataAccessStrategy().getOutboundRow(bean);
+            row.remove(entity.getIdColumn());
+            rows.add(row);
+        }
+        List<SqlIdentifier> columns = new ArrayList<>(rows.get(0).keySet());
+        int rowsPerStatement = Math.max(1, INSERT_MAX_PARAMETERS / Math.max(1, columns.size()));
+        return Flux
+            .range(0, (rows.size() + rowsPerStatement - 1) / rowsPerStatement)
+            .concatMap(statement -> {
+                int from = statement * rowsPerStatement;
+                int to = Math.min(from + rowsPerStatement, rows.size());
+                return insertRows(entity, columns, rows.subList(from, to))
+                    .index()
+                    .map(id -> setId(entity, entities.get(from + id.getT1().intValue()), id.getT2()));
+            });
+    }
+
+    private Flux<Object> insertRows(RelationalPersistentEntity<?> entity, List<SqlIdentifier> columns, List<OutboundRow> rows) {
+        StringBuilder insert = new StringBuilder("INSERT INTO ").append(toSql(entity.getTableName())).append(" (");
+        for (int column = 0; column < columns.size(); column++) {
+            insert.append(column > 0 ? ", " : "").append(toSql(columns.get(column)));
+        }
+        insert.append(") VALUES ");
+        for (int row = 0; row < rows.size(); row++) {
+            insert.append(row > 0 ? ", (" : "(");
+            for (int column = 0; column < columns.size(); column++) {
+                insert.append(column > 0 ? ", :" : ":").append(INSERT_PARAMETER_PREFIX).append(row).append('_').append(column);
+            }
+            insert.append(')');
+        }
+        DatabaseClient.GenericExecuteSpec spec = r2dbcEntityTemplate.getDatabaseClient().sql(insert.toString());
+        for (int row = 0; row < rows.size(); row++) {
+            for (int column = 0; column < columns.size(); column++) {
+                String name = INSERT_PARAMETER_PREFIX + row + "_" + column;
+                Parameter value = rows.get(row).get(columns.get(column));
+                spec = value.hasValue() ? spec.bind(name, value.getValue()) : spec.bindNull(name, value.getType());
+            }
+        }
+        String idColumn = toSql(entity.getIdColumn());
+        return spec.filter(statement -> statement.returnGeneratedValues(idColumn)).map(row -> row.get(0)).all();
+    }
+
+    private <S> S setId(RelationalPersistentEntity<?> entity, S bean, Object id) {
+        RelationalPersistentProperty idProperty = entity.getRequiredIdProperty();
+        Object value = r2dbcEntityTemplate.getConverter().getConversionService().convert(id, idProperty.getType());
+        entity.getPropertyAccessor(bean).setProperty(idProperty, value);
+        return bean;
+    }
+
+    /**
+     * Updates the table, which links the entity with the referred entities. The links are replaced: all the existing
+     * rows are deleted, and the new ones are inserted with multi-row inserts of at most
+     * {@value #LINK_TABLE_BATCH_SIZE} rows each.
      * @param table describes the link table, it contains a table name, the column name for the id, and for the referred entity id.
      * @param entityId the id of the entity, for which the links are created.
      * @param referencedIds the id of the referred entities.
      * @return the number of inserted rows.
      */
     public Mono<Integer> updateLinkTable(LinkTable table, Object entityId, Stream<?> referencedIds) {
+        List<Object> references = distinctReferences(referencedIds);
         return deleteFromLinkTable(table, entityId)
-            .then(
-                Flux
-                    .fromStream(referencedIds)
-                    .flatMap((Object referenceId) -> {
-                        StatementMapper.InsertSpec insert = r2dbcEntityTemplate
-                            .getDataAccessStrategy()
-                            .getStatementMapper()
-                            .createInsert(table.tableName)
-                            .withColumn(table.idColumn, Parameter.from(entityId))
-                            .withColumn(table.referenceColumn, Parameter.from(referenceId));
-
-                        return r2dbcEntityTemplate.getDatabaseClient().sql(statementMapper.getMappedObject(insert)).fetch().rowsUpdated();
-                    })
-                    .collectList()
-                    .map((List<Integer> updates) -> updates.stream().reduce(Integer::sum).orElse(0))
-            );
+            .then(insertIntoLinkTable(table, entityId, references))
+            .map((Integer inserted) -> {
+                recordLinkTableUpdate(new LinkTableUpdate(inserted, 0, 1 + references.size(), 1 + batchCount(references.size())));
+                return inserted;
+            });
+    }
+
+    /**
+     * Synchronizes the table, which links the entity with the referred entities: only the links which are no longer
+     * referenced are deleted, and only the new ones are inserted, so updating an entity without touching its
+     * relationship costs a single select.
+     * @param table describes the link table, it contains a table name, the column name for the id, and for the referred entity id.
+     * @param entityId the id of the entity, for which the links are synchronized.
+     * @param referencedIds the id of the referred entities.
+     * @return the number of inserted and deleted rows, and the statements it took.
+     */
+    public Mono<LinkTableUpdate> syncLinkTable(LinkTable table, Object entityId, Stream<?> referencedIds) {
+        Assert.notNull(entityId, "entityId is null");
+        List<Object> references = distinctReferences(referencedIds);
+        String select =
+            "SELECT " +
+            toSql(table.referenceColumn) +
+            " FROM " +
+            toSql(table.tableName) +
+            " WHERE " +
+            toSql(table.idColumn) +
+            " = :" +
+            LINK_ID_PARAMETER;
+        return r2dbcEntityTemplate
+            .getDatabaseClient()
+            .sql(select)
+            .bind(LINK_ID_PARAMETER, entityId)
+            .map(row -> row.get(0))
+            .all()
+            .collectList()
+            .flatMap((List<Object> linked) -> {
+                Set<Object> existing = new LinkedHashSet<>(toReferenceType(linked, references));
+                List<Object> added = new ArrayList<>();
+                for (Object reference : references) {
+                    if (!existing.remove(reference)) {
+                        added.add(reference);
+                    }
+                }
+                List<Object> removed = new ArrayList<>(existing);
+                int statements = 1 + batchCount(removed.size()) + batchCount(added.size());
+                return deleteFromLinkTable(table, entityId, removed)
+                    .zipWith(insertIntoLinkTable(table, entityId, added))
+                    .map(counts -> new LinkTableUpdate(counts.getT2(), counts.getT1(), 1 + references.size(), statements));
+            })
+            .doOnNext(this::recordLinkTableUpdate);
+    }
+
+    /**
+     * Inserts the links of an entity, which has none yet, with multi-row inserts of at most
+     * {@value #LINK_TABLE_BATCH_SIZE} rows each.
+     * @param table describes the link table, it contains a table name, the column name for the id, and for the referred entity id.
+     * @param entityId the id of the entity, for which the links are created.
+     * @param referencedIds the id of the referred entities.
+     * @return the number of inserted rows.
+     */
+    public Mono<Integer> insertIntoLinkTable(LinkTable table, Object entityId, Stream<?> referencedIds) {
+        Assert.notNull(entityId, "entityId is null");
+        List<Object> references = distinctReferences(referencedIds);
+        return insertIntoLinkTable(table, entityId, references)
+            .map((Integer inserted) -> {
+                recordLinkTableUpdate(new LinkTableUpdate(inserted, 0, references.size(), batchCount(references.size())));
+                return inserted;
+            });
+    }
+
+    private Mono<Integer> insertIntoLinkTable(LinkTable table, Object entityId, List<Object> references) {
+        return Flux
+            .fromIterable(batches(references))
+            .concatMap((List<Object> batch) -> {
+                DatabaseClient.GenericExecuteSpec insert = r2dbcEntityTemplate
+                    .getDatabaseClient()
+                    .sql(createLinkInsert(table, batch.size()))
+                    .bind(LINK_ID_PARAMETER, entityId);
+                for (int index = 0; index < batch.size(); index++) {
+                    insert = insert.bind(LINK_REFERENCE_PARAMETER + index, batch.get(index));
+                }
+                return insert.fetch().rowsUpdated();
+            })
+            .reduce(0, Integer::sum);
+    }
+
+    private Mono<Integer> deleteFromLinkTable(LinkTable table, Object entityId, List<Object> references) {
+        return Flux
+            .fromIterable(batches(references))
+            .concatMap((List<Object> batch) ->
+                r2dbcEntityTemplate
+                    .getDatabaseClient()
+                    .sql(
+                        "DELETE FROM " +
+                        toSql(table.tableName) +
+                        " WHERE " +
+                        toSql(table.idColumn) +
+                        " = :" +
+                        LINK_ID_PARAMETER +
+                        " AND " +
+                        toSql(table.referenceColumn) +
+                        " IN (:" +
+                        LINK_REFERENCE_PARAMETER +
+                        ")"
+                    )
+                    .bind(LINK_ID_PARAMETER, entityId)
+                    .bind(LINK_REFERENCE_PARAMETER, batch)
+                    .fetch()
+                    .rowsUpdated()
+            )
+            .reduce(0, Integer::sum);
+    }
+
+    /**
+     * Creates the multi-row insert of the given number of links, the entity id is bound once as
+     * {@code :linkId}, and the referred ids as {@code :linkReference0}, {@code :linkReference1}...
+     */
+    String createLinkInsert(LinkTable table, int rows) {
+        StringBuilder insert = new StringBuilder("INSERT INTO ")
+            .append(toSql(table.tableName))
+            .append(" (")
+            .append(toSql(table.idColumn))
+            .append(", ")
+            .append(toSql(table.referenceColumn))
+            .append(") VALUES ");
+        for (int index = 0; index < rows; index++) {
+            if (index > 0) {
+                insert.append(", ");
+            }
+            insert.append("(:").append(LINK_ID_PARAMETER).append(", :").append(LINK_REFERENCE_PARAMETER).append(index).append(')');
+        }
+        return insert.toString();
+    }
+
+    private String toSql(String identifier) {
+        return toSql(SqlIdentifier.unquoted(identifier));
+    }
+
+    private String toSql(SqlIdentifier identifier) {
+        return r2dbcEntityTemplate.getDataAccessStrategy().toSql(identifier);
+    }
+
+    private List<Object> toReferenceType(List<Object> linked, List<Object> references) {
+        if (references.isEmpty()) {
+            return linked;
+        }
+        Class<?> referenceType = references.get(0).getClass();
+        List<Object> converted = new ArrayList<>(linked.size());
+        for (Object value : linked) {
+            converted.add(r2dbcEntityTemplate.getConverter().getConversionService().convert(value, referenceType));
+        }
+        return converted;
+    }
+
+    private void recordLinkTableUpdate(LinkTableUpdate update) {
+        linkTableRoundTripsSaved.increment(update.getRoundTripsSaved());
+        log.debug("Updated link table: {}", update);
+    }
+
+    private static List<Object> distinctReferences(Stream<?> referencedIds) {
+        return referencedIds.filter(Objects::nonNull).distinct().collect(Collectors.toList());
+    }
+
+    private static List<List<Object>> batches(List<Object> references) {
+        List<List<Object>> batches = new ArrayList<>();
+        for (int from = 0; from < references.size(); from += LINK_TABLE_BATCH_SIZE) {
+            batches.add(references.subList(from, Math.min(from + LINK_TABLE_BATCH_SIZE, references.size())));
+        }
+        return batches;
+    }
+
+    private static int batchCount(int rows) {
+        return (rows + LINK_TABLE_BATCH_SIZE - 1) / LINK_TABLE_BATCH_SIZE;
     }
 
     public Mono<Void> deleteFromLinkTable(LinkTable table, Object entityId) {
@@ -242,6 +818,10 @@ public class EntityManager {
         return r2dbcEntityTemplate.getConverter().getMappingContext().getPersistentEntity(entityType);
     }
 
+    private RelationalPersistentEntity<?> getRequiredPersistentEntity(Class<?> entityType) {
+        return r2dbcEntityTemplate.getConverter().getMappingContext().getRequiredPersistentEntity(entityType);
+    }
+
     private static Collection<? extends OrderByField> createOrderByFields(Table table, Sort sortToUse) {
         List<OrderByField> fields = new ArrayList<>();
 
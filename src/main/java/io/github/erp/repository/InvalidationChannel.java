@@ -0,0 +1,126 @@
+package io.github.erp.repository;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import io.r2dbc.postgresql.api.Notification;
+import io.r2dbc.postgresql.api.PostgresqlConnection;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.ValidationDepth;
+import io.r2dbc.spi.Wrapped;
+import java.time.Duration;
+import org.springframework.data.r2dbc.dialect.PostgresDialect;
+import org.springframework.data.r2dbc.dialect.R2dbcDialect;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Postgres {@code LISTEN/NOTIFY} channel carrying the cache invalidations between the instances of the application.
+ * <p>
+ * Notifications are sent on a pooled connection, outside of any transaction. Listening holds a dedicated connection,
+ * opened outside of the pool, which is checked periodically so that a broken connection ends the listening.
+ */
+@Repository
+public class InvalidationChannel {
+
+    public static final String CHANNEL = "erp_cache_invalidation";
+
+    static final Duration KEEP_ALIVE_INTERVAL = Duration.ofSeconds(30);
+
+    private static final String NOTIFY = "SELECT pg_notify($1, $2)";
+
+    private final ConnectionFactory connectionFactory;
+
+    private final R2dbcDialect dialect;
+
+    public InvalidationChannel(ConnectionFactory connectionFactory, R2dbcDialect dialect) {
+        this.connectionFactory = connectionFactory;
+        this.dialect = dialect;
+    }
+
+    /**
+     * @return whether the database supports the channel.
+     */
+    public boolean isSupported() {
+        return dialect instanceof PostgresDialect;
+    }
+
+    /**
+     * Sends a notification to all the listeners, this instance included.
+     * @param payload the payload of the notification, at most 8000 bytes.
+     * @return completes once the notification is sent.
+     */
+    public Mono<Void> send(String payload) {
+        return Mono.usingWhen(
+            connectionFactory.create(),
+            connection ->
+                Flux
+                    .from(connection.createStatement(NOTIFY).bind("$1", CHANNEL).bind("$2", payload).execute())
+                    .flatMap(Result::getRowsUpdated)
+                    .then(),
+            Connection::close
+        );
+    }
+
+    /**
+     * Listens to the notifications on a dedicated connection. The flux ends, in error or not, when the connection is
+     * lost: the notifications sent meanwhile are missed, which the caller catches up with before listening again.
+     * @param onListening called once the connection listens, the notifications sent from then on being received.
+     * @return the payloads of the notifications.
+     */
+    public Flux<String> listen(Runnable onListening) {
+        return Flux.usingWhen(
+            dedicatedConnectionFactory().create(),
+            connection -> {
+                if (!(connection instanceof PostgresqlConnection)) {
+                    return Flux.error(new IllegalStateException("Listening to notifications requires a Postgres connection"));
+                }
+                Mono<String> listening = Flux
+                    .from(connection.createStatement("LISTEN " + CHANNEL).execute())
+                    .flatMap(Result::getRowsUpdated)
+                    .then(Mono.fromRunnable(onListening));
+                Flux<String> keepAlive = Flux
+                    .interval(KEEP_ALIVE_INTERVAL)
+                    .concatMap(tick -> Mono.from(connection.validate(ValidationDepth.REMOTE)))
+                    .filter(valid -> !valid)
+                    .flatMap(invalid -> Mono.error(new IllegalStateException("The listening connection is no longer valid")));
+                // the notifications are subscribed to first, so that none is missed once the connection listens
+                return ((PostgresqlConnection) connection).getNotifications()
+                    .map(Notification::getParameter)
+                    .mergeWith(listening)
+                    .mergeWith(keepAlive);
+            },
+            Connection::close
+        );
+    }
+
+    private ConnectionFactory dedicatedConnectionFactory() {
+        ConnectionFactory factory = connectionFactory;
+        while (factory instanceof Wrapped) {
+            Object unwrapped = ((Wrapped<?>) factory).unwrap();
+            if (!(unwrapped instanceof ConnectionFactory)) {
+                break;
+            }
+            factory = (ConnectionFactory) unwrapped;
+        }
+        return factory;
+    }
+}
@@ -0,0 +1,220 @@
+package io.github.erp.repository;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Objects;
+import java.util.Set;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.util.StringUtils;
+
+/**
+ * Position of a keyset (seek) pagination: the sort key and the id of the last row of the previous page.
+ * <p>
+ * The cursor is exchanged with clients as an opaque, url-safe token. A cursor without an id marks the
+ * start of the result set.
+ */
+public final class KeysetCursor {
+
+    public static final String ID_PROPERTY = "id";
+
+    private static final String SEPARATOR = "|";
+    private static final String NULL_VALUE = "n";
+    private static final String VALUE_PREFIX = "v:";
+
+    private final String property;
+    private final Sort.Direction direction;
+    private final Long id;
+    private final String value;
+
+    private KeysetCursor(String property, Sort.Direction direction, Long id, String value) {
+        this.property = property;
+        this.direction = direction;
+        this.id = id;
+        this.value = value;
+    }
+
+    /**
+     * Creates the cursor pointing at the start of the result set ordered by the given sort.
+     * @param sort the sort of the listing, at most one property besides the id.
+     * @return the cursor for the first page.
+     * @throws IllegalArgumentException if the sort cannot be paged with a keyset.
+     */
+    public static KeysetCursor start(Sort sort) {
+        Sort.Order order = sortOrder(sort);
+        return new KeysetCursor(order.getProperty(), order.getDirection(), null, null);
+    }
+
+    /**
+     * Creates the cursor pointing after the given row. The row may be the entity or its DTO, as long as it
+     * exposes the sort property and the id as bean properties.
+     * @param row the last row of the current page.
+     * @param sort the sort of the listing.
+     * @return the cursor for the following page.
+     */
+    public static KeysetCursor after(Object row, Sort sort) {
+        Sort.Order order = sortOrder(sort);
+        BeanWrapperImpl wrapper = new BeanWrapperImpl(row);
+        Object rowId = wrapper.getPropertyValue(ID_PROPERTY);
+        Object rowValue = ID_PROPERTY.equals(order.getProperty()) ? null : wrapper.getPropertyValue(order.getProperty());
+        return new KeysetCursor(
+            order.getProperty(),
+            order.getDirection(),
+            rowId == null ? null : ((Number) rowId).longValue(),
+            rowValue == null ? null : rowValue.toString()
+        );
+    }
+
+    /**
+     * Decodes a token issued by {@link #encode()} and checks it belongs to the given sort.
+     * @param token the token sent by the client, an empty token means the first page.
+     * @param sort the sort of the listing.
+     * @param sortableProperties the properties the listing can be sorted by besides the id, see
+     * {@link EntityManager#getKeysetSortableProperties(Class, Class)}.
+     * @return the decoded cursor.
+     * @throws IllegalArgumentException if the sort cannot be paged with a keyset, or the token is malformed or was
+     * issued for another sort.
+     */
+    public static KeysetCursor decode(String token, Sort sort, Set<String> sortableProperties) {
+        String property = sortOrder(sort).getProperty();
+        if (!ID_PROPERTY.equals(property) && !sortableProperties.contains(property)) {
+            throw new IllegalArgumentException("Keyset pagination cannot sort by " + property);
+        }
+        if (!StringUtils.hasText(token)) {
+            return start(sort);
+        }
+        String decoded;
+        try {
+            decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed cursor", e);
+        }
+        String[] parts = decoded.split("\\" + SEPARATOR, 4);
+        if (parts.length != 4 || !(NULL_VALUE.equals(parts[3]) || parts[3].startsWith(VALUE_PREFIX))) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+        KeysetCursor cursor;
+        try {
+            cursor =
+                new KeysetCursor(
+                    parts[1],
+                    Sort.Direction.fromString(parts[0]),
+                    Long.valueOf(parts[2]),
+                    NULL_VALUE.equals(parts[3]) ? null : parts[3].substring(VALUE_PREFIX.length())
+                );
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed cursor", e);
+        }
+        Sort.Order order = sortOrder(sort);
+        if (!cursor.property.equals(order.getProperty()) || cursor.direction != order.getDirection()) {
+            throw new IllegalArgumentException("The cursor was issued for a different sort");
+        }
+        return cursor;
+    }
+
+    /**
+     * @return the opaque token representing this cursor.
+     */
+    public String encode() {
+        String raw =
+            direction.name() +
+            SEPARATOR +
+            property +
+            SEPARATOR +
+            id +
+            SEPARATOR +
+            (value == null ? NULL_VALUE : VALUE_PREFIX + value);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Sort.Order sortOrder(Sort sort) {
+        Sort.Order[] orders = sort.stream().filter(order -> !ID_PROPERTY.equals(order.getProperty())).toArray(Sort.Order[]::new);
+        if (orders.length > 1) {
+            throw new IllegalArgumentException("Keyset pagination supports a single sort property");
+        }
+        if (orders.length == 1) {
+            return orders[0];
+        }
+        Sort.Order byId = sort.getOrderFor(ID_PROPERTY);
+        return byId != null ? byId : Sort.Order.asc(ID_PROPERTY);
+    }
+
+    public boolean isStart() {
+        return id == null;
+    }
+
+    public boolean isSortedById() {
+        return ID_PROPERTY.equals(property);
+    }
+
+    public String getProperty() {
+        return property;
+    }
+
+    public Sort.Direction getDirection() {
+        return direction;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * @return the order of the keyset listing, the sort property followed by the id as tie-breaker.
+     */
+    public Sort getSort() {
+        if (isSortedById()) {
+            return Sort.by(direction, ID_PROPERTY);
+        }
+        return Sort.by(new Sort.Order(direction, property), Sort.Order.asc(ID_PROPERTY));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof KeysetCursor)) {
+            return false;
+        }
+        KeysetCursor that = (KeysetCursor) o;
+        return (
+            property.equals(that.property) &&
+            direction == that.direction &&
+            Objects.equals(id, that.id) &&
+            Objects.equals(value, that.value)
+        );
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(property, direction, id, value);
+    }
+
+    @Override
+    public String toString() {
+        return "KeysetCursor{property='" + property + "', direction=" + direction + ", id=" + id + ", value='" + value + "'}";
+    }
+}
@@ -0,0 +1,202 @@
+package io.github.erp.repository;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+/**
+ * Maintains the closure table of the organisation tree of {@link io.github.erp.domain.AppUser}: one row per ancestor
+ * and descendant pair, each AppUser being its own ancestor at depth 0. Subtree and ancestor lookups are then a single
+ * indexed query, whatever the depth of the tree.
+ * <p>
+ * The table has to be kept in step with {@code app_user.organization_id} in the transaction writing it; the rows of a
+ * deleted AppUser are removed by cascade. The transactions changing the tree take a transaction scoped advisory lock
+ * first, see {@link #lockTree()}, so that a move is checked against the tree it changes.
+ */
+@Repository
+public class OrganizationHierarchyRepository {
+
+    public static final String CLOSURE_TABLE = "app_user_organization_closure";
+
+    static final int MAX_DEPTH = 100;
+
+    // any key, as long as no other advisory lock of the database uses it
+    static final long TREE_LOCK_KEY = 4_918_207_766_350L;
+
+    private static final String ID_PARAMETER = "id";
+    private static final String ORGANIZATION_ID_PARAMETER = "organizationId";
+    private static final String ANCESTOR_ID_PARAMETER = "ancestorId";
+    private static final String KEY_PARAMETER = "key";
+
+    private static final String LOCK = "SELECT pg_advisory_xact_lock(:" + KEY_PARAMETER + ")";
+
+    private static final String INSERT_SELF =
+        "INSERT INTO " +
+        CLOSURE_TABLE +
+        " (ancestor_id, descendant_id, depth) SELECT :" +
+        ID_PARAMETER +
+        ", :" +
+        ID_PARAMETER +
+        ", 0 WHERE NOT EXISTS (SELECT 1 FROM " +
+        CLOSURE_TABLE +
+        " WHERE ancestor_id = :" +
+        ID_PARAMETER +
+        " AND descendant_id = :" +
+        ID_PARAMETER +
+        ")";
+
+    private static final String DETACH_SUBTREE =
+        "DELETE FROM " +
+        CLOSURE_TABLE +
+        " WHERE descendant_id IN (SELECT descendant_id FROM " +
+        CLOSURE_TABLE +
+        " WHERE ancestor_id = :" +
+        ID_PARAMETER +
+        ") AND ancestor_id IN (SELECT ancestor_id FROM " +
+        CLOSURE_TABLE +
+        " WHERE descendant_id = :" +
+        ID_PARAMETER +
+        " AND depth > 0)";
+
+    private static final String ATTACH_SUBTREE =
+        "INSERT INTO " +
+        CLOSURE_TABLE +
+        " (ancestor_id, descendant_id, depth)" +
+        " SELECT above.ancestor_id, below.descendant_id, above.depth + below.depth + 1" +
+        " FROM " +
+        CLOSURE_TABLE +
+        " above CROSS JOIN " +
+        CLOSURE_TABLE +
+        " below WHERE above.descendant_id = :" +
+        ORGANIZATION_ID_PARAMETER +
+        " AND below.ancestor_id = :" +
+        ID_PARAMETER;
+
+    private static final String FIND_PARENT =
+        "SELECT ancestor_id FROM " + CLOSURE_TABLE + " WHERE descendant_id = :" + ID_PARAMETER + " AND depth = 1";
+
+    private static final String IS_IN_SUBTREE =
+        "SELECT COUNT(*) FROM " +
+        CLOSURE_TABLE +
+        " WHERE ancestor_id = :" +
+        ANCESTOR_ID_PARAMETER +
+        " AND descendant_id = :" +
+        ID_PARAMETER;
+
+    // the depth bound and the grouping keep the rebuild finite, and its rows unique, should the tree hold a cycle
+    private static final String REBUILD =
+        "INSERT INTO " +
+        CLOSURE_TABLE +
+        " (ancestor_id, descendant_id, depth)" +
+        " WITH RECURSIVE organization_tree (ancestor_id, descendant_id, depth) AS (" +
+        " SELECT id, id, 0 FROM app_user" +
+        " UNION ALL" +
+        " SELECT t.ancestor_id, u.id, t.depth + 1 FROM organization_tree t JOIN app_user u ON u.organization_id = t.descendant_id" +
+        " WHERE t.depth < " +
+        MAX_DEPTH +
+        ")" +
+        " SELECT ancestor_id, descendant_id, MIN(depth) FROM organization_tree GROUP BY ancestor_id, descendant_id";
+
+    private final DatabaseClient db;
+
+    public OrganizationHierarchyRepository(R2dbcEntityTemplate template) {
+        this.db = template.getDatabaseClient();
+    }
+
+    /**
+     * Blocks the other changes of the tree until the end of the current transaction. Without it, two concurrent moves,
+     * of a node under another and of the other under the first, would both pass the cycle check and corrupt the table.
+     * @return completes once the lock is taken.
+     */
+    public Mono<Void> lockTree() {
+        return db.sql(LOCK).bind(KEY_PARAMETER, TREE_LOCK_KEY).then();
+    }
+
+    /**
+     * Adds a new AppUser to the tree.
+     * @param id the id of the AppUser.
+     * @param organizationId the id of its organisation, or null for a root.
+     * @return completes once the AppUser is linked to itself and to all the ancestors of its organisation.
+     */
+    public Mono<Void> insertNode(Long id, Long organizationId) {
+        Mono<Void> inserted = db.sql(INSERT_SELF).bind(ID_PARAMETER, id).then();
+        if (organizationId == null) {
+            return inserted;
+        }
+        return inserted.then(attach(id, organizationId));
+    }
+
+    /**
+     * Moves an AppUser, along with its subtree, under another organisation. The caller takes the lock of the tree, see
+     * {@link #lockTree()}, then checks the organisation is not part of the subtree, see {@link #isInSubtree(Long, Long)}.
+     * An AppUser missing from the table, written without maintaining it, is added to it.
+     * @param id the id of the AppUser.
+     * @param organizationId the id of its new organisation, or null to make it a root.
+     * @return completes once the subtree is unlinked from its former ancestors and linked to the new ones.
+     */
+    public Mono<Void> moveNode(Long id, Long organizationId) {
+        Mono<Void> detached = db
+            .sql(INSERT_SELF)
+            .bind(ID_PARAMETER, id)
+            .then()
+            .then(db.sql(DETACH_SUBTREE).bind(ID_PARAMETER, id).then());
+        if (organizationId == null) {
+            return detached;
+        }
+        return detached.then(attach(id, organizationId));
+    }
+
+    private Mono<Void> attach(Long id, Long organizationId) {
+        return db.sql(ATTACH_SUBTREE).bind(ID_PARAMETER, id).bind(ORGANIZATION_ID_PARAMETER, organizationId).then();
+    }
+
+    /**
+     * @param id the id of an AppUser.
+     * @return the id of its organisation, or empty for a root.
+     */
+    public Mono<Long> findParentId(Long id) {
+        return db.sql(FIND_PARENT).bind(ID_PARAMETER, id).map(row -> row.get(0, Long.class)).one();
+    }
+
+    /**
+     * @param ancestorId the id of the root of the subtree.
+     * @param id the id of an AppUser.
+     * @return whether the AppUser is the root of the subtree or one of its descendants.
+     */
+    public Mono<Boolean> isInSubtree(Long ancestorId, Long id) {
+        return db
+            .sql(IS_IN_SUBTREE)
+            .bind(ANCESTOR_ID_PARAMETER, ancestorId)
+            .bind(ID_PARAMETER, id)
+            .map(row -> row.get(0, Long.class))
+            .one()
+            .map(count -> count > 0);
+    }
+
+    /**
+     * Rebuilds the whole table from {@code app_user.organization_id}, after writes bypassing the AppUser service.
+     * @return completes once the table is rebuilt.
+     */
+    public Mono<Void> rebuild() {
+        return db.sql("DELETE FROM " + CLOSURE_TABLE).then().then(db.sql(REBUILD).then());
+    }
+}
@@ -19,6 +19,7 @@ package io.github.erp.repository;
  */
 
 import io.github.erp.domain.Placeholder;
+import java.util.List;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.relational.core.query.Criteria;
@@ -74,6 +75,38 @@ interface PlaceholderRepositoryInternal {
 
     Flux<Placeholder> findAllBy(Pageable pageable);
 
+    Flux<Placeholder> findAllAfter(KeysetCursor cursor, int pageSize);
+
+    Flux<Placeholder> streamAll(Long organizationId);
+
+    /**
+     * Finds the placeholders of every organisation of a subtree, the root organisation included.
+     * @param organizationId the id of the root of the subtree.
+     * @param pageable the pagination information.
+     * @return the placeholders of the subtree.
+     */
+    Flux<Placeholder> findAllInOrganizationSubtree(Long organizationId, Pageable pageable);
+
+    /**
+     * Finds the placeholders of an organisation, optionally only those with a given index.
+     * @param organizationId the id of the organisation.
+     * @param placeholderIndex the index of the placeholders, or null for all the placeholders of the organisation.
+     * @return the placeholders, in no particular order.
+     */
+    Flux<Placeholder> lookupByOrganization(Long organizationId, String placeholderIndex);
+
+    Flux<Placeholder> insertAll(List<Placeholder> placeholders);
+
+    /**
+     * Loads the archetype chain of a placeholder in a single recursive query: the placeholder itself, then its
+     * archetype, the archetype of its archetype, and so on. When the chain loops, the placeholder closing the loop is
+     * returned a second time, as the last element.
+     * @param id the id of the placeholder.
+     * @param maxDepth the number of archetype links followed at most.
+     * @return the placeholders of the chain, nearest first, each with its archetype holding only the id.
+     */
+    Flux<Placeholder> findArchetypeChain(Long id, int maxDepth);
+
     Flux<Placeholder> findAll();
 
     Mono<Placeholder> findById(Long id);
@@ -44,6 +44,7 @@ import org.springframework.data.relational.core.sql.Comparison;
 import org.springframework.data.relational.core.sql.Condition;
 import org.springframework.data.relational.core.sql.Conditions;
 import org.springframework.data.relational.core.sql.Expression;
+import org.springframework.data.relational.core.sql.Expressions;
 import org.springframework.data.relational.core.sql.Select;
 import org.springframework.data.relational.core.sql.SelectBuilder.SelectFromAndJoinCondition;
 import org.springframework.data.relational.core.sql.Table;
@@ -66,9 +67,41 @@ class PlaceholderRepositoryInternalImpl extends SimpleR2dbcRepository<Placeholde
     private final PlaceholderRowMapper placeholderMapper;
     private final AppUserRowMapper appuserMapper;
 
+    private static final String ALL_SHAPE = "all";
+    private static final String BY_ID_SHAPE = "by-id";
+    private static final String BY_ORGANIZATION_SHAPE = "by-organization";
+    private static final String IN_ORGANIZATION_SUBTREE_SHAPE = "in-organization-subtree";
+    private static final String BY_ORGANIZATION_AND_INDEX_SHAPE = "by-organization-and-index";
+    private static final String ID_PARAMETER = "id";
+    private static final String ORGANIZATION_ID_PARAMETER = "organizationId";
+    private static final String PLACEHOLDER_INDEX_PARAMETER = "placeholderIndex";
+    private static final String MAX_DEPTH_PARAMETER = "maxDepth";
+    private static final int STREAM_FETCH_SIZE = 500;
+
+    // the path lists the ids visited so far, as ",1,2,", a link back to one of them is flagged and ends the recursion
+    private static final String ARCHETYPE_CHAIN_QUERY =
+        "WITH RECURSIVE archetype_chain" +
+        " (id, placeholder_index, placeholder_value, archetype_id, organization_id, depth, path, cycle) AS (" +
+        " SELECT id, placeholder_index, placeholder_value, archetype_id, organization_id, 0," +
+        " CAST(',' || CAST(id AS varchar(20)) || ',' AS varchar(4000)), FALSE" +
+        " FROM placeholder WHERE id = :" +
+        ID_PARAMETER +
+        " UNION ALL" +
+        " SELECT p.id, p.placeholder_index, p.placeholder_value, p.archetype_id, p.organization_id, c.depth + 1," +
+        " CAST(c.path || CAST(p.id AS varchar(20)) || ',' AS varchar(4000))," +
+        " POSITION(',' || CAST(p.id AS varchar(20)) || ',' IN c.path) > 0" +
+        " FROM placeholder p JOIN archetype_chain c ON p.id = c.archetype_id" +
+        " WHERE NOT c.cycle AND c.depth < :" +
+        MAX_DEPTH_PARAMETER +
+        ")" +
+        " SELECT id AS e_id, placeholder_index AS e_placeholder_index, placeholder_value AS e_placeholder_value," +
+        " archetype_id AS e_archetype_id, organization_id AS e_organization_id" +
+        " FROM archetype_chain ORDER BY depth";
+
     private static final Table entityTable = Table.aliased("placeholder", EntityManager.ENTITY_ALIAS);
     private static final Table archetypeTable = Table.aliased("placeholder", "archetype");
     private static final Table organizationTable = Table.aliased("app_user", "e_organization");
+    private static final Table closureTable = Table.create(OrganizationHierarchyRepository.CLOSURE_TABLE);
 
     public PlaceholderRepositoryInternalImpl(
         R2dbcEntityTemplate template,
@@ -95,11 +128,111 @@ class PlaceholderRepositoryInternalImpl extends SimpleR2dbcRepository<Placeholde
         return createQuery(pageable, null).all();
     }
 
+    @Override
+    public Flux<Placeholder> findAllAfter(KeysetCursor cursor, int pageSize) {
+        return createQuery(pageSize, cursor, null).all();
+    }
+
+    @Override
+    public Flux<Placeholder> streamAll(Long organizationId) {
+        Condition whereClause = organizationId == null
+            ? null
+            : Conditions.isEqual(entityTable.column("organization_id"), Expressions.just(":" + ORGANIZATION_ID_PARAMETER));
+        String shape = organizationId == null ? ALL_SHAPE : BY_ORGANIZATION_SHAPE;
+        String select = entityManager.createSelect(shape, this::createSelectFrom, Placeholder.class, null, whereClause);
+        // fetch the rows by chunks, as they are requested downstream, instead of buffering the whole result
+        DatabaseClient.GenericExecuteSpec spec = db.sql(select).filter(statement -> statement.fetchSize(STREAM_FETCH_SIZE));
+        if (organizationId != null) {
+            spec = spec.bind(ORGANIZATION_ID_PARAMETER, organizationId);
+        }
+        return spec.map(this::process).all();
+    }
+
+    @Override
+    public Flux<Placeholder> findAllInOrganizationSubtree(Long organizationId, Pageable pageable) {
+        Select descendants = Select
+            .builder()
+            .select(closureTable.column("descendant_id"))
+            .from(closureTable)
+            .where(Conditions.isEqual(closureTable.column("ancestor_id"), Expressions.just(":" + ORGANIZATION_ID_PARAMETER)))
+            .build();
+        Condition whereClause = Conditions.in(entityTable.column("organization_id"), descendants);
+        String select = entityManager.createSelect(
+            IN_ORGANIZATION_SUBTREE_SHAPE,
+            this::createSelectFrom,
+            Placeholder.class,
+            pageable,
+            whereClause
+        );
+        return entityManager
+            .bindPaging(db.sql(select), pageable)
+            .bind(ORGANIZATION_ID_PARAMETER, organizationId)
+            .map(this::process)
+            .all();
+    }
+
+    @Override
+    public Flux<Placeholder> lookupByOrganization(Long organizationId, String placeholderIndex) {
+        Condition whereClause = Conditions.isEqual(
+            entityTable.column("organization_id"),
+            Expressions.just(":" + ORGANIZATION_ID_PARAMETER)
+        );
+        if (placeholderIndex != null) {
+            whereClause =
+                whereClause.and(
+                    Conditions.isEqual(entityTable.column("placeholder_index"), Expressions.just(":" + PLACEHOLDER_INDEX_PARAMETER))
+                );
+        }
+        String shape = placeholderIndex == null ? BY_ORGANIZATION_SHAPE : BY_ORGANIZATION_AND_INDEX_SHAPE;
+        String select = entityManager.createSelect(shape, this::createSelectFrom, Placeholder.class, null, whereClause);
+        DatabaseClient.GenericExecuteSpec spec = db.sql(select).bind(ORGANIZATION_ID_PARAMETER, organizationId);
+        if (placeholderIndex != null) {
+            spec = spec.bind(PLACEHOLDER_INDEX_PARAMETER, placeholderIndex);
+        }
+        return spec.map(this::process).all();
+    }
+
+    @Override
+    public Flux<Placeholder> insertAll(List<Placeholder> placeholders) {
+        return entityManager.insertAll(placeholders);
+    }
+
+    @Override
+    public Flux<Placeholder> findArchetypeChain(Long id, int maxDepth) {
+        return db
+            .sql(ARCHETYPE_CHAIN_QUERY)
+            .bind(ID_PARAMETER, id)
+            .bind(MAX_DEPTH_PARAMETER, maxDepth)
+            .map((row, metadata) -> {
+                Placeholder entity = placeholderMapper.apply(row, metadata, "e");
+                entity.setArchetype(entity.getArchetypeId() == null ? null : new Placeholder().id(entity.getArchetypeId()));
+                return entity;
+            })
+            .all();
+    }
+
     RowsFetchSpec<Placeholder> createQuery(Pageable pageable, Condition whereClause) {
+        if (whereClause == null) {
+            String select = entityManager.createSelect(ALL_SHAPE, this::createSelectFrom, Placeholder.class, pageable, null);
+            return entityManager.bindPaging(db.sql(select), pageable).map(this::process);
+        }
+        SelectFromAndJoinCondition selectFrom = createSelectFrom();
+        // we do not support Criteria here for now as of https://github.com/jhipster/generator-jhipster/issues/18269
+        String select = entityManager.createSelect(selectFrom, Placeholder.class, pageable, whereClause);
+        return db.sql(select).map(this::process);
+    }
+
+    RowsFetchSpec<Placeholder> createQuery(int pageSize, KeysetCursor cursor, Condition whereClause) {
+        String shape = whereClause == null ? ALL_SHAPE : null;
+        String select = entityManager.createKeysetSelect(shape, this::createSelectFrom, Placeholder.class, cursor, whereClause);
+        return entityManager.bindKeyset(db.sql(select), Placeholder.class, cursor, pageSize).map(this::process);
+    }
+
+    private SelectFromAndJoinCondition createSelectFrom() {
         List<Expression> columns = PlaceholderSqlHelper.getColumns(entityTable, EntityManager.ENTITY_ALIAS);
         columns.addAll(PlaceholderSqlHelper.getColumns(archetypeTable, "archetype"));
         columns.addAll(AppUserSqlHelper.getColumns(organizationTable, "organization"));
-        SelectFromAndJoinCondition selectFrom = Select
+        return Select
             .builder()
             .select(columns)
             .from(entityTable)
@@ -109,9 +242,6 @@ class PlaceholderRepositoryInternalImpl extends SimpleR2dbcRepository<Placeholde
             .leftOuterJoin(organizationTable)
             .on(Column.create("organization_id", entityTable))
             .equals(Column.create("id", organizationTable));
-        // we do not support Criteria here for now as of https://github.com/jhipster/generator-jhipster/issues/18269
-        String select = entityManager.createSelect(selectFrom, Placeholder.class, pageable, whereClause);
-        return db.sql(select).map(this::process);
     }
 
     @Override
@@ -121,8 +251,9 @@ class PlaceholderRepositoryInternalImpl extends SimpleR2dbcRepository<Placeholde
 
     @Override
     public Mono<Placeholder> findById(Long id) {
-        Comparison whereClause = Conditions.isEqual(entityTable.column("id"), Conditions.just(id.toString()));
-        return createQuery(null, whereClause).one();
+        Comparison whereClause = Conditions.isEqual(entityTable.column("id"), Expressions.just(":" + ID_PARAMETER));
+        String select = entityManager.createSelect(BY_ID_SHAPE, this::createSelectFrom, Placeholder.class, null, whereClause);
+        return db.sql(select).bind(ID_PARAMETER, id).map(this::process).one();
     }
 
     @Override
@@ -141,9 +272,9 @@ class PlaceholderRepositoryInternalImpl extends SimpleR2dbcRepository<Placeholde
     }
 
     private Placeholder process(Row row, RowMetadata metadata) {
-        Placeholder entity = placeholderMapper.apply(row, "e");
-        entity.setArchetype(placeholderMapper.apply(row, "archetype"));
-        entity.setOrganization(appuserMapper.apply(row, "organization"));
+        Placeholder entity = placeholderMapper.apply(row, metadata, "e");
+        entity.setArchetype(placeholderMapper.apply(row, metadata, "archetype"));
+        entity.setOrganization(appuserMapper.apply(row, metadata, "organization"));
         return entity;
     }
 
@@ -0,0 +1,289 @@
+package io.github.erp.repository;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import io.r2dbc.spi.Row;
+import java.time.Duration;
+import java.util.Collection;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Outbox of the search index: one entry per entity written since the search index last caught up with it.
+ * <p>
+ * The entries are inserted in the transaction writing the entity, so that a committed write is never lost to the
+ * index. An entry only names the entity, whose state is read when the entry is drained: the index ends up holding the
+ * last committed state of each entity, whichever of its entries is drained last. The entries are claimed by one
+ * instance at a time, holding a transaction scoped advisory lock, and leased to the claiming instance until they are
+ * drained or the claim times out. The entries of an entity are not claimed while another of its entries is leased, so
+ * that an older state of the entity never overwrites a newer one in the index. A failed entry is retried after a delay
+ * doubling with each attempt, and set aside once it ran out of attempts.
+ */
+@Repository
+public class SearchIndexOutboxRepository {
+
+    public static final String OUTBOX_TABLE = "search_index_outbox";
+
+    // any key, as long as no other advisory lock of the database uses it
+    static final long DRAIN_LOCK_KEY = 7_336_011_093_518L;
+
+    private static final String ENTITY_TYPE_PARAMETER = "entityType";
+    private static final String ENTITY_ID_PARAMETER = "entityId";
+    private static final String ENTITY_IDS_PARAMETER = "entityIds";
+    private static final String IDS_PARAMETER = "ids";
+    private static final String LIMIT_PARAMETER = "limit";
+    private static final String KEY_PARAMETER = "key";
+    private static final String LEASE_PARAMETER = "leaseMillis";
+    private static final String BACKOFF_PARAMETER = "backoffMillis";
+    private static final String MAX_ATTEMPTS_PARAMETER = "maxAttempts";
+    private static final String ENTRY_COLUMNS = "id, entity_type, entity_id, attempts";
+
+    private static final String INSERT =
+        "INSERT INTO " + OUTBOX_TABLE + " (entity_type, entity_id) VALUES (:" + ENTITY_TYPE_PARAMETER + ", :" + ENTITY_ID_PARAMETER + ")";
+
+    private static final String INSERT_ALL =
+        "INSERT INTO " +
+        OUTBOX_TABLE +
+        " (entity_type, entity_id) SELECT :" +
+        ENTITY_TYPE_PARAMETER +
+        ", unnest(CAST(:" +
+        ENTITY_IDS_PARAMETER +
+        " AS bigint[]))";
+
+    private static final String TRY_LOCK = "SELECT pg_try_advisory_xact_lock(:" + KEY_PARAMETER + ")";
+
+    private static final String CLAIM =
+        "UPDATE " +
+        OUTBOX_TABLE +
+        " SET next_attempt_date = LOCALTIMESTAMP + :" +
+        LEASE_PARAMETER +
+        " * INTERVAL '1 millisecond' WHERE id IN (SELECT o.id FROM " +
+        OUTBOX_TABLE +
+        " o WHERE o.attempts < :" +
+        MAX_ATTEMPTS_PARAMETER +
+        " AND o.next_attempt_date <= LOCALTIMESTAMP AND NOT EXISTS (SELECT 1 FROM " +
+        OUTBOX_TABLE +
+        " l WHERE l.entity_type = o.entity_type AND l.entity_id = o.entity_id AND l.attempts < :" +
+        MAX_ATTEMPTS_PARAMETER +
+        " AND l.next_attempt_date > LOCALTIMESTAMP) ORDER BY o.id LIMIT :" +
+        LIMIT_PARAMETER +
+        ") RETURNING " +
+        ENTRY_COLUMNS;
+
+    private static final String DELETE = "DELETE FROM " + OUTBOX_TABLE + " WHERE id IN (:" + IDS_PARAMETER + ")";
+
+    // the delay doubles with each attempt, the exponent is capped to keep the delay within an interval
+    private static final String RECORD_FAILURE =
+        "UPDATE " +
+        OUTBOX_TABLE +
+        " SET attempts = attempts + 1, next_attempt_date = LOCALTIMESTAMP + :" +
+        BACKOFF_PARAMETER +
+        " * power(2, LEAST(attempts, 20)) * INTERVAL '1 millisecond' WHERE id IN (:" +
+        IDS_PARAMETER +
+        ") RETURNING " +
+        ENTRY_COLUMNS;
+
+    private static final String BACKLOG =
+        "SELECT COUNT(*) FILTER (WHERE attempts < :" +
+        MAX_ATTEMPTS_PARAMETER +
+        "), COALESCE(EXTRACT(EPOCH FROM (LOCALTIMESTAMP - MIN(created_date) FILTER (WHERE attempts < :" +
+        MAX_ATTEMPTS_PARAMETER +
+        "))), 0), COUNT(*) FILTER (WHERE attempts >= :" +
+        MAX_ATTEMPTS_PARAMETER +
+        ") FROM " +
+        OUTBOX_TABLE;
+
+    private final DatabaseClient db;
+
+    public SearchIndexOutboxRepository(R2dbcEntityTemplate template) {
+        this.db = template.getDatabaseClient();
+    }
+
+    /**
+     * Adds an entry, in the current transaction.
+     * @param entityType the type of the written entity.
+     * @param entityId the id of the written entity.
+     * @return completes once the entry is inserted.
+     */
+    public Mono<Void> enqueue(String entityType, Long entityId) {
+        return db.sql(INSERT).bind(ENTITY_TYPE_PARAMETER, entityType).bind(ENTITY_ID_PARAMETER, entityId).then();
+    }
+
+    /**
+     * Adds the entries of several entities of the same type with one statement, in the current transaction.
+     * @param entityType the type of the written entities.
+     * @param entityIds the ids of the written entities.
+     * @return completes once the entries are inserted.
+     */
+    public Mono<Void> enqueueAll(String entityType, Collection<Long> entityIds) {
+        if (entityIds.isEmpty()) {
+            return Mono.empty();
+        }
+        return db
+            .sql(INSERT_ALL)
+            .bind(ENTITY_TYPE_PARAMETER, entityType)
+            .bind(ENTITY_IDS_PARAMETER, entityIds.toArray(new Long[0]))
+            .then();
+    }
+
+    /**
+     * Takes the lock of the drain until the end of the current transaction, unless another transaction holds it.
+     * @return whether the lock was taken.
+     */
+    public Mono<Boolean> tryLockDrain() {
+        return db.sql(TRY_LOCK).bind(KEY_PARAMETER, DRAIN_LOCK_KEY).map(row -> row.get(0, Boolean.class)).one();
+    }
+
+    /**
+     * Leases the oldest entries ready to be drained to the caller, in the current transaction, which must hold the lock
+     * of the drain.
+     * @param limit the maximum number of entries.
+     * @param lease how long the entries are leased: they can be claimed again once it elapsed.
+     * @param maxAttempts the attempts after which an entry is set aside.
+     * @return the claimed entries, in no particular order.
+     */
+    public Flux<Entry> claimFirst(int limit, Duration lease, int maxAttempts) {
+        return db
+            .sql(CLAIM)
+            .bind(LEASE_PARAMETER, lease.toMillis())
+            .bind(MAX_ATTEMPTS_PARAMETER, maxAttempts)
+            .bind(LIMIT_PARAMETER, limit)
+            .map(SearchIndexOutboxRepository::toEntry)
+            .all();
+    }
+
+    /**
+     * @param ids the ids of the drained entries.
+     * @return completes once the entries are deleted.
+     */
+    public Mono<Void> deleteAll(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return Mono.empty();
+        }
+        return db.sql(DELETE).bind(IDS_PARAMETER, ids).then();
+    }
+
+    /**
+     * Counts a failed attempt of entries, and releases them until a delay, doubling with each attempt, elapsed.
+     * @param ids the ids of the failed entries.
+     * @param backoff the delay after the first attempt.
+     * @return the failed entries, with their attempts.
+     */
+    public Flux<Entry> recordFailure(Collection<Long> ids, Duration backoff) {
+        return db
+            .sql(RECORD_FAILURE)
+            .bind(BACKOFF_PARAMETER, backoff.toMillis())
+            .bind(IDS_PARAMETER, ids)
+            .map(SearchIndexOutboxRepository::toEntry)
+            .all();
+    }
+
+    /**
+     * @param maxAttempts the attempts after which an entry is set aside.
+     * @return the number of entries waiting to be drained, the age of the oldest one, and the number of entries set
+     * aside.
+     */
+    public Mono<Backlog> findBacklog(int maxAttempts) {
+        return db
+            .sql(BACKLOG)
+            .bind(MAX_ATTEMPTS_PARAMETER, maxAttempts)
+            .map(row -> new Backlog(row.get(0, Long.class), row.get(1, Number.class).doubleValue(), row.get(2, Long.class)))
+            .one();
+    }
+
+    private static Entry toEntry(Row row) {
+        return new Entry(
+            row.get("id", Long.class),
+            row.get("entity_type", String.class),
+            row.get("entity_id", Long.class),
+            row.get("attempts", Integer.class)
+        );
+    }
+
+    /**
+     * An entity written since the search index last caught up with it.
+     */
+    public static final class Entry {
+
+        private final Long id;
+        private final String entityType;
+        private final Long entityId;
+        private final int attempts;
+
+        public Entry(Long id, String entityType, Long entityId, int attempts) {
+            this.id = id;
+            this.entityType = entityType;
+            this.entityId = entityId;
+            this.attempts = attempts;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getEntityType() {
+            return entityType;
+        }
+
+        public Long getEntityId() {
+            return entityId;
+        }
+
+        /**
+         * @return the failed attempts to drain the entry.
+         */
+        public int getAttempts() {
+            return attempts;
+        }
+    }
+
+    /**
+     * The entries waiting to be drained.
+     */
+    public static final class Backlog {
+
+        private final long size;
+        private final double ageSeconds;
+        private final long setAside;
+
+        public Backlog(long size, double ageSeconds, long setAside) {
+            this.size = size;
+            this.ageSeconds = ageSeconds;
+            this.setAside = setAside;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public double getAgeSeconds() {
+            return ageSeconds;
+        }
+
+        /**
+         * @return the number of entries which ran out of attempts.
+         */
+        public long getSetAside() {
+            return setAside;
+        }
+    }
+}
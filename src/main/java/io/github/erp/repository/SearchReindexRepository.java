@@ -0,0 +1,367 @@
+package io.github.erp.repository;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import io.r2dbc.spi.Row;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Persists the full reindex jobs of the search index aliases, and the ids written while a job runs.
+ * <p>
+ * The ids are recorded by database triggers on the indexed tables for as long as the job of their alias is
+ * {@link #RUNNING}, so that no write escapes the catch-up, the writes made while the application is down included.
+ * The updates of a job only apply while it runs, so that an instance whose job was cancelled, or taken over, stops.
+ */
+@Repository
+public class SearchReindexRepository {
+
+    public static final String RUNNING = "RUNNING";
+    public static final String DONE = "DONE";
+    public static final String CANCELLED = "CANCELLED";
+
+    private static final String JOB_TABLE = "search_reindex_job";
+    private static final String PENDING_TABLE = "search_reindex_pending";
+
+    private static final String ALIAS_PARAMETER = "alias";
+    private static final String TARGET_INDEX_PARAMETER = "targetIndex";
+    private static final String STATUS_PARAMETER = "status";
+    private static final String LAST_ID_PARAMETER = "lastId";
+    private static final String COPIED_PARAMETER = "copied";
+    private static final String TOTAL_PARAMETER = "total";
+    private static final String IDLE_SECONDS_PARAMETER = "idleSeconds";
+    private static final String IDS_PARAMETER = "ids";
+    private static final String LIMIT_PARAMETER = "limit";
+
+    // the idle time is measured by the database, whose clock the updates are stamped with
+    private static final String JOB_COLUMNS =
+        "alias_name, target_index, status, last_id, copied, total, started_date, updated_date," +
+        " EXTRACT(EPOCH FROM (LOCALTIMESTAMP - updated_date)) AS idle_seconds";
+
+    private static final String IS_RUNNING = " WHERE alias_name = :" + ALIAS_PARAMETER + " AND status = '" + RUNNING + "'";
+
+    private static final String START =
+        "INSERT INTO " +
+        JOB_TABLE +
+        " (alias_name, target_index, status, last_id, copied, total, started_date, updated_date) VALUES (:" +
+        ALIAS_PARAMETER +
+        ", :" +
+        TARGET_INDEX_PARAMETER +
+        ", '" +
+        RUNNING +
+        "', NULL, 0, :" +
+        TOTAL_PARAMETER +
+        ", LOCALTIMESTAMP, LOCALTIMESTAMP) ON CONFLICT (alias_name) DO UPDATE SET target_index = EXCLUDED.target_index," +
+        " status = EXCLUDED.status, last_id = NULL, copied = 0, total = EXCLUDED.total, started_date = EXCLUDED.started_date," +
+        " updated_date = EXCLUDED.updated_date WHERE " +
+        JOB_TABLE +
+        ".status <> '" +
+        RUNNING +
+        "'";
+
+    private static final String CLAIM =
+        "UPDATE " +
+        JOB_TABLE +
+        " SET updated_date = LOCALTIMESTAMP" +
+        IS_RUNNING +
+        " AND updated_date < LOCALTIMESTAMP - make_interval(secs => :" +
+        IDLE_SECONDS_PARAMETER +
+        ")";
+
+    private static final String CHECKPOINT =
+        "UPDATE " +
+        JOB_TABLE +
+        " SET last_id = :" +
+        LAST_ID_PARAMETER +
+        ", copied = :" +
+        COPIED_PARAMETER +
+        ", updated_date = LOCALTIMESTAMP" +
+        IS_RUNNING;
+
+    private static final String FINISH =
+        "UPDATE " + JOB_TABLE + " SET status = :" + STATUS_PARAMETER + ", updated_date = LOCALTIMESTAMP" + IS_RUNNING;
+
+    private static final String FIND_PENDING =
+        "SELECT id, entity_id FROM " +
+        PENDING_TABLE +
+        " WHERE alias_name = :" +
+        ALIAS_PARAMETER +
+        " ORDER BY id LIMIT :" +
+        LIMIT_PARAMETER;
+
+    private final DatabaseClient db;
+
+    public SearchReindexRepository(R2dbcEntityTemplate template) {
+        this.db = template.getDatabaseClient();
+    }
+
+    /**
+     * @param alias the search index alias.
+     * @return the last job of the alias, or empty if it was never reindexed.
+     */
+    public Mono<Job> findJob(String alias) {
+        return db
+            .sql("SELECT " + JOB_COLUMNS + " FROM " + JOB_TABLE + " WHERE alias_name = :" + ALIAS_PARAMETER)
+            .bind(ALIAS_PARAMETER, alias)
+            .map(this::toJob)
+            .one();
+    }
+
+    /**
+     * @return the last job of every alias ever reindexed.
+     */
+    public Flux<Job> findAllJobs() {
+        return db.sql("SELECT " + JOB_COLUMNS + " FROM " + JOB_TABLE + " ORDER BY alias_name").map(this::toJob).all();
+    }
+
+    /**
+     * Starts a new job, replacing the last one of the alias unless it still runs.
+     * @param alias the search index alias.
+     * @param targetIndex the name of the index built.
+     * @param total the number of rows to copy.
+     * @return whether the job started: the triggers record the writes from then on.
+     */
+    public Mono<Boolean> startJob(String alias, String targetIndex, long total) {
+        return db
+            .sql(START)
+            .bind(ALIAS_PARAMETER, alias)
+            .bind(TARGET_INDEX_PARAMETER, targetIndex)
+            .bind(TOTAL_PARAMETER, total)
+            .fetch()
+            .rowsUpdated()
+            .map(updated -> updated > 0);
+    }
+
+    /**
+     * Takes over a running job which has not recorded progress for a while, its instance having stopped.
+     * @param alias the search index alias.
+     * @param idleSeconds the seconds without progress after which the job is taken over.
+     * @return whether the job was taken over.
+     */
+    public Mono<Boolean> claimJob(String alias, long idleSeconds) {
+        return db
+            .sql(CLAIM)
+            .bind(ALIAS_PARAMETER, alias)
+            .bind(IDLE_SECONDS_PARAMETER, idleSeconds)
+            .fetch()
+            .rowsUpdated()
+            .map(updated -> updated > 0);
+    }
+
+    /**
+     * Records the progress of the copy: the rows up to the given id are in the new index.
+     * @param alias the search index alias.
+     * @param lastId the id of the last row copied.
+     * @param copied the number of rows copied.
+     * @return whether the job still runs.
+     */
+    public Mono<Boolean> checkpoint(String alias, Long lastId, long copied) {
+        return db
+            .sql(CHECKPOINT)
+            .bind(ALIAS_PARAMETER, alias)
+            .bind(LAST_ID_PARAMETER, lastId)
+            .bind(COPIED_PARAMETER, copied)
+            .fetch()
+            .rowsUpdated()
+            .map(updated -> updated > 0);
+    }
+
+    /**
+     * Ends a running job, which stops the recording of the writes, and forgets the recorded ids.
+     * @param alias the search index alias.
+     * @param status {@link #DONE} or {@link #CANCELLED}.
+     * @return whether the job was running.
+     */
+    public Mono<Boolean> finishJob(String alias, String status) {
+        return db
+            .sql(FINISH)
+            .bind(ALIAS_PARAMETER, alias)
+            .bind(STATUS_PARAMETER, status)
+            .fetch()
+            .rowsUpdated()
+            .flatMap(updated ->
+                db
+                    .sql("DELETE FROM " + PENDING_TABLE + " WHERE alias_name = :" + ALIAS_PARAMETER)
+                    .bind(ALIAS_PARAMETER, alias)
+                    .then()
+                    .thenReturn(updated > 0)
+            );
+    }
+
+    /**
+     * @param alias the search index alias.
+     * @param limit the maximum number of writes.
+     * @return the oldest writes recorded since the job started, and not caught up with yet.
+     */
+    public Flux<PendingWrite> findPending(String alias, int limit) {
+        return db
+            .sql(FIND_PENDING)
+            .bind(ALIAS_PARAMETER, alias)
+            .bind(LIMIT_PARAMETER, limit)
+            .map(row -> new PendingWrite(row.get("id", Long.class), row.get("entity_id", Long.class)))
+            .all();
+    }
+
+    /**
+     * @param ids the ids of the writes caught up with.
+     * @return completes once the writes are deleted.
+     */
+    public Mono<Void> deletePending(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return Mono.empty();
+        }
+        return db.sql("DELETE FROM " + PENDING_TABLE + " WHERE id IN (:" + IDS_PARAMETER + ")").bind(IDS_PARAMETER, ids).then();
+    }
+
+    /**
+     * Blocks the recording of the writes, and so the writes to the indexed tables, until the end of the current
+     * transaction, once the transactions which recorded a write have ended.
+     * @return completes once the lock is taken.
+     */
+    public Mono<Void> lockPending() {
+        return db.sql("LOCK TABLE " + PENDING_TABLE + " IN EXCLUSIVE MODE").then();
+    }
+
+    /**
+     * Waits for the transactions writing to the given tables to end, and blocks the new ones until the end of the
+     * current transaction, so that a job started in it sees every write made before it, and has the others recorded.
+     * @param tables the tables indexed by the alias.
+     * @return completes once the lock is taken.
+     */
+    public Mono<Void> lockWrites(Collection<String> tables) {
+        return db.sql("LOCK TABLE " + String.join(", ", tables) + " IN SHARE MODE").then();
+    }
+
+    private Job toJob(Row row) {
+        return new Job(
+            row.get("alias_name", String.class),
+            row.get("target_index", String.class),
+            row.get("status", String.class),
+            row.get("last_id", Long.class),
+            row.get("copied", Long.class),
+            row.get("total", Long.class),
+            row.get("started_date", LocalDateTime.class),
+            row.get("idle_seconds", Number.class).doubleValue()
+        );
+    }
+
+    /**
+     * The last reindex of an alias.
+     */
+    public static final class Job {
+
+        private final String alias;
+        private final String targetIndex;
+        private final String status;
+        private final Long lastId;
+        private final long copied;
+        private final long total;
+        private final LocalDateTime startedDate;
+        private final double idleSeconds;
+
+        public Job(
+            String alias,
+            String targetIndex,
+            String status,
+            Long lastId,
+            long copied,
+            long total,
+            LocalDateTime startedDate,
+            double idleSeconds
+        ) {
+            this.alias = alias;
+            this.targetIndex = targetIndex;
+            this.status = status;
+            this.lastId = lastId;
+            this.copied = copied;
+            this.total = total;
+            this.startedDate = startedDate;
+            this.idleSeconds = idleSeconds;
+        }
+
+        public String getAlias() {
+            return alias;
+        }
+
+        public String getTargetIndex() {
+            return targetIndex;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public boolean isRunning() {
+            return RUNNING.equals(status);
+        }
+
+        /**
+         * @return the id of the last row copied, null before the first checkpoint.
+         */
+        public Long getLastId() {
+            return lastId;
+        }
+
+        public long getCopied() {
+            return copied;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public LocalDateTime getStartedDate() {
+            return startedDate;
+        }
+
+        /**
+         * @return the seconds since the job last recorded progress.
+         */
+        public double getIdleSeconds() {
+            return idleSeconds;
+        }
+    }
+
+    /**
+     * A write recorded while a job runs.
+     */
+    public static final class PendingWrite {
+
+        private final Long id;
+        private final Long entityId;
+
+        public PendingWrite(Long id, Long entityId) {
+            this.id = id;
+            this.entityId = entityId;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public Long getEntityId() {
+            return entityId;
+        }
+    }
+}
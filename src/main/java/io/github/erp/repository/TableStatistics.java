@@ -0,0 +1,70 @@
+package io.github.erp.repository;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.data.r2dbc.dialect.PostgresDialect;
+import org.springframework.data.r2dbc.dialect.R2dbcDialect;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reads the statistics the database keeps about the tables of the entities.
+ */
+@Component
+public class TableStatistics {
+
+    private static final String TABLE_PARAMETER = "table";
+
+    private final R2dbcEntityTemplate r2dbcEntityTemplate;
+    private final R2dbcDialect dialect;
+
+    public TableStatistics(R2dbcEntityTemplate r2dbcEntityTemplate, R2dbcDialect dialect) {
+        this.r2dbcEntityTemplate = r2dbcEntityTemplate;
+        this.dialect = dialect;
+    }
+
+    /**
+     * Estimates the number of rows of the table of an entity, from the planner statistics ({@code pg_class.reltuples})
+     * refreshed by {@code VACUUM}, {@code ANALYZE} and autovacuum. Reading it costs a single catalog lookup whatever the
+     * size of the table, but it lags behind the recent writes.
+     * @param entityType the entity class.
+     * @return the estimated number of rows, or empty if the database keeps no statistics for the table yet, or is not
+     * PostgreSQL.
+     */
+    public Mono<Long> estimateRowCount(Class<?> entityType) {
+        if (!(dialect instanceof PostgresDialect)) {
+            return Mono.empty();
+        }
+        String table = r2dbcEntityTemplate
+            .getConverter()
+            .getMappingContext()
+            .getRequiredPersistentEntity(entityType)
+            .getTableName()
+            .getReference();
+        return r2dbcEntityTemplate
+            .getDatabaseClient()
+            .sql("SELECT CAST(reltuples AS bigint) FROM pg_class WHERE oid = to_regclass(:" + TABLE_PARAMETER + ")")
+            .bind(TABLE_PARAMETER, table)
+            .map(row -> row.get(0, Long.class))
+            .one()
+            // a table never analyzed reports -1, or 0 on PostgreSQL before 14
+            .filter(estimate -> estimate > 0);
+    }
+}
@@ -0,0 +1,221 @@
+package io.github.erp.repository;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import io.r2dbc.spi.Row;
+import java.time.LocalDateTime;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Persists the revocations of the JWT tokens: of a single token, by its id, or of all the tokens of a login issued
+ * until a given instant.
+ * <p>
+ * The revocations are stamped with the clock of the database, which the instances read them by. The issue and expiry
+ * instants are those of the tokens, in UTC.
+ */
+@Repository
+public class TokenRevocationRepository {
+
+    private static final String TABLE = "token_revocation";
+
+    private static final String TOKEN_ID_PARAMETER = "tokenId";
+    private static final String LOGIN_PARAMETER = "login";
+    private static final String ISSUED_UNTIL_PARAMETER = "issuedUntil";
+    private static final String EXPIRES_DATE_PARAMETER = "expiresDate";
+    private static final String SINCE_PARAMETER = "since";
+    private static final String NOW_PARAMETER = "now";
+    private static final String ID_PARAMETER = "id";
+
+    private static final String COLUMNS = "token_id, login, issued_until";
+
+    private static final String REVOKE_TOKEN =
+        "INSERT INTO " +
+        TABLE +
+        " (token_id, login, issued_until, revoked_date, expires_date) VALUES (:" +
+        TOKEN_ID_PARAMETER +
+        ", :" +
+        LOGIN_PARAMETER +
+        ", NULL, LOCALTIMESTAMP, :" +
+        EXPIRES_DATE_PARAMETER +
+        ") ON CONFLICT (token_id) DO NOTHING RETURNING id";
+
+    private static final String REVOKE_SESSIONS =
+        "INSERT INTO " +
+        TABLE +
+        " (token_id, login, issued_until, revoked_date, expires_date) VALUES (NULL, :" +
+        LOGIN_PARAMETER +
+        ", :" +
+        ISSUED_UNTIL_PARAMETER +
+        ", LOCALTIMESTAMP, :" +
+        EXPIRES_DATE_PARAMETER +
+        ") RETURNING id";
+
+    private final DatabaseClient db;
+
+    public TokenRevocationRepository(R2dbcEntityTemplate template) {
+        this.db = template.getDatabaseClient();
+    }
+
+    /**
+     * Revokes a single token, unless it is already.
+     * @param tokenId the id of the token.
+     * @param login the login of the token.
+     * @param expiresDate the expiry of the token, after which the revocation is deleted.
+     * @return the id of the revocation recorded, or empty if the token was already revoked.
+     */
+    public Mono<Long> revokeToken(String tokenId, String login, LocalDateTime expiresDate) {
+        return db
+            .sql(REVOKE_TOKEN)
+            .bind(TOKEN_ID_PARAMETER, tokenId)
+            .bind(LOGIN_PARAMETER, login)
+            .bind(EXPIRES_DATE_PARAMETER, expiresDate)
+            .map(row -> row.get("id", Long.class))
+            .one();
+    }
+
+    /**
+     * Revokes all the tokens of a login issued until the given instant.
+     * @param login the login of the tokens.
+     * @param issuedUntil the last issue instant revoked, to the second as the tokens carry it.
+     * @param expiresDate the expiry of the last token revoked, after which the revocation is deleted.
+     * @return the id of the revocation recorded.
+     */
+    public Mono<Long> revokeSessions(String login, LocalDateTime issuedUntil, LocalDateTime expiresDate) {
+        return db
+            .sql(REVOKE_SESSIONS)
+            .bind(LOGIN_PARAMETER, login)
+            .bind(ISSUED_UNTIL_PARAMETER, issuedUntil)
+            .bind(EXPIRES_DATE_PARAMETER, expiresDate)
+            .map(row -> row.get("id", Long.class))
+            .one();
+    }
+
+    /**
+     * @param id the id of a revocation.
+     * @return the revocation, or empty if it was deleted, its tokens having expired.
+     */
+    public Mono<Revocation> findById(Long id) {
+        return db
+            .sql("SELECT " + COLUMNS + " FROM " + TABLE + " WHERE id = :" + ID_PARAMETER)
+            .bind(ID_PARAMETER, id)
+            .map(this::toRevocation)
+            .one();
+    }
+
+    /**
+     * @param tokenId the id of a token.
+     * @return whether the token was revoked by its id.
+     */
+    public Mono<Boolean> isTokenRevoked(String tokenId) {
+        return db
+            .sql("SELECT EXISTS (SELECT 1 FROM " + TABLE + " WHERE token_id = :" + TOKEN_ID_PARAMETER + ") AS revoked")
+            .bind(TOKEN_ID_PARAMETER, tokenId)
+            .map(row -> row.get("revoked", Boolean.class))
+            .one();
+    }
+
+    /**
+     * @return the current time of the database, which the revocations are stamped with.
+     */
+    public Mono<LocalDateTime> now() {
+        return db.sql("SELECT LOCALTIMESTAMP AS now").map(row -> row.get("now", LocalDateTime.class)).one();
+    }
+
+    /**
+     * @param since a time of the database, see {@link #now()}.
+     * @return the revocations made since then, by the transactions started since then.
+     */
+    public Flux<Revocation> findRevokedSince(LocalDateTime since) {
+        return db
+            .sql("SELECT " + COLUMNS + " FROM " + TABLE + " WHERE revoked_date >= :" + SINCE_PARAMETER)
+            .bind(SINCE_PARAMETER, since)
+            .map(this::toRevocation)
+            .all();
+    }
+
+    /**
+     * @param now the current instant, in UTC.
+     * @return the revocations of the tokens which have not expired yet.
+     */
+    public Flux<Revocation> findUnexpired(LocalDateTime now) {
+        return db
+            .sql("SELECT " + COLUMNS + " FROM " + TABLE + " WHERE expires_date > :" + NOW_PARAMETER)
+            .bind(NOW_PARAMETER, now)
+            .map(this::toRevocation)
+            .all();
+    }
+
+    /**
+     * @param now the current instant, in UTC.
+     * @return the number of revocations deleted, those of the tokens which have all expired.
+     */
+    public Mono<Integer> deleteExpired(LocalDateTime now) {
+        return db
+            .sql("DELETE FROM " + TABLE + " WHERE expires_date <= :" + NOW_PARAMETER)
+            .bind(NOW_PARAMETER, now)
+            .fetch()
+            .rowsUpdated();
+    }
+
+    private Revocation toRevocation(Row row) {
+        return new Revocation(
+            row.get("token_id", String.class),
+            row.get("login", String.class),
+            row.get("issued_until", LocalDateTime.class)
+        );
+    }
+
+    /**
+     * The revocation of a token, or of the tokens of a login.
+     */
+    public static final class Revocation {
+
+        private final String tokenId;
+        private final String login;
+        private final LocalDateTime issuedUntil;
+
+        public Revocation(String tokenId, String login, LocalDateTime issuedUntil) {
+            this.tokenId = tokenId;
+            this.login = login;
+            this.issuedUntil = issuedUntil;
+        }
+
+        /**
+         * @return the id of the token revoked, null if the tokens of the login are.
+         */
+        public String getTokenId() {
+            return tokenId;
+        }
+
+        public String getLogin() {
+            return login;
+        }
+
+        /**
+         * @return the last issue instant of the tokens of the login revoked, in UTC, null if a single token is.
+         */
+        public LocalDateTime getIssuedUntil() {
+            return issuedUntil;
+        }
+    }
+}
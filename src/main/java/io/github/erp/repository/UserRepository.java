@@ -25,16 +25,20 @@ import io.github.erp.domain.Authority;
 import io.github.erp.domain.User;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
-import org.apache.commons.beanutils.BeanComparator;
 import org.springframework.data.domain.*;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.r2dbc.convert.R2dbcConverter;
 import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
 import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.data.relational.core.mapping.RelationalPersistentEntity;
+import org.springframework.data.relational.core.mapping.RelationalPersistentProperty;
 import org.springframework.data.relational.core.sql.Column;
 import org.springframework.data.relational.core.sql.Expression;
 import org.springframework.data.relational.core.sql.Table;
@@ -42,8 +46,6 @@ import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.util.function.Tuple2;
-import reactor.util.function.Tuples;
 
 /**
  * Spring Data R2DBC repository for the {@link User} entity.
@@ -74,6 +76,16 @@ public interface UserRepository extends R2dbcRepository<User, Long>, UserReposit
 
     @Query("DELETE FROM jhi_user_authority WHERE user_id = :userId")
     Mono<Void> deleteUserAuthorities(Long userId);
+
+    /**
+     * Replaces the hash of a password by a hash of the same password, unless the password changed meanwhile.
+     * @param login the login of the user.
+     * @param currentPassword the hash replaced.
+     * @param upgradedPassword the new hash.
+     * @return completes once the hash is replaced, or left as is.
+     */
+    @Query("UPDATE jhi_user SET password_hash = :upgradedPassword WHERE login = :login AND password_hash = :currentPassword")
+    Mono<Void> upgradePassword(String login, String currentPassword, String upgradedPassword);
 }
 
 interface DeleteExtended<T> {
@@ -86,6 +98,37 @@ interface UserRepositoryInternal extends DeleteExtended<User> {
     Mono<User> findOneWithAuthoritiesByEmailIgnoreCase(String email);
 
     Flux<User> findAllWithAuthorities(Pageable pageable);
+
+    /**
+     * Reads the users following the given id in id order, with their authorities: a keyset scan of the whole table.
+     * @param afterId the id of the last user of the previous page, or null for the first page.
+     * @param limit the maximum number of users.
+     * @return the users of the page.
+     */
+    Flux<User> findAllWithAuthoritiesAfter(Long afterId, int limit);
+
+    /**
+     * @param ids the ids of the users.
+     * @return the users found, with their authorities.
+     */
+    Flux<User> findAllWithAuthoritiesByIdIn(Collection<Long> ids);
+
+    /**
+     * Links a user which has no authority yet with the given authorities, in a single statement.
+     * @param userId the id of the user.
+     * @param authorities the names of the authorities.
+     * @return a completed {@link Mono}.
+     */
+    Mono<Void> insertUserAuthorities(Long userId, Set<String> authorities);
+
+    /**
+     * Brings the authorities of the user in line with the given ones, deleting the removed links and inserting the
+     * new ones only.
+     * @param userId the id of the user.
+     * @param authorities the names of the authorities the user must have.
+     * @return a completed {@link Mono}.
+     */
+    Mono<Void> syncUserAuthorities(Long userId, Set<String> authorities);
 }
 
 class UserRepositoryInternalImpl implements UserRepositoryInternal {
@@ -93,47 +136,131 @@ class UserRepositoryInternalImpl implements UserRepositoryInternal {
     private final DatabaseClient db;
     private final R2dbcEntityTemplate r2dbcEntityTemplate;
     private final R2dbcConverter r2dbcConverter;
+    private final EntityManager entityManager;
 
-    public UserRepositoryInternalImpl(DatabaseClient db, R2dbcEntityTemplate r2dbcEntityTemplate, R2dbcConverter r2dbcConverter) {
+    private static final EntityManager.LinkTable userAuthorityLink = new EntityManager.LinkTable(
+        "jhi_user_authority",
+        "user_id",
+        "authority_name"
+    );
+
+    private static final String SELECT_WITH_AUTHORITIES =
+        "SELECT u.*, (SELECT string_agg(ua.authority_name, ',') FROM jhi_user_authority ua WHERE ua.user_id = u.id) AS authorities" +
+        " FROM jhi_user u";
+
+    public UserRepositoryInternalImpl(
+        DatabaseClient db,
+        R2dbcEntityTemplate r2dbcEntityTemplate,
+        R2dbcConverter r2dbcConverter,
+        EntityManager entityManager
+    ) {
         this.db = db;
         this.r2dbcEntityTemplate = r2dbcEntityTemplate;
         this.r2dbcConverter = r2dbcConverter;
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public Mono<Void> insertUserAuthorities(Long userId, Set<String> authorities) {
+        return entityManager.insertIntoLinkTable(userAuthorityLink, userId, authorities.stream()).then();
+    }
+
+    @Override
+    public Mono<Void> syncUserAuthorities(Long userId, Set<String> authorities) {
+        return entityManager.syncLinkTable(userAuthorityLink, userId, authorities.stream()).then();
     }
 
     @Override
     public Mono<User> findOneWithAuthoritiesByLogin(String login) {
-        return findOneWithAuthoritiesBy("login", login);
+        return withAuthorities(db.sql(SELECT_WITH_AUTHORITIES + " WHERE u.login = :login").bind("login", login)).next();
     }
 
     @Override
     public Mono<User> findOneWithAuthoritiesByEmailIgnoreCase(String email) {
-        return findOneWithAuthoritiesBy("email", email.toLowerCase());
+        // matches the expression of ix_user__lower_email
+        return withAuthorities(db.sql(SELECT_WITH_AUTHORITIES + " WHERE lower(u.email) = :email").bind("email", email.toLowerCase()))
+            .next();
     }
 
     @Override
     public Flux<User> findAllWithAuthorities(Pageable pageable) {
-        String property = pageable.getSort().stream().map(Sort.Order::getProperty).findFirst().orElse("id");
-        String direction = String.valueOf(
-            pageable.getSort().stream().map(Sort.Order::getDirection).findFirst().orElse(Sort.DEFAULT_DIRECTION)
+        // Page and sort on jhi_user alone, then attach the aggregated authorities of the selected rows only
+        String select =
+            SELECT_WITH_AUTHORITIES +
+            " JOIN (SELECT p.id FROM jhi_user p" +
+            createOrderBy(pageable.getSort(), "p") +
+            " LIMIT :limit OFFSET :offset) page ON page.id = u.id" +
+            createOrderBy(pageable.getSort(), "u");
+
+        return withAuthorities(db.sql(select).bind("limit", pageable.getPageSize()).bind("offset", pageable.getOffset()));
+    }
+
+    @Override
+    public Flux<User> findAllWithAuthoritiesAfter(Long afterId, int limit) {
+        if (afterId == null) {
+            return withAuthorities(db.sql(SELECT_WITH_AUTHORITIES + " ORDER BY u.id LIMIT :limit").bind("limit", limit));
+        }
+        return withAuthorities(
+            db
+                .sql(SELECT_WITH_AUTHORITIES + " WHERE u.id > :afterId ORDER BY u.id LIMIT :limit")
+                .bind("afterId", afterId)
+                .bind("limit", limit)
         );
-        long page = pageable.getPageNumber();
-        long size = pageable.getPageSize();
+    }
 
-        return db
-            .sql("SELECT * FROM jhi_user u LEFT JOIN jhi_user_authority ua ON u.id=ua.user_id")
-            .map((row, metadata) ->
-                Tuples.of(r2dbcConverter.read(User.class, row, metadata), Optional.ofNullable(row.get("authority_name", String.class)))
-            )
-            .all()
-            .groupBy(t -> t.getT1().getLogin())
-            .flatMap(l -> l.collectList().map(t -> updateUserWithAuthorities(t.get(0).getT1(), t)))
-            .sort(
-                Sort.Direction.fromString(direction) == Sort.DEFAULT_DIRECTION
-                    ? new BeanComparator<>(property)
-                    : new BeanComparator<>(property).reversed()
-            )
-            .skip(page * size)
-            .take(size);
+    @Override
+    public Flux<User> findAllWithAuthoritiesByIdIn(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return Flux.empty();
+        }
+        return withAuthorities(db.sql(SELECT_WITH_AUTHORITIES + " WHERE u.id IN (:ids)").bind("ids", ids));
+    }
+
+    private Flux<User> withAuthorities(DatabaseClient.GenericExecuteSpec spec) {
+        return spec
+            .map((row, metadata) -> {
+                User user = r2dbcConverter.read(User.class, row, metadata);
+                user.setAuthorities(toAuthorities(row.get("authorities", String.class)));
+                return user;
+            })
+            .all();
+    }
+
+    /**
+     * Renders the ORDER BY clause for the given sort, resolving every property to its mapped jhi_user column and
+     * always ending with the id so that pages stay stable when the sort key is not unique.
+     */
+    private String createOrderBy(Sort sort, String tableAlias) {
+        RelationalPersistentEntity<?> entity = r2dbcConverter.getMappingContext().getRequiredPersistentEntity(User.class);
+        List<String> fields = new ArrayList<>();
+        boolean sortedById = false;
+        for (Sort.Order order : sort) {
+            RelationalPersistentProperty property = entity.getRequiredPersistentProperty(order.getProperty());
+            sortedById |= property.isIdProperty();
+            fields.add(toColumn(tableAlias, property) + (order.isAscending() ? " ASC" : " DESC"));
+        }
+        if (!sortedById) {
+            fields.add(toColumn(tableAlias, entity.getRequiredIdProperty()) + " ASC");
+        }
+        return " ORDER BY " + String.join(", ", fields);
+    }
+
+    private String toColumn(String tableAlias, RelationalPersistentProperty property) {
+        return tableAlias + "." + r2dbcEntityTemplate.getDataAccessStrategy().toSql(property.getColumnName());
+    }
+
+    private Set<Authority> toAuthorities(String authorityNames) {
+        if (authorityNames == null) {
+            return new HashSet<>();
+        }
+        return Arrays
+            .stream(authorityNames.split(","))
+            .map(name -> {
+                Authority authority = new Authority();
+                authority.setName(name);
+                return authority;
+            })
+            .collect(Collectors.toSet());
     }
 
     @Override
@@ -144,33 +271,4 @@ class UserRepositoryInternalImpl implements UserRepositoryInternal {
             .then()
             .then(r2dbcEntityTemplate.delete(User.class).matching(query(where("id").is(user.getId()))).all().then());
     }
-
-    private Mono<User> findOneWithAuthoritiesBy(String fieldName, Object fieldValue) {
-        return db
-            .sql("SELECT * FROM jhi_user u LEFT JOIN jhi_user_authority ua ON u.id=ua.user_id WHERE u." + fieldName + " = :" + fieldName)
-            .bind(fieldName, fieldValue)
-            .map((row, metadata) ->
-                Tuples.of(r2dbcConverter.read(User.class, row, metadata), Optional.ofNullable(row.get("authority_name", String.class)))
-            )
-            .all()
-            .collectList()
-            .filter(l -> !l.isEmpty())
-            .map(l -> updateUserWithAuthorities(l.get(0).getT1(), l));
-    }
-
-    private User updateUserWithAuthorities(User user, List<Tuple2<User, Optional<String>>> tuples) {
-        user.setAuthorities(
-            tuples
-                .stream()
-                .filter(t -> t.getT2().isPresent())
-                .map(t -> {
-                    Authority authority = new Authority();
-                    authority.setName(t.getT2().get());
-                    return authority;
-                })
-                .collect(Collectors.toSet())
-        );
-
-        return user;
-    }
 }
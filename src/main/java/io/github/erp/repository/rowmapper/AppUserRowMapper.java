@@ -20,6 +20,7 @@ package io.github.erp.repository.rowmapper;
 
 import io.github.erp.domain.AppUser;
 import io.r2dbc.spi.Row;
+import io.r2dbc.spi.RowMetadata;
 import java.util.UUID;
 import java.util.function.BiFunction;
 import org.springframework.stereotype.Service;
@@ -30,7 +31,37 @@ import org.springframework.stereotype.Service;
 @Service
 public class AppUserRowMapper implements BiFunction<Row, String, AppUser> {
 
+    /**
+     * The readers of the AppUser columns, resolved for one result shape.
+     */
+    private static final class Plan {
+
+        private final ColumnReader<Long> id;
+        private final ColumnReader<String> designation;
+        private final ColumnReader<UUID> identifier;
+        private final ColumnReader<Boolean> isCorporateAccount;
+        private final ColumnReader<Long> organizationId;
+        private final ColumnReader<Long> systemUserId;
+
+        Plan(
+            ColumnReader<Long> id,
+            ColumnReader<String> designation,
+            ColumnReader<UUID> identifier,
+            ColumnReader<Boolean> isCorporateAccount,
+            ColumnReader<Long> organizationId,
+            ColumnReader<Long> systemUserId
+        ) {
+            this.id = id;
+            this.designation = designation;
+            this.identifier = identifier;
+            this.isCorporateAccount = isCorporateAccount;
+            this.organizationId = organizationId;
+            this.systemUserId = systemUserId;
+        }
+    }
+
     private final ColumnConverter converter;
+    private final RowPlanCache<Plan> plans = new RowPlanCache<>(this::compile);
 
     public AppUserRowMapper(ColumnConverter converter) {
         this.converter = converter;
@@ -42,13 +73,34 @@ public class AppUserRowMapper implements BiFunction<Row, String, AppUser> {
      */
     @Override
     public AppUser apply(Row row, String prefix) {
+        return apply(row, row.getMetadata(), prefix);
+    }
+
+    /**
+     * Take a {@link Row}, its {@link RowMetadata} and a column prefix, and extract all the fields with the plan
+     * compiled for that result shape.
+     * @return the {@link AppUser} stored in the database.
+     */
+    public AppUser apply(Row row, RowMetadata metadata, String prefix) {
+        Plan plan = plans.get(metadata, prefix);
         AppUser entity = new AppUser();
-        entity.setId(converter.fromRow(row, prefix + "_id", Long.class));
-        entity.setDesignation(converter.fromRow(row, prefix + "_designation", String.class));
-        entity.setIdentifier(converter.fromRow(row, prefix + "_identifier", UUID.class));
-        entity.setIsCorporateAccount(converter.fromRow(row, prefix + "_is_corporate_account", Boolean.class));
-        entity.setOrganizationId(converter.fromRow(row, prefix + "_organization_id", Long.class));
-        entity.setSystemUserId(converter.fromRow(row, prefix + "_system_user_id", Long.class));
+        entity.setId(plan.id.read(row));
+        entity.setDesignation(plan.designation.read(row));
+        entity.setIdentifier(plan.identifier.read(row));
+        entity.setIsCorporateAccount(plan.isCorporateAccount.read(row));
+        entity.setOrganizationId(plan.organizationId.read(row));
+        entity.setSystemUserId(plan.systemUserId.read(row));
         return entity;
     }
+
+    private Plan compile(RowMetadata metadata, String prefix) {
+        return new Plan(
+            converter.compile(metadata, prefix + "_id", Long.class),
+            converter.compile(metadata, prefix + "_designation", String.class),
+            converter.compile(metadata, prefix + "_identifier", UUID.class),
+            converter.compile(metadata, prefix + "_is_corporate_account", Boolean.class),
+            converter.compile(metadata, prefix + "_organization_id", Long.class),
+            converter.compile(metadata, prefix + "_system_user_id", Long.class)
+        );
+    }
 }
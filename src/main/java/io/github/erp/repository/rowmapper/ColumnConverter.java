@@ -18,7 +18,10 @@ package io.github.erp.repository.rowmapper;
  * along with this program. If not, see <http://www.gnu.org/licenses/>.
  */
 
+import io.r2dbc.spi.ColumnMetadata;
 import io.r2dbc.spi.Row;
+import io.r2dbc.spi.RowMetadata;
+import java.util.List;
 import org.springframework.core.convert.ConversionService;
 import org.springframework.data.r2dbc.convert.R2dbcConverter;
 import org.springframework.data.r2dbc.convert.R2dbcCustomConversions;
@@ -81,4 +84,45 @@ public class ColumnConverter {
             return convert(obj, target);
         }
     }
+
+    /**
+     * Resolves the position of the column and the way to convert it to the target class, for the rows of the given
+     * metadata. The returned reader reads the column by index, through the driver when it decodes the column into the
+     * target class, and through {@link #convert(Object, Class)} otherwise.
+     * @param metadata of the rows the reader is used for.
+     * @param columnName the name of the column which to convert.
+     * @param target class.
+     * @param <T> the parameter for the intended type.
+     * @return the reader of the column.
+     */
+    public <T> ColumnReader<T> compile(RowMetadata metadata, String columnName, Class<T> target) {
+        int index = indexOf(metadata, columnName);
+        if (index < 0) {
+            // unknown column, let the driver report it
+            return row -> fromRow(row, columnName, target);
+        }
+        Class<?> javaType = metadata.getColumnMetadata(index).getJavaType();
+        if (javaType == null || ClassUtils.isAssignable(target, javaType)) {
+            return row -> row.get(index, target);
+        }
+        if (
+            conversions.hasCustomReadTarget(javaType, target) ||
+            Enum.class.isAssignableFrom(target) ||
+            conversionService.canConvert(javaType, target)
+        ) {
+            return row -> convert(row.get(index), target);
+        }
+        return row -> row.get(index, target);
+    }
+
+    private static int indexOf(RowMetadata metadata, String columnName) {
+        List<? extends ColumnMetadata> columns = metadata.getColumnMetadatas();
+        for (int index = 0; index < columns.size(); index++) {
+            // unquoted aliases are folded to lower case by the database
+            if (columns.get(index).getName().equalsIgnoreCase(columnName)) {
+                return index;
+            }
+        }
+        return -1;
+    }
 }
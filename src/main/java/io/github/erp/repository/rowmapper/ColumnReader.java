@@ -0,0 +1,33 @@
+package io.github.erp.repository.rowmapper;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import io.r2dbc.spi.Row;
+import org.springframework.lang.Nullable;
+
+/**
+ * Reads one column of a {@link Row}, with the column position and the type conversion resolved ahead, see
+ * {@link ColumnConverter#compile(io.r2dbc.spi.RowMetadata, String, Class)}.
+ * @param <T> the type of the column value.
+ */
+@FunctionalInterface
+public interface ColumnReader<T> {
+    @Nullable
+    T read(Row row);
+}
@@ -20,6 +20,7 @@ package io.github.erp.repository.rowmapper;
 
 import io.github.erp.domain.Placeholder;
 import io.r2dbc.spi.Row;
+import io.r2dbc.spi.RowMetadata;
 import java.util.function.BiFunction;
 import org.springframework.stereotype.Service;
 
@@ -29,7 +30,34 @@ import org.springframework.stereotype.Service;
 @Service
 public class PlaceholderRowMapper implements BiFunction<Row, String, Placeholder> {
 
+    /**
+     * The readers of the Placeholder columns, resolved for one result shape.
+     */
+    private static final class Plan {
+
+        private final ColumnReader<Long> id;
+        private final ColumnReader<String> placeholderIndex;
+        private final ColumnReader<String> placeholderValue;
+        private final ColumnReader<Long> archetypeId;
+        private final ColumnReader<Long> organizationId;
+
+        Plan(
+            ColumnReader<Long> id,
+            ColumnReader<String> placeholderIndex,
+            ColumnReader<String> placeholderValue,
+            ColumnReader<Long> archetypeId,
+            ColumnReader<Long> organizationId
+        ) {
+            this.id = id;
+            this.placeholderIndex = placeholderIndex;
+            this.placeholderValue = placeholderValue;
+            this.archetypeId = archetypeId;
+            this.organizationId = organizationId;
+        }
+    }
+
     private final ColumnConverter converter;
+    private final RowPlanCache<Plan> plans = new RowPlanCache<>(this::compile);
 
     public PlaceholderRowMapper(ColumnConverter converter) {
         this.converter = converter;
@@ -41,12 +69,32 @@ public class PlaceholderRowMapper implements BiFunction<Row, String, Placeholder
      */
     @Override
     public Placeholder apply(Row row, String prefix) {
+        return apply(row, row.getMetadata(), prefix);
+    }
+
+    /**
+     * Take a {@link Row}, its {@link RowMetadata} and a column prefix, and extract all the fields with the plan
+     * compiled for that result shape.
+     * @return the {@link Placeholder} stored in the database.
+     */
+    public Placeholder apply(Row row, RowMetadata metadata, String prefix) {
+        Plan plan = plans.get(metadata, prefix);
         Placeholder entity = new Placeholder();
-        entity.setId(converter.fromRow(row, prefix + "_id", Long.class));
-        entity.setPlaceholderIndex(converter.fromRow(row, prefix + "_placeholder_index", String.class));
-        entity.setPlaceholderValue(converter.fromRow(row, prefix + "_placeholder_value", String.class));
-        entity.setArchetypeId(converter.fromRow(row, prefix + "_archetype_id", Long.class));
-        entity.setOrganizationId(converter.fromRow(row, prefix + "_organization_id", Long.class));
+        entity.setId(plan.id.read(row));
+        entity.setPlaceholderIndex(plan.placeholderIndex.read(row));
+        entity.setPlaceholderValue(plan.placeholderValue.read(row));
+        entity.setArchetypeId(plan.archetypeId.read(row));
+        entity.setOrganizationId(plan.organizationId.read(row));
         return entity;
     }
+
+    private Plan compile(RowMetadata metadata, String prefix) {
+        return new Plan(
+            converter.compile(metadata, prefix + "_id", Long.class),
+            converter.compile(metadata, prefix + "_placeholder_index", String.class),
+            converter.compile(metadata, prefix + "_placeholder_value", String.class),
+            converter.compile(metadata, prefix + "_archetype_id", Long.class),
+            converter.compile(metadata, prefix + "_organization_id", Long.class)
+        );
+    }
 }
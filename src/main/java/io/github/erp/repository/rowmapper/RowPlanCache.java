@@ -0,0 +1,119 @@
+package io.github.erp.repository.rowmapper;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import io.r2dbc.spi.ColumnMetadata;
+import io.r2dbc.spi.RowMetadata;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiFunction;
+
+/**
+ * Holds the plans compiled by a row mapper, one per column prefix and result shape, so the columns are only looked up
+ * by name once per query instead of once per row.
+ * <p>
+ * The rows of a result share their {@link RowMetadata}, so the plans of the last results read with every prefix are
+ * kept along with the metadata they were compiled for, and found again by identity: results of different shapes read
+ * concurrently each keep their own plan, and the metadata of finished results are left to the garbage collector.
+ * @param <P> the type of the plan.
+ */
+public final class RowPlanCache<P> {
+
+    static final int MAX_SHAPES = 64;
+
+    static final int RECENT_RESULTS = 8;
+
+    private static final class CompiledPlan<P> {
+
+        private final WeakReference<RowMetadata> metadata;
+        private final P plan;
+
+        CompiledPlan(RowMetadata metadata, P plan) {
+            this.metadata = new WeakReference<>(metadata);
+            this.plan = plan;
+        }
+    }
+
+    private static final class RecentPlans<P> {
+
+        private final AtomicReferenceArray<CompiledPlan<P>> slots = new AtomicReferenceArray<>(RECENT_RESULTS);
+        private final AtomicInteger next = new AtomicInteger();
+
+        P find(RowMetadata metadata) {
+            for (int i = 0; i < RECENT_RESULTS; i++) {
+                CompiledPlan<P> compiled = slots.get(i);
+                if (compiled != null && compiled.metadata.get() == metadata) {
+                    return compiled.plan;
+                }
+            }
+            return null;
+        }
+
+        void add(RowMetadata metadata, P plan) {
+            slots.set(Math.floorMod(next.getAndIncrement(), RECENT_RESULTS), new CompiledPlan<>(metadata, plan));
+        }
+    }
+
+    private final BiFunction<RowMetadata, String, P> compiler;
+    private final Map<String, RecentPlans<P>> recentPlans = new ConcurrentHashMap<>();
+    private final Map<String, P> plans = new ConcurrentHashMap<>();
+
+    /**
+     * @param compiler compiles the plan reading the columns with the given prefix from rows of the given metadata.
+     */
+    public RowPlanCache(BiFunction<RowMetadata, String, P> compiler) {
+        this.compiler = compiler;
+    }
+
+    /**
+     * Returns the plan reading the columns with the given prefix, compiling it on the first row of a new result shape.
+     * @param metadata the metadata of the row to read.
+     * @param prefix the column prefix of the entity.
+     * @return the plan.
+     */
+    public P get(RowMetadata metadata, String prefix) {
+        RecentPlans<P> recent = recentPlans.computeIfAbsent(prefix, key -> new RecentPlans<>());
+        P plan = recent.find(metadata);
+        if (plan != null) {
+            return plan;
+        }
+        String shape = shapeOf(metadata, prefix);
+        plan = plans.get(shape);
+        if (plan == null) {
+            plan = compiler.apply(metadata, prefix);
+            // the shapes come from the statements of the repositories, the bound only guards against ad-hoc queries
+            if (plans.size() < MAX_SHAPES) {
+                plans.putIfAbsent(shape, plan);
+            }
+        }
+        recent.add(metadata, plan);
+        return plan;
+    }
+
+    private static String shapeOf(RowMetadata metadata, String prefix) {
+        StringBuilder shape = new StringBuilder(prefix);
+        for (ColumnMetadata column : metadata.getColumnMetadatas()) {
+            shape.append(',').append(column.getName());
+        }
+        return shape.toString();
+    }
+}
@@ -20,6 +20,7 @@ package io.github.erp.repository.rowmapper;
 
 import io.github.erp.domain.User;
 import io.r2dbc.spi.Row;
+import io.r2dbc.spi.RowMetadata;
 import java.time.Instant;
 import java.util.function.BiFunction;
 import org.springframework.stereotype.Service;
@@ -30,7 +31,55 @@ import org.springframework.stereotype.Service;
 @Service
 public class UserRowMapper implements BiFunction<Row, String, User> {
 
+    /**
+     * The readers of the User columns, resolved for one result shape.
+     */
+    private static final class Plan {
+
+        private final ColumnReader<Long> id;
+        private final ColumnReader<String> login;
+        private final ColumnReader<String> password;
+        private final ColumnReader<String> firstName;
+        private final ColumnReader<String> lastName;
+        private final ColumnReader<String> email;
+        private final ColumnReader<Boolean> activated;
+        private final ColumnReader<String> langKey;
+        private final ColumnReader<String> imageUrl;
+        private final ColumnReader<String> activationKey;
+        private final ColumnReader<String> resetKey;
+        private final ColumnReader<Instant> resetDate;
+
+        Plan(
+            ColumnReader<Long> id,
+            ColumnReader<String> login,
+            ColumnReader<String> password,
+            ColumnReader<String> firstName,
+            ColumnReader<String> lastName,
+            ColumnReader<String> email,
+            ColumnReader<Boolean> activated,
+            ColumnReader<String> langKey,
+            ColumnReader<String> imageUrl,
+            ColumnReader<String> activationKey,
+            ColumnReader<String> resetKey,
+            ColumnReader<Instant> resetDate
+        ) {
+            this.id = id;
+            this.login = login;
+            this.password = password;
+            this.firstName = firstName;
+            this.lastName = lastName;
+            this.email = email;
+            this.activated = activated;
+            this.langKey = langKey;
+            this.imageUrl = imageUrl;
+            this.activationKey = activationKey;
+            this.resetKey = resetKey;
+            this.resetDate = resetDate;
+        }
+    }
+
     private final ColumnConverter converter;
+    private final RowPlanCache<Plan> plans = new RowPlanCache<>(this::compile);
 
     public UserRowMapper(ColumnConverter converter) {
         this.converter = converter;
@@ -42,19 +91,46 @@ public class UserRowMapper implements BiFunction<Row, String, User> {
      */
     @Override
     public User apply(Row row, String prefix) {
+        return apply(row, row.getMetadata(), prefix);
+    }
+
+    /**
+     * Take a {@link Row}, its {@link RowMetadata} and a column prefix, and extract all the fields with the plan
+     * compiled for that result shape.
+     * @return the {@link User} stored in the database.
+     */
+    public User apply(Row row, RowMetadata metadata, String prefix) {
+        Plan plan = plans.get(metadata, prefix);
         User entity = new User();
-        entity.setId(row.get(prefix + "_id", Long.class));
-        entity.setLogin(converter.fromRow(row, prefix + "_login", String.class));
-        entity.setPassword(converter.fromRow(row, prefix + "_password", String.class));
-        entity.setFirstName(converter.fromRow(row, prefix + "_first_name", String.class));
-        entity.setLastName(converter.fromRow(row, prefix + "_last_name", String.class));
-        entity.setEmail(converter.fromRow(row, prefix + "_email", String.class));
-        entity.setActivated(Boolean.TRUE.equals(converter.fromRow(row, prefix + "_activated", Boolean.class)));
-        entity.setLangKey(converter.fromRow(row, prefix + "_lang_key", String.class));
-        entity.setImageUrl(converter.fromRow(row, prefix + "_image_url", String.class));
-        entity.setActivationKey(converter.fromRow(row, prefix + "_activation_key", String.class));
-        entity.setResetKey(converter.fromRow(row, prefix + "_reset_key", String.class));
-        entity.setResetDate(converter.fromRow(row, prefix + "_reset_date", Instant.class));
+        entity.setId(plan.id.read(row));
+        entity.setLogin(plan.login.read(row));
+        entity.setPassword(plan.password.read(row));
+        entity.setFirstName(plan.firstName.read(row));
+        entity.setLastName(plan.lastName.read(row));
+        entity.setEmail(plan.email.read(row));
+        entity.setActivated(Boolean.TRUE.equals(plan.activated.read(row)));
+        entity.setLangKey(plan.langKey.read(row));
+        entity.setImageUrl(plan.imageUrl.read(row));
+        entity.setActivationKey(plan.activationKey.read(row));
+        entity.setResetKey(plan.resetKey.read(row));
+        entity.setResetDate(plan.resetDate.read(row));
         return entity;
     }
+
+    private Plan compile(RowMetadata metadata, String prefix) {
+        return new Plan(
+            converter.compile(metadata, prefix + "_id", Long.class),
+            converter.compile(metadata, prefix + "_login", String.class),
+            converter.compile(metadata, prefix + "_password", String.class),
+            converter.compile(metadata, prefix + "_first_name", String.class),
+            converter.compile(metadata, prefix + "_last_name", String.class),
+            converter.compile(metadata, prefix + "_email", String.class),
+            converter.compile(metadata, prefix + "_activated", Boolean.class),
+            converter.compile(metadata, prefix + "_lang_key", String.class),
+            converter.compile(metadata, prefix + "_image_url", String.class),
+            converter.compile(metadata, prefix + "_activation_key", String.class),
+            converter.compile(metadata, prefix + "_reset_key", String.class),
+            converter.compile(metadata, prefix + "_reset_date", Instant.class)
+        );
+    }
 }
@@ -24,8 +24,8 @@ import io.github.erp.domain.AppUser;
 import io.github.erp.repository.AppUserRepository;
 import java.util.List;
 import org.elasticsearch.search.sort.SortBuilder;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.elasticsearch.core.ReactiveElasticsearchTemplate;
 import org.springframework.data.elasticsearch.core.SearchHit;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
@@ -37,6 +37,7 @@ import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 /**
  * Spring Data Elasticsearch repository for the {@link AppUser} entity.
@@ -47,14 +48,50 @@ interface AppUserSearchRepositoryInternal {
     Flux<AppUser> search(String query, Pageable pageable);
 
     Flux<AppUser> search(Query query);
+
+    /**
+     * Searches a page of documents, along with the number of documents matching the query, in one request.
+     * @param query the query string.
+     * @param pageable the page.
+     * @param trackTotalHits the matching documents to count, see {@link PagedSearchTemplate#TRACK_ALL_HITS}.
+     * @return the page.
+     */
+    Mono<SearchResult<AppUser>> search(String query, Pageable pageable, int trackTotalHits);
+
+    /**
+     * Searches the page of documents following a cursor, along with the number of documents matching the query, in
+     * one request.
+     * @param query the query string.
+     * @param sort the sort of the documents, by relevance if unsorted.
+     * @param cursor the cursor of the page.
+     * @param size the number of documents of the page.
+     * @param trackTotalHits the matching documents to count, see {@link PagedSearchTemplate#TRACK_ALL_HITS}.
+     * @return the page, with the cursor of the following one.
+     */
+    Mono<SearchResult<AppUser>> searchAfter(String query, Sort sort, SearchAfterCursor cursor, int size, int trackTotalHits);
+
+    /**
+     * Suggests the documents whose {@code designation} starts with the given text, best matches first.
+     * @param prefix the text typed so far.
+     * @param organizationId the id of the organization to suggest the documents of, or {@code null} for all of them.
+     * @param limit the number of documents.
+     * @return the documents, with only their id, {@code designation} and organization.
+     */
+    Flux<AppUser> suggest(String prefix, Long organizationId, int limit);
 }
 
 class AppUserSearchRepositoryInternalImpl implements AppUserSearchRepositoryInternal {
 
     private final ReactiveElasticsearchTemplate reactiveElasticsearchTemplate;
 
-    AppUserSearchRepositoryInternalImpl(ReactiveElasticsearchTemplate reactiveElasticsearchTemplate) {
+    private final PagedSearchTemplate pagedSearchTemplate;
+
+    AppUserSearchRepositoryInternalImpl(
+        ReactiveElasticsearchTemplate reactiveElasticsearchTemplate,
+        PagedSearchTemplate pagedSearchTemplate
+    ) {
         this.reactiveElasticsearchTemplate = reactiveElasticsearchTemplate;
+        this.pagedSearchTemplate = pagedSearchTemplate;
     }
 
     @Override
@@ -68,4 +105,19 @@ class AppUserSearchRepositoryInternalImpl implements AppUserSearchRepositoryInte
     public Flux<AppUser> search(Query query) {
         return reactiveElasticsearchTemplate.search(query, AppUser.class).map(SearchHit::getContent);
     }
+
+    @Override
+    public Mono<SearchResult<AppUser>> search(String query, Pageable pageable, int trackTotalHits) {
+        return pagedSearchTemplate.search(AppUser.class, queryStringQuery(query), pageable, trackTotalHits);
+    }
+
+    @Override
+    public Mono<SearchResult<AppUser>> searchAfter(String query, Sort sort, SearchAfterCursor cursor, int size, int trackTotalHits) {
+        return pagedSearchTemplate.searchAfter(AppUser.class, queryStringQuery(query), sort, cursor, size, trackTotalHits);
+    }
+
+    @Override
+    public Flux<AppUser> suggest(String prefix, Long organizationId, int limit) {
+        return search(SuggestQueries.suggest("designation", prefix, organizationId, limit));
+    }
 }
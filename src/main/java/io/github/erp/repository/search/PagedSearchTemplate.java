@@ -0,0 +1,284 @@
+package io.github.erp.repository.search;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.erp.config.ApplicationProperties;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.elasticsearch.core.TimeValue;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.search.builder.PointInTimeBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.core.ReactiveElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.TotalHitsRelation;
+import org.springframework.data.elasticsearch.core.document.Document;
+import org.springframework.data.elasticsearch.core.mapping.ElasticsearchPersistentEntity;
+import org.springframework.data.elasticsearch.core.mapping.ElasticsearchPersistentProperty;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Runs the paged searches of the search repositories, returning the hits and their total from a single request.
+ * <p>
+ * Pages are addressed either by page and size, up to the {@code max_result_window} of the index, or by a
+ * {@link SearchAfterCursor}: the cursor paged search reads every page from the point in time opened for its first
+ * page, so that the writes made meanwhile do not shift the hits between pages, and continues after the sort values of
+ * the last hit, however deep the page. The point in time is closed once the last page is read, and expires otherwise.
+ * <p>
+ * Spring Data Elasticsearch has no point in time support in this version, and its request converter adds index
+ * options which Elasticsearch rejects next to a point in time: the cursor paged searches are sent as plain JSON.
+ */
+@Component
+public class PagedSearchTemplate {
+
+    /**
+     * Counts every hit.
+     */
+    public static final int TRACK_ALL_HITS = Integer.MAX_VALUE;
+
+    /**
+     * Counts no hit.
+     */
+    public static final int TRACK_NO_HITS = 0;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final TypeReference<Map<String, Object>> SOURCE_TYPE = new TypeReference<>() {};
+
+    private static final TypeReference<List<Object>> SORT_VALUES_TYPE = new TypeReference<>() {};
+
+    private final Logger log = LoggerFactory.getLogger(PagedSearchTemplate.class);
+
+    private final ReactiveElasticsearchOperations operations;
+
+    private final ApplicationProperties.Search properties;
+
+    public PagedSearchTemplate(ReactiveElasticsearchOperations operations, ApplicationProperties applicationProperties) {
+        this.operations = operations;
+        this.properties = applicationProperties.getSearch();
+    }
+
+    /**
+     * Searches a page of hits by page and size.
+     * @param type the type of the hits.
+     * @param query the query.
+     * @param pageable the page.
+     * @param trackTotalHits the hits to count, {@link #TRACK_ALL_HITS} or {@link #TRACK_NO_HITS} included.
+     * @param <T> the type of the hits.
+     * @return the page, without next cursor.
+     * @throws IllegalArgumentException if the page reaches past the max result window.
+     */
+    public <T> Mono<SearchResult<T>> search(Class<T> type, QueryBuilder query, Pageable pageable, int trackTotalHits) {
+        if (!withinResultWindow(pageable)) {
+            return Mono.error(outsideResultWindow());
+        }
+        NativeSearchQuery searchQuery = new NativeSearchQuery(query);
+        searchQuery.setPageable(pageable);
+        if (trackTotalHits <= TRACK_NO_HITS) {
+            searchQuery.setTrackTotalHits(false);
+        } else if (trackTotalHits == TRACK_ALL_HITS) {
+            searchQuery.setTrackTotalHits(true);
+        } else {
+            searchQuery.setTrackTotalHitsUpTo(trackTotalHits);
+        }
+        return operations
+            .searchForHits(searchQuery, type)
+            .flatMap(hits ->
+                hits
+                    .getSearchHits()
+                    .map(SearchHit::getContent)
+                    .collectList()
+                    .map(content ->
+                        new SearchResult<>(
+                            content,
+                            hits.getTotalHitsRelation() == TotalHitsRelation.OFF ? null : hits.getTotalHits(),
+                            hits.getTotalHitsRelation() == TotalHitsRelation.EQUAL_TO,
+                            null
+                        )
+                    )
+            );
+    }
+
+    /**
+     * Streams a page of hits by page and size, without counting them, and reading only some fields of their source.
+     * @param type the type of the hits, whose other fields are left empty.
+     * @param query the query.
+     * @param pageable the page.
+     * @param fields the fields of the source to read.
+     * @param <T> the type of the hits.
+     * @return the hits, mapped as they are read from the response.
+     * @throws IllegalArgumentException if the page reaches past the max result window.
+     */
+    public <T> Flux<T> stream(Class<T> type, QueryBuilder query, Pageable pageable, String... fields) {
+        if (!withinResultWindow(pageable)) {
+            return Flux.error(outsideResultWindow());
+        }
+        NativeSearchQuery searchQuery = new NativeSearchQuery(query);
+        searchQuery.setPageable(pageable);
+        searchQuery.setTrackTotalHits(false);
+        searchQuery.addSourceFilter(new FetchSourceFilter(fields, null));
+        return operations.search(searchQuery, type).map(SearchHit::getContent);
+    }
+
+    /**
+     * Searches the page of hits following a cursor.
+     * @param type the type of the hits.
+     * @param query the query.
+     * @param sort the sort of the hits, by relevance if unsorted.
+     * @param cursor the cursor of the page.
+     * @param size the number of hits of the page.
+     * @param trackTotalHits the hits to count, {@link #TRACK_ALL_HITS} or {@link #TRACK_NO_HITS} included.
+     * @param <T> the type of the hits.
+     * @return the page, with the cursor of the following one unless it is the last.
+     * @throws IllegalArgumentException if the sort names an unknown property, or the point in time of the cursor
+     * expired.
+     */
+    public <T> Mono<SearchResult<T>> searchAfter(
+        Class<T> type,
+        QueryBuilder query,
+        Sort sort,
+        SearchAfterCursor cursor,
+        int size,
+        int trackTotalHits
+    ) {
+        SearchSourceBuilder source;
+        try {
+            source = sourceBuilder(type, query, sort, size, trackTotalHits);
+        } catch (IllegalArgumentException e) {
+            return Mono.error(e);
+        }
+        if (!cursor.isStart()) {
+            source.searchAfter(cursor.getSortValues().toArray());
+        }
+        Mono<String> pointInTime = cursor.isStart() ? openPointInTime(type) : Mono.just(cursor.getPointInTimeId());
+        return pointInTime
+            .flatMap(pointInTimeId -> {
+                source.pointInTimeBuilder(new PointInTimeBuilder(pointInTimeId).setKeepAlive(keepAlive()));
+                return exchange(HttpMethod.POST, "/_search", source.toString());
+            })
+            .onErrorMap(WebClientResponseException.NotFound.class, e -> new IllegalArgumentException("The cursor has expired", e))
+            .flatMap(response -> {
+                List<T> content = new ArrayList<>();
+                List<Object> lastSortValues = null;
+                for (JsonNode hit : response.path("hits").path("hits")) {
+                    Document document = Document.from(MAPPER.convertValue(hit.path("_source"), SOURCE_TYPE));
+                    document.setId(hit.path("_id").asText());
+                    content.add(operations.getElasticsearchConverter().read(type, document));
+                    lastSortValues = MAPPER.convertValue(hit.path("sort"), SORT_VALUES_TYPE);
+                }
+                String pointInTimeId = response.path("pit_id").asText();
+                JsonNode total = response.path("hits").path("total");
+                Long totalHits = total.isMissingNode() ? null : total.path("value").asLong();
+                boolean exact = "eq".equals(total.path("relation").asText());
+                if (content.size() < size || lastSortValues == null) {
+                    return closePointInTime(pointInTimeId).thenReturn(new SearchResult<>(content, totalHits, exact, null));
+                }
+                SearchAfterCursor next = SearchAfterCursor.after(pointInTimeId, sort, lastSortValues);
+                return Mono.just(new SearchResult<>(content, totalHits, exact, next));
+            });
+    }
+
+    private SearchSourceBuilder sourceBuilder(Class<?> type, QueryBuilder query, Sort sort, int size, int trackTotalHits) {
+        SearchSourceBuilder source = new SearchSourceBuilder().query(query).size(size);
+        if (trackTotalHits <= TRACK_NO_HITS) {
+            source.trackTotalHits(false);
+        } else {
+            source.trackTotalHitsUpTo(trackTotalHits);
+        }
+        // the point in time adds the shard document tie-breaker, which makes the sort total
+        if (sort.isUnsorted()) {
+            source.sort(SortBuilders.scoreSort());
+            return source;
+        }
+        ElasticsearchPersistentEntity<?> entity = operations
+            .getElasticsearchConverter()
+            .getMappingContext()
+            .getRequiredPersistentEntity(type);
+        for (Sort.Order order : sort) {
+            ElasticsearchPersistentProperty property = entity.getPersistentProperty(order.getProperty());
+            if (property == null) {
+                throw new IllegalArgumentException("Unknown sort property " + order.getProperty());
+            }
+            source.sort(SortBuilders.fieldSort(property.getFieldName()).order(order.isAscending() ? SortOrder.ASC : SortOrder.DESC));
+        }
+        return source;
+    }
+
+    private Mono<String> openPointInTime(Class<?> type) {
+        String index = operations.getIndexCoordinatesFor(type).getIndexName();
+        return exchange(HttpMethod.POST, "/" + index + "/_pit?keep_alive=" + keepAlive().getStringRep(), null)
+            .map(response -> response.path("id").asText());
+    }
+
+    private Mono<Void> closePointInTime(String pointInTimeId) {
+        // best effort: a point in time left open expires with its keep alive
+        return exchange(HttpMethod.DELETE, "/_pit", MAPPER.createObjectNode().put("id", pointInTimeId).toString())
+            .onErrorResume(e -> {
+                log.debug("Could not close the point in time of a search: {}", e.getMessage());
+                return Mono.empty();
+            })
+            .then();
+    }
+
+    private TimeValue keepAlive() {
+        return TimeValue.timeValueMillis(properties.getPointInTimeKeepAlive().toMillis());
+    }
+
+    private Mono<JsonNode> exchange(HttpMethod method, String path, String body) {
+        return Mono.from(
+            operations.execute(client ->
+                client.execute(webClient -> {
+                    WebClient.RequestBodySpec request = webClient.method(method).uri(path);
+                    WebClient.RequestHeadersSpec<?> spec = body == null
+                        ? request
+                        : request.contentType(MediaType.APPLICATION_JSON).bodyValue(body);
+                    return spec.retrieve().bodyToMono(JsonNode.class);
+                })
+            )
+        );
+    }
+
+    private boolean withinResultWindow(Pageable pageable) {
+        return pageable.getOffset() + pageable.getPageSize() <= properties.getMaxResultWindow();
+    }
+
+    private IllegalArgumentException outsideResultWindow() {
+        return new IllegalArgumentException(
+            "Only the first " + properties.getMaxResultWindow() + " hits can be paged by page number, page with a cursor instead"
+        );
+    }
+}
@@ -24,8 +24,8 @@ import io.github.erp.domain.Placeholder;
 import io.github.erp.repository.PlaceholderRepository;
 import java.util.List;
 import org.elasticsearch.search.sort.SortBuilder;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.elasticsearch.core.ReactiveElasticsearchTemplate;
 import org.springframework.data.elasticsearch.core.SearchHit;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
@@ -37,6 +37,7 @@ import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 /**
  * Spring Data Elasticsearch repository for the {@link Placeholder} entity.
@@ -48,14 +49,50 @@ interface PlaceholderSearchRepositoryInternal {
     Flux<Placeholder> search(String query, Pageable pageable);
 
     Flux<Placeholder> search(Query query);
+
+    /**
+     * Searches a page of documents, along with the number of documents matching the query, in one request.
+     * @param query the query string.
+     * @param pageable the page.
+     * @param trackTotalHits the matching documents to count, see {@link PagedSearchTemplate#TRACK_ALL_HITS}.
+     * @return the page.
+     */
+    Mono<SearchResult<Placeholder>> search(String query, Pageable pageable, int trackTotalHits);
+
+    /**
+     * Searches the page of documents following a cursor, along with the number of documents matching the query, in
+     * one request.
+     * @param query the query string.
+     * @param sort the sort of the documents, by relevance if unsorted.
+     * @param cursor the cursor of the page.
+     * @param size the number of documents of the page.
+     * @param trackTotalHits the matching documents to count, see {@link PagedSearchTemplate#TRACK_ALL_HITS}.
+     * @return the page, with the cursor of the following one.
+     */
+    Mono<SearchResult<Placeholder>> searchAfter(String query, Sort sort, SearchAfterCursor cursor, int size, int trackTotalHits);
+
+    /**
+     * Suggests the documents whose {@code placeholderIndex} starts with the given text, best matches first.
+     * @param prefix the text typed so far.
+     * @param organizationId the id of the organization to suggest the documents of, or {@code null} for all of them.
+     * @param limit the number of documents.
+     * @return the documents, with only their id, {@code placeholderIndex} and organization.
+     */
+    Flux<Placeholder> suggest(String prefix, Long organizationId, int limit);
 }
 
 class PlaceholderSearchRepositoryInternalImpl implements PlaceholderSearchRepositoryInternal {
 
     private final ReactiveElasticsearchTemplate reactiveElasticsearchTemplate;
 
-    PlaceholderSearchRepositoryInternalImpl(ReactiveElasticsearchTemplate reactiveElasticsearchTemplate) {
+    private final PagedSearchTemplate pagedSearchTemplate;
+
+    PlaceholderSearchRepositoryInternalImpl(
+        ReactiveElasticsearchTemplate reactiveElasticsearchTemplate,
+        PagedSearchTemplate pagedSearchTemplate
+    ) {
         this.reactiveElasticsearchTemplate = reactiveElasticsearchTemplate;
+        this.pagedSearchTemplate = pagedSearchTemplate;
     }
 
     @Override
@@ -69,4 +106,19 @@ class PlaceholderSearchRepositoryInternalImpl implements PlaceholderSearchReposi
     public Flux<Placeholder> search(Query query) {
         return reactiveElasticsearchTemplate.search(query, Placeholder.class).map(SearchHit::getContent);
     }
+
+    @Override
+    public Mono<SearchResult<Placeholder>> search(String query, Pageable pageable, int trackTotalHits) {
+        return pagedSearchTemplate.search(Placeholder.class, queryStringQuery(query), pageable, trackTotalHits);
+    }
+
+    @Override
+    public Mono<SearchResult<Placeholder>> searchAfter(String query, Sort sort, SearchAfterCursor cursor, int size, int trackTotalHits) {
+        return pagedSearchTemplate.searchAfter(Placeholder.class, queryStringQuery(query), sort, cursor, size, trackTotalHits);
+    }
+
+    @Override
+    public Flux<Placeholder> suggest(String prefix, Long organizationId, int limit) {
+        return search(SuggestQueries.suggest("placeholderIndex", prefix, organizationId, limit));
+    }
 }
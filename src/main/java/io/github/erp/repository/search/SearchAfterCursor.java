@@ -0,0 +1,136 @@
+package io.github.erp.repository.search;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import org.springframework.data.domain.Sort;
+import org.springframework.util.StringUtils;
+
+/**
+ * Position of a cursor paged search: the point in time the pages are read from, and the sort values of the last hit
+ * of the previous page.
+ * <p>
+ * The cursor is exchanged with clients as an opaque, url-safe token, like {@link io.github.erp.repository.KeysetCursor}.
+ * A cursor without a point in time marks the start of the search.
+ */
+public final class SearchAfterCursor {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final String POINT_IN_TIME_FIELD = "pit";
+    private static final String SORT_FIELD = "sort";
+    private static final String AFTER_FIELD = "after";
+
+    private final String pointInTimeId;
+    private final String sort;
+    private final List<Object> sortValues;
+
+    private SearchAfterCursor(String pointInTimeId, String sort, List<Object> sortValues) {
+        this.pointInTimeId = pointInTimeId;
+        this.sort = sort;
+        this.sortValues = sortValues;
+    }
+
+    /**
+     * @param sort the sort of the search.
+     * @return the cursor for the first page.
+     */
+    public static SearchAfterCursor start(Sort sort) {
+        return new SearchAfterCursor(null, sort.toString(), Collections.emptyList());
+    }
+
+    /**
+     * @param pointInTimeId the id of the point in time the search reads.
+     * @param sort the sort of the search.
+     * @param sortValues the sort values of the last hit of the current page.
+     * @return the cursor for the following page.
+     */
+    public static SearchAfterCursor after(String pointInTimeId, Sort sort, List<Object> sortValues) {
+        return new SearchAfterCursor(pointInTimeId, sort.toString(), List.copyOf(sortValues));
+    }
+
+    /**
+     * Decodes a token issued by {@link #encode()} and checks it belongs to the given sort.
+     * @param token the token sent by the client, an empty token means the first page.
+     * @param sort the sort of the search.
+     * @return the decoded cursor.
+     * @throws IllegalArgumentException if the token is malformed or was issued for another sort.
+     */
+    public static SearchAfterCursor decode(String token, Sort sort) {
+        if (!StringUtils.hasText(token)) {
+            return start(sort);
+        }
+        SearchAfterCursor cursor;
+        try {
+            ObjectNode node = (ObjectNode) MAPPER.readTree(Base64.getUrlDecoder().decode(token));
+            List<Object> sortValues = new ArrayList<>();
+            node.withArray(AFTER_FIELD).forEach(value -> sortValues.add(MAPPER.convertValue(value, Object.class)));
+            cursor = new SearchAfterCursor(node.get(POINT_IN_TIME_FIELD).textValue(), node.get(SORT_FIELD).textValue(), sortValues);
+        } catch (IOException | IllegalArgumentException | ClassCastException | NullPointerException e) {
+            throw new IllegalArgumentException("Malformed cursor", e);
+        }
+        if (cursor.pointInTimeId == null || cursor.sortValues.isEmpty()) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+        if (!cursor.sort.equals(sort.toString())) {
+            throw new IllegalArgumentException("The cursor was issued for a different sort");
+        }
+        return cursor;
+    }
+
+    /**
+     * @return the opaque token representing this cursor.
+     */
+    public String encode() {
+        ObjectNode node = MAPPER.createObjectNode();
+        node.put(POINT_IN_TIME_FIELD, pointInTimeId);
+        node.put(SORT_FIELD, sort);
+        node.set(AFTER_FIELD, MAPPER.valueToTree(sortValues));
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(MAPPER.writeValueAsString(node).getBytes(StandardCharsets.UTF_8));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not encode the cursor", e);
+        }
+    }
+
+    public boolean isStart() {
+        return pointInTimeId == null;
+    }
+
+    public String getPointInTimeId() {
+        return pointInTimeId;
+    }
+
+    public List<Object> getSortValues() {
+        return sortValues;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchAfterCursor{sort='" + sort + "', sortValues=" + sortValues + "}";
+    }
+}
@@ -0,0 +1,72 @@
+package io.github.erp.repository.search;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * A page of search hits, with the total number of hits counted by the same request.
+ *
+ * @param <T> the type of the hits.
+ */
+public final class SearchResult<T> {
+
+    private final List<T> content;
+    private final Long totalHits;
+    private final boolean totalHitsExact;
+    private final SearchAfterCursor next;
+
+    public SearchResult(List<T> content, Long totalHits, boolean totalHitsExact, SearchAfterCursor next) {
+        this.content = content;
+        this.totalHits = totalHits;
+        this.totalHitsExact = totalHitsExact;
+        this.next = next;
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    /**
+     * @return the number of hits, or null if the hits were not counted.
+     */
+    public Long getTotalHits() {
+        return totalHits;
+    }
+
+    /**
+     * @return whether the total is exact, rather than a lower bound reached by the count.
+     */
+    public boolean isTotalHitsExact() {
+        return totalHitsExact;
+    }
+
+    /**
+     * @return the cursor of the following page of a cursor paged search, or null on the last page.
+     */
+    public SearchAfterCursor getNext() {
+        return next;
+    }
+
+    public <R> SearchResult<R> map(Function<? super T, ? extends R> mapper) {
+        return new SearchResult<>(content.stream().map(mapper).collect(Collectors.toList()), totalHits, totalHitsExact, next);
+    }
+}
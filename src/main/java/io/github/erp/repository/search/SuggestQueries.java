@@ -0,0 +1,74 @@
+package io.github.erp.repository.search;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.multiMatchQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.MultiMatchQueryBuilder;
+import org.elasticsearch.index.query.Operator;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+
+/**
+ * Builds the typeahead queries of the fields mapped with a {@value #SUGGEST_SUFFIX} search_as_you_type subfield.
+ * <p>
+ * The prefix is matched as text, never parsed as a query string, against the shingles of the subfield: every
+ * term must match, the last one as a prefix. Only the id, the field and the organization are fetched, and the hits
+ * are not counted.
+ */
+final class SuggestQueries {
+
+    static final String SUGGEST_SUFFIX = "suggest";
+
+    private static final String ID_FIELD = "id";
+    private static final String ORGANIZATION_ID_FIELD = "organizationId";
+
+    private SuggestQueries() {}
+
+    /**
+     * @param field the field suggested, mapped with a {@value #SUGGEST_SUFFIX} subfield.
+     * @param prefix the text typed so far.
+     * @param organizationId the id of the organization to suggest the values of, or {@code null} for all of them.
+     * @param limit the number of suggestions.
+     * @return the query of the best matching documents.
+     */
+    static NativeSearchQuery suggest(String field, String prefix, Long organizationId, int limit) {
+        String suggestField = field + "." + SUGGEST_SUFFIX;
+        BoolQueryBuilder query = boolQuery()
+            .must(
+                multiMatchQuery(prefix, suggestField, suggestField + "._2gram", suggestField + "._3gram")
+                    .type(MultiMatchQueryBuilder.Type.BOOL_PREFIX)
+                    .operator(Operator.AND)
+            );
+        if (organizationId != null) {
+            query.filter(termQuery(ORGANIZATION_ID_FIELD, organizationId));
+        }
+        return new NativeSearchQueryBuilder()
+            .withQuery(query)
+            .withPageable(PageRequest.of(0, limit))
+            .withSourceFilter(new FetchSourceFilter(new String[] { ID_FIELD, field, ORGANIZATION_ID_FIELD }, null))
+            .withTrackTotalHits(false)
+            .build();
+    }
+}
@@ -21,9 +21,7 @@ package io.github.erp.repository.search;
 import static org.elasticsearch.index.query.QueryBuilders.queryStringQuery;
 
 import io.github.erp.domain.User;
-import org.springframework.data.elasticsearch.core.ReactiveElasticsearchTemplate;
-import org.springframework.data.elasticsearch.core.SearchHit;
-import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.elasticsearch.repository.ReactiveElasticsearchRepository;
 import reactor.core.publisher.Flux;
 
@@ -33,20 +31,27 @@ import reactor.core.publisher.Flux;
 public interface UserSearchRepository extends ReactiveElasticsearchRepository<User, Long>, UserSearchRepositoryInternal {}
 
 interface UserSearchRepositoryInternal {
-    Flux<User> search(String query);
+    /**
+     * Searches a page of users, without counting them, reading only their public fields.
+     * @param query the query string.
+     * @param pageable the page.
+     * @return the users, with only their id and login.
+     */
+    Flux<User> search(String query, Pageable pageable);
 }
 
 class UserSearchRepositoryInternalImpl implements UserSearchRepositoryInternal {
 
-    private final ReactiveElasticsearchTemplate reactiveElasticsearchTemplate;
+    private static final String[] PUBLIC_FIELDS = { "id", "login" };
 
-    UserSearchRepositoryInternalImpl(ReactiveElasticsearchTemplate reactiveElasticsearchTemplate) {
-        this.reactiveElasticsearchTemplate = reactiveElasticsearchTemplate;
+    private final PagedSearchTemplate pagedSearchTemplate;
+
+    UserSearchRepositoryInternalImpl(PagedSearchTemplate pagedSearchTemplate) {
+        this.pagedSearchTemplate = pagedSearchTemplate;
     }
 
     @Override
-    public Flux<User> search(String query) {
-        NativeSearchQuery nativeSearchQuery = new NativeSearchQuery(queryStringQuery(query));
-        return reactiveElasticsearchTemplate.search(nativeSearchQuery, User.class).map(SearchHit::getContent);
+    public Flux<User> search(String query, Pageable pageable) {
+        return pagedSearchTemplate.stream(User.class, queryStringQuery(query), pageable, PUBLIC_FIELDS);
     }
 }
@@ -0,0 +1,182 @@
+package io.github.erp.security;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import io.github.erp.config.ApplicationProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Throttles the login attempts by client address, and by login, before any user is read or password checked.
+ * <p>
+ * Each address, and each login, has a token bucket of its own, refilled continuously: its state is the single instant
+ * at which it is full again, moved forward by a compare and set, so that the concurrent attempts never wait on a lock
+ * for it. The buckets are held in striped LRU maps, each stripe locked only to find or add a bucket, and bounded so that
+ * attempts from many addresses, or with many logins, cannot exhaust the memory: the least recently used buckets are
+ * forgotten, as if full.
+ */
+@Component
+public class LoginThrottle {
+
+    private static final String METER_PREFIX = "security.login-throttle";
+
+    private static final int STRIPES = 16;
+
+    private final Buckets clients;
+
+    private final Buckets logins;
+
+    private final LongSupplier nanoClock;
+
+    @Autowired
+    public LoginThrottle(ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
+        this(applicationProperties, meterRegistry, System::nanoTime);
+    }
+
+    LoginThrottle(ApplicationProperties applicationProperties, MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        ApplicationProperties.LoginThrottling properties = applicationProperties.getLoginThrottling();
+        this.nanoClock = nanoClock;
+        this.clients =
+            new Buckets("client", properties.getClientCapacity(), properties.getClientPeriod(), properties.getMaxKeys(), meterRegistry);
+        this.logins =
+            new Buckets("login", properties.getLoginCapacity(), properties.getLoginPeriod(), properties.getMaxKeys(), meterRegistry);
+    }
+
+    /**
+     * Takes a login attempt from the bucket of a client address.
+     * @param address the client address.
+     * @return empty if the attempt is admitted, else the delay after which the address may try again.
+     */
+    public Optional<Duration> acquireForClient(String address) {
+        return clients.acquire(address, nanoClock.getAsLong());
+    }
+
+    /**
+     * Takes a login attempt from the bucket of a login, whatever its case.
+     * @param login the login tried.
+     * @return empty if the attempt is admitted, else the delay after which the login may be tried again.
+     */
+    public Optional<Duration> acquireForLogin(String login) {
+        return logins.acquire(login.toLowerCase(Locale.ENGLISH), nanoClock.getAsLong());
+    }
+
+    /**
+     * The buckets of one kind of key, spread over the stripes by the hash of the key.
+     */
+    private static final class Buckets {
+
+        private final Stripe[] stripes = new Stripe[STRIPES];
+
+        // the time between two tokens, and the time taken to refill the whole bucket
+        private final long interval;
+
+        private final long period;
+
+        private final Counter admitted;
+
+        private final Counter throttled;
+
+        private Buckets(String key, int capacity, Duration period, int maxKeys, MeterRegistry meterRegistry) {
+            this.period = period.toNanos();
+            this.interval = this.period / capacity;
+            int maxKeysPerStripe = Math.max(1, maxKeys / STRIPES);
+            for (int i = 0; i < STRIPES; i++) {
+                stripes[i] = new Stripe(maxKeysPerStripe);
+            }
+            this.admitted = attempts(key, "admitted", meterRegistry);
+            this.throttled = attempts(key, "throttled", meterRegistry);
+            Gauge
+                .builder(METER_PREFIX + ".keys", this, Buckets::size)
+                .description("Buckets held by the login throttle")
+                .tag("key", key)
+                .register(meterRegistry);
+        }
+
+        private static Counter attempts(String key, String result, MeterRegistry meterRegistry) {
+            return Counter
+                .builder(METER_PREFIX + ".attempts")
+                .description("Login attempts admitted, or throttled, by the login throttle")
+                .tag("key", key)
+                .tag("result", result)
+                .register(meterRegistry);
+        }
+
+        private Optional<Duration> acquire(String key, long now) {
+            int hash = key.hashCode();
+            Stripe stripe = stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+            AtomicLong fullAt;
+            synchronized (stripe) {
+                fullAt = stripe.computeIfAbsent(key, k -> new AtomicLong(now));
+            }
+            while (true) {
+                long current = fullAt.get();
+                long next = Math.max(current, now) + interval;
+                long wait = next - now - period;
+                if (wait > 0) {
+                    throttled.increment();
+                    return Optional.of(Duration.ofNanos(wait));
+                }
+                if (fullAt.compareAndSet(current, next)) {
+                    admitted.increment();
+                    return Optional.empty();
+                }
+            }
+        }
+
+        private int size() {
+            int size = 0;
+            for (Stripe stripe : stripes) {
+                synchronized (stripe) {
+                    size += stripe.size();
+                }
+            }
+            return size;
+        }
+    }
+
+    /**
+     * The instants at which the buckets of some keys are full again, in access order.
+     */
+    private static final class Stripe extends LinkedHashMap<String, AtomicLong> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int maxKeys;
+
+        private Stripe(int maxKeys) {
+            super(16, 0.75f, true);
+            this.maxKeys = maxKeys;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, AtomicLong> eldest) {
+            return size() > maxKeys;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package io.github.erp.security;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.time.Duration;
+
+/**
+ * This exception is thrown when a password cannot be hashed, or checked, because the hashing threads are all busy and
+ * their queue is full.
+ */
+public class PasswordHashingBusyException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Duration retryAfter;
+
+    public PasswordHashingBusyException(Duration retryAfter, Throwable cause) {
+        super("Too many passwords are being hashed, retry later", cause);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return the delay after which the client may retry.
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
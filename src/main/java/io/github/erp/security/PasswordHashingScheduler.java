@@ -0,0 +1,152 @@
+package io.github.erp.security;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import io.github.erp.config.ApplicationProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Runs the password hashing, and checking, on a fixed number of threads of its own, so that it neither starves nor is
+ * starved by the other blocking work.
+ * <p>
+ * The passwords wait for a thread in a bounded queue: once it is full, they are rejected at once with a
+ * {@link PasswordHashingBusyException}, rather than piling up until their clients time out.
+ */
+@Component
+public class PasswordHashingScheduler {
+
+    private static final String METER_PREFIX = "security.password-hashing";
+
+    private final ThreadPoolExecutor executor;
+
+    private final Scheduler scheduler;
+
+    private final Duration retryAfter;
+
+    private final Counter rejections;
+
+    public PasswordHashingScheduler(ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
+        ApplicationProperties.PasswordHashing properties = applicationProperties.getPasswordHashing();
+        this.retryAfter = properties.getRetryAfter();
+        Timer hashTime = Timer
+            .builder(METER_PREFIX + ".time")
+            .description("Time taken to hash or check a password")
+            .register(meterRegistry);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor =
+            new TimedThreadPoolExecutor(
+                properties.getThreads(),
+                new ArrayBlockingQueue<>(properties.getQueueCapacity()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hashing-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                hashTime
+            );
+        this.scheduler = Schedulers.fromExecutorService(executor, "password-hashing");
+        this.rejections = Counter.builder(METER_PREFIX + ".rejections").register(meterRegistry);
+        Gauge.builder(METER_PREFIX + ".queue", executor, pool -> pool.getQueue().size()).register(meterRegistry);
+        Gauge.builder(METER_PREFIX + ".active", executor, ThreadPoolExecutor::getActiveCount).register(meterRegistry);
+    }
+
+    /**
+     * Hashes, or checks, a password on a hashing thread.
+     * @param task the hashing.
+     * @param <T> the type of the result of the hashing.
+     * @return the result of the hashing, or a {@link PasswordHashingBusyException} if it was rejected.
+     */
+    public <T> Mono<T> schedule(Callable<T> task) {
+        return onRejection(Mono.fromCallable(task).subscribeOn(scheduler));
+    }
+
+    /**
+     * Maps the rejections of the hashing threads, for the publishers hashing on {@link #getScheduler()}.
+     * @param publisher the publisher hashing a password.
+     * @param <T> the type of the result of the publisher.
+     * @return the publisher, failing with a {@link PasswordHashingBusyException} if the hashing was rejected.
+     */
+    public <T> Mono<T> onRejection(Mono<T> publisher) {
+        return publisher.onErrorMap(
+            RejectedExecutionException.class,
+            e -> {
+                rejections.increment();
+                return new PasswordHashingBusyException(retryAfter, e);
+            }
+        );
+    }
+
+    /**
+     * @return the scheduler of the hashing threads, for the components hashing the passwords themselves.
+     */
+    public Scheduler getScheduler() {
+        return scheduler;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.dispose();
+    }
+
+    /**
+     * Records the time each hashing takes on its thread, the wait in the queue excluded.
+     */
+    private static final class TimedThreadPoolExecutor extends ThreadPoolExecutor {
+
+        private final ThreadLocal<Long> started = new ThreadLocal<>();
+
+        private final Timer hashTime;
+
+        private TimedThreadPoolExecutor(
+            int threads,
+            ArrayBlockingQueue<Runnable> queue,
+            ThreadFactory threadFactory,
+            Timer hashTime
+        ) {
+            super(threads, threads, 0L, TimeUnit.MILLISECONDS, queue, threadFactory, new ThreadPoolExecutor.AbortPolicy());
+            this.hashTime = hashTime;
+        }
+
+        @Override
+        protected void beforeExecute(Thread thread, Runnable runnable) {
+            started.set(System.nanoTime());
+        }
+
+        @Override
+        protected void afterExecute(Runnable runnable, Throwable throwable) {
+            hashTime.record(System.nanoTime() - started.get(), TimeUnit.NANOSECONDS);
+        }
+    }
+}
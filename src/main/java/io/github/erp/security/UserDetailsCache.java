@@ -0,0 +1,196 @@
+package io.github.erp.security;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import io.github.erp.config.ApplicationProperties;
+import io.github.erp.domain.User;
+import io.github.erp.repository.UserRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+
+/**
+ * Caches the users looked up by login, or by email, with their authorities, for the logins and the current account.
+ * <p>
+ * The users are kept in a least recently used cache bounded by the number of lookups it holds, and expire after the
+ * configured time to live; the lookups finding no user are not cached. The user service evicts the users it writes; a
+ * user loaded while a user changed is not cached, as it may predate the change. The users returned are shared by the
+ * lookups, and must not be modified. The cache hits take no database connection: only the loads open a read-only
+ * transaction.
+ */
+@Component
+public class UserDetailsCache {
+
+    private static final String METER_PREFIX = "security.user-details";
+
+    private static final String LOGIN_KEY = "login:";
+
+    private static final String EMAIL_KEY = "email:";
+
+    private final UserRepository userRepository;
+
+    private final TransactionalOperator readOnlyTransactionalOperator;
+
+    private final ApplicationProperties.UserDetailsCache properties;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, CachedUser> users = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long generation;
+
+    public UserDetailsCache(
+        UserRepository userRepository,
+        @Qualifier("readOnlyTransactionalOperator") TransactionalOperator readOnlyTransactionalOperator,
+        ApplicationProperties applicationProperties,
+        MeterRegistry meterRegistry
+    ) {
+        this.userRepository = userRepository;
+        this.readOnlyTransactionalOperator = readOnlyTransactionalOperator;
+        this.properties = applicationProperties.getUserDetailsCache();
+        this.meterRegistry = meterRegistry;
+        Gauge.builder(METER_PREFIX + ".cache.size", this, UserDetailsCache::cacheSize).register(meterRegistry);
+    }
+
+    /**
+     * @param login the login of the user, in lower case.
+     * @return the user, with its authorities, or empty if none has this login.
+     */
+    public Mono<User> findOneWithAuthoritiesByLogin(String login) {
+        return load(LOGIN_KEY + login, () -> userRepository.findOneWithAuthoritiesByLogin(login));
+    }
+
+    /**
+     * @param email the email of the user, whatever its case.
+     * @return the user, with its authorities, or empty if none has this email.
+     */
+    public Mono<User> findOneWithAuthoritiesByEmailIgnoreCase(String email) {
+        return load(EMAIL_KEY + email.toLowerCase(Locale.ENGLISH), () -> userRepository.findOneWithAuthoritiesByEmailIgnoreCase(email));
+    }
+
+    /**
+     * Evicts a user, however it was looked up, after it was written or deleted.
+     *
+     * @param id the id of the user.
+     */
+    public void evict(Long id) {
+        evictMatching(user -> id.equals(user.getId()));
+    }
+
+    /**
+     * Evicts a user by login, after its password hash was written by the authentication.
+     *
+     * @param login the login of the user, in lower case.
+     */
+    public void evictLogin(String login) {
+        evictMatching(user -> login.equals(user.getLogin()));
+    }
+
+    /**
+     * Evicts all the cached users, after writes bypassing the user service.
+     */
+    public synchronized void evictAll() {
+        generation++;
+        users.values().forEach(user -> removed("invalidated"));
+        users.clear();
+    }
+
+    private synchronized void evictMatching(Predicate<User> stale) {
+        generation++;
+        Iterator<CachedUser> cached = users.values().iterator();
+        while (cached.hasNext()) {
+            if (stale.test(cached.next().user)) {
+                cached.remove();
+                removed("invalidated");
+            }
+        }
+    }
+
+    private Mono<User> load(String key, Supplier<Mono<User>> loader) {
+        return Mono.defer(() -> {
+            long loadedGeneration;
+            synchronized (this) {
+                User cached = get(key);
+                if (cached != null) {
+                    meterRegistry.counter(METER_PREFIX + ".cache", "result", "hit").increment();
+                    return Mono.just(cached);
+                }
+                loadedGeneration = generation;
+            }
+            meterRegistry.counter(METER_PREFIX + ".cache", "result", "miss").increment();
+            return readOnlyTransactionalOperator.transactional(loader.get()).doOnNext(user -> cache(key, user, loadedGeneration));
+        });
+    }
+
+    private User get(String key) {
+        CachedUser cached = users.get(key);
+        if (cached == null) {
+            return null;
+        }
+        if (cached.expiresAt - System.nanoTime() <= 0) {
+            users.remove(key);
+            removed("expired");
+            return null;
+        }
+        return cached.user;
+    }
+
+    private synchronized void cache(String key, User user, long loadedGeneration) {
+        Duration ttl = properties.getTtl();
+        if (generation != loadedGeneration || ttl.isZero() || properties.getMaxEntries() < 1) {
+            return;
+        }
+        users.put(key, new CachedUser(user, System.nanoTime() + ttl.toNanos()));
+        Iterator<CachedUser> eldest = users.values().iterator();
+        while (users.size() > properties.getMaxEntries() && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+            removed("size");
+        }
+    }
+
+    private void removed(String cause) {
+        meterRegistry.counter(METER_PREFIX + ".cache.evictions", "cause", cause).increment();
+    }
+
+    private synchronized int cacheSize() {
+        return users.size();
+    }
+
+    private static final class CachedUser {
+
+        private final User user;
+        private final long expiresAt;
+
+        private CachedUser(User user, long expiresAt) {
+            this.user = user;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -18,6 +18,7 @@ package io.github.erp.security.jwt;
  * along with this program. If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.util.Optional;
 import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.ReactiveSecurityContextHolder;
@@ -29,7 +30,7 @@ import reactor.core.publisher.Mono;
 
 /**
  * Filters incoming requests and installs a Spring Security principal if a header corresponding to a valid user is
- * found.
+ * found, and its token is not revoked.
  */
 public class JWTFilter implements WebFilter {
 
@@ -37,16 +38,27 @@ public class JWTFilter implements WebFilter {
 
     private final TokenProvider tokenProvider;
 
-    public JWTFilter(TokenProvider tokenProvider) {
+    private final TokenRevocationList tokenRevocationList;
+
+    public JWTFilter(TokenProvider tokenProvider, TokenRevocationList tokenRevocationList) {
         this.tokenProvider = tokenProvider;
+        this.tokenRevocationList = tokenRevocationList;
     }
 
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
         String jwt = resolveToken(exchange.getRequest());
-        if (StringUtils.hasText(jwt) && this.tokenProvider.validateToken(jwt)) {
-            Authentication authentication = this.tokenProvider.getAuthentication(jwt);
-            return chain.filter(exchange).contextWrite(ReactiveSecurityContextHolder.withAuthentication(authentication));
+        if (StringUtils.hasText(jwt)) {
+            Optional<Authentication> authentication = this.tokenProvider.authenticate(jwt);
+            if (authentication.isPresent()) {
+                return tokenRevocationList
+                    .isRevoked((TokenDetails) authentication.get().getDetails())
+                    .flatMap(revoked ->
+                        revoked
+                            ? chain.filter(exchange)
+                            : chain.filter(exchange).contextWrite(ReactiveSecurityContextHolder.withAuthentication(authentication.get()))
+                    );
+            }
         }
         return chain.filter(exchange);
     }
@@ -0,0 +1,65 @@
+package io.github.erp.security.jwt;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * The claims of a verified token which its revocation depends on, held as the details of its authentication.
+ */
+public final class TokenDetails {
+
+    private final String id;
+
+    private final String login;
+
+    private final Long issuedAt;
+
+    private final long expiresAt;
+
+    public TokenDetails(String id, String login, Long issuedAt, long expiresAt) {
+        this.id = id;
+        this.login = login;
+        this.issuedAt = issuedAt;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * @return the id of the token, null for the tokens issued without one.
+     */
+    public String getId() {
+        return id;
+    }
+
+    public String getLogin() {
+        return login;
+    }
+
+    /**
+     * @return the issue instant of the token, in seconds since the epoch, null for the tokens issued without one.
+     */
+    public Long getIssuedAt() {
+        return issuedAt;
+    }
+
+    /**
+     * @return the expiry of the token, in milliseconds since the epoch.
+     */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+}
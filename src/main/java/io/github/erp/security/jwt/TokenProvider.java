@@ -18,15 +18,20 @@ package io.github.erp.security.jwt;
  * along with this program. If not, see <http://www.gnu.org/licenses/>.
  */
 
+import io.github.erp.config.ApplicationProperties;
 import io.github.erp.management.SecurityMetersService;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.jackson.io.JacksonSerializer;
 import io.jsonwebtoken.security.Keys;
 import io.jsonwebtoken.security.SignatureException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,6 +44,17 @@ import org.springframework.stereotype.Component;
 import org.springframework.util.ObjectUtils;
 import tech.jhipster.config.JHipsterProperties;
 
+/**
+ * Creates and verifies the JWT tokens.
+ * <p>
+ * The tokens verified are cached, by the digest of the token rather than the token itself, until they expire or are
+ * evicted as least recently used, so that the clients calling repeatedly have their token parsed and its signature
+ * checked once. The authorities and principal of a cached token are shared by its requests, the authority lists
+ * being shared by all the tokens bearing the same authorities.
+ * <p>
+ * The tokens are issued with an id and an issue instant, by which they may be revoked, see {@link TokenRevocationList}.
+ * The details of the authentication of a token are its {@link TokenDetails}.
+ */
 @Component
 public class TokenProvider {
 
@@ -58,7 +74,18 @@ public class TokenProvider {
 
     private final SecurityMetersService securityMetersService;
 
-    public TokenProvider(JHipsterProperties jHipsterProperties, SecurityMetersService securityMetersService) {
+    private final int tokenCacheMaxEntries;
+
+    private final Map<ByteBuffer, VerifiedToken> verifiedTokens = new LinkedHashMap<>(16, 0.75f, true);
+
+    // keyed by the authorities claim of verified tokens only, so bounded by the combinations of authorities granted
+    private final Map<String, List<GrantedAuthority>> authoritiesByClaim = new ConcurrentHashMap<>();
+
+    public TokenProvider(
+        JHipsterProperties jHipsterProperties,
+        SecurityMetersService securityMetersService,
+        ApplicationProperties applicationProperties
+    ) {
         byte[] keyBytes;
         String secret = jHipsterProperties.getSecurity().getAuthentication().getJwt().getBase64Secret();
         if (!ObjectUtils.isEmpty(secret)) {
@@ -79,12 +106,14 @@ public class TokenProvider {
             1000 * jHipsterProperties.getSecurity().getAuthentication().getJwt().getTokenValidityInSecondsForRememberMe();
 
         this.securityMetersService = securityMetersService;
+        this.tokenCacheMaxEntries = applicationProperties.getTokenCache().getMaxEntries();
     }
 
     public String createToken(Authentication authentication, boolean rememberMe) {
         String authorities = authentication.getAuthorities().stream().map(GrantedAuthority::getAuthority).collect(Collectors.joining(","));
 
-        long now = (new Date()).getTime();
+        Date issuedAt = new Date();
+        long now = issuedAt.getTime();
         Date validity;
         if (rememberMe) {
             validity = new Date(now + this.tokenValidityInMillisecondsForRememberMe);
@@ -94,6 +123,8 @@ public class TokenProvider {
 
         return Jwts
             .builder()
+            .setId(UUID.randomUUID().toString())
+            .setIssuedAt(issuedAt)
             .setSubject(authentication.getName())
             .claim(AUTHORITIES_KEY, authorities)
             .signWith(key, SignatureAlgorithm.HS512)
@@ -102,25 +133,47 @@ public class TokenProvider {
             .compact();
     }
 
+    /**
+     * Verifies a token and returns its authentication, parsing the token once, or not at all if it was verified
+     * before.
+     * @param token the token presented by the client.
+     * @return the authentication of the token, or empty if the token is not valid.
+     */
+    public Optional<Authentication> authenticate(String token) {
+        ByteBuffer digest = digest(token);
+        VerifiedToken verified = cached(digest);
+        if (verified != null) {
+            this.securityMetersService.trackTokenCacheHit();
+            return Optional.of(toAuthentication(verified.principal, verified.details, token));
+        }
+        this.securityMetersService.trackTokenCacheMiss();
+        long start = System.nanoTime();
+        Claims claims = parseClaims(token);
+        this.securityMetersService.trackTokenVerification(System.nanoTime() - start);
+        if (claims == null) {
+            return Optional.empty();
+        }
+        User principal = toPrincipal(claims);
+        TokenDetails details = toDetails(claims);
+        if (claims.getExpiration() != null) {
+            cache(digest, new VerifiedToken(principal, details));
+        }
+        return Optional.of(toAuthentication(principal, details, token));
+    }
+
     public Authentication getAuthentication(String token) {
         Claims claims = jwtParser.parseClaimsJws(token).getBody();
 
-        Collection<? extends GrantedAuthority> authorities = Arrays
-            .stream(claims.get(AUTHORITIES_KEY).toString().split(","))
-            .filter(auth -> !auth.trim().isEmpty())
-            .map(SimpleGrantedAuthority::new)
-            .collect(Collectors.toList());
-
-        User principal = new User(claims.getSubject(), "", authorities);
-
-        return new UsernamePasswordAuthenticationToken(principal, token, authorities);
+        return toAuthentication(toPrincipal(claims), toDetails(claims), token);
     }
 
     public boolean validateToken(String authToken) {
-        try {
-            jwtParser.parseClaimsJws(authToken);
+        return parseClaims(authToken) != null;
+    }
 
-            return true;
+    private Claims parseClaims(String authToken) {
+        try {
+            return jwtParser.parseClaimsJws(authToken).getBody();
         } catch (ExpiredJwtException e) {
             this.securityMetersService.trackTokenExpired();
 
@@ -141,6 +194,85 @@ public class TokenProvider {
             log.error("Token validation error {}", e.getMessage());
         }
 
-        return false;
+        return null;
+    }
+
+    private static Authentication toAuthentication(User principal, TokenDetails details, String token) {
+        UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
+            principal,
+            token,
+            principal.getAuthorities()
+        );
+        authentication.setDetails(details);
+        return authentication;
+    }
+
+    private TokenDetails toDetails(Claims claims) {
+        // the tokens issued before they carried an id, and an issue instant, are revoked with all those of their login
+        return new TokenDetails(
+            claims.getId(),
+            claims.getSubject(),
+            claims.getIssuedAt() == null ? null : claims.getIssuedAt().getTime() / 1000,
+            claims.getExpiration() == null
+                ? System.currentTimeMillis() + tokenValidityInMillisecondsForRememberMe
+                : claims.getExpiration().getTime()
+        );
+    }
+
+    private User toPrincipal(Claims claims) {
+        return new User(claims.getSubject(), "", authorities(claims.get(AUTHORITIES_KEY).toString()));
+    }
+
+    private List<GrantedAuthority> authorities(String claim) {
+        return authoritiesByClaim.computeIfAbsent(
+            claim,
+            key ->
+                Arrays
+                    .stream(key.split(","))
+                    .filter(auth -> !auth.trim().isEmpty())
+                    .map(SimpleGrantedAuthority::new)
+                    .collect(Collectors.toUnmodifiableList())
+        );
+    }
+
+    private synchronized VerifiedToken cached(ByteBuffer digest) {
+        VerifiedToken verified = verifiedTokens.get(digest);
+        if (verified != null && verified.details.getExpiresAt() <= System.currentTimeMillis()) {
+            verifiedTokens.remove(digest);
+            return null;
+        }
+        return verified;
+    }
+
+    private synchronized void cache(ByteBuffer digest, VerifiedToken verified) {
+        if (tokenCacheMaxEntries <= 0) {
+            return;
+        }
+        verifiedTokens.put(digest, verified);
+        Iterator<VerifiedToken> eldest = verifiedTokens.values().iterator();
+        while (verifiedTokens.size() > tokenCacheMaxEntries && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    private static ByteBuffer digest(String token) {
+        try {
+            return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class VerifiedToken {
+
+        private final User principal;
+
+        private final TokenDetails details;
+
+        private VerifiedToken(User principal, TokenDetails details) {
+            this.principal = principal;
+            this.details = details;
+        }
     }
 }
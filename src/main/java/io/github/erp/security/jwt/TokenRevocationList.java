@@ -0,0 +1,349 @@
+package io.github.erp.security.jwt;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import io.github.erp.config.ApplicationProperties;
+import io.github.erp.repository.TokenRevocationRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import tech.jhipster.config.JHipsterProperties;
+
+/**
+ * Revokes the JWT tokens before they expire, one by one or all the tokens of a login, and tells the JWT filter whether
+ * a token is revoked without reading the database on each request.
+ * <p>
+ * The ids of the revoked tokens are held by a Bloom filter: a token it does not report is not revoked, a token it
+ * reports, revoked or a false positive, is checked against the database, the result being remembered. The revocations
+ * of all the tokens of a login are few, and held exactly. The revocations are read from the database on each poll,
+ * from shortly before the previous one so that none committed late is missed, and the filter is rebuilt from the
+ * database now and then to drop the revocations of the expired tokens. Until the filter is first built, every token
+ * is checked against the database. The revocations of the other instances are applied as soon as they are told of,
+ * see {@link #applyRevocation(Long)}, and at the latest on the next poll.
+ */
+@Component
+public class TokenRevocationList {
+
+    private static final String METER_PREFIX = "security.token-revocation";
+
+    private static final Mono<Boolean> REVOKED = Mono.just(Boolean.TRUE);
+
+    private static final Mono<Boolean> NOT_REVOKED = Mono.just(Boolean.FALSE);
+
+    // the revocations are stamped with the start of their transaction, which commits shortly after
+    private static final Duration POLL_OVERLAP = Duration.ofSeconds(30);
+
+    private final Logger log = LoggerFactory.getLogger(TokenRevocationList.class);
+
+    private final TokenRevocationRepository tokenRevocationRepository;
+
+    private final ApplicationProperties.TokenRevocation properties;
+
+    private final Duration maxTokenValidity;
+
+    private final Timer checkTime;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Boolean> checkedTokens = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long checkedGeneration;
+
+    private volatile BloomFilter revokedTokens;
+
+    private volatile Map<String, Long> revokedSessions = new ConcurrentHashMap<>();
+
+    private LocalDateTime polledSince;
+
+    private long rebuiltAt;
+
+    private Disposable polling;
+
+    public TokenRevocationList(
+        TokenRevocationRepository tokenRevocationRepository,
+        ApplicationProperties applicationProperties,
+        JHipsterProperties jHipsterProperties,
+        MeterRegistry meterRegistry
+    ) {
+        this.tokenRevocationRepository = tokenRevocationRepository;
+        this.properties = applicationProperties.getTokenRevocation();
+        JHipsterProperties.Security.Authentication.Jwt jwt = jHipsterProperties.getSecurity().getAuthentication().getJwt();
+        this.maxTokenValidity = Duration.ofSeconds(Math.max(jwt.getTokenValidityInSeconds(), jwt.getTokenValidityInSecondsForRememberMe()));
+        this.meterRegistry = meterRegistry;
+        this.checkTime =
+            Timer
+                .builder(METER_PREFIX + ".check")
+                .description("Time taken to check in memory whether a token is revoked, the database checks excluded")
+                .register(meterRegistry);
+        Gauge.builder(METER_PREFIX + ".revoked-sessions", this, list -> list.revokedSessions.size()).register(meterRegistry);
+    }
+
+    /**
+     * Checks whether a verified token is revoked, in memory unless the filter reports it.
+     * @param token the details of the token.
+     * @return whether the token is revoked, from the database only if the filter reports it.
+     */
+    public Mono<Boolean> isRevoked(TokenDetails token) {
+        long start = System.nanoTime();
+        Boolean revoked = isRevokedInMemory(token);
+        checkTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (revoked == null) {
+            return checkRevoked(token.getId());
+        }
+        return revoked ? REVOKED : NOT_REVOKED;
+    }
+
+    /**
+     * Revokes the token of an authentication, or all the tokens of its login if the token has no id.
+     * @param authentication the authentication of a token.
+     * @return the id of the revocation recorded, or empty if the authentication is not that of a token, or the token
+     * was already revoked.
+     */
+    public Mono<Long> revoke(Authentication authentication) {
+        if (!(authentication.getDetails() instanceof TokenDetails)) {
+            return Mono.empty();
+        }
+        TokenDetails token = (TokenDetails) authentication.getDetails();
+        if (token.getId() == null) {
+            return revokeSessions(token.getLogin());
+        }
+        return tokenRevocationRepository
+            .revokeToken(token.getId(), token.getLogin(), toUtc(Instant.ofEpochMilli(token.getExpiresAt())))
+            .doOnSuccess(revocationId -> addToken(token.getId()));
+    }
+
+    /**
+     * Revokes all the tokens of a login issued so far, those issued within the current second included.
+     * @param login the login.
+     * @return the id of the revocation recorded.
+     */
+    public Mono<Long> revokeSessions(String login) {
+        return Mono.defer(() -> {
+            Instant now = Instant.now();
+            long issuedUntil = now.getEpochSecond();
+            return tokenRevocationRepository
+                .revokeSessions(login, toUtc(Instant.ofEpochSecond(issuedUntil)), toUtc(now.plus(maxTokenValidity)))
+                .doOnSuccess(revocationId -> addSessions(login, issuedUntil));
+        });
+    }
+
+    /**
+     * Applies a revocation made by another instance, without waiting for the next poll.
+     * @param revocationId the id of the revocation.
+     * @return completes once the revocation is applied, or left to the next poll if it cannot be read.
+     */
+    public Mono<Void> applyRevocation(Long revocationId) {
+        return tokenRevocationRepository
+            .findById(revocationId)
+            .doOnNext(this::add)
+            .then()
+            .onErrorResume(e -> {
+                log.debug("Could not read the token revocation {}, leaving it to the next poll: {}", revocationId, e.getMessage());
+                return Mono.empty();
+            });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (polling != null) {
+            return;
+        }
+        polling =
+            Flux
+                .interval(Duration.ZERO, properties.getPollInterval())
+                .onBackpressureDrop()
+                .concatMap(
+                    tick ->
+                        refresh()
+                            .onErrorResume(e -> {
+                                log.warn("Could not read the token revocations, retrying on the next poll: {}", e.getMessage());
+                                meterRegistry.counter(METER_PREFIX + ".failures").increment();
+                                return Mono.empty();
+                            }),
+                    1
+                )
+                .subscribe();
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (polling != null) {
+            polling.dispose();
+            polling = null;
+        }
+    }
+
+    /**
+     * Rebuilds the filter if it was never built or is due, else reads the revocations made since the previous poll.
+     * @return completes once the revocations are read.
+     */
+    Mono<Void> refresh() {
+        if (revokedTokens == null || System.nanoTime() - rebuiltAt >= properties.getRebuildInterval().toNanos()) {
+            return rebuild();
+        }
+        return poll();
+    }
+
+    private Mono<Void> rebuild() {
+        return tokenRevocationRepository
+            .now()
+            .flatMap(now -> {
+                LocalDateTime utcNow = toUtc(Instant.now());
+                return tokenRevocationRepository
+                    .deleteExpired(utcNow)
+                    .thenMany(tokenRevocationRepository.findUnexpired(utcNow))
+                    .collectList()
+                    .doOnNext(revocations -> replace(revocations, now));
+            })
+            // the revocations this instance made while the filter was rebuilt went to the former filter
+            .then(Mono.defer(this::poll));
+    }
+
+    private void replace(List<TokenRevocationRepository.Revocation> revocations, LocalDateTime now) {
+        long tokens = revocations.stream().filter(revocation -> revocation.getTokenId() != null).count();
+        // sized for the revocations to come too, and at least for the expected ones
+        int expected = (int) Math.min(Integer.MAX_VALUE / 2, Math.max(properties.getExpectedRevocations(), tokens * 2));
+        BloomFilter filter = new BloomFilter(expected, properties.getFalsePositiveProbability());
+        Map<String, Long> sessions = new ConcurrentHashMap<>();
+        for (TokenRevocationRepository.Revocation revocation : revocations) {
+            if (revocation.getTokenId() != null) {
+                filter.add(revocation.getTokenId());
+            } else {
+                sessions.merge(revocation.getLogin(), revocation.getIssuedUntil().toEpochSecond(ZoneOffset.UTC), Math::max);
+            }
+        }
+        revokedSessions = sessions;
+        revokedTokens = filter;
+        synchronized (checkedTokens) {
+            checkedGeneration++;
+            checkedTokens.clear();
+        }
+        rebuiltAt = System.nanoTime();
+        polledSince = now.minus(POLL_OVERLAP);
+        meterRegistry.counter(METER_PREFIX + ".rebuilds").increment();
+    }
+
+    private Mono<Void> poll() {
+        return tokenRevocationRepository
+            .now()
+            .flatMap(now ->
+                tokenRevocationRepository
+                    .findRevokedSince(polledSince)
+                    .doOnNext(this::add)
+                    .then(Mono.fromRunnable(() -> polledSince = now.minus(POLL_OVERLAP)))
+            )
+            .then();
+    }
+
+    private Boolean isRevokedInMemory(TokenDetails token) {
+        Long issuedUntil = revokedSessions.get(token.getLogin());
+        if (issuedUntil != null && (token.getIssuedAt() == null || token.getIssuedAt() <= issuedUntil)) {
+            return Boolean.TRUE;
+        }
+        if (token.getId() == null) {
+            return Boolean.FALSE;
+        }
+        BloomFilter filter = revokedTokens;
+        if (filter != null && !filter.mightContain(token.getId())) {
+            return Boolean.FALSE;
+        }
+        return null;
+    }
+
+    private Mono<Boolean> checkRevoked(String tokenId) {
+        long generation;
+        synchronized (checkedTokens) {
+            Boolean checked = checkedTokens.get(tokenId);
+            if (checked != null) {
+                return checked ? REVOKED : NOT_REVOKED;
+            }
+            generation = checkedGeneration;
+        }
+        return tokenRevocationRepository
+            .isTokenRevoked(tokenId)
+            .doOnNext(revoked -> {
+                meterRegistry.counter(METER_PREFIX + ".database-checks", "result", revoked ? "revoked" : "not-revoked").increment();
+                remember(tokenId, revoked, generation);
+            })
+            .onErrorResume(e -> {
+                // failing closed: the client authenticates again once the database is back
+                log.warn("Could not check whether a token is revoked, rejecting it: {}", e.getMessage());
+                return REVOKED;
+            });
+    }
+
+    private void remember(String tokenId, boolean revoked, long generation) {
+        synchronized (checkedTokens) {
+            // a token revoked while it was checked is not remembered as not revoked
+            if (!revoked && generation != checkedGeneration) {
+                return;
+            }
+            checkedTokens.put(tokenId, revoked);
+            while (checkedTokens.size() > properties.getMaxCheckedTokens()) {
+                checkedTokens.remove(checkedTokens.keySet().iterator().next());
+            }
+        }
+    }
+
+    private void add(TokenRevocationRepository.Revocation revocation) {
+        if (revocation.getTokenId() != null) {
+            addToken(revocation.getTokenId());
+        } else {
+            addSessions(revocation.getLogin(), revocation.getIssuedUntil().toEpochSecond(ZoneOffset.UTC));
+        }
+    }
+
+    private void addToken(String tokenId) {
+        BloomFilter filter = revokedTokens;
+        if (filter != null) {
+            filter.add(tokenId);
+        }
+        synchronized (checkedTokens) {
+            checkedGeneration++;
+            checkedTokens.put(tokenId, Boolean.TRUE);
+        }
+    }
+
+    private void addSessions(String login, long issuedUntil) {
+        revokedSessions.merge(login, issuedUntil, Math::max);
+    }
+
+    private static LocalDateTime toUtc(Instant instant) {
+        return LocalDateTime.ofInstant(instant, ZoneOffset.UTC);
+    }
+}
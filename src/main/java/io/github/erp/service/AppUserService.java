@@ -18,8 +18,13 @@ package io.github.erp.service;
  * along with this program. If not, see <http://www.gnu.org/licenses/>.
  */
 
+import io.github.erp.repository.KeysetCursor;
+import io.github.erp.repository.search.SearchAfterCursor;
+import io.github.erp.repository.search.SearchResult;
 import io.github.erp.service.dto.AppUserDTO;
+import io.github.erp.service.dto.SuggestionDTO;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
@@ -60,25 +65,54 @@ public interface AppUserService {
     Flux<AppUserDTO> findAll(Pageable pageable);
 
     /**
-     * Get all the appUsers with eager load of many-to-many relationships.
+     * Get the page of appUsers following the given keyset cursor.
+     *
+     * @param cursor the position after which to read.
+     * @param pageSize the number of entities to read.
+     * @return the list of entities.
+     */
+    Flux<AppUserDTO> findAllAfter(KeysetCursor cursor, int pageSize);
+
+    /**
+     * Stream all the appUsers, optionally of a single organization, for an export.
+     *
+     * @param organizationId the id of the organization, or {@code null} for all the appUsers.
+     * @return the entities, read from the database as they are requested.
+     */
+    Flux<AppUserDTO> exportAll(Long organizationId);
+
+    /**
+     * Get the appUsers of an organization subtree, at any depth, excluding the organization itself.
      *
+     * @param organizationId the id of the root of the subtree.
      * @param pageable the pagination information.
      * @return the list of entities.
      */
-    Flux<AppUserDTO> findAllWithEagerRelationships(Pageable pageable);
+    Flux<AppUserDTO> findAllInOrganizationSubtree(Long organizationId, Pageable pageable);
 
     /**
-     * Returns the number of appUsers available.
-     * @return the number of entities in the database.
+     * Get the organizations an appUser belongs to, directly or through its own organization.
      *
+     * @param id the id of the entity.
+     * @return the list of entities, nearest first.
      */
-    Mono<Long> countAll();
+    Flux<AppUserDTO> findAncestors(Long id);
 
     /**
-     * Returns the number of appUsers available in search repository.
+     * Get all the appUsers with eager load of many-to-many relationships.
      *
+     * @param pageable the pagination information.
+     * @return the list of entities.
      */
-    Mono<Long> searchCount();
+    Flux<AppUserDTO> findAllWithEagerRelationships(Pageable pageable);
+
+    /**
+     * Returns the number of appUsers available.
+     * @param mode how the appUsers are counted.
+     * @return the number of entities in the database.
+     *
+     */
+    Mono<TotalCount> countAll(CountMode mode);
 
     /**
      * Get the "id" appUser.
@@ -97,12 +131,37 @@ public interface AppUserService {
     Mono<Void> delete(Long id);
 
     /**
-     * Search for the appUser corresponding to the query.
+     * Search for a page of the appUsers corresponding to the query, counted by the same request.
      *
      * @param query the query of the search.
-     *
      * @param pageable the pagination information.
-     * @return the list of entities.
+     * @param mode how the matching appUsers are counted.
+     * @return the page of entities.
+     * @throws IllegalArgumentException if the page reaches past the hits which can be paged by number.
+     */
+    Mono<SearchResult<AppUserDTO>> search(String query, Pageable pageable, CountMode mode);
+
+    /**
+     * Search for the page of the appUsers corresponding to the query which follows a cursor, counted by the same
+     * request. The pages are read from the point in time of the first one.
+     *
+     * @param query the query of the search.
+     * @param sort the sort of the entities, by relevance if unsorted.
+     * @param cursor the cursor of the page.
+     * @param size the number of entities of the page.
+     * @param mode how the matching appUsers are counted.
+     * @return the page of entities, with the cursor of the following one.
+     * @throws IllegalArgumentException if the sort is unknown or the cursor expired.
+     */
+    Mono<SearchResult<AppUserDTO>> searchAfter(String query, Sort sort, SearchAfterCursor cursor, int size, CountMode mode);
+
+    /**
+     * Suggest the app users whose {@code designation} starts with the text typed so far, best matches first.
+     *
+     * @param prefix the text typed so far, matched as text rather than parsed as a query.
+     * @param organizationId the id of the organization to suggest the app users of, or {@code null} for all of them.
+     * @param limit the number of suggestions.
+     * @return the suggestions.
      */
-    Flux<AppUserDTO> search(String query, Pageable pageable);
+    Flux<SuggestionDTO> suggest(String prefix, Long organizationId, int limit);
 }
@@ -0,0 +1,81 @@
+package io.github.erp.service;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import io.github.erp.repository.BulkLoader;
+import io.github.erp.service.dto.BulkImportReportDTO;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Service class for loading seed data and large imports straight into the database.
+ * <p>
+ * The rows bypass the validation of the entity services and are not indexed for search: the index of the table is
+ * rebuilt afterwards, see {@link SearchReindexService}.
+ */
+@Service
+public class BulkLoadService {
+
+    private final Logger log = LoggerFactory.getLogger(BulkLoadService.class);
+
+    private final BulkLoader bulkLoader;
+
+    private final CacheInvalidationBus cacheInvalidationBus;
+
+    public BulkLoadService(BulkLoader bulkLoader, CacheInvalidationBus cacheInvalidationBus) {
+        this.bulkLoader = bulkLoader;
+        this.cacheInvalidationBus = cacheInvalidationBus;
+    }
+
+    /**
+     * Loads CSV records into a table, in a single transaction.
+     *
+     * @param table the name of the table.
+     * @param records the records, the first one being the header with the column names.
+     * @param upsert whether the rows with an existing id replace the stored ones.
+     * @return the report of the load.
+     * @throws IllegalArgumentException if the table cannot be loaded, or the header names unknown columns.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Mono<BulkImportReportDTO> load(String table, Flux<List<String>> records, boolean upsert) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return bulkLoader
+                .load(table, records, upsert)
+                .flatMap(loaded -> cacheInvalidationBus.publishAll().thenReturn(loaded))
+                .map(loaded -> {
+                    long elapsed = System.nanoTime() - start;
+                    BulkImportReportDTO report = new BulkImportReportDTO();
+                    report.setReceived(loaded);
+                    report.setImported(loaded);
+                    report.setElapsedMillis(TimeUnit.NANOSECONDS.toMillis(elapsed));
+                    report.setRowsPerSecond(elapsed > 0 ? loaded * 1e9 / elapsed : 0);
+                    log.info("Bulk loaded {} rows into {}, at {} rows/s", loaded, table, Math.round(report.getRowsPerSecond()));
+                    return report;
+                });
+        });
+    }
+}
@@ -0,0 +1,271 @@
+package io.github.erp.service;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import io.github.erp.repository.InvalidationChannel;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+/**
+ * Service class keeping the in-process caches of the instances of the application coherent, over the database
+ * {@link InvalidationChannel}.
+ * <p>
+ * A write evicts the caches of its own instance, then publishes the changed entity, once its transaction commits: an
+ * eviction made before the commit would let a read of the old rows, made in between, be cached again as current. The
+ * other instances evict their caches on receipt. The invalidations of an instance are numbered, a gap in
+ * the numbers, or a lost listening connection, means some were missed: the subscribers then drop everything they
+ * cache.
+ */
+@Service
+public class CacheInvalidationBus {
+
+    static final String ALL = "*";
+
+    private static final String METER_PREFIX = "service.cache-invalidation";
+
+    private static final String SEPARATOR = " ";
+
+    private final Logger log = LoggerFactory.getLogger(CacheInvalidationBus.class);
+
+    private final InvalidationChannel invalidationChannel;
+
+    private final MeterRegistry meterRegistry;
+
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private final Map<String, List<Subscriber>> subscribers = new ConcurrentHashMap<>();
+
+    private final Map<String, Long> lastSequences = new ConcurrentHashMap<>();
+
+    private final Sinks.Many<String> outbox = Sinks.many().unicast().onBackpressureBuffer();
+
+    private long sequence;
+
+    private boolean listenedBefore;
+
+    private Disposable sending;
+
+    private Disposable listening;
+
+    public CacheInvalidationBus(InvalidationChannel invalidationChannel, MeterRegistry meterRegistry) {
+        this.invalidationChannel = invalidationChannel;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Subscribes a cache to the invalidations of an entity published by the other instances.
+     *
+     * @param entityType the type of the entity.
+     * @param onChange called with the id of a changed entity.
+     * @param onResync called when any entity of the type may have changed.
+     */
+    public void subscribe(Class<?> entityType, Consumer<Long> onChange, Runnable onResync) {
+        subscribers
+            .computeIfAbsent(entityType.getSimpleName(), type -> new CopyOnWriteArrayList<>())
+            .add(new Subscriber(onChange, onResync));
+    }
+
+    /**
+     * Publishes a change to the other instances, once the current transaction commits, or right away outside of a
+     * transaction.
+     *
+     * @param entityType the type of the changed entity.
+     * @param id the id of the changed entity, or null if any entity of the type may have changed.
+     * @return completes once the change is published, or will be on commit.
+     */
+    public Mono<Void> publish(Class<?> entityType, Long id) {
+        return publish(entityType, id, () -> {});
+    }
+
+    /**
+     * Evicts the caches of this instance, and publishes a change to the other instances, once the current transaction
+     * commits, or right away outside of a transaction.
+     *
+     * @param entityType the type of the changed entity.
+     * @param id the id of the changed entity, or null if any entity of the type may have changed.
+     * @param evictLocally evicts the caches of this instance.
+     * @return completes once the change is published, or will be on commit.
+     */
+    public Mono<Void> publish(Class<?> entityType, Long id, Runnable evictLocally) {
+        String invalidation = entityType.getSimpleName() + SEPARATOR + (id == null ? ALL : id.toString());
+        return TransactionHooks.afterCommit(() -> {
+            try {
+                evictLocally.run();
+            } finally {
+                enqueue(invalidation);
+            }
+        });
+    }
+
+    /**
+     * Drops all the caches of this instance, and publishes that any entity may have changed to the other instances,
+     * after writes bypassing the entity services.
+     *
+     * @return completes once the change is published, or will be on commit.
+     */
+    public Mono<Void> publishAll() {
+        return TransactionHooks.afterCommit(() -> {
+            try {
+                resync("local");
+            } finally {
+                enqueue(ALL + SEPARATOR + ALL);
+            }
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (!invalidationChannel.isSupported() || listening != null) {
+            return;
+        }
+        // sent one after the other, the invalidations are received in the order they are numbered
+        sending =
+            outbox
+                .asFlux()
+                .concatMap(invalidation ->
+                    invalidationChannel
+                        .send(instanceId + SEPARATOR + nextSequence() + SEPARATOR + invalidation)
+                        .doOnSuccess(sent -> meterRegistry.counter(METER_PREFIX + ".messages", "direction", "sent").increment())
+                        .onErrorResume(e -> {
+                            log.warn("Could not publish the cache invalidation {}: {}", invalidation, e.getMessage());
+                            return Mono.empty();
+                        })
+                )
+                .subscribe();
+        listening =
+            invalidationChannel
+                .listen(this::onListening)
+                .doOnError(e -> log.warn("Lost the cache invalidation channel, listening again: {}", e.getMessage()))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofMinutes(1)))
+                .repeatWhen(completed -> completed.delayElements(Duration.ofSeconds(1)))
+                .subscribe(this::receive);
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (listening != null) {
+            listening.dispose();
+            sending.dispose();
+            listening = null;
+            sending = null;
+        }
+    }
+
+    synchronized void onListening() {
+        lastSequences.clear();
+        if (listenedBefore) {
+            log.info("Listening to the cache invalidation channel again, dropping the caches");
+            resync("reconnect");
+        }
+        listenedBefore = true;
+    }
+
+    void receive(String message) {
+        String[] parts = message.split(SEPARATOR, 4);
+        if (parts.length != 4) {
+            log.warn("Ignoring the malformed cache invalidation {}", message);
+            return;
+        }
+        if (instanceId.equals(parts[0])) {
+            return;
+        }
+        meterRegistry.counter(METER_PREFIX + ".messages", "direction", "received").increment();
+        long received;
+        try {
+            received = Long.parseLong(parts[1]);
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring the malformed cache invalidation {}", message);
+            return;
+        }
+        Long last = lastSequences.put(parts[0], received);
+        if (last != null && received != last + 1) {
+            log.info("Missed cache invalidations of instance {}, dropping the caches", parts[0]);
+            resync("gap");
+            return;
+        }
+        dispatch(parts[2], parts[3]);
+    }
+
+    private void dispatch(String entityType, String id) {
+        if (ALL.equals(entityType)) {
+            resync("publisher");
+            return;
+        }
+        for (Subscriber subscriber : subscribers.getOrDefault(entityType, List.of())) {
+            try {
+                if (ALL.equals(id)) {
+                    subscriber.onResync.run();
+                } else {
+                    subscriber.onChange.accept(Long.valueOf(id));
+                }
+            } catch (RuntimeException e) {
+                log.warn("Could not apply the invalidation of {} {}: {}", entityType, id, e.getMessage());
+            }
+        }
+    }
+
+    private void resync(String cause) {
+        meterRegistry.counter(METER_PREFIX + ".resyncs", "cause", cause).increment();
+        subscribers.values().forEach(typeSubscribers -> typeSubscribers.forEach(subscriber -> subscriber.onResync.run()));
+    }
+
+    private void enqueue(String invalidation) {
+        if (!invalidationChannel.isSupported()) {
+            return;
+        }
+        Sinks.EmitResult result;
+        synchronized (outbox) {
+            result = outbox.tryEmitNext(invalidation);
+        }
+        if (result.isFailure()) {
+            log.warn("Could not queue the cache invalidation {}: {}", invalidation, result);
+        }
+    }
+
+    private synchronized long nextSequence() {
+        return ++sequence;
+    }
+
+    private static final class Subscriber {
+
+        private final Consumer<Long> onChange;
+        private final Runnable onResync;
+
+        private Subscriber(Consumer<Long> onChange, Runnable onResync) {
+            this.onChange = onChange;
+            this.onResync = onResync;
+        }
+    }
+}
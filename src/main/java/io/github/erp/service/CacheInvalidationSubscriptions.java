@@ -0,0 +1,78 @@
+package io.github.erp.service;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import io.github.erp.domain.AppUser;
+import io.github.erp.domain.Authority;
+import io.github.erp.domain.Placeholder;
+import io.github.erp.domain.User;
+import io.github.erp.repository.TokenRevocationRepository.Revocation;
+import io.github.erp.security.UserDetailsCache;
+import io.github.erp.security.jwt.TokenRevocationList;
+import org.springframework.stereotype.Component;
+
+/**
+ * Subscribes the in-process caches to the invalidations published by the other instances, see
+ * {@link CacheInvalidationBus}.
+ */
+@Component
+public class CacheInvalidationSubscriptions {
+
+    public CacheInvalidationSubscriptions(
+        CacheInvalidationBus cacheInvalidationBus,
+        CountService countService,
+        PlaceholderResolutionService placeholderResolutionService,
+        PlaceholderLookupService placeholderLookupService,
+        UserDetailsCache userDetailsCache,
+        TokenRevocationList tokenRevocationList,
+        UserService userService
+    ) {
+        // the organization of a remotely changed placeholder is read back by the lookup cache
+        cacheInvalidationBus.subscribe(
+            Placeholder.class,
+            id -> {
+                countService.evict(Placeholder.class);
+                placeholderResolutionService.evict(id);
+                placeholderLookupService.evictWritten(id).subscribe();
+            },
+            () -> {
+                countService.evict(Placeholder.class);
+                placeholderResolutionService.evictAll();
+                placeholderLookupService.evictAll();
+            }
+        );
+        // the cached placeholders embed the designation of their organization
+        cacheInvalidationBus.subscribe(
+            AppUser.class,
+            id -> {
+                countService.evict(AppUser.class);
+                placeholderLookupService.evictOrganization(id);
+            },
+            () -> {
+                countService.evict(AppUser.class);
+                placeholderLookupService.evictAll();
+            }
+        );
+        cacheInvalidationBus.subscribe(User.class, userDetailsCache::evict, userDetailsCache::evictAll);
+        // the authorities are identified by their name, any change drops the whole snapshot
+        cacheInvalidationBus.subscribe(Authority.class, id -> userService.evictAuthorities(), userService::evictAuthorities);
+        // the revocations missed are read by the next poll of the revocation list
+        cacheInvalidationBus.subscribe(Revocation.class, id -> tokenRevocationList.applyRevocation(id).subscribe(), () -> {});
+    }
+}
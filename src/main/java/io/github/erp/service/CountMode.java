@@ -0,0 +1,63 @@
+package io.github.erp.service;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Locale;
+
+/**
+ * How the total count of a paginated listing is computed.
+ */
+public enum CountMode {
+    /**
+     * The exact count, served from a short-lived cache evicted by the writes.
+     */
+    EXACT,
+
+    /**
+     * A fast estimate, from the database statistics or the search index.
+     */
+    ESTIMATE,
+
+    /**
+     * No count at all, the listing only tells whether a next page may exist.
+     */
+    NONE;
+
+    /**
+     * @return the value of the mode in request parameters and response headers.
+     */
+    public String getValue() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Parses a mode, as sent in request parameters.
+     * @param value the value of the mode, case insensitive.
+     * @return the mode.
+     * @throws IllegalArgumentException if the value names no mode.
+     */
+    public static CountMode fromValue(String value) {
+        for (CountMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(value)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Unknown count mode " + value);
+    }
+}
@@ -0,0 +1,187 @@
+package io.github.erp.service;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import io.github.erp.config.ApplicationProperties;
+import io.github.erp.repository.search.PagedSearchTemplate;
+import io.github.erp.repository.search.SearchResult;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+/**
+ * Service class computing the total counts of the paginated listings, in the {@link CountMode} asked by the client.
+ * <p>
+ * Exact counts of whole tables are cached per entity for a short while, and evicted by the writes changing the number
+ * of rows. A count started before an eviction is not cached when it completes, so the cache never serves a count
+ * older than the last eviction.
+ */
+@Service
+public class CountService {
+
+    static final String METER_PREFIX = "service.count";
+
+    private final ApplicationProperties applicationProperties;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<Class<?>, CachedCount> cache = new ConcurrentHashMap<>();
+
+    private final Map<Class<?>, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    public CountService(ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
+        this.applicationProperties = applicationProperties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Resolves the count mode of a request.
+     * @param value the mode sent by the client, or null for the configured default.
+     * @return the mode.
+     * @throws IllegalArgumentException if the value names no mode.
+     */
+    public CountMode resolveMode(String value) {
+        return CountMode.fromValue(value != null ? value : applicationProperties.getCount().getDefaultMode());
+    }
+
+    /**
+     * Counts all the rows of an entity, caching the exact counts.
+     * @param entityType the entity class, the key of the cached count.
+     * @param mode the count mode.
+     * @param exactCount counts the rows exactly.
+     * @param estimatedCount estimates the number of rows, it may be empty when no estimate is available, in which case
+     * the exact count is returned.
+     * @return the total count.
+     */
+    public Mono<TotalCount> countAll(
+        Class<?> entityType,
+        CountMode mode,
+        Supplier<Mono<Long>> exactCount,
+        Supplier<Mono<Long>> estimatedCount
+    ) {
+        return count(mode, () -> cachedCount(entityType, exactCount), estimatedCount);
+    }
+
+    /**
+     * Counts the rows of a query, which is never cached.
+     * @param mode the count mode.
+     * @param exactCount counts the rows exactly.
+     * @param estimatedCount estimates the number of rows, it may be empty when no estimate is available, in which case
+     * the exact count is returned.
+     * @return the total count.
+     */
+    public Mono<TotalCount> count(CountMode mode, Supplier<Mono<Long>> exactCount, Supplier<Mono<Long>> estimatedCount) {
+        meterRegistry.counter(METER_PREFIX + ".requests", "mode", mode.getValue()).increment();
+        switch (mode) {
+            case NONE:
+                return Mono.just(TotalCount.none());
+            case ESTIMATE:
+                return Mono
+                    .defer(estimatedCount)
+                    .map(TotalCount::estimate)
+                    .switchIfEmpty(Mono.defer(exactCount).map(TotalCount::exact));
+            default:
+                return Mono.defer(exactCount).map(TotalCount::exact);
+        }
+    }
+
+    /**
+     * Resolves the hits a search counts in a count mode, the total being returned along with the page of hits.
+     * @param mode the count mode.
+     * @return the hits to count.
+     */
+    public int trackTotalHits(CountMode mode) {
+        meterRegistry.counter(METER_PREFIX + ".requests", "mode", mode.getValue()).increment();
+        switch (mode) {
+            case NONE:
+                return PagedSearchTemplate.TRACK_NO_HITS;
+            case ESTIMATE:
+                return applicationProperties.getSearch().getEstimateTrackTotalHits();
+            default:
+                return PagedSearchTemplate.TRACK_ALL_HITS;
+        }
+    }
+
+    /**
+     * @param result a page of search hits.
+     * @return the total count of the search, exact when every hit was counted.
+     */
+    public static TotalCount totalOf(SearchResult<?> result) {
+        if (result.getTotalHits() == null) {
+            return TotalCount.none();
+        }
+        return result.isTotalHitsExact() ? TotalCount.exact(result.getTotalHits()) : TotalCount.estimate(result.getTotalHits());
+    }
+
+    /**
+     * Evicts the cached count of an entity, after a write changing its number of rows.
+     * @param entityType the entity class.
+     */
+    public void evict(Class<?> entityType) {
+        generation(entityType).incrementAndGet();
+        cache.remove(entityType);
+    }
+
+    /**
+     * Evicts all the cached counts, after a write bypassing the entity services.
+     */
+    public void evictAll() {
+        generations.values().forEach(AtomicLong::incrementAndGet);
+        cache.clear();
+    }
+
+    private Mono<Long> cachedCount(Class<?> entityType, Supplier<Mono<Long>> exactCount) {
+        long generation = generation(entityType).get();
+        CachedCount cached = cache.get(entityType);
+        if (cached != null && cached.generation == generation && cached.expiresAt - System.nanoTime() > 0) {
+            meterRegistry.counter(METER_PREFIX + ".cache", "result", "hit").increment();
+            return Mono.just(cached.value);
+        }
+        meterRegistry.counter(METER_PREFIX + ".cache", "result", "miss").increment();
+        long ttl = applicationProperties.getCount().getCacheTtl().toNanos();
+        return exactCount
+            .get()
+            .doOnNext(value -> {
+                if (generation(entityType).get() == generation) {
+                    cache.put(entityType, new CachedCount(value, generation, System.nanoTime() + ttl));
+                }
+            });
+    }
+
+    private AtomicLong generation(Class<?> entityType) {
+        return generations.computeIfAbsent(entityType, type -> new AtomicLong());
+    }
+
+    private static final class CachedCount {
+
+        private final long value;
+        private final long generation;
+        private final long expiresAt;
+
+        private CachedCount(long value, long generation, long expiresAt) {
+            this.value = value;
+            this.generation = generation;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
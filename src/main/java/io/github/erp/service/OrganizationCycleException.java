@@ -0,0 +1,31 @@
+package io.github.erp.service;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Thrown when an AppUser would be placed under an organisation of its own subtree.
+ */
+public class OrganizationCycleException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public OrganizationCycleException(Long id, Long organizationId) {
+        super("AppUser " + id + " cannot belong to organization " + organizationId + " which is part of its own subtree");
+    }
+}
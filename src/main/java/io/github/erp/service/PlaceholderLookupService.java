@@ -0,0 +1,362 @@
+package io.github.erp.service;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import io.github.erp.config.ApplicationProperties;
+import io.github.erp.repository.PlaceholderRepository;
+import io.github.erp.service.dto.PlaceholderDTO;
+import io.github.erp.service.mapper.PlaceholderMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Service class looking placeholders up by organization and placeholder index, the way they are read as configuration
+ * keys.
+ * <p>
+ * The lookups, including those finding nothing, are kept in a least recently used cache bounded by the number of
+ * placeholders it holds, and expire after the configured time to live. A lookup of all the placeholders of an
+ * organization also serves the lookups of its single keys. The cached placeholders embed the value of their archetype
+ * and the designation of their organization: each lookup is indexed by its organization, and by the placeholders and
+ * archetypes it holds, so that a write evicts the lookups depending on it without scanning the others. A lookup loaded
+ * while a placeholder changed is not cached, as it may predate the change. The cache hits take no database connection:
+ * only the loads open a read-only transaction.
+ */
+@Service
+public class PlaceholderLookupService {
+
+    private static final String METER_PREFIX = "service.placeholder-lookup";
+
+    private static final Comparator<PlaceholderDTO> BY_ID = Comparator.comparing(PlaceholderDTO::getId);
+
+    private final Logger log = LoggerFactory.getLogger(PlaceholderLookupService.class);
+
+    private final PlaceholderRepository placeholderRepository;
+
+    private final PlaceholderMapper placeholderMapper;
+
+    private final TransactionalOperator readOnlyTransactionalOperator;
+
+    private final ApplicationProperties applicationProperties;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<LookupKey, CachedLookup> lookups = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Map<Long, Set<LookupKey>> lookupsByOrganization = new HashMap<>();
+
+    private final Map<Long, Set<LookupKey>> lookupsByPlaceholder = new HashMap<>();
+
+    private int cachedPlaceholders;
+
+    private long generation;
+
+    public PlaceholderLookupService(
+        PlaceholderRepository placeholderRepository,
+        PlaceholderMapper placeholderMapper,
+        @Qualifier("readOnlyTransactionalOperator") TransactionalOperator readOnlyTransactionalOperator,
+        ApplicationProperties applicationProperties,
+        MeterRegistry meterRegistry
+    ) {
+        this.placeholderRepository = placeholderRepository;
+        this.placeholderMapper = placeholderMapper;
+        this.readOnlyTransactionalOperator = readOnlyTransactionalOperator;
+        this.applicationProperties = applicationProperties;
+        this.meterRegistry = meterRegistry;
+        Gauge.builder(METER_PREFIX + ".cache.size", this, PlaceholderLookupService::cacheSize).register(meterRegistry);
+    }
+
+    /**
+     * Look a placeholder up by its organization and index, which is unique within the organization.
+     *
+     * @param organizationId the id of the organization.
+     * @param placeholderIndex the index of the placeholder.
+     * @return the placeholder, or empty if the organization has none with this index.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Mono<PlaceholderDTO> lookup(Long organizationId, String placeholderIndex) {
+        log.debug("Request to look Placeholder {} of organization {} up", placeholderIndex, organizationId);
+        return load(new LookupKey(organizationId, placeholderIndex))
+            .flatMap(placeholders -> placeholders.isEmpty() ? Mono.empty() : Mono.just(placeholders.get(0)));
+    }
+
+    /**
+     * Look all the placeholders of an organization up.
+     *
+     * @param organizationId the id of the organization.
+     * @return the placeholders, ordered by id.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Flux<PlaceholderDTO> lookupAll(Long organizationId) {
+        log.debug("Request to look all the Placeholders of organization {} up", organizationId);
+        return load(new LookupKey(organizationId, null)).flatMapIterable(placeholders -> placeholders);
+    }
+
+    /**
+     * Evicts the lookups a write to a placeholder may have changed: those of its organization, and those holding the
+     * placeholder or a placeholder it is the archetype of, in case it moved to another organization, was deleted, or
+     * changed the value they embed.
+     *
+     * @param id the id of the placeholder.
+     * @param organizationId the id of the organization of the placeholder once written, or null if unknown.
+     */
+    public synchronized void evict(Long id, Long organizationId) {
+        generation++;
+        if (organizationId != null) {
+            remove(lookupsByOrganization.get(organizationId));
+        }
+        if (id != null) {
+            remove(lookupsByPlaceholder.get(id));
+        }
+    }
+
+    /**
+     * Evicts the lookups of an organization, after placeholders were added to it, or after the organization changed the
+     * designation they embed.
+     *
+     * @param organizationId the id of the organization.
+     */
+    public void evictOrganization(Long organizationId) {
+        evict(null, organizationId);
+    }
+
+    /**
+     * Evicts the lookups a write to a placeholder, made by another instance, may have changed. The invalidation only
+     * carries the id of the placeholder: its organization is read back, and all the lookups are evicted if it cannot be.
+     *
+     * @param id the id of the placeholder.
+     * @return completes once the lookups are evicted.
+     */
+    public Mono<Void> evictWritten(Long id) {
+        evict(id, null);
+        return placeholderRepository
+            .findById(id)
+            .doOnNext(placeholder -> evictOrganization(placeholder.getOrganizationId()))
+            .then()
+            .onErrorResume(e -> {
+                log.warn("Could not read back the organization of Placeholder {}, evicting all the lookups: {}", id, e.getMessage());
+                evictAll();
+                return Mono.empty();
+            });
+    }
+
+    /**
+     * Evicts all the cached lookups, after writes bypassing the placeholder service.
+     */
+    public synchronized void evictAll() {
+        generation++;
+        lookups.values().forEach(lookup -> removed(lookup, "invalidated"));
+        lookups.clear();
+        lookupsByOrganization.clear();
+        lookupsByPlaceholder.clear();
+    }
+
+    private Mono<List<PlaceholderDTO>> load(LookupKey key) {
+        return Mono.defer(() -> {
+            long loadedGeneration;
+            synchronized (this) {
+                List<PlaceholderDTO> cached = cached(key);
+                if (cached != null) {
+                    meterRegistry.counter(METER_PREFIX + ".cache", "result", "hit").increment();
+                    return Mono.just(cached);
+                }
+                loadedGeneration = generation;
+            }
+            meterRegistry.counter(METER_PREFIX + ".cache", "result", "miss").increment();
+            return readOnlyTransactionalOperator
+                .transactional(
+                    placeholderRepository
+                        .lookupByOrganization(key.organizationId, key.placeholderIndex)
+                        .map(placeholderMapper::toDto)
+                        .collectSortedList(BY_ID)
+                )
+                .doOnNext(placeholders -> cache(key, placeholders, loadedGeneration));
+        });
+    }
+
+    private List<PlaceholderDTO> cached(LookupKey key) {
+        List<PlaceholderDTO> cached = get(key);
+        if (cached == null && key.placeholderIndex != null) {
+            List<PlaceholderDTO> organization = get(new LookupKey(key.organizationId, null));
+            if (organization != null) {
+                cached =
+                    organization
+                        .stream()
+                        .filter(placeholder -> key.placeholderIndex.equals(placeholder.getPlaceholderIndex()))
+                        .collect(Collectors.toList());
+            }
+        }
+        return cached;
+    }
+
+    private List<PlaceholderDTO> get(LookupKey key) {
+        CachedLookup cached = lookups.get(key);
+        if (cached == null) {
+            return null;
+        }
+        if (cached.expiresAt - System.nanoTime() <= 0) {
+            remove(key, "expired");
+            return null;
+        }
+        return cached.placeholders;
+    }
+
+    private synchronized void cache(LookupKey key, List<PlaceholderDTO> placeholders, long loadedGeneration) {
+        int maxEntries = applicationProperties.getPlaceholderLookup().getMaxEntries();
+        if (generation != loadedGeneration || weight(placeholders) > maxEntries) {
+            return;
+        }
+        CachedLookup lookup = new CachedLookup(
+            placeholders,
+            System.nanoTime() + applicationProperties.getPlaceholderLookup().getTtl().toNanos()
+        );
+        CachedLookup previous = lookups.put(key, lookup);
+        if (previous != null) {
+            unlink(key, previous);
+            cachedPlaceholders -= weight(previous.placeholders);
+        }
+        link(key, lookup);
+        cachedPlaceholders += weight(placeholders);
+        Iterator<Map.Entry<LookupKey, CachedLookup>> eldest = lookups.entrySet().iterator();
+        while (cachedPlaceholders > maxEntries && eldest.hasNext()) {
+            Map.Entry<LookupKey, CachedLookup> evicted = eldest.next();
+            eldest.remove();
+            unlink(evicted.getKey(), evicted.getValue());
+            removed(evicted.getValue(), "size");
+        }
+    }
+
+    private void remove(Set<LookupKey> keys) {
+        if (keys != null) {
+            // copied, as removing a lookup unlinks it from the set
+            for (LookupKey key : new ArrayList<>(keys)) {
+                remove(key, "invalidated");
+            }
+        }
+    }
+
+    private void remove(LookupKey key, String cause) {
+        CachedLookup lookup = lookups.remove(key);
+        if (lookup != null) {
+            unlink(key, lookup);
+            removed(lookup, cause);
+        }
+    }
+
+    private void link(LookupKey key, CachedLookup lookup) {
+        lookupsByOrganization.computeIfAbsent(key.organizationId, id -> new HashSet<>()).add(key);
+        for (PlaceholderDTO placeholder : lookup.placeholders) {
+            lookupsByPlaceholder.computeIfAbsent(placeholder.getId(), id -> new HashSet<>()).add(key);
+            if (placeholder.getArchetype() != null) {
+                lookupsByPlaceholder.computeIfAbsent(placeholder.getArchetype().getId(), id -> new HashSet<>()).add(key);
+            }
+        }
+    }
+
+    private void unlink(LookupKey key, CachedLookup lookup) {
+        unlink(lookupsByOrganization, key.organizationId, key);
+        for (PlaceholderDTO placeholder : lookup.placeholders) {
+            unlink(lookupsByPlaceholder, placeholder.getId(), key);
+            if (placeholder.getArchetype() != null) {
+                unlink(lookupsByPlaceholder, placeholder.getArchetype().getId(), key);
+            }
+        }
+    }
+
+    private static void unlink(Map<Long, Set<LookupKey>> index, Long id, LookupKey key) {
+        Set<LookupKey> keys = index.get(id);
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                index.remove(id);
+            }
+        }
+    }
+
+    private void removed(CachedLookup lookup, String cause) {
+        cachedPlaceholders -= weight(lookup.placeholders);
+        meterRegistry.counter(METER_PREFIX + ".cache.evictions", "cause", cause).increment();
+    }
+
+    private static int weight(List<PlaceholderDTO> placeholders) {
+        return Math.max(1, placeholders.size());
+    }
+
+    private synchronized int cacheSize() {
+        return cachedPlaceholders;
+    }
+
+    private static final class LookupKey {
+
+        private final Long organizationId;
+        private final String placeholderIndex;
+
+        private LookupKey(Long organizationId, String placeholderIndex) {
+            this.organizationId = organizationId;
+            this.placeholderIndex = placeholderIndex;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof LookupKey)) {
+                return false;
+            }
+            LookupKey that = (LookupKey) o;
+            return Objects.equals(organizationId, that.organizationId) && Objects.equals(placeholderIndex, that.placeholderIndex);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(organizationId, placeholderIndex);
+        }
+    }
+
+    private static final class CachedLookup {
+
+        private final List<PlaceholderDTO> placeholders;
+        private final long expiresAt;
+
+        private CachedLookup(List<PlaceholderDTO> placeholders, long expiresAt) {
+            this.placeholders = placeholders;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package io.github.erp.service;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import io.github.erp.domain.Placeholder;
+import io.github.erp.repository.PlaceholderRepository;
+import io.github.erp.service.dto.PlaceholderDTO;
+import io.github.erp.service.dto.ResolvedPlaceholderDTO;
+import io.github.erp.service.mapper.PlaceholderMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+
+/**
+ * Service class resolving placeholders through their chain of archetypes.
+ * <p>
+ * A chain is loaded with a single recursive query, and the resolved placeholders are kept in a bounded, least recently
+ * used cache. Each cached resolution is indexed by all the placeholders of its chain, so that a change to any of them
+ * evicts it. A resolution loaded while a placeholder changed is not cached, as it may predate the change. The cache
+ * hits take no database connection: only the loads of the chains open a read-only transaction.
+ */
+@Service
+public class PlaceholderResolutionService {
+
+    static final int MAX_CHAIN_DEPTH = 100;
+
+    static final int MAX_CACHED_RESOLUTIONS = 10000;
+
+    private static final String METER_PREFIX = "service.placeholder-resolution";
+
+    private final Logger log = LoggerFactory.getLogger(PlaceholderResolutionService.class);
+
+    private final PlaceholderRepository placeholderRepository;
+
+    private final PlaceholderMapper placeholderMapper;
+
+    private final TransactionalOperator readOnlyTransactionalOperator;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<Long, ResolvedPlaceholderDTO> resolutions = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, ResolvedPlaceholderDTO> eldest) {
+            if (size() <= MAX_CACHED_RESOLUTIONS) {
+                return false;
+            }
+            unlink(eldest.getValue());
+            return true;
+        }
+    };
+
+    private final Map<Long, Set<Long>> resolutionsByLink = new HashMap<>();
+
+    private long generation;
+
+    public PlaceholderResolutionService(
+        PlaceholderRepository placeholderRepository,
+        PlaceholderMapper placeholderMapper,
+        @Qualifier("readOnlyTransactionalOperator") TransactionalOperator readOnlyTransactionalOperator,
+        MeterRegistry meterRegistry
+    ) {
+        this.placeholderRepository = placeholderRepository;
+        this.placeholderMapper = placeholderMapper;
+        this.readOnlyTransactionalOperator = readOnlyTransactionalOperator;
+        this.meterRegistry = meterRegistry;
+        Gauge.builder(METER_PREFIX + ".cache.size", this, PlaceholderResolutionService::cacheSize).register(meterRegistry);
+    }
+
+    /**
+     * Resolve a placeholder through its chain of archetypes.
+     *
+     * @param id the id of the placeholder.
+     * @return the resolved placeholder, or empty if it does not exist.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Mono<ResolvedPlaceholderDTO> resolve(Long id) {
+        log.debug("Request to resolve Placeholder : {}", id);
+        return Mono.defer(() -> {
+            long loadedGeneration;
+            synchronized (this) {
+                ResolvedPlaceholderDTO cached = resolutions.get(id);
+                if (cached != null) {
+                    meterRegistry.counter(METER_PREFIX + ".cache", "result", "hit").increment();
+                    return Mono.just(cached);
+                }
+                loadedGeneration = generation;
+            }
+            meterRegistry.counter(METER_PREFIX + ".cache", "result", "miss").increment();
+            return readOnlyTransactionalOperator
+                .transactional(placeholderRepository.findArchetypeChain(id, MAX_CHAIN_DEPTH).collectList())
+                .filter(chain -> !chain.isEmpty())
+                .map(this::resolve)
+                .doOnNext(resolved -> cache(resolved, loadedGeneration));
+        });
+    }
+
+    /**
+     * Evicts the cached resolutions going through a placeholder, after it changed or was deleted.
+     *
+     * @param id the id of the placeholder.
+     */
+    public synchronized void evict(Long id) {
+        generation++;
+        Set<Long> heads = resolutionsByLink.remove(id);
+        if (heads != null) {
+            for (Long head : heads) {
+                ResolvedPlaceholderDTO resolved = resolutions.remove(head);
+                if (resolved != null) {
+                    unlink(resolved);
+                }
+            }
+        }
+    }
+
+    /**
+     * Evicts all the cached resolutions, after writes bypassing the placeholder service.
+     */
+    public synchronized void evictAll() {
+        generation++;
+        resolutions.clear();
+        resolutionsByLink.clear();
+    }
+
+    private ResolvedPlaceholderDTO resolve(List<Placeholder> chain) {
+        ResolvedPlaceholderDTO resolved = new ResolvedPlaceholderDTO();
+        Placeholder head = chain.get(0);
+        resolved.setId(head.getId());
+        resolved.setPlaceholderIndex(head.getPlaceholderIndex());
+        Set<Long> visited = new HashSet<>();
+        for (Placeholder link : chain) {
+            if (!visited.add(link.getId())) {
+                resolved.setCyclic(true);
+                break;
+            }
+            resolved.getChain().add(placeholderMapper.toDto(link));
+            if (resolved.getValueSourceId() == null && link.getPlaceholderValue() != null) {
+                resolved.setEffectiveValue(link.getPlaceholderValue());
+                resolved.setValueSourceId(link.getId());
+            }
+        }
+        if (resolved.isCyclic()) {
+            log.warn("The archetypes of Placeholder {} form a cycle", head.getId());
+        }
+        return resolved;
+    }
+
+    private synchronized void cache(ResolvedPlaceholderDTO resolved, long loadedGeneration) {
+        if (generation != loadedGeneration) {
+            return;
+        }
+        ResolvedPlaceholderDTO previous = resolutions.put(resolved.getId(), resolved);
+        if (previous != null) {
+            unlink(previous);
+        }
+        for (PlaceholderDTO link : resolved.getChain()) {
+            resolutionsByLink.computeIfAbsent(link.getId(), key -> new HashSet<>()).add(resolved.getId());
+        }
+    }
+
+    private void unlink(ResolvedPlaceholderDTO resolved) {
+        for (PlaceholderDTO link : resolved.getChain()) {
+            Set<Long> heads = resolutionsByLink.get(link.getId());
+            if (heads != null) {
+                heads.remove(resolved.getId());
+                if (heads.isEmpty()) {
+                    resolutionsByLink.remove(link.getId());
+                }
+            }
+        }
+    }
+
+    private synchronized int cacheSize() {
+        return resolutions.size();
+    }
+}
@@ -18,8 +18,15 @@ package io.github.erp.service;
  * along with this program. If not, see <http://www.gnu.org/licenses/>.
  */
 
+import io.github.erp.repository.KeysetCursor;
+import io.github.erp.repository.search.SearchAfterCursor;
+import io.github.erp.repository.search.SearchResult;
+import io.github.erp.service.dto.BulkImportReportDTO;
 import io.github.erp.service.dto.PlaceholderDTO;
+import io.github.erp.service.dto.SuggestionDTO;
+import java.util.List;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
@@ -60,25 +67,67 @@ public interface PlaceholderService {
     Flux<PlaceholderDTO> findAll(Pageable pageable);
 
     /**
-     * Get all the placeholders with eager load of many-to-many relationships.
+     * Get the page of placeholders following the given keyset cursor.
+     *
+     * @param cursor the position after which to read.
+     * @param pageSize the number of entities to read.
+     * @return the list of entities.
+     */
+    Flux<PlaceholderDTO> findAllAfter(KeysetCursor cursor, int pageSize);
+
+    /**
+     * Stream all the placeholders, optionally of a single organization, for an export.
+     *
+     * @param organizationId the id of the organization, or {@code null} for all the placeholders.
+     * @return the entities, read from the database as they are requested.
+     */
+    Flux<PlaceholderDTO> exportAll(Long organizationId);
+
+    /**
+     * Get the placeholders of every organization of a subtree, the root organization included.
      *
+     * @param organizationId the id of the root of the subtree.
      * @param pageable the pagination information.
      * @return the list of entities.
      */
-    Flux<PlaceholderDTO> findAllWithEagerRelationships(Pageable pageable);
+    Flux<PlaceholderDTO> findAllInOrganizationSubtree(Long organizationId, Pageable pageable);
 
     /**
-     * Returns the number of placeholders available.
-     * @return the number of entities in the database.
+     * Import new placeholders, inserting and indexing them by batches, each batch in its own transaction. A row
+     * which cannot be imported is reported, and does not prevent the other rows from being imported.
+     *
+     * @param placeholderDTOs the placeholders to import.
+     * @param batchSize the number of placeholders per batch.
+     * @return the report of the import.
+     */
+    Mono<BulkImportReportDTO> importAll(Flux<PlaceholderDTO> placeholderDTOs, int batchSize);
+
+    /**
+     * Import new placeholders from CSV records, see {@link #importAll(Flux, int)}. The first record names the columns,
+     * {@code placeholderIndex}, {@code placeholderValue}, {@code archetypeId} and {@code organizationId} are read,
+     * the other columns are ignored.
+     *
+     * @param records the CSV records, the header first.
+     * @param batchSize the number of placeholders per batch.
+     * @return the report of the import.
+     */
+    Mono<BulkImportReportDTO> importAllFromCsv(Flux<List<String>> records, int batchSize);
+
+    /**
+     * Get all the placeholders with eager load of many-to-many relationships.
      *
+     * @param pageable the pagination information.
+     * @return the list of entities.
      */
-    Mono<Long> countAll();
+    Flux<PlaceholderDTO> findAllWithEagerRelationships(Pageable pageable);
 
     /**
-     * Returns the number of placeholders available in search repository.
+     * Returns the number of placeholders available.
+     * @param mode how the placeholders are counted.
+     * @return the number of entities in the database.
      *
      */
-    Mono<Long> searchCount();
+    Mono<TotalCount> countAll(CountMode mode);
 
     /**
      * Get the "id" placeholder.
@@ -97,12 +146,37 @@ public interface PlaceholderService {
     Mono<Void> delete(Long id);
 
     /**
-     * Search for the placeholder corresponding to the query.
+     * Search for a page of the placeholders corresponding to the query, counted by the same request.
      *
      * @param query the query of the search.
-     *
      * @param pageable the pagination information.
-     * @return the list of entities.
+     * @param mode how the matching placeholders are counted.
+     * @return the page of entities.
+     * @throws IllegalArgumentException if the page reaches past the hits which can be paged by number.
+     */
+    Mono<SearchResult<PlaceholderDTO>> search(String query, Pageable pageable, CountMode mode);
+
+    /**
+     * Search for the page of the placeholders corresponding to the query which follows a cursor, counted by the same
+     * request. The pages are read from the point in time of the first one.
+     *
+     * @param query the query of the search.
+     * @param sort the sort of the entities, by relevance if unsorted.
+     * @param cursor the cursor of the page.
+     * @param size the number of entities of the page.
+     * @param mode how the matching placeholders are counted.
+     * @return the page of entities, with the cursor of the following one.
+     * @throws IllegalArgumentException if the sort is unknown or the cursor expired.
+     */
+    Mono<SearchResult<PlaceholderDTO>> searchAfter(String query, Sort sort, SearchAfterCursor cursor, int size, CountMode mode);
+
+    /**
+     * Suggest the placeholders whose {@code placeholderIndex} starts with the text typed so far, best matches first.
+     *
+     * @param prefix the text typed so far, matched as text rather than parsed as a query.
+     * @param organizationId the id of the organization to suggest the placeholders of, or {@code null} for all of them.
+     * @param limit the number of suggestions.
+     * @return the suggestions.
      */
-    Flux<PlaceholderDTO> search(String query, Pageable pageable);
+    Flux<SuggestionDTO> suggest(String prefix, Long organizationId, int limit);
 }
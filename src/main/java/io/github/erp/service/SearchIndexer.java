@@ -0,0 +1,353 @@
+package io.github.erp.service;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import io.github.erp.config.ApplicationProperties;
+import io.github.erp.domain.AppUser;
+import io.github.erp.domain.Placeholder;
+import io.github.erp.repository.AppUserRepository;
+import io.github.erp.repository.PlaceholderRepository;
+import io.github.erp.repository.SearchIndexOutboxRepository;
+import io.github.erp.repository.search.AppUserSearchRepository;
+import io.github.erp.repository.search.PlaceholderSearchRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+/**
+ * Service class keeping the search index in step with the database, through the
+ * {@link SearchIndexOutboxRepository outbox}.
+ * <p>
+ * A write only adds an outbox entry in its own transaction, and does not wait for the search index. The indexer
+ * drains the outbox in the background, batch after batch: it claims the entries of a batch in a short transaction,
+ * then, outside of any transaction, reads the current state of their entities, indexes the ones found and removes the
+ * others from the index with bulk requests, and deletes the entries. A failed batch is retried with backoff, then its
+ * entities are indexed one by one: the entries of an entity failing on its own are attempted again after a growing
+ * delay, and set aside once they ran out of attempts, so that they do not hold the later entries back.
+ */
+@Service
+public class SearchIndexer {
+
+    private static final String METER_PREFIX = "service.search-indexer";
+
+    private static final Comparator<SearchIndexOutboxRepository.Entry> BY_ID = Comparator.comparing(
+        SearchIndexOutboxRepository.Entry::getId
+    );
+
+    private final Logger log = LoggerFactory.getLogger(SearchIndexer.class);
+
+    private final SearchIndexOutboxRepository outboxRepository;
+
+    private final TransactionalOperator transactionalOperator;
+
+    private final ApplicationProperties.SearchIndexer properties;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Timer batchTimer;
+
+    private final Map<String, Target<?>> targets = new HashMap<>();
+
+    private final Sinks.Many<Long> wakeUps = Sinks.many().multicast().directBestEffort();
+
+    private volatile SearchIndexOutboxRepository.Backlog backlog = new SearchIndexOutboxRepository.Backlog(0, 0, 0);
+
+    private Disposable draining;
+
+    public SearchIndexer(
+        SearchIndexOutboxRepository outboxRepository,
+        PlaceholderRepository placeholderRepository,
+        PlaceholderSearchRepository placeholderSearchRepository,
+        AppUserRepository appUserRepository,
+        AppUserSearchRepository appUserSearchRepository,
+        TransactionalOperator transactionalOperator,
+        ApplicationProperties applicationProperties,
+        MeterRegistry meterRegistry
+    ) {
+        this.outboxRepository = outboxRepository;
+        this.transactionalOperator = transactionalOperator;
+        this.properties = applicationProperties.getSearchIndexer();
+        this.meterRegistry = meterRegistry;
+        this.batchTimer = meterRegistry.timer(METER_PREFIX + ".batches");
+        register(Placeholder.class, placeholderRepository, placeholderSearchRepository, Placeholder::getId);
+        register(AppUser.class, appUserRepository, appUserSearchRepository, AppUser::getId);
+        meterRegistry.gauge(METER_PREFIX + ".backlog", this, indexer -> indexer.backlog.getSize());
+        meterRegistry.gauge(METER_PREFIX + ".lag", this, indexer -> indexer.backlog.getAgeSeconds());
+        meterRegistry.gauge(METER_PREFIX + ".set-aside", this, indexer -> indexer.backlog.getSetAside());
+    }
+
+    private <T> void register(
+        Class<T> entityType,
+        ReactiveCrudRepository<T, Long> repository,
+        ReactiveCrudRepository<T, Long> searchRepository,
+        Function<T, Long> idGetter
+    ) {
+        targets.put(entityType.getSimpleName(), new Target<>(repository, searchRepository, idGetter));
+    }
+
+    /**
+     * Queues a written, or deleted, entity for indexing in the current transaction, and wakes the indexer up once the
+     * transaction commits.
+     *
+     * @param entityType the type of the entity.
+     * @param id the id of the entity.
+     * @return completes once the entity is queued.
+     */
+    public Mono<Void> enqueue(Class<?> entityType, Long id) {
+        return outboxRepository.enqueue(entityType.getSimpleName(), id).then(TransactionHooks.afterCommit(this::wakeUp));
+    }
+
+    /**
+     * Queues several written entities of the same type for indexing with one statement, see
+     * {@link #enqueue(Class, Long)}.
+     *
+     * @param entityType the type of the entities.
+     * @param ids the ids of the entities.
+     * @return completes once the entities are queued.
+     */
+    public Mono<Void> enqueueAll(Class<?> entityType, Collection<Long> ids) {
+        return outboxRepository.enqueueAll(entityType.getSimpleName(), ids).then(TransactionHooks.afterCommit(this::wakeUp));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (draining != null) {
+            return;
+        }
+        // the polls and the wake-ups arriving while a drain runs are dropped, the running drain reads until the outbox is empty
+        draining =
+            Flux
+                .merge(Flux.interval(properties.getPollInterval()), wakeUps.asFlux())
+                .onBackpressureDrop()
+                .concatMap(
+                    tick ->
+                        drain()
+                            .onErrorResume(e -> {
+                                log.warn("Could not drain the search index outbox, retrying on the next poll: {}", e.getMessage());
+                                meterRegistry.counter(METER_PREFIX + ".failures").increment();
+                                return Mono.empty();
+                            })
+                            .then(refreshBacklog()),
+                    1
+                )
+                .subscribe();
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (draining != null) {
+            draining.dispose();
+            draining = null;
+        }
+    }
+
+    /**
+     * Drains the outbox batch after batch, until a batch comes back short.
+     *
+     * @return completes once the outbox is drained, or another instance is draining it.
+     */
+    Mono<Void> drain() {
+        int batchSize = properties.getBatchSize();
+        return drainBatch().expand(drained -> drained == batchSize ? drainBatch() : Mono.empty()).then();
+    }
+
+    /**
+     * @return the number of entries drained, zero when another instance holds the lock of the drain.
+     */
+    Mono<Integer> drainBatch() {
+        return claim()
+            .flatMap(entries -> {
+                if (entries.isEmpty()) {
+                    return Mono.just(0);
+                }
+                long start = System.nanoTime();
+                return index(entries)
+                    .retryWhen(Retry.backoff(properties.getMaxRetries(), properties.getRetryBackoff()))
+                    .then(Mono.defer(() -> outboxRepository.deleteAll(ids(entries))))
+                    .onErrorResume(e -> {
+                        log.warn(
+                            "Could not index a batch of {} outbox entries, indexing them one by one: {}",
+                            entries.size(),
+                            e.getMessage()
+                        );
+                        return indexOneByOne(entries);
+                    })
+                    .then(
+                        Mono.fromCallable(() -> {
+                            batchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                            return entries.size();
+                        })
+                    );
+            });
+    }
+
+    // the lock of the drain is only held by the transaction of the claim: no connection waits on the search index
+    private Mono<List<SearchIndexOutboxRepository.Entry>> claim() {
+        Mono<List<SearchIndexOutboxRepository.Entry>> claimed = outboxRepository
+            .tryLockDrain()
+            .flatMap(locked -> {
+                if (!Boolean.TRUE.equals(locked)) {
+                    return Mono.just(List.<SearchIndexOutboxRepository.Entry>of());
+                }
+                return outboxRepository
+                    .claimFirst(properties.getBatchSize(), properties.getClaimTimeout(), properties.getMaxAttempts())
+                    .collectSortedList(BY_ID);
+            });
+        return transactionalOperator.transactional(claimed);
+    }
+
+    private Mono<Void> indexOneByOne(List<SearchIndexOutboxRepository.Entry> entries) {
+        Map<String, List<SearchIndexOutboxRepository.Entry>> entriesByEntity = new LinkedHashMap<>();
+        for (SearchIndexOutboxRepository.Entry entry : entries) {
+            entriesByEntity.computeIfAbsent(entry.getEntityType() + " " + entry.getEntityId(), entity -> new ArrayList<>()).add(entry);
+        }
+        return Flux
+            .fromIterable(entriesByEntity.values())
+            .concatMap(entityEntries ->
+                index(entityEntries)
+                    .then(Mono.defer(() -> outboxRepository.deleteAll(ids(entityEntries))))
+                    .onErrorResume(e -> recordFailure(entityEntries, e))
+            )
+            .then();
+    }
+
+    private Mono<Void> recordFailure(List<SearchIndexOutboxRepository.Entry> entries, Throwable error) {
+        meterRegistry.counter(METER_PREFIX + ".failures").increment();
+        return outboxRepository
+            .recordFailure(ids(entries), properties.getRetryBackoff())
+            .filter(entry -> entry.getAttempts() >= properties.getMaxAttempts())
+            .doOnNext(entry ->
+                log.warn(
+                    "Setting the outbox entry {} of {} {} aside after {} attempts: {}",
+                    entry.getId(),
+                    entry.getEntityType(),
+                    entry.getEntityId(),
+                    entry.getAttempts(),
+                    error.getMessage()
+                )
+            )
+            .then();
+    }
+
+    private static List<Long> ids(List<SearchIndexOutboxRepository.Entry> entries) {
+        return entries.stream().map(SearchIndexOutboxRepository.Entry::getId).collect(Collectors.toList());
+    }
+
+    private Mono<Void> index(List<SearchIndexOutboxRepository.Entry> entries) {
+        // an entity queued several times in the batch is indexed once, with its current state
+        Map<String, Set<Long>> idsByType = new LinkedHashMap<>();
+        for (SearchIndexOutboxRepository.Entry entry : entries) {
+            idsByType.computeIfAbsent(entry.getEntityType(), type -> new LinkedHashSet<>()).add(entry.getEntityId());
+        }
+        return Flux
+            .fromIterable(idsByType.entrySet())
+            .concatMap(typeIds -> {
+                Target<?> target = targets.get(typeIds.getKey());
+                if (target == null) {
+                    log.warn("Dropping {} search index outbox entries of the unknown type {}", typeIds.getValue().size(), typeIds.getKey());
+                    return Mono.empty();
+                }
+                return index(target, typeIds.getValue());
+            })
+            .then();
+    }
+
+    private <T> Mono<Void> index(Target<T> target, Set<Long> ids) {
+        return target.repository
+            .findAllById(ids)
+            .collectList()
+            .flatMap(found -> {
+                Set<Long> missing = new LinkedHashSet<>(ids);
+                found.forEach(entity -> missing.remove(target.idGetter.apply(entity)));
+                Mono<Void> indexed = found.isEmpty()
+                    ? Mono.empty()
+                    : target.searchRepository
+                        .saveAll(found)
+                        .then()
+                        .doOnSuccess(done -> countDocuments("index", found.size()));
+                Mono<Void> deleted = missing.isEmpty()
+                    ? Mono.empty()
+                    : target.searchRepository
+                        .deleteAllById(new ArrayList<>(missing))
+                        .doOnSuccess(done -> countDocuments("delete", missing.size()));
+                return indexed.then(deleted);
+            });
+    }
+
+    private void countDocuments(String operation, int count) {
+        meterRegistry.counter(METER_PREFIX + ".documents", "operation", operation).increment(count);
+    }
+
+    private Mono<Void> refreshBacklog() {
+        return outboxRepository
+            .findBacklog(properties.getMaxAttempts())
+            .doOnNext(found -> backlog = found)
+            .onErrorResume(e -> {
+                log.debug("Could not read the backlog of the search index outbox: {}", e.getMessage());
+                return Mono.empty();
+            })
+            .then();
+    }
+
+    private void wakeUp() {
+        // best effort: a wake-up lost to a concurrent one, or to a running drain, is caught up with on the next poll
+        wakeUps.tryEmitNext(0L);
+    }
+
+    private static final class Target<T> {
+
+        private final ReactiveCrudRepository<T, Long> repository;
+        private final ReactiveCrudRepository<T, Long> searchRepository;
+        private final Function<T, Long> idGetter;
+
+        private Target(
+            ReactiveCrudRepository<T, Long> repository,
+            ReactiveCrudRepository<T, Long> searchRepository,
+            Function<T, Long> idGetter
+        ) {
+            this.repository = repository;
+            this.searchRepository = searchRepository;
+            this.idGetter = idGetter;
+        }
+    }
+}
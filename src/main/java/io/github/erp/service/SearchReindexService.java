@@ -0,0 +1,621 @@
+package io.github.erp.service;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import io.github.erp.config.ApplicationProperties;
+import io.github.erp.domain.AppUser;
+import io.github.erp.domain.Placeholder;
+import io.github.erp.domain.User;
+import io.github.erp.repository.AppUserRepository;
+import io.github.erp.repository.KeysetCursor;
+import io.github.erp.repository.PlaceholderRepository;
+import io.github.erp.repository.SearchReindexRepository;
+import io.github.erp.repository.UserRepository;
+import io.github.erp.service.dto.SearchReindexJobDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.core.IndexInformation;
+import org.springframework.data.elasticsearch.core.ReactiveElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.ReactiveIndexOperations;
+import org.springframework.data.elasticsearch.core.index.AliasAction;
+import org.springframework.data.elasticsearch.core.index.AliasActionParameters;
+import org.springframework.data.elasticsearch.core.index.AliasActions;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Service class rebuilding a search index from the database without interrupting the searches.
+ * <p>
+ * The entities are searched through an alias named after their index. A reindex builds a new versioned index behind
+ * the alias' back: it streams the table in keyset pages of ids, and indexes them with bulk requests, a bounded number
+ * at once, the pages being read only as fast as the bulk requests complete. The writes made meanwhile keep going to
+ * the current index, and database triggers record their ids for the new one. Once the copy is done, the recorded
+ * writes are caught up with, then, with the writes to the tables blocked, the last ones, and the alias is moved to the
+ * new index in one atomic request. The previous index is deleted.
+ * <p>
+ * The progress is checkpointed after each page: a job whose instance stopped is resumed from its last page, by the
+ * instance it was requested on or by any other one, once it has gone {@code staleAfter} without progress.
+ */
+@Service
+public class SearchReindexService {
+
+    private static final String METER_PREFIX = "service.search-reindex";
+
+    private static final Sort BY_ID = Sort.by(KeysetCursor.ID_PROPERTY);
+
+    private static final DateTimeFormatter VERSION_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmss").withZone(ZoneOffset.UTC);
+
+    private final Logger log = LoggerFactory.getLogger(SearchReindexService.class);
+
+    private final SearchReindexRepository reindexRepository;
+
+    private final ReactiveElasticsearchOperations operations;
+
+    private final TransactionalOperator transactionalOperator;
+
+    private final ApplicationProperties.SearchReindex properties;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Source<?>> sources = new LinkedHashMap<>();
+
+    private final Map<String, Run> runs = new ConcurrentHashMap<>();
+
+    private Disposable resuming;
+
+    public SearchReindexService(
+        SearchReindexRepository reindexRepository,
+        PlaceholderRepository placeholderRepository,
+        AppUserRepository appUserRepository,
+        UserRepository userRepository,
+        ReactiveElasticsearchOperations operations,
+        TransactionalOperator transactionalOperator,
+        ApplicationProperties applicationProperties,
+        MeterRegistry meterRegistry
+    ) {
+        this.reindexRepository = reindexRepository;
+        this.operations = operations;
+        this.transactionalOperator = transactionalOperator;
+        this.properties = applicationProperties.getSearchReindex();
+        this.meterRegistry = meterRegistry;
+        register(
+            Placeholder.class,
+            List.of("placeholder"),
+            placeholderRepository::count,
+            (lastId, limit) -> placeholderRepository.findAllAfter(after(lastId == null ? null : new Placeholder().id(lastId)), limit),
+            placeholderRepository::findAllById,
+            Placeholder::getId
+        );
+        register(
+            AppUser.class,
+            List.of("app_user"),
+            appUserRepository::count,
+            (lastId, limit) -> appUserRepository.findAllAfter(after(lastId == null ? null : new AppUser().id(lastId)), limit),
+            appUserRepository::findAllById,
+            AppUser::getId
+        );
+        register(
+            User.class,
+            List.of("jhi_user", "jhi_user_authority"),
+            userRepository::count,
+            userRepository::findAllWithAuthoritiesAfter,
+            userRepository::findAllWithAuthoritiesByIdIn,
+            User::getId
+        );
+    }
+
+    private static KeysetCursor after(Object row) {
+        return row == null ? KeysetCursor.start(BY_ID) : KeysetCursor.after(row, BY_ID);
+    }
+
+    private <T> void register(
+        Class<T> entityType,
+        List<String> tables,
+        Supplier<Mono<Long>> count,
+        BiFunction<Long, Integer, Flux<T>> pageAfter,
+        Function<Collection<Long>, Flux<T>> findAllById,
+        Function<T, Long> idGetter
+    ) {
+        String alias = operations.getIndexCoordinatesFor(entityType).getIndexName();
+        sources.put(alias, new Source<>(alias, entityType, tables, count, pageAfter, findAllById, idGetter));
+        Tags tags = Tags.of("index", alias);
+        meterRegistry.gauge(METER_PREFIX + ".progress", tags, this, service -> service.progress(alias));
+        meterRegistry.gauge(METER_PREFIX + ".eta", tags, this, service -> service.etaSeconds(alias));
+    }
+
+    /**
+     * @return the names of the search indices which can be rebuilt, the names of their aliases.
+     */
+    public Set<String> getIndices() {
+        return sources.keySet();
+    }
+
+    /**
+     * @return the last reindex of every search index ever rebuilt.
+     */
+    public Flux<SearchReindexJobDTO> findAll() {
+        return reindexRepository.findAllJobs().map(this::toDto);
+    }
+
+    /**
+     * Starts rebuilding a search index in the background, or resumes the running rebuild abandoned by its instance.
+     *
+     * @param index the name of the search index.
+     * @return the job started.
+     * @throws IllegalArgumentException if there is no such search index.
+     * @throws SearchReindexRunningException if the search index is being rebuilt.
+     */
+    public Mono<SearchReindexJobDTO> start(String index) {
+        Source<?> source = sources.get(index);
+        if (source == null) {
+            return Mono.error(new IllegalArgumentException("There is no search index named " + index));
+        }
+        return start(source);
+    }
+
+    private <T> Mono<SearchReindexJobDTO> start(Source<T> source) {
+        String alias = source.alias;
+        if (isRunningHere(alias)) {
+            return Mono.error(new SearchReindexRunningException(alias));
+        }
+        String targetIndex = alias + "_" + VERSION_FORMAT.format(Instant.now());
+        // the writes in flight when the job starts are waited for, and copied, the following ones are recorded
+        Mono<Boolean> started = reindexRepository
+            .lockWrites(source.tables)
+            .then(Mono.defer(source.count::get))
+            .flatMap(total -> reindexRepository.startJob(alias, targetIndex, total));
+        return transactionalOperator
+            .transactional(started)
+            .flatMap(isStarted -> {
+                if (Boolean.TRUE.equals(isStarted)) {
+                    return reindexRepository.findJob(alias);
+                }
+                return claim(alias).switchIfEmpty(Mono.error(new SearchReindexRunningException(alias)));
+            })
+            .flatMap(job -> launch(source, job))
+            .map(this::toDto);
+    }
+
+    private Mono<SearchReindexRepository.Job> claim(String alias) {
+        return reindexRepository
+            .claimJob(alias, properties.getStaleAfter().toSeconds())
+            .filter(Boolean.TRUE::equals)
+            .flatMap(claimed -> reindexRepository.findJob(alias));
+    }
+
+    /**
+     * Cancels the rebuild of a search index, and deletes the index it was building.
+     *
+     * @param index the name of the search index.
+     * @return true if the index was being rebuilt.
+     * @throws IllegalArgumentException if there is no such search index.
+     */
+    public Mono<Boolean> cancel(String index) {
+        if (!sources.containsKey(index)) {
+            return Mono.error(new IllegalArgumentException("There is no search index named " + index));
+        }
+        return reindexRepository
+            .findJob(index)
+            .filter(SearchReindexRepository.Job::isRunning)
+            .flatMap(job ->
+                reindexRepository
+                    .finishJob(index, SearchReindexRepository.CANCELLED)
+                    .filter(Boolean.TRUE::equals)
+                    .flatMap(cancelled -> {
+                        Run run = runs.get(index);
+                        if (run != null && run.isActive()) {
+                            run.stop();
+                        }
+                        log.info("Cancelled the reindex of {} into {}", index, job.getTargetIndex());
+                        return deleteIndex(job.getTargetIndex()).thenReturn(true);
+                    })
+            )
+            .defaultIfEmpty(false);
+    }
+
+    /**
+     * Resumes the jobs abandoned by their instance, checking for them every {@code staleAfter}.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void startResuming() {
+        if (resuming != null) {
+            return;
+        }
+        resuming =
+            Flux
+                .interval(properties.getStaleAfter())
+                .onBackpressureDrop()
+                .concatMap(
+                    tick ->
+                        resumeStale()
+                            .onErrorResume(e -> {
+                                log.warn("Could not resume the abandoned search reindex jobs: {}", e.getMessage());
+                                return Mono.empty();
+                            }),
+                    1
+                )
+                .subscribe();
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (resuming != null) {
+            resuming.dispose();
+            resuming = null;
+        }
+        runs.values().forEach(Run::stop);
+    }
+
+    Mono<Void> resumeStale() {
+        double staleSeconds = properties.getStaleAfter().toSeconds();
+        return reindexRepository
+            .findAllJobs()
+            .filter(job -> job.isRunning() && job.getIdleSeconds() > staleSeconds && !isRunningHere(job.getAlias()))
+            .filter(job -> sources.containsKey(job.getAlias()))
+            .concatMap(job -> claim(job.getAlias()).flatMap(claimed -> launch(sources.get(claimed.getAlias()), claimed)))
+            .then();
+    }
+
+    private <T> Mono<SearchReindexRepository.Job> launch(Source<T> source, SearchReindexRepository.Job job) {
+        IndexCoordinates target = IndexCoordinates.of(job.getTargetIndex());
+        ReactiveIndexOperations indexOperations = operations.indexOps(target);
+        return indexOperations
+            .exists()
+            .flatMap(exists -> {
+                if (Boolean.TRUE.equals(exists)) {
+                    return Mono.just(job);
+                }
+                // the copied pages were lost with the index: the copy starts over
+                return Mono
+                    .zip(indexOperations.createSettings(source.entityType), indexOperations.createMapping(source.entityType))
+                    .flatMap(settingsAndMapping -> indexOperations.create(settingsAndMapping.getT1(), settingsAndMapping.getT2()))
+                    .thenReturn(restarted(job));
+            })
+            .doOnNext(started -> {
+                Run run = new Run(started.getTargetIndex(), started.getTotal(), started.getCopied(), started.getLastId());
+                runs.put(source.alias, run);
+                log.info("Reindexing {} into {} from id {}", source.alias, started.getTargetIndex(), started.getLastId());
+                run.subscription =
+                    copy(source, target, run)
+                        .then(catchUp(source, target, run))
+                        .then(Mono.defer(() -> swap(source, target)))
+                        .doFinally(signal -> run.active = false)
+                        .subscribe(
+                            done -> {},
+                            e -> {
+                                // the job stays running, to be resumed from its last checkpoint
+                                log.warn("Could not reindex {} into {}: {}", source.alias, target.getIndexName(), e.getMessage());
+                                meterRegistry.counter(METER_PREFIX + ".failures", "index", source.alias).increment();
+                            },
+                            () -> log.info("Reindexed {} into {}", source.alias, target.getIndexName())
+                        );
+            });
+    }
+
+    private static SearchReindexRepository.Job restarted(SearchReindexRepository.Job job) {
+        return new SearchReindexRepository.Job(
+            job.getAlias(),
+            job.getTargetIndex(),
+            job.getStatus(),
+            null,
+            0,
+            job.getTotal(),
+            job.getStartedDate(),
+            job.getIdleSeconds()
+        );
+    }
+
+    /**
+     * Copies the table into the target index page after page, checkpointing each page once indexed.
+     */
+    private <T> Mono<Void> copy(Source<T> source, IndexCoordinates target, Run run) {
+        int pageSize = properties.getPageSize();
+        Flux<List<T>> pages = page(source, run.lastId)
+            .expand(page -> page.size() < pageSize ? Mono.empty() : page(source, lastId(source, page)));
+        return pages
+            // the bulk requests complete in any order, the pages are checkpointed in id order
+            .flatMapSequential(page -> operations.saveAll(page, target).then(Mono.just(page)), properties.getParallelism(), 1)
+            .concatMap(page -> {
+                run.copied += page.size();
+                run.lastId = lastId(source, page);
+                meterRegistry.counter(METER_PREFIX + ".documents", "index", source.alias).increment(page.size());
+                return checkpoint(source.alias, run);
+            })
+            .then();
+    }
+
+    private <T> Mono<List<T>> page(Source<T> source, Long lastId) {
+        return Flux.defer(() -> source.pageAfter.apply(lastId, properties.getPageSize())).collectList().filter(page -> !page.isEmpty());
+    }
+
+    private static <T> Long lastId(Source<T> source, List<T> page) {
+        return source.idGetter.apply(page.get(page.size() - 1));
+    }
+
+    private Mono<Void> checkpoint(String alias, Run run) {
+        return reindexRepository
+            .checkpoint(alias, run.lastId, run.copied)
+            .flatMap(running ->
+                Boolean.TRUE.equals(running) ? Mono.<Void>empty() : Mono.error(new IllegalStateException("The reindex was cancelled"))
+            );
+    }
+
+    /**
+     * Indexes the current state of the entities written since the job started, batch after batch, until a batch comes
+     * back short.
+     */
+    private <T> Mono<Void> catchUp(Source<T> source, IndexCoordinates target, Run run) {
+        int batchSize = properties.getPageSize();
+        // the checkpoints keep the job from looking abandoned while it catches up
+        Mono<Integer> batch = Mono
+            .defer(() -> catchUpBatch(source, target))
+            .flatMap(caughtUp -> checkpoint(source.alias, run).thenReturn(caughtUp));
+        return batch.expand(caughtUp -> caughtUp == batchSize ? batch : Mono.empty()).then();
+    }
+
+    private <T> Mono<Integer> catchUpBatch(Source<T> source, IndexCoordinates target) {
+        return reindexRepository
+            .findPending(source.alias, properties.getPageSize())
+            .collectList()
+            .flatMap(writes -> {
+                if (writes.isEmpty()) {
+                    return Mono.just(0);
+                }
+                // an entity written several times is indexed once, with its current state
+                Set<Long> ids = writes
+                    .stream()
+                    .map(SearchReindexRepository.PendingWrite::getEntityId)
+                    .collect(Collectors.toCollection(LinkedHashSet::new));
+                List<Long> writeIds = writes.stream().map(SearchReindexRepository.PendingWrite::getId).collect(Collectors.toList());
+                return index(source, target, ids)
+                    .then(Mono.defer(() -> reindexRepository.deletePending(writeIds)))
+                    .thenReturn(writes.size());
+            });
+    }
+
+    private <T> Mono<Void> index(Source<T> source, IndexCoordinates target, Set<Long> ids) {
+        return source.findAllById
+            .apply(ids)
+            .collectList()
+            .flatMap(found -> {
+                Set<Long> missing = new LinkedHashSet<>(ids);
+                found.forEach(entity -> missing.remove(source.idGetter.apply(entity)));
+                Mono<Void> indexed = found.isEmpty() ? Mono.empty() : operations.saveAll(found, target).then();
+                Mono<Void> deleted = missing.isEmpty()
+                    ? Mono.empty()
+                    : operations
+                        .delete(new NativeSearchQuery(QueryBuilders.idsQuery().addIds(ids(missing))), source.entityType, target)
+                        .then();
+                return indexed.then(deleted);
+            });
+    }
+
+    private static String[] ids(Collection<Long> ids) {
+        return ids.stream().map(String::valueOf).toArray(String[]::new);
+    }
+
+    /**
+     * Catches up with the last writes while the writes to the tables wait, marks the job done, and moves the alias, in
+     * one transaction. The previous indices are deleted once it commits.
+     */
+    private <T> Mono<Void> swap(Source<T> source, IndexCoordinates target) {
+        String alias = source.alias;
+        Mono<List<String>> swapped = reindexRepository
+            .lockPending()
+            .then(catchUp(source, target, runs.get(alias)))
+            .then(reindexRepository.finishJob(alias, SearchReindexRepository.DONE))
+            .flatMap(done ->
+                Boolean.TRUE.equals(done) ? Mono.<Void>empty() : Mono.error(new IllegalStateException("The reindex was cancelled"))
+            )
+            .then(Mono.defer(() -> operations.indexOps(target).refresh()))
+            .then(Mono.defer(() -> moveAlias(alias, target.getIndexName())));
+        return transactionalOperator
+            .transactional(swapped)
+            .flatMapMany(Flux::fromIterable)
+            .concatMap(this::deleteIndex)
+            .then();
+    }
+
+    /**
+     * @return the indices the alias was moved away from.
+     */
+    private Mono<List<String>> moveAlias(String alias, String targetIndex) {
+        return operations
+            .indexOps(IndexCoordinates.of(alias))
+            .getInformation()
+            .map(IndexInformation::getName)
+            .filter(name -> !name.equals(targetIndex))
+            .collectList()
+            .flatMap(previous -> {
+                List<AliasAction> actions = new ArrayList<>();
+                actions.add(new AliasAction.Add(AliasActionParameters.builder().withIndices(targetIndex).withAliases(alias).build()));
+                for (String index : previous) {
+                    if (index.equals(alias)) {
+                        // the index created on startup bears the name of the alias, it is replaced by the alias
+                        actions.add(new AliasAction.RemoveIndex(AliasActionParameters.builder().withIndices(index).build()));
+                    } else {
+                        actions.add(
+                            new AliasAction.Remove(AliasActionParameters.builder().withIndices(index).withAliases(alias).build())
+                        );
+                    }
+                }
+                return operations
+                    .indexOps(IndexCoordinates.of(alias))
+                    .alias(new AliasActions(actions.toArray(new AliasAction[0])))
+                    .thenReturn(
+                        previous.stream().filter(index -> !index.equals(alias)).collect(Collectors.toList())
+                    );
+            });
+    }
+
+    private Mono<Void> deleteIndex(String index) {
+        return operations
+            .indexOps(IndexCoordinates.of(index))
+            .delete()
+            .onErrorResume(e -> {
+                log.warn("Could not delete the search index {}: {}", index, e.getMessage());
+                return Mono.just(false);
+            })
+            .then();
+    }
+
+    private boolean isRunningHere(String alias) {
+        Run run = runs.get(alias);
+        return run != null && run.isActive();
+    }
+
+    private double progress(String alias) {
+        Run run = runs.get(alias);
+        return run == null ? Double.NaN : run.progress();
+    }
+
+    private double etaSeconds(String alias) {
+        Run run = runs.get(alias);
+        return run == null || !run.isActive() ? Double.NaN : run.etaSeconds();
+    }
+
+    private SearchReindexJobDTO toDto(SearchReindexRepository.Job job) {
+        SearchReindexJobDTO dto = new SearchReindexJobDTO();
+        dto.setIndex(job.getAlias());
+        dto.setTargetIndex(job.getTargetIndex());
+        dto.setStatus(job.getStatus());
+        dto.setCopied(job.getCopied());
+        dto.setTotal(job.getTotal());
+        dto.setStartedDate(job.getStartedDate());
+        if (SearchReindexRepository.DONE.equals(job.getStatus()) || job.getTotal() == 0) {
+            dto.setProgress(1);
+        } else {
+            dto.setProgress(Math.min(1, (double) job.getCopied() / job.getTotal()));
+        }
+        Run run = runs.get(job.getAlias());
+        if (job.isRunning() && run != null && run.isActive() && run.targetIndex.equals(job.getTargetIndex())) {
+            double eta = run.etaSeconds();
+            dto.setEtaSeconds(Double.isNaN(eta) ? null : (long) Math.ceil(eta));
+        }
+        return dto;
+    }
+
+    private static final class Source<T> {
+
+        private final String alias;
+        private final Class<T> entityType;
+        private final List<String> tables;
+        private final Supplier<Mono<Long>> count;
+        private final BiFunction<Long, Integer, Flux<T>> pageAfter;
+        private final Function<Collection<Long>, Flux<T>> findAllById;
+        private final Function<T, Long> idGetter;
+
+        private Source(
+            String alias,
+            Class<T> entityType,
+            List<String> tables,
+            Supplier<Mono<Long>> count,
+            BiFunction<Long, Integer, Flux<T>> pageAfter,
+            Function<Collection<Long>, Flux<T>> findAllById,
+            Function<T, Long> idGetter
+        ) {
+            this.alias = alias;
+            this.entityType = entityType;
+            this.tables = tables;
+            this.count = count;
+            this.pageAfter = pageAfter;
+            this.findAllById = findAllById;
+            this.idGetter = idGetter;
+        }
+    }
+
+    /**
+     * The progress of a job running on this instance.
+     */
+    private static final class Run {
+
+        private final String targetIndex;
+        private final long total;
+        private final long copiedAtStart;
+        private final long startNanos = System.nanoTime();
+        private volatile long copied;
+        private volatile Long lastId;
+        private volatile boolean active = true;
+        private volatile Disposable subscription;
+
+        private Run(String targetIndex, long total, long copied, Long lastId) {
+            this.targetIndex = targetIndex;
+            this.total = total;
+            this.copiedAtStart = copied;
+            this.copied = copied;
+            this.lastId = lastId;
+        }
+
+        private boolean isActive() {
+            return active;
+        }
+
+        private void stop() {
+            active = false;
+            Disposable running = subscription;
+            if (running != null) {
+                running.dispose();
+            }
+        }
+
+        private double progress() {
+            return total == 0 ? 1 : Math.min(1, (double) copied / total);
+        }
+
+        /**
+         * @return the seconds left at the copy rate of this run, NaN until a page is copied.
+         */
+        private double etaSeconds() {
+            long copiedHere = copied - copiedAtStart;
+            if (copiedHere <= 0) {
+                return Double.NaN;
+            }
+            double elapsedSeconds = (System.nanoTime() - startNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+            return Math.max(0, total - copied) * elapsedSeconds / copiedHere;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package io.github.erp.service;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import io.github.erp.repository.TokenRevocationRepository.Revocation;
+import io.github.erp.security.jwt.TokenRevocationList;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+/**
+ * Service class revoking the JWT tokens, see {@link TokenRevocationList}, and publishing the revocations over the
+ * {@link CacheInvalidationBus}, so that the other instances apply them at once rather than on their next poll.
+ */
+@Service
+public class TokenRevocationService {
+
+    private final TokenRevocationList tokenRevocationList;
+
+    private final CacheInvalidationBus cacheInvalidationBus;
+
+    public TokenRevocationService(TokenRevocationList tokenRevocationList, CacheInvalidationBus cacheInvalidationBus) {
+        this.tokenRevocationList = tokenRevocationList;
+        this.cacheInvalidationBus = cacheInvalidationBus;
+    }
+
+    /**
+     * Revokes the token of an authentication, or all the tokens of its login if the token has no id.
+     *
+     * @param authentication the authentication of a token.
+     * @return completes once the revocation is recorded and published.
+     */
+    public Mono<Void> revoke(Authentication authentication) {
+        return tokenRevocationList.revoke(authentication).flatMap(this::publish);
+    }
+
+    /**
+     * Revokes all the tokens of a login issued so far.
+     *
+     * @param login the login.
+     * @return completes once the revocation is recorded and published.
+     */
+    public Mono<Void> revokeSessions(String login) {
+        return tokenRevocationList.revokeSessions(login).flatMap(this::publish);
+    }
+
+    private Mono<Void> publish(Long revocationId) {
+        return cacheInvalidationBus.publish(Revocation.class, revocationId);
+    }
+}
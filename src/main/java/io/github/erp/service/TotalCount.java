@@ -0,0 +1,82 @@
+package io.github.erp.service;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Objects;
+
+/**
+ * The total count of a paginated listing, along with the mode it was computed with.
+ */
+public final class TotalCount {
+
+    private static final TotalCount NONE = new TotalCount(CountMode.NONE, null);
+
+    private final CountMode mode;
+    private final Long value;
+
+    private TotalCount(CountMode mode, Long value) {
+        this.mode = mode;
+        this.value = value;
+    }
+
+    public static TotalCount exact(long value) {
+        return new TotalCount(CountMode.EXACT, value);
+    }
+
+    public static TotalCount estimate(long value) {
+        return new TotalCount(CountMode.ESTIMATE, value);
+    }
+
+    public static TotalCount none() {
+        return NONE;
+    }
+
+    public CountMode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return the count, or null if the listing was not counted.
+     */
+    public Long getValue() {
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TotalCount)) {
+            return false;
+        }
+        TotalCount that = (TotalCount) o;
+        return mode == that.mode && Objects.equals(value, that.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(mode, value);
+    }
+
+    @Override
+    public String toString() {
+        return "TotalCount{mode=" + mode + ", value=" + value + "}";
+    }
+}
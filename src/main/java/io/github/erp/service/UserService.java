@@ -25,9 +25,12 @@ import io.github.erp.repository.AuthorityRepository;
 import io.github.erp.repository.UserRepository;
 import io.github.erp.repository.search.UserSearchRepository;
 import io.github.erp.security.AuthoritiesConstants;
+import io.github.erp.security.PasswordHashingScheduler;
 import io.github.erp.security.SecurityUtils;
+import io.github.erp.security.UserDetailsCache;
 import io.github.erp.service.dto.AdminUserDTO;
 import io.github.erp.service.dto.UserDTO;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
@@ -51,6 +54,8 @@ import tech.jhipster.security.RandomUtil;
 @Service
 public class UserService {
 
+    private static final Duration AUTHORITIES_SNAPSHOT_TTL = Duration.ofMinutes(10);
+
     private final Logger log = LoggerFactory.getLogger(UserService.class);
 
     private final UserRepository userRepository;
@@ -61,16 +66,49 @@ public class UserService {
 
     private final AuthorityRepository authorityRepository;
 
+    private final PasswordHashingScheduler passwordHashingScheduler;
+
+    private final UserDetailsCache userDetailsCache;
+
+    private final CacheInvalidationBus cacheInvalidationBus;
+
+    /**
+     * Snapshot of the jhi_authority table, which only changes with the Liquibase changelogs, see
+     * {@link #evictAuthorities()}.
+     */
+    private volatile Mono<Map<String, Authority>> authorities;
+
     public UserService(
         UserRepository userRepository,
         PasswordEncoder passwordEncoder,
         UserSearchRepository userSearchRepository,
-        AuthorityRepository authorityRepository
+        AuthorityRepository authorityRepository,
+        PasswordHashingScheduler passwordHashingScheduler,
+        UserDetailsCache userDetailsCache,
+        CacheInvalidationBus cacheInvalidationBus
     ) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
         this.userSearchRepository = userSearchRepository;
         this.authorityRepository = authorityRepository;
+        this.passwordHashingScheduler = passwordHashingScheduler;
+        this.userDetailsCache = userDetailsCache;
+        this.cacheInvalidationBus = cacheInvalidationBus;
+        this.authorities = loadAuthorities();
+    }
+
+    /**
+     * Drops the authorities snapshot, which is read again on its next use.
+     */
+    public void evictAuthorities() {
+        authorities = loadAuthorities();
+    }
+
+    private Mono<Map<String, Authority>> loadAuthorities() {
+        return authorityRepository
+            .findAll()
+            .collectMap(Authority::getName, authority -> authority, LinkedHashMap::new)
+            .cache(snapshot -> AUTHORITIES_SNAPSHOT_TTL, error -> Duration.ZERO, () -> Duration.ZERO);
     }
 
     @Transactional
@@ -94,13 +132,14 @@ public class UserService {
         return userRepository
             .findOneByResetKey(key)
             .filter(user -> user.getResetDate().isAfter(Instant.now().minus(1, ChronoUnit.DAYS)))
-            .publishOn(Schedulers.boundedElastic())
-            .map(user -> {
-                user.setPassword(passwordEncoder.encode(newPassword));
-                user.setResetKey(null);
-                user.setResetDate(null);
-                return user;
-            })
+            .flatMap(user ->
+                passwordHashingScheduler.schedule(() -> {
+                    user.setPassword(passwordEncoder.encode(newPassword));
+                    user.setResetKey(null);
+                    user.setResetDate(null);
+                    return user;
+                })
+            )
             .flatMap(this::saveUser);
     }
 
@@ -124,7 +163,7 @@ public class UserService {
             .findOneByLogin(userDTO.getLogin().toLowerCase())
             .flatMap(existingUser -> {
                 if (!existingUser.isActivated()) {
-                    return userRepository.delete(existingUser);
+                    return userRepository.delete(existingUser).thenReturn(existingUser).flatMap(this::evictCachedUser);
                 } else {
                     return Mono.error(new UsernameAlreadyUsedException());
                 }
@@ -132,14 +171,13 @@ public class UserService {
             .then(userRepository.findOneByEmailIgnoreCase(userDTO.getEmail()))
             .flatMap(existingUser -> {
                 if (!existingUser.isActivated()) {
-                    return userRepository.delete(existingUser);
+                    return userRepository.delete(existingUser).thenReturn(existingUser).flatMap(this::evictCachedUser);
                 } else {
                     return Mono.error(new EmailAlreadyUsedException());
                 }
             })
-            .publishOn(Schedulers.boundedElastic())
             .then(
-                Mono.fromCallable(() -> {
+                passwordHashingScheduler.schedule(() -> {
                     User newUser = new User();
                     String encryptedPassword = passwordEncoder.encode(password);
                     newUser.setLogin(userDTO.getLogin().toLowerCase());
@@ -160,12 +198,9 @@ public class UserService {
                 })
             )
             .flatMap(newUser -> {
-                Set<Authority> authorities = new HashSet<>();
-                return authorityRepository
-                    .findById(AuthoritiesConstants.USER)
-                    .map(authorities::add)
+                return findAuthorities(Collections.singleton(AuthoritiesConstants.USER))
+                    .doOnNext(newUser::setAuthorities)
                     .thenReturn(newUser)
-                    .doOnNext(user -> user.setAuthorities(authorities))
                     .flatMap(this::saveUser)
                     .flatMap(user -> userSearchRepository.save(user).thenReturn(user))
                     .doOnNext(user -> log.debug("Created Information for User: {}", user));
@@ -187,20 +222,19 @@ public class UserService {
         } else {
             user.setLangKey(userDTO.getLangKey());
         }
-        return Flux
-            .fromIterable(userDTO.getAuthorities() != null ? userDTO.getAuthorities() : new HashSet<>())
-            .flatMap(authorityRepository::findById)
-            .doOnNext(authority -> user.getAuthorities().add(authority))
-            .then(Mono.just(user))
-            .publishOn(Schedulers.boundedElastic())
-            .map(newUser -> {
-                String encryptedPassword = passwordEncoder.encode(RandomUtil.generatePassword());
-                newUser.setPassword(encryptedPassword);
-                newUser.setResetKey(RandomUtil.generateResetKey());
-                newUser.setResetDate(Instant.now());
-                newUser.setActivated(true);
-                return newUser;
-            })
+        return findAuthorities(userDTO.getAuthorities())
+            .doOnNext(user::setAuthorities)
+            .thenReturn(user)
+            .flatMap(newUser ->
+                passwordHashingScheduler.schedule(() -> {
+                    String encryptedPassword = passwordEncoder.encode(RandomUtil.generatePassword());
+                    newUser.setPassword(encryptedPassword);
+                    newUser.setResetKey(RandomUtil.generateResetKey());
+                    newUser.setResetDate(Instant.now());
+                    newUser.setActivated(true);
+                    return newUser;
+                })
+            )
             .flatMap(this::saveUser)
             .flatMap(user1 -> userSearchRepository.save(user1).thenReturn(user1))
             .doOnNext(user1 -> log.debug("Created Information for User: {}", user1));
@@ -226,16 +260,9 @@ public class UserService {
                 user.setImageUrl(userDTO.getImageUrl());
                 user.setActivated(userDTO.isActivated());
                 user.setLangKey(userDTO.getLangKey());
-                Set<Authority> managedAuthorities = user.getAuthorities();
-                managedAuthorities.clear();
-                return userRepository
-                    .deleteUserAuthorities(user.getId())
-                    .thenMany(Flux.fromIterable(userDTO.getAuthorities()))
-                    .flatMap(authorityRepository::findById)
-                    .map(managedAuthorities::add)
-                    .then(Mono.just(user));
+                return findAuthorities(userDTO.getAuthorities()).doOnNext(user::setAuthorities).thenReturn(user);
             })
-            .flatMap(this::saveUser)
+            .flatMap(user -> saveUser(user, true))
             .flatMap(user -> userSearchRepository.save(user).thenReturn(user))
             .doOnNext(user -> log.debug("Changed Information for User: {}", user))
             .map(AdminUserDTO::new);
@@ -246,6 +273,7 @@ public class UserService {
         return userRepository
             .findOneByLogin(login)
             .flatMap(user -> userRepository.delete(user).thenReturn(user))
+            .flatMap(this::evictCachedUser)
             .flatMap(user -> userSearchRepository.delete(user).thenReturn(user))
             .doOnNext(user -> log.debug("Deleted User: {}", user))
             .then();
@@ -281,8 +309,20 @@ public class UserService {
             .then();
     }
 
+    /**
+     * Saves the user, and the authorities it holds. The authorities of an existing user are only synchronized when
+     * the user holds some, as a user read without its authorities holds none.
+     *
+     * @param user the user to save.
+     * @return the saved user.
+     */
     @Transactional
     public Mono<User> saveUser(User user) {
+        return saveUser(user, false);
+    }
+
+    private Mono<User> saveUser(User user, boolean syncAuthorities) {
+        boolean newUser = user.getId() == null;
         return SecurityUtils
             .getCurrentUserLogin()
             .switchIfEmpty(Mono.just(Constants.SYSTEM))
@@ -295,30 +335,61 @@ public class UserService {
                 // once https://github.com/spring-projects/spring-data-r2dbc/issues/215 is done
                 return userRepository
                     .save(user)
-                    .flatMap(savedUser ->
-                        Flux
-                            .fromIterable(user.getAuthorities())
-                            .flatMap(authority -> userRepository.saveUserAuthority(savedUser.getId(), authority.getName()))
-                            .then(Mono.just(savedUser))
-                    );
+                    .flatMap(savedUser -> saveUserAuthorities(savedUser.getId(), user, newUser, syncAuthorities).thenReturn(savedUser))
+                    .flatMap(this::evictCachedUser);
             });
     }
 
+    private Mono<User> evictCachedUser(User user) {
+        return cacheInvalidationBus.publish(User.class, user.getId(), () -> userDetailsCache.evict(user.getId())).thenReturn(user);
+    }
+
+    private Mono<Void> saveUserAuthorities(Long userId, User user, boolean newUser, boolean syncAuthorities) {
+        Set<String> names = new HashSet<>();
+        user.getAuthorities().forEach(authority -> names.add(authority.getName()));
+        if (newUser) {
+            return names.isEmpty() ? Mono.empty() : userRepository.insertUserAuthorities(userId, names);
+        }
+        if (syncAuthorities || !names.isEmpty()) {
+            return userRepository.syncUserAuthorities(userId, names);
+        }
+        return Mono.empty();
+    }
+
+    /**
+     * Resolves the given authority names against the authorities snapshot, unknown names are left out.
+     */
+    private Mono<Set<Authority>> findAuthorities(Set<String> names) {
+        return authorities.map(snapshot -> {
+            Set<Authority> found = new HashSet<>();
+            if (names != null) {
+                for (String name : names) {
+                    Authority authority = snapshot.get(name);
+                    if (authority != null) {
+                        found.add(authority);
+                    }
+                }
+            }
+            return found;
+        });
+    }
+
     @Transactional
     public Mono<Void> changePassword(String currentClearTextPassword, String newPassword) {
         return SecurityUtils
             .getCurrentUserLogin()
             .flatMap(userRepository::findOneByLogin)
-            .publishOn(Schedulers.boundedElastic())
-            .map(user -> {
-                String currentEncryptedPassword = user.getPassword();
-                if (!passwordEncoder.matches(currentClearTextPassword, currentEncryptedPassword)) {
-                    throw new InvalidPasswordException();
-                }
-                String encryptedPassword = passwordEncoder.encode(newPassword);
-                user.setPassword(encryptedPassword);
-                return user;
-            })
+            .flatMap(user ->
+                passwordHashingScheduler.schedule(() -> {
+                    String currentEncryptedPassword = user.getPassword();
+                    if (!passwordEncoder.matches(currentClearTextPassword, currentEncryptedPassword)) {
+                        throw new InvalidPasswordException();
+                    }
+                    String encryptedPassword = passwordEncoder.encode(newPassword);
+                    user.setPassword(encryptedPassword);
+                    return user;
+                })
+            )
             .flatMap(this::saveUser)
             .doOnNext(user -> log.debug("Changed password for User: {}", user))
             .then();
@@ -344,9 +415,8 @@ public class UserService {
         return userRepository.findOneWithAuthoritiesByLogin(login);
     }
 
-    @Transactional(readOnly = true)
     public Mono<User> getUserWithAuthorities() {
-        return SecurityUtils.getCurrentUserLogin().flatMap(userRepository::findOneWithAuthoritiesByLogin);
+        return SecurityUtils.getCurrentUserLogin().flatMap(userDetailsCache::findOneWithAuthoritiesByLogin);
     }
 
     /**
@@ -366,6 +436,7 @@ public class UserService {
                 LocalDateTime.ofInstant(Instant.now().minus(3, ChronoUnit.DAYS), ZoneOffset.UTC)
             )
             .flatMap(user -> userRepository.delete(user).thenReturn(user))
+            .flatMap(this::evictCachedUser)
             .flatMap(user -> userSearchRepository.delete(user).thenReturn(user))
             .doOnNext(user -> log.debug("Deleted User: {}", user));
     }
@@ -376,6 +447,6 @@ public class UserService {
      */
     @Transactional(readOnly = true)
     public Flux<String> getAuthorities() {
-        return authorityRepository.findAll().map(Authority::getName);
+        return authorities.flatMapIterable(Map::keySet);
     }
 }
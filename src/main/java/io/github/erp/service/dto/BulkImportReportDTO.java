@@ -0,0 +1,162 @@
+package io.github.erp.service.dto;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A DTO reporting the outcome of a bulk import: the rows received, imported and rejected, the throughput, and the
+ * rejected rows with the reason they were rejected.
+ */
+public class BulkImportReportDTO implements Serializable {
+
+    private long received;
+
+    private long imported;
+
+    private long failed;
+
+    private long elapsedMillis;
+
+    private double rowsPerSecond;
+
+    private List<RowError> errors = new ArrayList<>();
+
+    public long getReceived() {
+        return received;
+    }
+
+    public void setReceived(long received) {
+        this.received = received;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public void setImported(long imported) {
+        this.imported = imported;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public void setFailed(long failed) {
+        this.failed = failed;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public double getRowsPerSecond() {
+        return rowsPerSecond;
+    }
+
+    public void setRowsPerSecond(double rowsPerSecond) {
+        this.rowsPerSecond = rowsPerSecond;
+    }
+
+    public List<RowError> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(List<RowError> errors) {
+        this.errors = errors;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "BulkImportReportDTO{" +
+            "received=" + getReceived() +
+            ", imported=" + getImported() +
+            ", failed=" + getFailed() +
+            ", elapsedMillis=" + getElapsedMillis() +
+            ", rowsPerSecond=" + getRowsPerSecond() +
+            "}";
+    }
+
+    /**
+     * A rejected row: its position in the input, starting at 1, and the reason it was rejected.
+     */
+    public static class RowError implements Serializable {
+
+        private long row;
+
+        private String message;
+
+        public RowError() {}
+
+        public RowError(long row, String message) {
+            this.row = row;
+            this.message = message;
+        }
+
+        public long getRow() {
+            return row;
+        }
+
+        public void setRow(long row) {
+            this.row = row;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public void setMessage(String message) {
+            this.message = message;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RowError)) {
+                return false;
+            }
+            RowError rowError = (RowError) o;
+            return row == rowError.row && Objects.equals(message, rowError.message);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(row, message);
+        }
+
+        // prettier-ignore
+        @Override
+        public String toString() {
+            return "RowError{" +
+                "row=" + getRow() +
+                ", message='" + getMessage() + "'" +
+                "}";
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package io.github.erp.service.dto;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A DTO for a {@link io.github.erp.domain.Placeholder} resolved through its chain of archetypes: its effective value
+ * is its own value, or else the value of its nearest archetype having one.
+ */
+public class ResolvedPlaceholderDTO implements Serializable {
+
+    private Long id;
+
+    private String placeholderIndex;
+
+    private String effectiveValue;
+
+    private Long valueSourceId;
+
+    private boolean cyclic;
+
+    private List<PlaceholderDTO> chain = new ArrayList<>();
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getPlaceholderIndex() {
+        return placeholderIndex;
+    }
+
+    public void setPlaceholderIndex(String placeholderIndex) {
+        this.placeholderIndex = placeholderIndex;
+    }
+
+    public String getEffectiveValue() {
+        return effectiveValue;
+    }
+
+    public void setEffectiveValue(String effectiveValue) {
+        this.effectiveValue = effectiveValue;
+    }
+
+    /**
+     * @return the id of the placeholder of the chain providing the effective value, null if none has a value.
+     */
+    public Long getValueSourceId() {
+        return valueSourceId;
+    }
+
+    public void setValueSourceId(Long valueSourceId) {
+        this.valueSourceId = valueSourceId;
+    }
+
+    /**
+     * @return whether the chain of archetypes loops back onto one of its placeholders.
+     */
+    public boolean isCyclic() {
+        return cyclic;
+    }
+
+    public void setCyclic(boolean cyclic) {
+        this.cyclic = cyclic;
+    }
+
+    /**
+     * @return the placeholders of the chain, the resolved placeholder first, each one listed once.
+     */
+    public List<PlaceholderDTO> getChain() {
+        return chain;
+    }
+
+    public void setChain(List<PlaceholderDTO> chain) {
+        this.chain = chain;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "ResolvedPlaceholderDTO{" +
+            "id=" + getId() +
+            ", placeholderIndex='" + getPlaceholderIndex() + "'" +
+            ", effectiveValue='" + getEffectiveValue() + "'" +
+            ", valueSourceId=" + getValueSourceId() +
+            ", cyclic='" + isCyclic() + "'" +
+            ", chain=" + getChain() +
+            "}";
+    }
+}
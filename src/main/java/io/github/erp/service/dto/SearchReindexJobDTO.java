@@ -0,0 +1,121 @@
+package io.github.erp.service.dto;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * A DTO reporting a full reindex of a search index: the index built, how far the copy went, and the estimated time
+ * left, known only while the job runs on this instance.
+ */
+public class SearchReindexJobDTO implements Serializable {
+
+    private String index;
+
+    private String targetIndex;
+
+    private String status;
+
+    private long copied;
+
+    private long total;
+
+    private double progress;
+
+    private Long etaSeconds;
+
+    private LocalDateTime startedDate;
+
+    public String getIndex() {
+        return index;
+    }
+
+    public void setIndex(String index) {
+        this.index = index;
+    }
+
+    public String getTargetIndex() {
+        return targetIndex;
+    }
+
+    public void setTargetIndex(String targetIndex) {
+        this.targetIndex = targetIndex;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public long getCopied() {
+        return copied;
+    }
+
+    public void setCopied(long copied) {
+        this.copied = copied;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public void setTotal(long total) {
+        this.total = total;
+    }
+
+    public double getProgress() {
+        return progress;
+    }
+
+    public void setProgress(double progress) {
+        this.progress = progress;
+    }
+
+    public Long getEtaSeconds() {
+        return etaSeconds;
+    }
+
+    public void setEtaSeconds(Long etaSeconds) {
+        this.etaSeconds = etaSeconds;
+    }
+
+    public LocalDateTime getStartedDate() {
+        return startedDate;
+    }
+
+    public void setStartedDate(LocalDateTime startedDate) {
+        this.startedDate = startedDate;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "SearchReindexJobDTO{" +
+            "index='" + getIndex() + "'" +
+            ", targetIndex='" + getTargetIndex() + "'" +
+            ", status='" + getStatus() + "'" +
+            ", copied=" + getCopied() +
+            ", total=" + getTotal() +
+            "}";
+    }
+}
@@ -22,14 +22,30 @@ import static org.elasticsearch.index.query.QueryBuilders.*;
 
 import io.github.erp.domain.AppUser;
 import io.github.erp.repository.AppUserRepository;
+import io.github.erp.repository.KeysetCursor;
+import io.github.erp.repository.OrganizationHierarchyRepository;
+import io.github.erp.repository.TableStatistics;
 import io.github.erp.repository.search.AppUserSearchRepository;
+import io.github.erp.repository.search.SearchAfterCursor;
+import io.github.erp.repository.search.SearchResult;
 import io.github.erp.service.AppUserService;
+import io.github.erp.service.CacheInvalidationBus;
+import io.github.erp.service.CountMode;
+import io.github.erp.service.CountService;
+import io.github.erp.service.OrganizationCycleException;
+import io.github.erp.service.PlaceholderLookupService;
+import io.github.erp.service.SearchIndexer;
+import io.github.erp.service.TotalCount;
 import io.github.erp.service.dto.AppUserDTO;
+import io.github.erp.service.dto.SuggestionDTO;
 import io.github.erp.service.mapper.AppUserMapper;
+import java.util.Optional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -49,26 +65,60 @@ public class AppUserServiceImpl implements AppUserService {
 
     private final AppUserSearchRepository appUserSearchRepository;
 
+    private final CountService countService;
+
+    private final TableStatistics tableStatistics;
+
+    private final OrganizationHierarchyRepository organizationHierarchyRepository;
+
+    private final CacheInvalidationBus cacheInvalidationBus;
+
+    private final PlaceholderLookupService placeholderLookupService;
+
+    private final SearchIndexer searchIndexer;
+
     public AppUserServiceImpl(
         AppUserRepository appUserRepository,
         AppUserMapper appUserMapper,
-        AppUserSearchRepository appUserSearchRepository
+        AppUserSearchRepository appUserSearchRepository,
+        CountService countService,
+        TableStatistics tableStatistics,
+        OrganizationHierarchyRepository organizationHierarchyRepository,
+        CacheInvalidationBus cacheInvalidationBus,
+        PlaceholderLookupService placeholderLookupService,
+        SearchIndexer searchIndexer
     ) {
         this.appUserRepository = appUserRepository;
         this.appUserMapper = appUserMapper;
         this.appUserSearchRepository = appUserSearchRepository;
+        this.countService = countService;
+        this.tableStatistics = tableStatistics;
+        this.organizationHierarchyRepository = organizationHierarchyRepository;
+        this.cacheInvalidationBus = cacheInvalidationBus;
+        this.placeholderLookupService = placeholderLookupService;
+        this.searchIndexer = searchIndexer;
     }
 
     @Override
     public Mono<AppUserDTO> save(AppUserDTO appUserDTO) {
         log.debug("Request to save AppUser : {}", appUserDTO);
-        return appUserRepository.save(appUserMapper.toEntity(appUserDTO)).flatMap(appUserSearchRepository::save).map(appUserMapper::toDto);
+        return appUserRepository
+            .save(appUserMapper.toEntity(appUserDTO))
+            .flatMap(saved -> insertInHierarchy(saved).thenReturn(saved))
+            .flatMap(saved -> publishChange(saved, () -> countService.evict(AppUser.class)))
+            .flatMap(this::enqueueForIndexing)
+            .map(appUserMapper::toDto);
     }
 
     @Override
     public Mono<AppUserDTO> update(AppUserDTO appUserDTO) {
         log.debug("Request to update AppUser : {}", appUserDTO);
-        return appUserRepository.save(appUserMapper.toEntity(appUserDTO)).flatMap(appUserSearchRepository::save).map(appUserMapper::toDto);
+        AppUser appUser = appUserMapper.toEntity(appUserDTO);
+        return moveInHierarchy(appUser.getId(), appUser.getOrganizationId())
+            .then(appUserRepository.save(appUser))
+            .flatMap(saved -> publishChange(saved, () -> placeholderLookupService.evictOrganization(saved.getId())))
+            .flatMap(this::enqueueForIndexing)
+            .map(appUserMapper::toDto);
     }
 
     @Override
@@ -82,12 +132,11 @@ public class AppUserServiceImpl implements AppUserService {
 
                 return existingAppUser;
             })
-            .flatMap(appUserRepository::save)
-            .flatMap(savedAppUser -> {
-                appUserSearchRepository.save(savedAppUser);
-
-                return Mono.just(savedAppUser);
-            })
+            .flatMap(existingAppUser ->
+                moveInHierarchy(existingAppUser.getId(), existingAppUser.getOrganizationId()).then(appUserRepository.save(existingAppUser))
+            )
+            .flatMap(saved -> publishChange(saved, () -> placeholderLookupService.evictOrganization(saved.getId())))
+            .flatMap(this::enqueueForIndexing)
             .map(appUserMapper::toDto);
     }
 
@@ -98,16 +147,42 @@ public class AppUserServiceImpl implements AppUserService {
         return appUserRepository.findAllBy(pageable).map(appUserMapper::toDto);
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public Flux<AppUserDTO> findAllAfter(KeysetCursor cursor, int pageSize) {
+        log.debug("Request to get a keyset page of AppUsers after {}", cursor);
+        return appUserRepository.findAllAfter(cursor, pageSize).map(appUserMapper::toDto);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Flux<AppUserDTO> exportAll(Long organizationId) {
+        log.debug("Request to export AppUsers of organization {}", organizationId);
+        return appUserRepository.streamAll(organizationId).map(appUserMapper::toDto);
+    }
+
     public Flux<AppUserDTO> findAllWithEagerRelationships(Pageable pageable) {
         return appUserRepository.findAllWithEagerRelationships(pageable).map(appUserMapper::toDto);
     }
 
-    public Mono<Long> countAll() {
-        return appUserRepository.count();
+    @Override
+    @Transactional(readOnly = true)
+    public Flux<AppUserDTO> findAllInOrganizationSubtree(Long organizationId, Pageable pageable) {
+        log.debug("Request to get the AppUsers in the subtree of organization {}", organizationId);
+        return appUserRepository.findAllInOrganizationSubtree(organizationId, pageable).map(appUserMapper::toDto);
     }
 
-    public Mono<Long> searchCount() {
-        return appUserSearchRepository.count();
+    @Override
+    @Transactional(readOnly = true)
+    public Flux<AppUserDTO> findAncestors(Long id) {
+        log.debug("Request to get the ancestors of AppUser : {}", id);
+        return appUserRepository.findAncestors(id).map(appUserMapper::toDto);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Mono<TotalCount> countAll(CountMode mode) {
+        return countService.countAll(AppUser.class, mode, appUserRepository::count, () -> tableStatistics.estimateRowCount(AppUser.class));
     }
 
     @Override
@@ -120,13 +195,95 @@ public class AppUserServiceImpl implements AppUserService {
     @Override
     public Mono<Void> delete(Long id) {
         log.debug("Request to delete AppUser : {}", id);
-        return appUserRepository.deleteById(id).then(appUserSearchRepository.deleteById(id));
+        return appUserRepository
+            .deleteById(id)
+            .then(
+                cacheInvalidationBus.publish(
+                    AppUser.class,
+                    id,
+                    () -> {
+                        countService.evict(AppUser.class);
+                        placeholderLookupService.evictOrganization(id);
+                    }
+                )
+            )
+            .then(searchIndexer.enqueue(AppUser.class, id));
     }
 
     @Override
-    @Transactional(readOnly = true)
-    public Flux<AppUserDTO> search(String query, Pageable pageable) {
+    public Mono<SearchResult<AppUserDTO>> search(String query, Pageable pageable, CountMode mode) {
         log.debug("Request to search for a page of AppUsers for query {}", query);
-        return appUserSearchRepository.search(query, pageable).map(appUserMapper::toDto);
+        return appUserSearchRepository
+            .search(query, pageable, countService.trackTotalHits(mode))
+            .map(result -> result.map(appUserMapper::toDto));
+    }
+
+    @Override
+    public Mono<SearchResult<AppUserDTO>> searchAfter(String query, Sort sort, SearchAfterCursor cursor, int size, CountMode mode) {
+        log.debug("Request to search for the page of AppUsers after {} for query {}", cursor, query);
+        return appUserSearchRepository
+            .searchAfter(query, sort, cursor, size, countService.trackTotalHits(mode))
+            .map(result -> result.map(appUserMapper::toDto));
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Flux<SuggestionDTO> suggest(String prefix, Long organizationId, int limit) {
+        log.debug("Request to suggest AppUsers for prefix {}", prefix);
+        return appUserSearchRepository
+            .suggest(prefix, organizationId, limit)
+            .map(appUser -> new SuggestionDTO(appUser.getId(), appUser.getDesignation()));
+    }
+
+    private Mono<AppUser> publishChange(AppUser saved, Runnable evictLocally) {
+        return cacheInvalidationBus.publish(AppUser.class, saved.getId(), evictLocally).thenReturn(saved);
+    }
+
+    private Mono<AppUser> enqueueForIndexing(AppUser saved) {
+        return searchIndexer.enqueue(AppUser.class, saved.getId()).thenReturn(saved);
+    }
+
+    /**
+     * Links a new AppUser under its organisation in the organisation closure table.
+     */
+    private Mono<Void> insertInHierarchy(AppUser saved) {
+        if (saved.getOrganizationId() == null) {
+            return organizationHierarchyRepository.insertNode(saved.getId(), null);
+        }
+        // the ancestors of the organisation are read once its concurrent moves are committed
+        return organizationHierarchyRepository
+            .lockTree()
+            .then(organizationHierarchyRepository.insertNode(saved.getId(), saved.getOrganizationId()));
+    }
+
+    /**
+     * Keeps the organisation closure table in step with a change of organisation, refusing to move an AppUser under
+     * its own subtree.
+     */
+    private Mono<Void> moveInHierarchy(Long id, Long organizationId) {
+        // the parent is read, and the move checked, once the concurrent changes of the tree are committed
+        return organizationHierarchyRepository
+            .lockTree()
+            .then(organizationHierarchyRepository.findParentId(id))
+            .map(Optional::of)
+            .defaultIfEmpty(Optional.empty())
+            .flatMap(parentId -> {
+                if (parentId.equals(Optional.ofNullable(organizationId))) {
+                    return Mono.empty();
+                }
+                if (organizationId == null) {
+                    return organizationHierarchyRepository.moveNode(id, null);
+                }
+                if (id.equals(organizationId)) {
+                    return Mono.error(new OrganizationCycleException(id, organizationId));
+                }
+                return organizationHierarchyRepository
+                    .isInSubtree(id, organizationId)
+                    .flatMap(cyclic ->
+                        cyclic
+                            ? Mono.<Void>error(new OrganizationCycleException(id, organizationId))
+                            : organizationHierarchyRepository.moveNode(id, organizationId)
+                    );
+            });
     }
 }
@@ -20,17 +20,43 @@ package io.github.erp.service.impl;
 
 import static org.elasticsearch.index.query.QueryBuilders.*;
 
+import io.github.erp.config.ApplicationProperties;
 import io.github.erp.domain.Placeholder;
+import io.github.erp.repository.KeysetCursor;
 import io.github.erp.repository.PlaceholderRepository;
+import io.github.erp.repository.TableStatistics;
 import io.github.erp.repository.search.PlaceholderSearchRepository;
+import io.github.erp.repository.search.SearchAfterCursor;
+import io.github.erp.repository.search.SearchResult;
+import io.github.erp.service.CacheInvalidationBus;
+import io.github.erp.service.CountMode;
+import io.github.erp.service.CountService;
+import io.github.erp.service.PlaceholderLookupService;
+import io.github.erp.service.PlaceholderResolutionService;
 import io.github.erp.service.PlaceholderService;
+import io.github.erp.service.SearchIndexer;
+import io.github.erp.service.TotalCount;
+import io.github.erp.service.dto.AppUserDTO;
+import io.github.erp.service.dto.BulkImportReportDTO;
 import io.github.erp.service.dto.PlaceholderDTO;
+import io.github.erp.service.dto.SuggestionDTO;
 import io.github.erp.service.mapper.PlaceholderMapper;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.NestedExceptionUtils;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
@@ -49,14 +75,50 @@ public class PlaceholderServiceImpl implements PlaceholderService {
 
     private final PlaceholderSearchRepository placeholderSearchRepository;
 
+    private final CountService countService;
+
+    private final TableStatistics tableStatistics;
+
+    private final PlaceholderResolutionService placeholderResolutionService;
+
+    private final PlaceholderLookupService placeholderLookupService;
+
+    private final CacheInvalidationBus cacheInvalidationBus;
+
+    private final SearchIndexer searchIndexer;
+
+    private final TransactionalOperator transactionalOperator;
+
+    private final Validator validator;
+
+    private final ApplicationProperties applicationProperties;
+
     public PlaceholderServiceImpl(
         PlaceholderRepository placeholderRepository,
         PlaceholderMapper placeholderMapper,
-        PlaceholderSearchRepository placeholderSearchRepository
+        PlaceholderSearchRepository placeholderSearchRepository,
+        CountService countService,
+        TableStatistics tableStatistics,
+        PlaceholderResolutionService placeholderResolutionService,
+        PlaceholderLookupService placeholderLookupService,
+        CacheInvalidationBus cacheInvalidationBus,
+        SearchIndexer searchIndexer,
+        TransactionalOperator transactionalOperator,
+        Validator validator,
+        ApplicationProperties applicationProperties
     ) {
         this.placeholderRepository = placeholderRepository;
         this.placeholderMapper = placeholderMapper;
         this.placeholderSearchRepository = placeholderSearchRepository;
+        this.countService = countService;
+        this.tableStatistics = tableStatistics;
+        this.placeholderResolutionService = placeholderResolutionService;
+        this.placeholderLookupService = placeholderLookupService;
+        this.cacheInvalidationBus = cacheInvalidationBus;
+        this.searchIndexer = searchIndexer;
+        this.transactionalOperator = transactionalOperator;
+        this.validator = validator;
+        this.applicationProperties = applicationProperties;
     }
 
     @Override
@@ -64,7 +126,16 @@ public class PlaceholderServiceImpl implements PlaceholderService {
         log.debug("Request to save Placeholder : {}", placeholderDTO);
         return placeholderRepository
             .save(placeholderMapper.toEntity(placeholderDTO))
-            .flatMap(placeholderSearchRepository::save)
+            .flatMap(saved ->
+                publishChange(
+                    saved,
+                    () -> {
+                        countService.evict(Placeholder.class);
+                        placeholderLookupService.evictOrganization(saved.getOrganizationId());
+                    }
+                )
+            )
+            .flatMap(this::enqueueForIndexing)
             .map(placeholderMapper::toDto);
     }
 
@@ -73,7 +144,8 @@ public class PlaceholderServiceImpl implements PlaceholderService {
         log.debug("Request to update Placeholder : {}", placeholderDTO);
         return placeholderRepository
             .save(placeholderMapper.toEntity(placeholderDTO))
-            .flatMap(placeholderSearchRepository::save)
+            .flatMap(saved -> publishChange(saved, () -> evictCachedLookups(saved)))
+            .flatMap(this::enqueueForIndexing)
             .map(placeholderMapper::toDto);
     }
 
@@ -89,11 +161,8 @@ public class PlaceholderServiceImpl implements PlaceholderService {
                 return existingPlaceholder;
             })
             .flatMap(placeholderRepository::save)
-            .flatMap(savedPlaceholder -> {
-                placeholderSearchRepository.save(savedPlaceholder);
-
-                return Mono.just(savedPlaceholder);
-            })
+            .flatMap(saved -> publishChange(saved, () -> evictCachedLookups(saved)))
+            .flatMap(this::enqueueForIndexing)
             .map(placeholderMapper::toDto);
     }
 
@@ -104,16 +173,267 @@ public class PlaceholderServiceImpl implements PlaceholderService {
         return placeholderRepository.findAllBy(pageable).map(placeholderMapper::toDto);
     }
 
-    public Flux<PlaceholderDTO> findAllWithEagerRelationships(Pageable pageable) {
-        return placeholderRepository.findAllWithEagerRelationships(pageable).map(placeholderMapper::toDto);
+    @Override
+    @Transactional(readOnly = true)
+    public Flux<PlaceholderDTO> findAllAfter(KeysetCursor cursor, int pageSize) {
+        log.debug("Request to get a keyset page of Placeholders after {}", cursor);
+        return placeholderRepository.findAllAfter(cursor, pageSize).map(placeholderMapper::toDto);
     }
 
-    public Mono<Long> countAll() {
-        return placeholderRepository.count();
+    @Override
+    @Transactional(readOnly = true)
+    public Flux<PlaceholderDTO> exportAll(Long organizationId) {
+        log.debug("Request to export Placeholders of organization {}", organizationId);
+        return placeholderRepository.streamAll(organizationId).map(placeholderMapper::toDto);
     }
 
-    public Mono<Long> searchCount() {
-        return placeholderSearchRepository.count();
+    @Override
+    @Transactional(readOnly = true)
+    public Flux<PlaceholderDTO> findAllInOrganizationSubtree(Long organizationId, Pageable pageable) {
+        log.debug("Request to get the Placeholders in the subtree of organization {}", organizationId);
+        return placeholderRepository.findAllInOrganizationSubtree(organizationId, pageable).map(placeholderMapper::toDto);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Mono<BulkImportReportDTO> importAll(Flux<PlaceholderDTO> placeholderDTOs, int batchSize) {
+        log.debug("Request to import Placeholders by batches of {}", batchSize);
+        return importRows(placeholderDTOs.index((index, placeholderDTO) -> new ImportRow(index + 1, placeholderDTO)), batchSize);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Mono<BulkImportReportDTO> importAllFromCsv(Flux<List<String>> records, int batchSize) {
+        log.debug("Request to import Placeholders from CSV by batches of {}", batchSize);
+        Flux<ImportRow> rows = records.switchOnFirst((header, all) -> {
+            if (!header.hasValue()) {
+                return Flux.empty();
+            }
+            List<String> columns = header.get();
+            return all.skip(1).index((index, values) -> fromCsv(index + 1, columns, values));
+        });
+        return importRows(rows, batchSize);
+    }
+
+    private ImportRow fromCsv(long row, List<String> columns, List<String> values) {
+        PlaceholderDTO placeholderDTO = new PlaceholderDTO();
+        try {
+            for (int index = 0; index < columns.size() && index < values.size(); index++) {
+                String value = values.get(index);
+                switch (columns.get(index)) {
+                    case "placeholderIndex":
+                        placeholderDTO.setPlaceholderIndex(value);
+                        break;
+                    case "placeholderValue":
+                        placeholderDTO.setPlaceholderValue(value);
+                        break;
+                    case "archetypeId":
+                        if (value != null) {
+                            placeholderDTO.setArchetype(new PlaceholderDTO());
+                            placeholderDTO.getArchetype().setId(Long.valueOf(value.trim()));
+                        }
+                        break;
+                    case "organizationId":
+                        if (value != null) {
+                            placeholderDTO.setOrganization(new AppUserDTO());
+                            placeholderDTO.getOrganization().setId(Long.valueOf(value.trim()));
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } catch (NumberFormatException e) {
+            return new ImportRow(row, "invalid id: " + e.getMessage());
+        }
+        return new ImportRow(row, placeholderDTO);
+    }
+
+    private Mono<BulkImportReportDTO> importRows(Flux<ImportRow> rows, int batchSize) {
+        int maxReportedErrors = applicationProperties.getBulkImport().getMaxReportedErrors();
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return rows
+                .map(this::validate)
+                .buffer(batchSize)
+                .concatMap(this::importBatch)
+                .concatMap(batch ->
+                    cacheInvalidationBus.publish(Placeholder.class, null, () -> countService.evict(Placeholder.class)).thenReturn(batch)
+                )
+                .reduceWith(BulkImportReportDTO::new, (report, batch) -> batch.addTo(report, maxReportedErrors))
+                .map(report -> {
+                    long elapsed = System.nanoTime() - start;
+                    report.setElapsedMillis(TimeUnit.NANOSECONDS.toMillis(elapsed));
+                    report.setRowsPerSecond(elapsed > 0 ? report.getImported() * 1e9 / elapsed : 0);
+                    log.info(
+                        "Imported {} Placeholders, rejected {}, at {} rows/s",
+                        report.getImported(),
+                        report.getFailed(),
+                        Math.round(report.getRowsPerSecond())
+                    );
+                    return report;
+                });
+        });
+    }
+
+    private ImportRow validate(ImportRow row) {
+        if (row.error != null) {
+            return row;
+        }
+        if (row.placeholderDTO.getId() != null) {
+            return new ImportRow(row.row, "a new placeholder cannot already have an ID");
+        }
+        Set<ConstraintViolation<PlaceholderDTO>> violations = validator.validate(row.placeholderDTO);
+        if (!violations.isEmpty()) {
+            return new ImportRow(
+                row.row,
+                violations
+                    .stream()
+                    .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                    .collect(Collectors.joining(", "))
+            );
+        }
+        return row;
+    }
+
+    /**
+     * Inserts the valid rows of the batch, and queues them for indexing, in one transaction. When the batch fails, its
+     * rows are inserted again one by one, to tell the rejected rows from the others.
+     */
+    private Mono<BatchResult> importBatch(List<ImportRow> rows) {
+        BatchResult result = new BatchResult(rows.size());
+        List<ImportRow> valid = new ArrayList<>(rows.size());
+        for (ImportRow row : rows) {
+            if (row.error != null) {
+                result.reject(row.row, row.error);
+            } else {
+                valid.add(row);
+            }
+        }
+        if (valid.isEmpty()) {
+            return Mono.just(result);
+        }
+        return transactionalOperator
+            .transactional(
+                placeholderRepository
+                    .insertAll(toEntities(valid))
+                    .collectList()
+                    .flatMap(saved ->
+                        searchIndexer
+                            .enqueueAll(Placeholder.class, saved.stream().map(Placeholder::getId).collect(Collectors.toList()))
+                            .thenReturn(saved)
+                    )
+            )
+            .onErrorResume(e -> {
+                log.debug("Batch of Placeholders rejected, importing its rows one by one: {}", e.getMessage());
+                return Flux
+                    .fromIterable(valid)
+                    .concatMap(row ->
+                        transactionalOperator
+                            .transactional(
+                                placeholderRepository.save(placeholderMapper.toEntity(row.placeholderDTO)).flatMap(this::enqueueForIndexing)
+                            )
+                            .onErrorResume(rowError -> {
+                                result.reject(row.row, NestedExceptionUtils.getMostSpecificCause(rowError).getMessage());
+                                return Mono.empty();
+                            })
+                    )
+                    .collectList();
+            })
+            .flatMap(saved -> {
+                saved.stream().map(Placeholder::getOrganizationId).distinct().forEach(placeholderLookupService::evictOrganization);
+                result.imported = saved.size();
+                return Mono.just(result);
+            });
+    }
+
+    private List<Placeholder> toEntities(List<ImportRow> rows) {
+        List<Placeholder> placeholders = new ArrayList<>(rows.size());
+        for (ImportRow row : rows) {
+            placeholders.add(placeholderMapper.toEntity(row.placeholderDTO));
+        }
+        return placeholders;
+    }
+
+    private void evictCachedLookups(Placeholder saved) {
+        placeholderResolutionService.evict(saved.getId());
+        placeholderLookupService.evict(saved.getId(), saved.getOrganizationId());
+    }
+
+    private Mono<Placeholder> publishChange(Placeholder saved, Runnable evictLocally) {
+        return cacheInvalidationBus.publish(Placeholder.class, saved.getId(), evictLocally).thenReturn(saved);
+    }
+
+    private Mono<Placeholder> enqueueForIndexing(Placeholder saved) {
+        return searchIndexer.enqueue(Placeholder.class, saved.getId()).thenReturn(saved);
+    }
+
+    /**
+     * A row of an import, with its position in the input, and the reason it is rejected if it is.
+     */
+    private static final class ImportRow {
+
+        private final long row;
+        private final PlaceholderDTO placeholderDTO;
+        private final String error;
+
+        ImportRow(long row, PlaceholderDTO placeholderDTO) {
+            this.row = row;
+            this.placeholderDTO = placeholderDTO;
+            this.error = null;
+        }
+
+        ImportRow(long row, String error) {
+            this.row = row;
+            this.placeholderDTO = null;
+            this.error = error;
+        }
+    }
+
+    /**
+     * The outcome of a batch, only updated by the batch itself, then added to the report.
+     */
+    private static final class BatchResult {
+
+        private final int received;
+        private final List<BulkImportReportDTO.RowError> errors = new ArrayList<>();
+        private int imported;
+
+        BatchResult(int received) {
+            this.received = received;
+        }
+
+        void reject(long row, String message) {
+            errors.add(new BulkImportReportDTO.RowError(row, message));
+        }
+
+        BulkImportReportDTO addTo(BulkImportReportDTO report, int maxReportedErrors) {
+            report.setReceived(report.getReceived() + received);
+            report.setImported(report.getImported() + imported);
+            report.setFailed(report.getFailed() + errors.size());
+            for (BulkImportReportDTO.RowError error : errors) {
+                if (report.getErrors().size() >= maxReportedErrors) {
+                    break;
+                }
+                report.getErrors().add(error);
+            }
+            return report;
+        }
+    }
+
+    public Flux<PlaceholderDTO> findAllWithEagerRelationships(Pageable pageable) {
+        return placeholderRepository.findAllWithEagerRelationships(pageable).map(placeholderMapper::toDto);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Mono<TotalCount> countAll(CountMode mode) {
+        return countService.countAll(
+            Placeholder.class,
+            mode,
+            placeholderRepository::count,
+            () -> tableStatistics.estimateRowCount(Placeholder.class)
+        );
     }
 
     @Override
@@ -126,13 +446,44 @@ public class PlaceholderServiceImpl implements PlaceholderService {
     @Override
     public Mono<Void> delete(Long id) {
         log.debug("Request to delete Placeholder : {}", id);
-        return placeholderRepository.deleteById(id).then(placeholderSearchRepository.deleteById(id));
+        return placeholderRepository
+            .deleteById(id)
+            .then(
+                cacheInvalidationBus.publish(
+                    Placeholder.class,
+                    id,
+                    () -> {
+                        countService.evict(Placeholder.class);
+                        placeholderResolutionService.evict(id);
+                        placeholderLookupService.evict(id, null);
+                    }
+                )
+            )
+            .then(searchIndexer.enqueue(Placeholder.class, id));
     }
 
     @Override
-    @Transactional(readOnly = true)
-    public Flux<PlaceholderDTO> search(String query, Pageable pageable) {
+    public Mono<SearchResult<PlaceholderDTO>> search(String query, Pageable pageable, CountMode mode) {
         log.debug("Request to search for a page of Placeholders for query {}", query);
-        return placeholderSearchRepository.search(query, pageable).map(placeholderMapper::toDto);
+        return placeholderSearchRepository
+            .search(query, pageable, countService.trackTotalHits(mode))
+            .map(result -> result.map(placeholderMapper::toDto));
+    }
+
+    @Override
+    public Mono<SearchResult<PlaceholderDTO>> searchAfter(String query, Sort sort, SearchAfterCursor cursor, int size, CountMode mode) {
+        log.debug("Request to search for the page of Placeholders after {} for query {}", cursor, query);
+        return placeholderSearchRepository
+            .searchAfter(query, sort, cursor, size, countService.trackTotalHits(mode))
+            .map(result -> result.map(placeholderMapper::toDto));
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Flux<SuggestionDTO> suggest(String prefix, Long organizationId, int limit) {
+        log.debug("Request to suggest Placeholders for prefix {}", prefix);
+        return placeholderSearchRepository
+            .suggest(prefix, organizationId, limit)
+            .map(placeholder -> new SuggestionDTO(placeholder.getId(), placeholder.getPlaceholderIndex()));
     }
 }
@@ -0,0 +1,76 @@
+package io.github.erp.web.filter;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import io.github.erp.security.LoginThrottle;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Optional;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * Throttles the login attempts of each client address, answering 429 before the body of the attempt is even read.
+ * <p>
+ * The attempts are throttled by login too, once the body is read, in {@link io.github.erp.web.rest.UserJWTController}.
+ */
+public class LoginThrottlingFilter implements WebFilter {
+
+    private static final String LOGIN_PATH = "/api/authenticate";
+
+    private static final String UNKNOWN_ADDRESS = "unknown";
+
+    private final LoginThrottle loginThrottle;
+
+    public LoginThrottlingFilter(LoginThrottle loginThrottle) {
+        this.loginThrottle = loginThrottle;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (request.getMethod() != HttpMethod.POST || !LOGIN_PATH.equals(request.getPath().pathWithinApplication().value())) {
+            return chain.filter(exchange);
+        }
+        Optional<Duration> retryAfter = loginThrottle.acquireForClient(clientAddress(request));
+        if (retryAfter.isEmpty()) {
+            return chain.filter(exchange);
+        }
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, Long.toString(Math.max(1, (retryAfter.get().toMillis() + 999) / 1000)));
+        return response.setComplete();
+    }
+
+    private static String clientAddress(ServerHttpRequest request) {
+        // the forwarded headers, when trusted, are applied to the remote address by the server
+        InetSocketAddress remoteAddress = request.getRemoteAddress();
+        if (remoteAddress == null || remoteAddress.getAddress() == null) {
+            return UNKNOWN_ADDRESS;
+        }
+        return remoteAddress.getAddress().getHostAddress();
+    }
+}
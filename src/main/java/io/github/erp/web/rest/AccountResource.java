@@ -21,6 +21,7 @@ package io.github.erp.web.rest;
 import io.github.erp.repository.UserRepository;
 import io.github.erp.security.SecurityUtils;
 import io.github.erp.service.MailService;
+import io.github.erp.service.TokenRevocationService;
 import io.github.erp.service.UserService;
 import io.github.erp.service.dto.AdminUserDTO;
 import io.github.erp.service.dto.PasswordChangeDTO;
@@ -60,10 +61,18 @@ public class AccountResource {
 
     private final MailService mailService;
 
-    public AccountResource(UserRepository userRepository, UserService userService, MailService mailService) {
+    private final TokenRevocationService tokenRevocationService;
+
+    public AccountResource(
+        UserRepository userRepository,
+        UserService userService,
+        MailService mailService,
+        TokenRevocationService tokenRevocationService
+    ) {
         this.userRepository = userRepository;
         this.userService = userService;
         this.mailService = mailService;
+        this.tokenRevocationService = tokenRevocationService;
     }
 
     /**
@@ -173,6 +182,20 @@ public class AccountResource {
         return userService.changePassword(passwordChangeDto.getCurrentPassword(), passwordChangeDto.getNewPassword());
     }
 
+    /**
+     * {@code POST  /account/revoke-sessions} : revokes all the tokens issued to the current user so far, the token of
+     * the request included.
+     *
+     * @throws RuntimeException {@code 500 (Internal Server Error)} if the user login wasn't found.
+     */
+    @PostMapping(path = "/account/revoke-sessions")
+    public Mono<Void> revokeSessions() {
+        return SecurityUtils
+            .getCurrentUserLogin()
+            .switchIfEmpty(Mono.error(new AccountResourceException("Current user login not found")))
+            .flatMap(tokenRevocationService::revokeSessions);
+    }
+
     /**
      * {@code POST   /account/reset-password/init} : Send an email to reset the password of the user.
      *
@@ -18,23 +18,35 @@ package io.github.erp.web.rest;
  * along with this program. If not, see <http://www.gnu.org/licenses/>.
  */
 
+import io.github.erp.config.ApplicationProperties;
+import io.github.erp.domain.AppUser;
 import io.github.erp.repository.AppUserRepository;
+import io.github.erp.repository.EntityManager;
+import io.github.erp.repository.KeysetCursor;
+import io.github.erp.repository.search.SearchAfterCursor;
 import io.github.erp.service.AppUserService;
+import io.github.erp.service.CountMode;
+import io.github.erp.service.CountService;
+import io.github.erp.service.OrganizationCycleException;
+import io.github.erp.service.TotalCount;
 import io.github.erp.service.dto.AppUserDTO;
+import io.github.erp.service.dto.SuggestionDTO;
 import io.github.erp.web.rest.errors.BadRequestAlertException;
+import io.github.erp.web.util.CountPaginationUtil;
+import io.github.erp.web.util.CsvUtil;
+import io.github.erp.web.util.KeysetPaginationUtil;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -47,7 +59,6 @@ import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import tech.jhipster.web.util.HeaderUtil;
-import tech.jhipster.web.util.PaginationUtil;
 import tech.jhipster.web.util.reactive.ResponseUtil;
 
 /**
@@ -68,9 +79,24 @@ public class AppUserResource {
 
     private final AppUserRepository appUserRepository;
 
-    public AppUserResource(AppUserService appUserService, AppUserRepository appUserRepository) {
+    private final CountService countService;
+
+    private final ApplicationProperties applicationProperties;
+
+    private final Set<String> keysetSortableProperties;
+
+    public AppUserResource(
+        AppUserService appUserService,
+        AppUserRepository appUserRepository,
+        CountService countService,
+        ApplicationProperties applicationProperties,
+        EntityManager entityManager
+    ) {
         this.appUserService = appUserService;
         this.appUserRepository = appUserRepository;
+        this.countService = countService;
+        this.applicationProperties = applicationProperties;
+        this.keysetSortableProperties = entityManager.getKeysetSortableProperties(AppUser.class, AppUserDTO.class);
     }
 
     /**
@@ -132,6 +158,7 @@ public class AppUserResource {
 
                 return appUserService
                     .update(appUserDTO)
+                    .onErrorMap(OrganizationCycleException.class, this::organizationCycle)
                     .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND)))
                     .map(result ->
                         ResponseEntity
@@ -176,6 +203,7 @@ public class AppUserResource {
                 Mono<AppUserDTO> result = appUserService.partialUpdate(appUserDTO);
 
                 return result
+                    .onErrorMap(OrganizationCycleException.class, this::organizationCycle)
                     .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND)))
                     .map(res ->
                         ResponseEntity
@@ -192,31 +220,122 @@ public class AppUserResource {
      * @param pageable the pagination information.
      * @param request a {@link ServerHttpRequest} request.
      * @param eagerload flag to eager load entities from relationships (This is applicable for many-to-many).
+     * @param cursor opt-in keyset pagination: empty for the first page, then the token returned in the {@code X-Next-Cursor} header.
+     * @param count how the total count is computed: {@code exact}, {@code estimate} or {@code none}, the configured mode if absent.
      * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of appUsers in body.
      */
     @GetMapping("/app-users")
     public Mono<ResponseEntity<List<AppUserDTO>>> getAllAppUsers(
         @org.springdoc.api.annotations.ParameterObject Pageable pageable,
         ServerHttpRequest request,
-        @RequestParam(required = false, defaultValue = "false") boolean eagerload
+        @RequestParam(required = false, defaultValue = "false") boolean eagerload,
+        @RequestParam(name = KeysetPaginationUtil.CURSOR_PARAMETER, required = false) String cursor,
+        @RequestParam(name = CountPaginationUtil.COUNT_PARAMETER, required = false) String count
     ) {
+        if (cursor != null) {
+            return getKeysetPageOfAppUsers(pageable, request, cursor);
+        }
         log.debug("REST request to get a page of AppUsers");
         return appUserService
-            .countAll()
+            .countAll(resolveCountMode(count))
             .zipWith(appUserService.findAll(pageable).collectList())
             .map(countWithEntities ->
                 ResponseEntity
                     .ok()
                     .headers(
-                        PaginationUtil.generatePaginationHttpHeaders(
+                        CountPaginationUtil.generatePaginationHttpHeaders(
                             UriComponentsBuilder.fromHttpRequest(request),
-                            new PageImpl<>(countWithEntities.getT2(), pageable, countWithEntities.getT1())
+                            pageable,
+                            countWithEntities.getT2(),
+                            countWithEntities.getT1()
                         )
                     )
                     .body(countWithEntities.getT2())
             );
     }
 
+    private Mono<ResponseEntity<List<AppUserDTO>>> getKeysetPageOfAppUsers(Pageable pageable, ServerHttpRequest request, String cursor) {
+        log.debug("REST request to get a keyset page of AppUsers");
+        KeysetCursor after;
+        try {
+            after = KeysetCursor.decode(cursor, pageable.getSort(), keysetSortableProperties);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "cursorinvalid");
+        }
+        return appUserService
+            .findAllAfter(after, pageable.getPageSize())
+            .collectList()
+            .map(entities -> {
+                KeysetCursor next = entities.size() < pageable.getPageSize()
+                    ? null
+                    : KeysetCursor.after(entities.get(entities.size() - 1), pageable.getSort());
+                return ResponseEntity
+                    .ok()
+                    .headers(KeysetPaginationUtil.generateKeysetHttpHeaders(UriComponentsBuilder.fromHttpRequest(request), next))
+                    .body(entities);
+            });
+    }
+
+    /**
+     * {@code GET  /app-users/_export} : stream all the appUsers, one JSON document per line.
+     *
+     * @param organizationId the id of the organization to export the appUsers of, or none to export them all.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the appUsers in body, written as they are read.
+     */
+    @GetMapping(value = "/app-users/_export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<Flux<AppUserDTO>> exportAppUsers(@RequestParam(required = false) Long organizationId) {
+        log.debug("REST request to export AppUsers of organization {}", organizationId);
+        return ResponseEntity
+            .ok()
+            .headers(CsvUtil.generateExportHttpHeaders("app-users.ndjson"))
+            .body(appUserService.exportAll(organizationId));
+    }
+
+    /**
+     * {@code GET  /app-users/_export} : stream all the appUsers as CSV.
+     *
+     * @param organizationId the id of the organization to export the appUsers of, or none to export them all.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the appUsers in body, written as they are read.
+     */
+    @GetMapping(value = "/app-users/_export", produces = CsvUtil.TEXT_CSV_VALUE)
+    public ResponseEntity<Flux<String>> exportAppUsersAsCsv(@RequestParam(required = false) Long organizationId) {
+        log.debug("REST request to export AppUsers of organization {} as CSV", organizationId);
+        Flux<String> lines = appUserService
+            .exportAll(organizationId)
+            .map(appUser ->
+                CsvUtil.toCsvLine(
+                    appUser.getId(),
+                    appUser.getDesignation(),
+                    appUser.getIdentifier(),
+                    appUser.getIsCorporateAccount(),
+                    appUser.getOrganization() != null ? appUser.getOrganization().getId() : null,
+                    appUser.getOrganization() != null ? appUser.getOrganization().getDesignation() : null,
+                    appUser.getSystemUser() != null ? appUser.getSystemUser().getId() : null,
+                    appUser.getSystemUser() != null ? appUser.getSystemUser().getLogin() : null
+                )
+            );
+        return ResponseEntity
+            .ok()
+            .headers(CsvUtil.generateExportHttpHeaders("app-users.csv"))
+            .body(
+                Flux.concat(
+                    Mono.just(
+                        CsvUtil.toCsvLine(
+                            "id",
+                            "designation",
+                            "identifier",
+                            "isCorporateAccount",
+                            "organizationId",
+                            "organizationDesignation",
+                            "systemUserId",
+                            "systemUserLogin"
+                        )
+                    ),
+                    lines
+                )
+            );
+    }
+
     /**
      * {@code GET  /app-users/:id} : get the "id" appUser.
      *
@@ -230,6 +349,51 @@ public class AppUserResource {
         return ResponseUtil.wrapOrNotFound(appUserDTO);
     }
 
+    /**
+     * {@code GET  /app-users/:id/subtree} : get the appUsers of the "id" organization, at any depth.
+     *
+     * @param id the id of the organization at the root of the subtree.
+     * @param pageable the pagination information.
+     * @param request a {@link ServerHttpRequest} request.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of appUsers in body.
+     */
+    @GetMapping("/app-users/{id}/subtree")
+    public Mono<ResponseEntity<List<AppUserDTO>>> getAppUserSubtree(
+        @PathVariable Long id,
+        @org.springdoc.api.annotations.ParameterObject Pageable pageable,
+        ServerHttpRequest request
+    ) {
+        log.debug("REST request to get a page of the AppUsers in the subtree of : {}", id);
+        return appUserService
+            .findAllInOrganizationSubtree(id, pageable)
+            .collectList()
+            .map(entities ->
+                ResponseEntity
+                    .ok()
+                    .headers(
+                        CountPaginationUtil.generatePaginationHttpHeaders(
+                            UriComponentsBuilder.fromHttpRequest(request),
+                            pageable,
+                            entities,
+                            TotalCount.none()
+                        )
+                    )
+                    .body(entities)
+            );
+    }
+
+    /**
+     * {@code GET  /app-users/:id/ancestors} : get the organizations the "id" appUser belongs to, nearest first.
+     *
+     * @param id the id of the appUser.
+     * @return the ancestors of the appUser, empty for a root or an unknown appUser.
+     */
+    @GetMapping("/app-users/{id}/ancestors")
+    public Mono<List<AppUserDTO>> getAppUserAncestors(@PathVariable Long id) {
+        log.debug("REST request to get the ancestors of AppUser : {}", id);
+        return appUserService.findAncestors(id).collectList();
+    }
+
     /**
      * {@code DELETE  /app-users/:id} : delete the "id" appUser.
      *
@@ -254,23 +418,123 @@ public class AppUserResource {
     /**
      * {@code SEARCH  /_search/app-users?query=:query} : search for the appUser corresponding
      * to the query.
+     * <p>
+     * The page and its total count come from a single search. The pages past the max result window are only
+     * reachable with a cursor, which reads every page from the point in time of the first one.
      *
      * @param query the query of the appUser search.
      * @param pageable the pagination information.
      * @param request a {@link ServerHttpRequest} request.
+     * @param cursor opt-in cursor pagination: empty for the first page, then the token returned in the {@code X-Next-Cursor} header.
+     * @param count how the total count is computed: {@code exact}, {@code estimate} or {@code none}, the configured mode if absent.
      * @return the result of the search.
      */
     @GetMapping("/_search/app-users")
-    public Mono<ResponseEntity<Flux<AppUserDTO>>> searchAppUsers(
+    public Mono<ResponseEntity<List<AppUserDTO>>> searchAppUsers(
         @RequestParam String query,
         @org.springdoc.api.annotations.ParameterObject Pageable pageable,
-        ServerHttpRequest request
+        ServerHttpRequest request,
+        @RequestParam(name = KeysetPaginationUtil.CURSOR_PARAMETER, required = false) String cursor,
+        @RequestParam(name = CountPaginationUtil.COUNT_PARAMETER, required = false) String count
     ) {
+        CountMode mode = resolveCountMode(count);
+        if (cursor != null) {
+            return searchPageOfAppUsersAfter(query, pageable, request, cursor, mode);
+        }
         log.debug("REST request to search for a page of AppUsers for query {}", query);
         return appUserService
-            .searchCount()
-            .map(total -> new PageImpl<>(new ArrayList<>(), pageable, total))
-            .map(page -> PaginationUtil.generatePaginationHttpHeaders(UriComponentsBuilder.fromHttpRequest(request), page))
-            .map(headers -> ResponseEntity.ok().headers(headers).body(appUserService.search(query, pageable)));
+            .search(query, pageable, mode)
+            .onErrorMap(
+                IllegalArgumentException.class,
+                e -> new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "searchpageinvalid")
+            )
+            .map(result ->
+                ResponseEntity
+                    .ok()
+                    .headers(
+                        CountPaginationUtil.generatePaginationHttpHeaders(
+                            UriComponentsBuilder.fromHttpRequest(request),
+                            pageable,
+                            result.getContent(),
+                            CountService.totalOf(result)
+                        )
+                    )
+                    .body(result.getContent())
+            );
+    }
+
+    private Mono<ResponseEntity<List<AppUserDTO>>> searchPageOfAppUsersAfter(
+        String query,
+        Pageable pageable,
+        ServerHttpRequest request,
+        String cursor,
+        CountMode mode
+    ) {
+        log.debug("REST request to search for a cursor page of AppUsers for query {}", query);
+        SearchAfterCursor after;
+        try {
+            after = SearchAfterCursor.decode(cursor, pageable.getSort());
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "cursorinvalid");
+        }
+        return appUserService
+            .searchAfter(query, pageable.getSort(), after, pageable.getPageSize(), mode)
+            .onErrorMap(IllegalArgumentException.class, e -> new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "cursorinvalid"))
+            .map(result -> {
+                String next = result.getNext() != null ? result.getNext().encode() : null;
+                HttpHeaders headers = KeysetPaginationUtil.generateCursorHttpHeaders(UriComponentsBuilder.fromHttpRequest(request), next);
+                return ResponseEntity
+                    .ok()
+                    .headers(CountPaginationUtil.addTotalCountHttpHeaders(headers, CountService.totalOf(result)))
+                    .body(result.getContent());
+            });
+    }
+
+    private BadRequestAlertException organizationCycle(OrganizationCycleException e) {
+        return new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "organizationcycle");
+    }
+
+    /**
+     * {@code GET  /_suggest/app-users?prefix=:prefix} : suggest the app users whose {@code designation} starts with
+     * the text typed so far, for a typeahead.
+     * <p>
+     * The prefix is matched as text, so that any character may be typed, and the hits are neither counted nor paged.
+     *
+     * @param prefix the text typed so far.
+     * @param organizationId the id of the organization to suggest the app users of, or none to suggest them all.
+     * @param limit the number of suggestions, the configured default if absent, and at most the configured maximum.
+     * @return the suggestions, best matches first.
+     */
+    @GetMapping("/_suggest/app-users")
+    public Mono<List<SuggestionDTO>> suggestAppUsers(
+        @RequestParam String prefix,
+        @RequestParam(required = false) Long organizationId,
+        @RequestParam(required = false) Integer limit
+    ) {
+        log.debug("REST request to suggest AppUsers for prefix {}", prefix);
+        int resolvedLimit = resolveSuggestLimit(limit);
+        if (prefix.isBlank()) {
+            return Mono.just(List.of());
+        }
+        return appUserService.suggest(prefix.strip(), organizationId, resolvedLimit).collectList();
+    }
+
+    private int resolveSuggestLimit(Integer limit) {
+        ApplicationProperties.Search search = applicationProperties.getSearch();
+        if (limit == null) {
+            return Math.min(search.getSuggestDefaultLimit(), search.getSuggestMaxLimit());
+        }
+        if (limit < 1) {
+            throw new BadRequestAlertException("The limit must be positive", ENTITY_NAME, "limitinvalid");
+        }
+        return Math.min(limit, search.getSuggestMaxLimit());
+    }
+
+    private CountMode resolveCountMode(String count) {
+        try {
+            return countService.resolveMode(count);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "countmodeinvalid");
+        }
     }
 }
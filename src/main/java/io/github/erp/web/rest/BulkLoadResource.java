@@ -0,0 +1,83 @@
+package io.github.erp.web.rest;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import io.github.erp.security.AuthoritiesConstants;
+import io.github.erp.service.BulkLoadService;
+import io.github.erp.service.dto.BulkImportReportDTO;
+import io.github.erp.web.rest.errors.BadRequestAlertException;
+import io.github.erp.web.util.CsvUtil;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * REST controller for loading seed data and large imports straight into the {@code placeholder}, {@code app_user}
+ * and {@code jhi_user} tables.
+ */
+@RestController
+@RequestMapping("/api/admin")
+public class BulkLoadResource {
+
+    private static final String ENTITY_NAME = "bulkLoad";
+
+    private final Logger log = LoggerFactory.getLogger(BulkLoadResource.class);
+
+    private final BulkLoadService bulkLoadService;
+
+    public BulkLoadResource(BulkLoadService bulkLoadService) {
+        this.bulkLoadService = bulkLoadService;
+    }
+
+    /**
+     * {@code POST  /admin/bulk-load/:table} : Load the rows of a CSV document into a table.
+     * <p>
+     * The header line names the columns of the table, the following lines hold the rows. Empty fields are loaded as
+     * {@code NULL}. The loaded rows are not indexed for search: the index of the table is rebuilt afterwards, see
+     * {@link SearchReindexResource}.
+     *
+     * @param table the name of the table.
+     * @param lines the lines of the CSV document, read as they arrive.
+     * @param upsert whether the rows with an existing id replace the stored ones, which requires the {@code id} column.
+     * @param separator the field separator, {@code ,} by default.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the report of the load,
+     * or with status {@code 400 (Bad Request)} if the table or the header cannot be loaded.
+     */
+    @PostMapping(value = "/bulk-load/{table}", consumes = CsvUtil.TEXT_CSV_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    @PreAuthorize("hasAuthority(\"" + AuthoritiesConstants.ADMIN + "\")")
+    public Mono<ResponseEntity<BulkImportReportDTO>> bulkLoad(
+        @PathVariable String table,
+        @RequestBody Flux<String> lines,
+        @RequestParam(defaultValue = "false") boolean upsert,
+        @RequestParam(defaultValue = ",") char separator
+    ) {
+        log.debug("REST request to bulk load {}", table);
+        Flux<List<String>> records = lines.filter(line -> !line.isBlank()).map(line -> CsvUtil.parseCsvLine(line, separator));
+        return bulkLoadService
+            .load(table, records, upsert)
+            .onErrorMap(IllegalArgumentException.class, e -> new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "bulkloadinvalid"))
+            .map(ResponseEntity::ok);
+    }
+}
@@ -18,23 +18,39 @@ package io.github.erp.web.rest;
  * along with this program. If not, see <http://www.gnu.org/licenses/>.
  */
 
+import io.github.erp.config.ApplicationProperties;
+import io.github.erp.domain.Placeholder;
+import io.github.erp.repository.EntityManager;
+import io.github.erp.repository.KeysetCursor;
 import io.github.erp.repository.PlaceholderRepository;
+import io.github.erp.repository.search.SearchAfterCursor;
+import io.github.erp.service.CountMode;
+import io.github.erp.service.CountService;
+import io.github.erp.service.PlaceholderLookupService;
+import io.github.erp.service.PlaceholderResolutionService;
 import io.github.erp.service.PlaceholderService;
+import io.github.erp.service.TotalCount;
+import io.github.erp.service.dto.BulkImportReportDTO;
 import io.github.erp.service.dto.PlaceholderDTO;
+import io.github.erp.service.dto.ResolvedPlaceholderDTO;
+import io.github.erp.service.dto.SuggestionDTO;
 import io.github.erp.web.rest.errors.BadRequestAlertException;
+import io.github.erp.web.util.CountPaginationUtil;
+import io.github.erp.web.util.CsvUtil;
+import io.github.erp.web.util.KeysetPaginationUtil;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -47,7 +63,6 @@ import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import tech.jhipster.web.util.HeaderUtil;
-import tech.jhipster.web.util.PaginationUtil;
 import tech.jhipster.web.util.reactive.ResponseUtil;
 
 /**
@@ -68,9 +83,32 @@ public class PlaceholderResource {
 
     private final PlaceholderRepository placeholderRepository;
 
-    public PlaceholderResource(PlaceholderService placeholderService, PlaceholderRepository placeholderRepository) {
+    private final CountService countService;
+
+    private final PlaceholderResolutionService placeholderResolutionService;
+
+    private final PlaceholderLookupService placeholderLookupService;
+
+    private final ApplicationProperties applicationProperties;
+
+    private final Set<String> keysetSortableProperties;
+
+    public PlaceholderResource(
+        PlaceholderService placeholderService,
+        PlaceholderRepository placeholderRepository,
+        CountService countService,
+        PlaceholderResolutionService placeholderResolutionService,
+        PlaceholderLookupService placeholderLookupService,
+        ApplicationProperties applicationProperties,
+        EntityManager entityManager
+    ) {
         this.placeholderService = placeholderService;
         this.placeholderRepository = placeholderRepository;
+        this.countService = countService;
+        this.placeholderResolutionService = placeholderResolutionService;
+        this.placeholderLookupService = placeholderLookupService;
+        this.applicationProperties = applicationProperties;
+        this.keysetSortableProperties = entityManager.getKeysetSortableProperties(Placeholder.class, PlaceholderDTO.class);
     }
 
     /**
@@ -101,6 +139,56 @@ public class PlaceholderResource {
             });
     }
 
+    /**
+     * {@code POST  /placeholders/_import} : Import new placeholders, sent as a JSON array or as NDJSON.
+     *
+     * @param placeholderDTOs the placeholders to import, read as they arrive.
+     * @param batchSize the number of placeholders inserted per transaction, the configured one if absent, at most the configured maximum.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the report of the import, listing the rejected rows.
+     */
+    @PostMapping(
+        value = "/placeholders/_import",
+        consumes = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE },
+        produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public Mono<ResponseEntity<BulkImportReportDTO>> importPlaceholders(
+        @RequestBody Flux<PlaceholderDTO> placeholderDTOs,
+        @RequestParam(required = false) Integer batchSize
+    ) {
+        log.debug("REST request to import Placeholders");
+        return placeholderService.importAll(placeholderDTOs, resolveBatchSize(batchSize)).map(ResponseEntity::ok);
+    }
+
+    /**
+     * {@code POST  /placeholders/_import} : Import new placeholders, sent as CSV with a header line.
+     *
+     * @param document the CSV document, read as it arrives.
+     * @param batchSize the number of placeholders inserted per transaction, the configured one if absent, at most the configured maximum.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the report of the import, listing the rejected rows.
+     */
+    @PostMapping(value = "/placeholders/_import", consumes = CsvUtil.TEXT_CSV_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<BulkImportReportDTO>> importPlaceholdersFromCsv(
+        @RequestBody Flux<DataBuffer> document,
+        @RequestParam(required = false) Integer batchSize
+    ) {
+        log.debug("REST request to import Placeholders from CSV");
+        return placeholderService.importAllFromCsv(CsvUtil.readCsvRecords(document), resolveBatchSize(batchSize)).map(ResponseEntity::ok);
+    }
+
+    private int resolveBatchSize(Integer batchSize) {
+        if (batchSize == null) {
+            return applicationProperties.getBulkImport().getBatchSize();
+        }
+        if (batchSize < 1) {
+            throw new BadRequestAlertException("The batch size must be positive", ENTITY_NAME, "batchsizeinvalid");
+        }
+        int maxBatchSize = applicationProperties.getBulkImport().getMaxBatchSize();
+        if (batchSize > maxBatchSize) {
+            throw new BadRequestAlertException("The batch size must be at most " + maxBatchSize, ENTITY_NAME, "batchsizeinvalid");
+        }
+        return batchSize;
+    }
+
     /**
      * {@code PUT  /placeholders/:id} : Updates an existing placeholder.
      *
@@ -193,31 +281,153 @@ public class PlaceholderResource {
      * @param pageable the pagination information.
      * @param request a {@link ServerHttpRequest} request.
      * @param eagerload flag to eager load entities from relationships (This is applicable for many-to-many).
+     * @param cursor opt-in keyset pagination: empty for the first page, then the token returned in the {@code X-Next-Cursor} header.
+     * @param count how the total count is computed: {@code exact}, {@code estimate} or {@code none}, the configured mode if absent.
      * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of placeholders in body.
      */
     @GetMapping("/placeholders")
     public Mono<ResponseEntity<List<PlaceholderDTO>>> getAllPlaceholders(
         @org.springdoc.api.annotations.ParameterObject Pageable pageable,
         ServerHttpRequest request,
-        @RequestParam(required = false, defaultValue = "false") boolean eagerload
+        @RequestParam(required = false, defaultValue = "false") boolean eagerload,
+        @RequestParam(name = KeysetPaginationUtil.CURSOR_PARAMETER, required = false) String cursor,
+        @RequestParam(name = CountPaginationUtil.COUNT_PARAMETER, required = false) String count
     ) {
+        if (cursor != null) {
+            return getKeysetPageOfPlaceholders(pageable, request, cursor);
+        }
         log.debug("REST request to get a page of Placeholders");
         return placeholderService
-            .countAll()
+            .countAll(resolveCountMode(count))
             .zipWith(placeholderService.findAll(pageable).collectList())
             .map(countWithEntities ->
                 ResponseEntity
                     .ok()
                     .headers(
-                        PaginationUtil.generatePaginationHttpHeaders(
+                        CountPaginationUtil.generatePaginationHttpHeaders(
                             UriComponentsBuilder.fromHttpRequest(request),
-                            new PageImpl<>(countWithEntities.getT2(), pageable, countWithEntities.getT1())
+                            pageable,
+                            countWithEntities.getT2(),
+                            countWithEntities.getT1()
                         )
                     )
                     .body(countWithEntities.getT2())
             );
     }
 
+    private Mono<ResponseEntity<List<PlaceholderDTO>>> getKeysetPageOfPlaceholders(
+        Pageable pageable,
+        ServerHttpRequest request,
+        String cursor
+    ) {
+        log.debug("REST request to get a keyset page of Placeholders");
+        KeysetCursor after;
+        try {
+            after = KeysetCursor.decode(cursor, pageable.getSort(), keysetSortableProperties);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "cursorinvalid");
+        }
+        return placeholderService
+            .findAllAfter(after, pageable.getPageSize())
+            .collectList()
+            .map(entities -> {
+                KeysetCursor next = entities.size() < pageable.getPageSize()
+                    ? null
+                    : KeysetCursor.after(entities.get(entities.size() - 1), pageable.getSort());
+                return ResponseEntity
+                    .ok()
+                    .headers(KeysetPaginationUtil.generateKeysetHttpHeaders(UriComponentsBuilder.fromHttpRequest(request), next))
+                    .body(entities);
+            });
+    }
+
+    /**
+     * {@code GET  /placeholders/_lookup} : look a placeholder up by its organization and index.
+     *
+     * @param organizationId the id of the organization.
+     * @param placeholderIndex the index of the placeholder.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the placeholderDTO,
+     * or with status {@code 404 (Not Found)}.
+     */
+    @GetMapping(value = "/placeholders/_lookup", params = "placeholderIndex")
+    public Mono<ResponseEntity<PlaceholderDTO>> lookupPlaceholder(
+        @RequestParam Long organizationId,
+        @RequestParam String placeholderIndex
+    ) {
+        log.debug("REST request to look Placeholder {} of organization {} up", placeholderIndex, organizationId);
+        return ResponseUtil.wrapOrNotFound(placeholderLookupService.lookup(organizationId, placeholderIndex));
+    }
+
+    /**
+     * {@code GET  /placeholders/_lookup} : look all the placeholders of an organization up.
+     *
+     * @param organizationId the id of the organization.
+     * @return the placeholders of the organization, ordered by id.
+     */
+    @GetMapping(value = "/placeholders/_lookup", params = "!placeholderIndex")
+    public Mono<List<PlaceholderDTO>> lookupPlaceholders(@RequestParam Long organizationId) {
+        log.debug("REST request to look all the Placeholders of organization {} up", organizationId);
+        return placeholderLookupService.lookupAll(organizationId).collectList();
+    }
+
+    /**
+     * {@code GET  /placeholders/_export} : stream all the placeholders, one JSON document per line.
+     *
+     * @param organizationId the id of the organization to export the placeholders of, or none to export them all.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the placeholders in body, written as they are read.
+     */
+    @GetMapping(value = "/placeholders/_export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<Flux<PlaceholderDTO>> exportPlaceholders(@RequestParam(required = false) Long organizationId) {
+        log.debug("REST request to export Placeholders of organization {}", organizationId);
+        return ResponseEntity
+            .ok()
+            .headers(CsvUtil.generateExportHttpHeaders("placeholders.ndjson"))
+            .body(placeholderService.exportAll(organizationId));
+    }
+
+    /**
+     * {@code GET  /placeholders/_export} : stream all the placeholders as CSV.
+     *
+     * @param organizationId the id of the organization to export the placeholders of, or none to export them all.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the placeholders in body, written as they are read.
+     */
+    @GetMapping(value = "/placeholders/_export", produces = CsvUtil.TEXT_CSV_VALUE)
+    public ResponseEntity<Flux<String>> exportPlaceholdersAsCsv(@RequestParam(required = false) Long organizationId) {
+        log.debug("REST request to export Placeholders of organization {} as CSV", organizationId);
+        Flux<String> lines = placeholderService
+            .exportAll(organizationId)
+            .map(placeholder ->
+                CsvUtil.toCsvLine(
+                    placeholder.getId(),
+                    placeholder.getPlaceholderIndex(),
+                    placeholder.getPlaceholderValue(),
+                    placeholder.getArchetype() != null ? placeholder.getArchetype().getId() : null,
+                    placeholder.getArchetype() != null ? placeholder.getArchetype().getPlaceholderValue() : null,
+                    placeholder.getOrganization() != null ? placeholder.getOrganization().getId() : null,
+                    placeholder.getOrganization() != null ? placeholder.getOrganization().getDesignation() : null
+                )
+            );
+        return ResponseEntity
+            .ok()
+            .headers(CsvUtil.generateExportHttpHeaders("placeholders.csv"))
+            .body(
+                Flux.concat(
+                    Mono.just(
+                        CsvUtil.toCsvLine(
+                            "id",
+                            "placeholderIndex",
+                            "placeholderValue",
+                            "archetypeId",
+                            "archetypePlaceholderValue",
+                            "organizationId",
+                            "organizationDesignation"
+                        )
+                    ),
+                    lines
+                )
+            );
+    }
+
     /**
      * {@code GET  /placeholders/:id} : get the "id" placeholder.
      *
@@ -231,6 +441,52 @@ public class PlaceholderResource {
         return ResponseUtil.wrapOrNotFound(placeholderDTO);
     }
 
+    /**
+     * {@code GET  /placeholders/:id/resolved} : get the "id" placeholder resolved through its chain of archetypes.
+     *
+     * @param id the id of the placeholder to resolve.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the resolved placeholder,
+     * or with status {@code 404 (Not Found)}.
+     */
+    @GetMapping("/placeholders/{id}/resolved")
+    public Mono<ResponseEntity<ResolvedPlaceholderDTO>> getResolvedPlaceholder(@PathVariable Long id) {
+        log.debug("REST request to get resolved Placeholder : {}", id);
+        return ResponseUtil.wrapOrNotFound(placeholderResolutionService.resolve(id));
+    }
+
+    /**
+     * {@code GET  /placeholders/organization-subtree/:organizationId} : get the placeholders of every organization of a subtree.
+     *
+     * @param organizationId the id of the organization at the root of the subtree.
+     * @param pageable the pagination information.
+     * @param request a {@link ServerHttpRequest} request.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of placeholders in body.
+     */
+    @GetMapping("/placeholders/organization-subtree/{organizationId}")
+    public Mono<ResponseEntity<List<PlaceholderDTO>>> getPlaceholdersInOrganizationSubtree(
+        @PathVariable Long organizationId,
+        @org.springdoc.api.annotations.ParameterObject Pageable pageable,
+        ServerHttpRequest request
+    ) {
+        log.debug("REST request to get a page of the Placeholders in the subtree of organization : {}", organizationId);
+        return placeholderService
+            .findAllInOrganizationSubtree(organizationId, pageable)
+            .collectList()
+            .map(entities ->
+                ResponseEntity
+                    .ok()
+                    .headers(
+                        CountPaginationUtil.generatePaginationHttpHeaders(
+                            UriComponentsBuilder.fromHttpRequest(request),
+                            pageable,
+                            entities,
+                            TotalCount.none()
+                        )
+                    )
+                    .body(entities)
+            );
+    }
+
     /**
      * {@code DELETE  /placeholders/:id} : delete the "id" placeholder.
      *
@@ -255,23 +511,119 @@ public class PlaceholderResource {
     /**
      * {@code SEARCH  /_search/placeholders?query=:query} : search for the placeholder corresponding
      * to the query.
+     * <p>
+     * The page and its total count come from a single search. The pages past the max result window are only
+     * reachable with a cursor, which reads every page from the point in time of the first one.
      *
      * @param query the query of the placeholder search.
      * @param pageable the pagination information.
      * @param request a {@link ServerHttpRequest} request.
+     * @param cursor opt-in cursor pagination: empty for the first page, then the token returned in the {@code X-Next-Cursor} header.
+     * @param count how the total count is computed: {@code exact}, {@code estimate} or {@code none}, the configured mode if absent.
      * @return the result of the search.
      */
     @GetMapping("/_search/placeholders")
-    public Mono<ResponseEntity<Flux<PlaceholderDTO>>> searchPlaceholders(
+    public Mono<ResponseEntity<List<PlaceholderDTO>>> searchPlaceholders(
         @RequestParam String query,
         @org.springdoc.api.annotations.ParameterObject Pageable pageable,
-        ServerHttpRequest request
+        ServerHttpRequest request,
+        @RequestParam(name = KeysetPaginationUtil.CURSOR_PARAMETER, required = false) String cursor,
+        @RequestParam(name = CountPaginationUtil.COUNT_PARAMETER, required = false) String count
     ) {
+        CountMode mode = resolveCountMode(count);
+        if (cursor != null) {
+            return searchPageOfPlaceholdersAfter(query, pageable, request, cursor, mode);
+        }
         log.debug("REST request to search for a page of Placeholders for query {}", query);
         return placeholderService
-            .searchCount()
-            .map(total -> new PageImpl<>(new ArrayList<>(), pageable, total))
-            .map(page -> PaginationUtil.generatePaginationHttpHeaders(UriComponentsBuilder.fromHttpRequest(request), page))
-            .map(headers -> ResponseEntity.ok().headers(headers).body(placeholderService.search(query, pageable)));
+            .search(query, pageable, mode)
+            .onErrorMap(
+                IllegalArgumentException.class,
+                e -> new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "searchpageinvalid")
+            )
+            .map(result ->
+                ResponseEntity
+                    .ok()
+                    .headers(
+                        CountPaginationUtil.generatePaginationHttpHeaders(
+                            UriComponentsBuilder.fromHttpRequest(request),
+                            pageable,
+                            result.getContent(),
+                            CountService.totalOf(result)
+                        )
+                    )
+                    .body(result.getContent())
+            );
+    }
+
+    private Mono<ResponseEntity<List<PlaceholderDTO>>> searchPageOfPlaceholdersAfter(
+        String query,
+        Pageable pageable,
+        ServerHttpRequest request,
+        String cursor,
+        CountMode mode
+    ) {
+        log.debug("REST request to search for a cursor page of Placeholders for query {}", query);
+        SearchAfterCursor after;
+        try {
+            after = SearchAfterCursor.decode(cursor, pageable.getSort());
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "cursorinvalid");
+        }
+        return placeholderService
+            .searchAfter(query, pageable.getSort(), after, pageable.getPageSize(), mode)
+            .onErrorMap(IllegalArgumentException.class, e -> new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "cursorinvalid"))
+            .map(result -> {
+                String next = result.getNext() != null ? result.getNext().encode() : null;
+                HttpHeaders headers = KeysetPaginationUtil.generateCursorHttpHeaders(UriComponentsBuilder.fromHttpRequest(request), next);
+                return ResponseEntity
+                    .ok()
+                    .headers(CountPaginationUtil.addTotalCountHttpHeaders(headers, CountService.totalOf(result)))
+                    .body(result.getContent());
+            });
+    }
+
+    /**
+     * {@code GET  /_suggest/placeholders?prefix=:prefix} : suggest the placeholders whose {@code placeholderIndex} starts with
+     * the text typed so far, for a typeahead.
+     * <p>
+     * The prefix is matched as text, so that any character may be typed, and the hits are neither counted nor paged.
+     *
+     * @param prefix the text typed so far.
+     * @param organizationId the id of the organization to suggest the placeholders of, or none to suggest them all.
+     * @param limit the number of suggestions, the configured default if absent, and at most the configured maximum.
+     * @return the suggestions, best matches first.
+     */
+    @GetMapping("/_suggest/placeholders")
+    public Mono<List<SuggestionDTO>> suggestPlaceholders(
+        @RequestParam String prefix,
+        @RequestParam(required = false) Long organizationId,
+        @RequestParam(required = false) Integer limit
+    ) {
+        log.debug("REST request to suggest Placeholders for prefix {}", prefix);
+        int resolvedLimit = resolveSuggestLimit(limit);
+        if (prefix.isBlank()) {
+            return Mono.just(List.of());
+        }
+        return placeholderService.suggest(prefix.strip(), organizationId, resolvedLimit).collectList();
+    }
+
+    private int resolveSuggestLimit(Integer limit) {
+        ApplicationProperties.Search search = applicationProperties.getSearch();
+        if (limit == null) {
+            return Math.min(search.getSuggestDefaultLimit(), search.getSuggestMaxLimit());
+        }
+        if (limit < 1) {
+            throw new BadRequestAlertException("The limit must be positive", ENTITY_NAME, "limitinvalid");
+        }
+        return Math.min(limit, search.getSuggestMaxLimit());
+    }
+
+    private CountMode resolveCountMode(String count) {
+        try {
+            return countService.resolveMode(count);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "countmodeinvalid");
+        }
     }
 }
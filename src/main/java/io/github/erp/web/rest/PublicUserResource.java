@@ -48,6 +48,8 @@ public class PublicUserResource {
         Arrays.asList("id", "login", "firstName", "lastName", "email", "activated", "langKey")
     );
 
+    private static final List<String> SEARCH_ORDERED_PROPERTIES = List.of("id");
+
     private final Logger log = LoggerFactory.getLogger(PublicUserResource.class);
 
     private final UserService userService;
@@ -96,13 +98,22 @@ public class PublicUserResource {
     }
 
     /**
-     * {@code SEARCH /_search/users/:query} : search for the User corresponding to the query.
+     * {@code SEARCH /_search/users/:query} : search for a page of the Users corresponding to the query.
+     * <p>
+     * The users are written as they are read from the search response, which holds only their public fields.
      *
      * @param query the query to search.
+     * @param pageable the pagination information, sorted by relevance or by id, and within the max result window.
      * @return the result of the search.
      */
     @GetMapping("/_search/users/{query}")
-    public Mono<List<UserDTO>> search(@PathVariable String query) {
-        return userSearchRepository.search(query).map(UserDTO::new).collectList();
+    public Flux<UserDTO> search(@PathVariable String query, @org.springdoc.api.annotations.ParameterObject Pageable pageable) {
+        if (!pageable.getSort().stream().map(Sort.Order::getProperty).allMatch(SEARCH_ORDERED_PROPERTIES::contains)) {
+            return Flux.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Users can only be searched by relevance or by id"));
+        }
+        return userSearchRepository
+            .search(query, pageable)
+            .onErrorMap(IllegalArgumentException.class, e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e))
+            .map(UserDTO::new);
     }
 }
@@ -0,0 +1,111 @@
+package io.github.erp.web.rest;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import io.github.erp.security.AuthoritiesConstants;
+import io.github.erp.service.SearchReindexRunningException;
+import io.github.erp.service.SearchReindexService;
+import io.github.erp.service.dto.SearchReindexJobDTO;
+import io.github.erp.web.rest.errors.BadRequestAlertException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * REST controller for rebuilding the search indices from the database, while they keep serving the searches.
+ */
+@RestController
+@RequestMapping("/api/admin")
+public class SearchReindexResource {
+
+    private static final String ENTITY_NAME = "searchReindex";
+
+    private final Logger log = LoggerFactory.getLogger(SearchReindexResource.class);
+
+    private final SearchReindexService searchReindexService;
+
+    public SearchReindexResource(SearchReindexService searchReindexService) {
+        this.searchReindexService = searchReindexService;
+    }
+
+    /**
+     * {@code POST  /admin/search-reindex/:index} : Start rebuilding a search index in the background.
+     * <p>
+     * A job abandoned by its instance is resumed from its last checkpoint instead.
+     *
+     * @param index the name of the search index: {@code placeholder}, {@code appuser} or {@code user}.
+     * @return the {@link ResponseEntity} with status {@code 202 (Accepted)} and with body the job started,
+     * with status {@code 400 (Bad Request)} if there is no such search index,
+     * or with status {@code 409 (Conflict)} if the search index is being rebuilt.
+     */
+    @PostMapping("/search-reindex/{index}")
+    @PreAuthorize("hasAuthority(\"" + AuthoritiesConstants.ADMIN + "\")")
+    public Mono<ResponseEntity<SearchReindexJobDTO>> startReindex(@PathVariable String index) {
+        log.debug("REST request to reindex the search index {}", index);
+        return searchReindexService
+            .start(index)
+            .onErrorMap(IllegalArgumentException.class, this::unknownIndex)
+            .onErrorMap(SearchReindexRunningException.class, e -> new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage()))
+            .map(job -> ResponseEntity.accepted().body(job));
+    }
+
+    /**
+     * {@code GET  /admin/search-reindex} : get the last reindex of every search index.
+     *
+     * @return the jobs, with their progress.
+     */
+    @GetMapping("/search-reindex")
+    @PreAuthorize("hasAuthority(\"" + AuthoritiesConstants.ADMIN + "\")")
+    public Flux<SearchReindexJobDTO> getAllReindexJobs() {
+        log.debug("REST request to get the search reindex jobs");
+        return searchReindexService.findAll();
+    }
+
+    /**
+     * {@code DELETE  /admin/search-reindex/:index} : Cancel the rebuild of a search index.
+     *
+     * @param index the name of the search index.
+     * @return the {@link ResponseEntity} with status {@code 204 (NO_CONTENT)},
+     * or with status {@code 404 (Not Found)} if the search index is not being rebuilt.
+     */
+    @DeleteMapping("/search-reindex/{index}")
+    @PreAuthorize("hasAuthority(\"" + AuthoritiesConstants.ADMIN + "\")")
+    public Mono<ResponseEntity<Void>> cancelReindex(@PathVariable String index) {
+        log.debug("REST request to cancel the reindex of the search index {}", index);
+        return searchReindexService
+            .cancel(index)
+            .onErrorMap(IllegalArgumentException.class, this::unknownIndex)
+            .map(cancelled -> {
+                if (!cancelled) {
+                    throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+                }
+                return ResponseEntity.noContent().build();
+            });
+    }
+
+    private BadRequestAlertException unknownIndex(IllegalArgumentException e) {
+        return new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "reindexunknown");
+    }
+}
@@ -19,15 +19,22 @@ package io.github.erp.web.rest;
  */
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import io.github.erp.security.LoginThrottle;
+import io.github.erp.security.LoginThrottledException;
 import io.github.erp.security.jwt.JWTFilter;
 import io.github.erp.security.jwt.TokenProvider;
+import io.github.erp.service.TokenRevocationService;
 import io.github.erp.web.rest.vm.LoginVM;
+import java.time.Duration;
+import java.util.Optional;
 import javax.validation.Valid;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.ReactiveAuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.context.SecurityContext;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
@@ -43,19 +50,35 @@ public class UserJWTController {
 
     private final ReactiveAuthenticationManager authenticationManager;
 
-    public UserJWTController(TokenProvider tokenProvider, ReactiveAuthenticationManager authenticationManager) {
+    private final LoginThrottle loginThrottle;
+
+    private final TokenRevocationService tokenRevocationService;
+
+    public UserJWTController(
+        TokenProvider tokenProvider,
+        ReactiveAuthenticationManager authenticationManager,
+        LoginThrottle loginThrottle,
+        TokenRevocationService tokenRevocationService
+    ) {
         this.tokenProvider = tokenProvider;
         this.authenticationManager = authenticationManager;
+        this.loginThrottle = loginThrottle;
+        this.tokenRevocationService = tokenRevocationService;
     }
 
     @PostMapping("/authenticate")
     public Mono<ResponseEntity<JWTToken>> authorize(@Valid @RequestBody Mono<LoginVM> loginVM) {
         return loginVM
-            .flatMap(login ->
-                authenticationManager
+            .flatMap(login -> {
+                // the attempts throttled do not reach the user details, nor the password hashing
+                Optional<Duration> retryAfter = loginThrottle.acquireForLogin(login.getUsername());
+                if (retryAfter.isPresent()) {
+                    return Mono.error(new LoginThrottledException(retryAfter.get()));
+                }
+                return authenticationManager
                     .authenticate(new UsernamePasswordAuthenticationToken(login.getUsername(), login.getPassword()))
-                    .flatMap(auth -> Mono.fromCallable(() -> tokenProvider.createToken(auth, login.isRememberMe())))
-            )
+                    .flatMap(auth -> Mono.fromCallable(() -> tokenProvider.createToken(auth, login.isRememberMe())));
+            })
             .map(jwt -> {
                 HttpHeaders httpHeaders = new HttpHeaders();
                 httpHeaders.add(JWTFilter.AUTHORIZATION_HEADER, "Bearer " + jwt);
@@ -63,6 +86,20 @@ public class UserJWTController {
             });
     }
 
+    /**
+     * {@code POST  /logout} : revokes the token of the request, which is refused from then on.
+     *
+     * @return the {@link ResponseEntity} with status {@code 204 (No Content)}.
+     */
+    @PostMapping("/logout")
+    public Mono<ResponseEntity<Void>> logout() {
+        return ReactiveSecurityContextHolder
+            .getContext()
+            .map(SecurityContext::getAuthentication)
+            .flatMap(tokenRevocationService::revoke)
+            .then(Mono.just(ResponseEntity.noContent().build()));
+    }
+
     /**
      * Object to return as body in JWT Authentication.
      */
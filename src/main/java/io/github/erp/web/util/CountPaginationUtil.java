@@ -0,0 +1,116 @@
+package io.github.erp.web.util;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import io.github.erp.service.CountMode;
+import io.github.erp.service.TotalCount;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.util.UriComponentsBuilder;
+import tech.jhipster.web.util.PaginationUtil;
+
+/**
+ * Utility class for handling pagination with a {@link TotalCount} in any {@link CountMode}.
+ * <p>
+ * The mode of the count is sent in the {@code X-Total-Count-Mode} header, next to the {@code X-Total-Count} header.
+ * Exact and estimated counts produce the same headers as {@link PaginationUtil}. Listings which were not counted have
+ * no {@code X-Total-Count} header, and their {@code Link} header has no {@code rel="last"} link: the {@code rel="next"}
+ * link is present unless the page is known to be the last one.
+ */
+public final class CountPaginationUtil {
+
+    public static final String COUNT_PARAMETER = "count";
+
+    public static final String TOTAL_COUNT_MODE_HEADER = "X-Total-Count-Mode";
+
+    public static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+
+    private static final String HEADER_LINK_FORMAT = "<{0}>; rel=\"{1}\"";
+
+    private CountPaginationUtil() {}
+
+    /**
+     * Generate pagination headers.
+     *
+     * @param uriBuilder a {@link UriComponentsBuilder} of the current request.
+     * @param pageable the requested page.
+     * @param content the content of the page, or null if it is streamed after the headers.
+     * @param count the total count of the listing.
+     * @return the {@link HttpHeaders}.
+     */
+    public static HttpHeaders generatePaginationHttpHeaders(
+        UriComponentsBuilder uriBuilder,
+        Pageable pageable,
+        List<?> content,
+        TotalCount count
+    ) {
+        HttpHeaders headers;
+        if (count.getValue() != null) {
+            headers =
+                PaginationUtil.generatePaginationHttpHeaders(
+                    uriBuilder,
+                    new PageImpl<>(content != null ? content : new ArrayList<>(), pageable, count.getValue())
+                );
+        } else {
+            headers = new HttpHeaders();
+            StringBuilder link = new StringBuilder();
+            int pageNumber = pageable.getPageNumber();
+            int pageSize = pageable.getPageSize();
+            if (content == null || content.size() >= pageSize) {
+                link.append(prepareLink(uriBuilder, pageNumber + 1, pageSize, "next")).append(',');
+            }
+            if (pageNumber > 0) {
+                link.append(prepareLink(uriBuilder, pageNumber - 1, pageSize, "prev")).append(',');
+            }
+            link.append(prepareLink(uriBuilder, 0, pageSize, "first"));
+            headers.add(HttpHeaders.LINK, link.toString());
+        }
+        headers.add(TOTAL_COUNT_MODE_HEADER, count.getMode().getValue());
+        return headers;
+    }
+
+    /**
+     * Adds the total count headers to the headers of a listing paged with a cursor, which has no page links.
+     *
+     * @param headers the pagination headers of the listing.
+     * @param count the total count of the listing.
+     * @return the headers.
+     */
+    public static HttpHeaders addTotalCountHttpHeaders(HttpHeaders headers, TotalCount count) {
+        if (count.getValue() != null) {
+            headers.add(TOTAL_COUNT_HEADER, Long.toString(count.getValue()));
+        }
+        headers.add(TOTAL_COUNT_MODE_HEADER, count.getMode().getValue());
+        return headers;
+    }
+
+    private static String prepareLink(UriComponentsBuilder uriBuilder, int pageNumber, int pageSize, String relType) {
+        String uri = uriBuilder
+            .replaceQueryParam("page", Integer.toString(pageNumber))
+            .replaceQueryParam("size", Integer.toString(pageSize))
+            .toUriString()
+            .replace(",", "%2C")
+            .replace(";", "%3B");
+        return MessageFormat.format(HEADER_LINK_FORMAT, uri, relType);
+    }
+}
@@ -0,0 +1,205 @@
+package io.github.erp.web.util;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.StringDecoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Utility class for streaming exports and imports.
+ * <p>
+ * Exports are served as NDJSON or as CSV (RFC 4180), depending on the {@code Accept} header, one record per line so
+ * that the rows can be written to the response as they are read from the database. Imports read CSV record by
+ * record as it arrives, a record spanning the lines of its quoted values.
+ */
+public final class CsvUtil {
+
+    public static final String TEXT_CSV_VALUE = "text/csv";
+
+    public static final MediaType TEXT_CSV = MediaType.parseMediaType(TEXT_CSV_VALUE);
+
+    private static final String LINE_SEPARATOR = "\r\n";
+
+    // the lines are decoded with their separator, so that the line breaks of the quoted values are read back as written
+    private static final StringDecoder LINE_DECODER = StringDecoder.allMimeTypes(List.of("\n"), false);
+
+    private CsvUtil() {}
+
+    /**
+     * Renders one CSV record, quoting the values holding a separator, a quote or a line break.
+     *
+     * @param values the values of the record, {@code null} values are rendered as empty fields.
+     * @return the record, terminated by a line separator.
+     */
+    public static String toCsvLine(Object... values) {
+        StringBuilder line = new StringBuilder();
+        for (int index = 0; index < values.length; index++) {
+            if (index > 0) {
+                line.append(',');
+            }
+            if (values[index] != null) {
+                appendField(line, values[index].toString());
+            }
+        }
+        return line.append(LINE_SEPARATOR).toString();
+    }
+
+    /**
+     * Reads the CSV records of a document as it arrives, as rendered by {@link #toCsvLine(Object...)}. Blank lines are
+     * skipped.
+     *
+     * @param document the document.
+     * @return the values of the records, empty fields are returned as {@code null}.
+     */
+    public static Flux<List<String>> readCsvRecords(Flux<DataBuffer> document) {
+        return Flux.defer(() -> {
+            RecordReader reader = new RecordReader();
+            return LINE_DECODER
+                .decode(document, ResolvableType.forClass(String.class), TEXT_CSV, Map.of())
+                .<List<String>>handle((line, sink) -> {
+                    List<String> values = reader.append(line);
+                    if (values != null) {
+                        sink.next(values);
+                    }
+                })
+                // an unterminated quoted value runs to the end of the document
+                .concatWith(Mono.fromSupplier(reader::take));
+        });
+    }
+
+    /**
+     * Parses one CSV record, as rendered by {@link #toCsvLine(Object...)}.
+     *
+     * @param line the record, without its line separator.
+     * @return the values of the record, empty fields are returned as {@code null}.
+     */
+    public static List<String> parseCsvLine(String line) {
+        return parseCsvLine(line, ',');
+    }
+
+    /**
+     * Parses one CSV record whose fields are delimited by the given separator, such as the {@code ;} separated files
+     * of the Liquibase fake data.
+     *
+     * @param line the record, without its line separator.
+     * @param separator the field separator.
+     * @return the values of the record, empty fields are returned as {@code null}.
+     */
+    public static List<String> parseCsvLine(String line, char separator) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        boolean wasQuoted = false;
+        for (int index = 0; index < line.length(); index++) {
+            char c = line.charAt(index);
+            if (quoted) {
+                if (c != '"') {
+                    value.append(c);
+                } else if (index + 1 < line.length() && line.charAt(index + 1) == '"') {
+                    value.append('"');
+                    index++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+                wasQuoted = true;
+            } else if (c == separator) {
+                values.add(value.length() == 0 && !wasQuoted ? null : value.toString());
+                value.setLength(0);
+                wasQuoted = false;
+            } else if (c != '\r') {
+                value.append(c);
+            }
+        }
+        values.add(value.length() == 0 && !wasQuoted ? null : value.toString());
+        return values;
+    }
+
+    /**
+     * Generate the headers of an export, offering the body as a file download.
+     *
+     * @param fileName the name of the downloaded file.
+     * @return the {@link HttpHeaders}.
+     */
+    public static HttpHeaders generateExportHttpHeaders(String fileName) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentDisposition(ContentDisposition.attachment().filename(fileName).build());
+        return headers;
+    }
+
+    private static void appendField(StringBuilder line, String value) {
+        boolean quoted = false;
+        for (int index = 0; index < value.length() && !quoted; index++) {
+            char c = value.charAt(index);
+            quoted = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+        if (!quoted) {
+            line.append(value);
+            return;
+        }
+        line.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+
+    private static final class RecordReader {
+
+        private final StringBuilder pending = new StringBuilder();
+
+        private boolean quoted;
+
+        /**
+         * @return the record ended by the line, or null if its quoted value goes on over the next line.
+         */
+        List<String> append(String line) {
+            pending.append(line);
+            for (int index = 0; index < line.length(); index++) {
+                if (line.charAt(index) == '"') {
+                    quoted = !quoted;
+                }
+            }
+            return quoted ? null : take();
+        }
+
+        /**
+         * @return the pending record, or null if it is blank.
+         */
+        List<String> take() {
+            int end = pending.length();
+            if (end > 0 && pending.charAt(end - 1) == '\n') {
+                end--;
+            }
+            if (end > 0 && pending.charAt(end - 1) == '\r') {
+                end--;
+            }
+            String line = pending.substring(0, end);
+            pending.setLength(0);
+            quoted = false;
+            return line.isBlank() ? null : parseCsvLine(line);
+        }
+    }
+}
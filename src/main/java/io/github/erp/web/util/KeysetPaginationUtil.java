@@ -0,0 +1,70 @@
+package io.github.erp.web.util;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import io.github.erp.repository.KeysetCursor;
+import java.text.MessageFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.util.UriComponentsBuilder;
+
+/**
+ * Utility class for handling keyset (cursor based) pagination.
+ * <p>
+ * The next page is advertised with the opaque cursor in the {@code X-Next-Cursor} header and a
+ * {@code Link} header with {@code rel="next"}, following the same link format as
+ * {@link tech.jhipster.web.util.PaginationUtil}. The absence of both headers means the last page was reached.
+ */
+public final class KeysetPaginationUtil {
+
+    public static final String CURSOR_PARAMETER = "cursor";
+
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private static final String HEADER_LINK_FORMAT = "<{0}>; rel=\"{1}\"";
+
+    private KeysetPaginationUtil() {}
+
+    /**
+     * Generate keyset pagination headers.
+     *
+     * @param uriBuilder a {@link UriComponentsBuilder} of the current request.
+     * @param next the cursor of the following page, or null if the current page is the last one.
+     * @return the {@link HttpHeaders} advertising the next page.
+     */
+    public static HttpHeaders generateKeysetHttpHeaders(UriComponentsBuilder uriBuilder, KeysetCursor next) {
+        return generateCursorHttpHeaders(uriBuilder, next != null ? next.encode() : null);
+    }
+
+    /**
+     * Generate the pagination headers of a listing paged with any kind of opaque cursor.
+     *
+     * @param uriBuilder a {@link UriComponentsBuilder} of the current request.
+     * @param token the token of the cursor of the following page, or null if the current page is the last one.
+     * @return the {@link HttpHeaders} advertising the next page.
+     */
+    public static HttpHeaders generateCursorHttpHeaders(UriComponentsBuilder uriBuilder, String token) {
+        HttpHeaders headers = new HttpHeaders();
+        if (token != null) {
+            headers.add(NEXT_CURSOR_HEADER, token);
+            String link = uriBuilder.replaceQueryParam("page").replaceQueryParam(CURSOR_PARAMETER, token).toUriString();
+            headers.add(HttpHeaders.LINK, MessageFormat.format(HEADER_LINK_FORMAT, link.replace(",", "%2C").replace(";", "%3B"), "next"));
+        }
+        return headers;
+    }
+}
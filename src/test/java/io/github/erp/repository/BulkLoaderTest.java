@@ -0,0 +1,77 @@
+package io.github.erp.repository;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.github.erp.domain.Placeholder;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.r2dbc.mapping.R2dbcMappingContext;
+import org.springframework.data.relational.core.mapping.RelationalPersistentEntity;
+import org.springframework.data.relational.core.mapping.RelationalPersistentProperty;
+
+class BulkLoaderTest {
+
+    private final RelationalPersistentEntity<?> entity = new R2dbcMappingContext().getRequiredPersistentEntity(Placeholder.class);
+
+    private final List<RelationalPersistentProperty> columns = List.of(
+        entity.getRequiredPersistentProperty("id"),
+        entity.getRequiredPersistentProperty("placeholderIndex"),
+        entity.getRequiredPersistentProperty("organizationId")
+    );
+
+    @Test
+    void testStageInsertCastsEachColumnArray() {
+        String insert = BulkLoader.createStageInsert(
+            "bulk_load_placeholder",
+            columns,
+            Map.of("id", "int8", "placeholder_index", "varchar", "organization_id", "int8")
+        );
+
+        assertThat(insert)
+            .isEqualTo(
+                "INSERT INTO bulk_load_placeholder (id, placeholder_index, organization_id)" +
+                " SELECT CAST(id AS int8), CAST(placeholder_index AS varchar), CAST(organization_id AS int8)" +
+                " FROM unnest(CAST(:column0 AS text[]), CAST(:column1 AS text[]), CAST(:column2 AS text[]))" +
+                " AS record(id, placeholder_index, organization_id)"
+            );
+    }
+
+    @Test
+    void testStageInsertRejectsUnknownTypes() {
+        assertThatThrownBy(() -> BulkLoader.createStageInsert("bulk_load_placeholder", columns, Map.of("id", "int8")))
+            .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void testMergeUpsertsOnTheId() {
+        assertThat(BulkLoader.createMerge("placeholder", "bulk_load_placeholder", columns, false))
+            .isEqualTo(
+                "INSERT INTO placeholder (id, placeholder_index, organization_id)" +
+                " SELECT id, placeholder_index, organization_id FROM bulk_load_placeholder"
+            );
+        assertThat(BulkLoader.createMerge("placeholder", "bulk_load_placeholder", columns, true))
+            .endsWith(
+                " ON CONFLICT (id) DO UPDATE SET placeholder_index = EXCLUDED.placeholder_index, organization_id = EXCLUDED.organization_id"
+            );
+    }
+}
@@ -0,0 +1,172 @@
+package io.github.erp.repository;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.github.erp.domain.Placeholder;
+import io.github.erp.service.dto.PlaceholderDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.r2dbc.spi.ConnectionFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.r2dbc.convert.MappingR2dbcConverter;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.data.r2dbc.dialect.PostgresDialect;
+import org.springframework.data.r2dbc.query.UpdateMapper;
+import org.springframework.data.relational.core.dialect.RenderContextFactory;
+import org.springframework.data.relational.core.sql.Column;
+import org.springframework.data.relational.core.sql.Select;
+import org.springframework.data.relational.core.sql.SelectBuilder.SelectFromAndJoinCondition;
+import org.springframework.data.relational.core.sql.Table;
+import org.springframework.data.relational.core.sql.render.SqlRenderer;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+class EntityManagerTest {
+
+    private static final Table entityTable = Table.aliased("placeholder", EntityManager.ENTITY_ALIAS);
+    private static final Table archetypeTable = Table.aliased("placeholder", "archetype");
+
+    private SimpleMeterRegistry meterRegistry;
+    private EntityManager entityManager;
+    private AtomicInteger renderedSelects;
+
+    @BeforeEach
+    void setUp() {
+        ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+        when(connectionFactory.getMetadata()).thenReturn(() -> "PostgreSQL");
+        R2dbcEntityTemplate template = new R2dbcEntityTemplate(DatabaseClient.create(connectionFactory), PostgresDialect.INSTANCE);
+        meterRegistry = new SimpleMeterRegistry();
+        entityManager =
+            new EntityManager(
+                SqlRenderer.create(new RenderContextFactory(PostgresDialect.INSTANCE).createRenderContext()),
+                new UpdateMapper(PostgresDialect.INSTANCE, (MappingR2dbcConverter) template.getConverter()),
+                template,
+                meterRegistry
+            );
+        renderedSelects = new AtomicInteger();
+    }
+
+    private SelectFromAndJoinCondition selectFrom() {
+        renderedSelects.incrementAndGet();
+        return Select
+            .builder()
+            .select(PlaceholderSqlHelper.getColumns(entityTable, EntityManager.ENTITY_ALIAS))
+            .from(entityTable)
+            .leftOuterJoin(archetypeTable)
+            .on(Column.create("archetype_id", entityTable))
+            .equals(Column.create("id", archetypeTable));
+    }
+
+    @Test
+    void testPagedSelectUsesBindMarkers() {
+        String select = entityManager.createSelect("all", this::selectFrom, Placeholder.class, PageRequest.of(3, 20), null);
+
+        assertThat(select).endsWith(" LIMIT :limit OFFSET :offset");
+        assertThat(entityManager.createSelect("all", this::selectFrom, Placeholder.class, PageRequest.of(7, 50), null))
+            .isSameAs(select);
+        assertThat(renderedSelects).hasValue(1);
+    }
+
+    @Test
+    void testStatementsAreCachedBySortAndShape() {
+        Sort byIndex = Sort.by("placeholderIndex");
+        String sorted = entityManager.createSelect("all", this::selectFrom, Placeholder.class, PageRequest.of(0, 20, byIndex), null);
+        String unsorted = entityManager.createSelect("all", this::selectFrom, Placeholder.class, PageRequest.of(0, 20), null);
+        String unpaged = entityManager.createSelect("all", this::selectFrom, Placeholder.class, null, null);
+        String otherShape = entityManager.createSelect("other", this::selectFrom, Placeholder.class, null, null);
+
+        assertThat(sorted).contains("ORDER BY e_placeholder_index ASC");
+        assertThat(unsorted).doesNotContain("ORDER BY");
+        assertThat(unpaged).doesNotContain("LIMIT");
+        assertThat(otherShape).isEqualTo(unpaged).isNotSameAs(unpaged);
+        assertThat(meterRegistry.get(EntityManager.STATEMENT_CACHE_METER_PREFIX + ".size").gauge().value()).isEqualTo(4);
+    }
+
+    @Test
+    void testUncachedSelectIsRenderedEveryTime() {
+        entityManager.createSelect(null, this::selectFrom, Placeholder.class, null, null);
+        entityManager.createSelect(null, this::selectFrom, Placeholder.class, null, null);
+
+        assertThat(renderedSelects).hasValue(2);
+        assertThat(meterRegistry.get(EntityManager.STATEMENT_CACHE_METER_PREFIX + ".size").gauge().value()).isZero();
+    }
+
+    @Test
+    void testKeysetListingsAreSortableByTheScalarColumnsTheirRowsExpose() {
+        assertThat(entityManager.getKeysetSortableProperties(Placeholder.class, Placeholder.class))
+            .containsExactlyInAnyOrder("id", "placeholderIndex", "placeholderValue", "archetypeId", "organizationId");
+        // the DTO exposes the archetype and the organization as nested objects only
+        assertThat(entityManager.getKeysetSortableProperties(Placeholder.class, PlaceholderDTO.class))
+            .containsExactlyInAnyOrder("id", "placeholderIndex", "placeholderValue");
+    }
+
+    @Test
+    void testKeysetSelectIsCachedByCursorShape() {
+        Sort byIndex = Sort.by(Sort.Direction.DESC, "placeholderIndex");
+        Placeholder first = new Placeholder().id(3L).placeholderIndex("c");
+        Placeholder second = new Placeholder().id(9L).placeholderIndex("a");
+
+        String start = entityManager.createKeysetSelect("all", this::selectFrom, Placeholder.class, KeysetCursor.start(byIndex), null);
+        String afterFirst = entityManager.createKeysetSelect(
+            "all",
+            this::selectFrom,
+            Placeholder.class,
+            KeysetCursor.after(first, byIndex),
+            null
+        );
+        String afterSecond = entityManager.createKeysetSelect(
+            "all",
+            this::selectFrom,
+            Placeholder.class,
+            KeysetCursor.after(second, byIndex),
+            null
+        );
+
+        assertThat(start).doesNotContain(":keysetId").endsWith(" LIMIT :limit");
+        assertThat(afterFirst).contains("e.placeholder_index < :keysetValue").contains("e.id > :keysetId");
+        assertThat(afterSecond).isSameAs(afterFirst);
+        assertThat(renderedSelects).hasValue(2);
+        assertThat(meterRegistry.get(EntityManager.STATEMENT_CACHE_METER_PREFIX + ".hit-ratio").gauge().value()).isEqualTo(1.0 / 3);
+    }
+
+    @Test
+    void testLinkInsertWritesAllRowsInOneStatement() {
+        EntityManager.LinkTable table = new EntityManager.LinkTable("rel_placeholder__tag", "placeholder_id", "tag_id");
+
+        assertThat(entityManager.createLinkInsert(table, 3))
+            .isEqualTo(
+                "INSERT INTO rel_placeholder__tag (placeholder_id, tag_id) VALUES " +
+                "(:linkId, :linkReference0), (:linkId, :linkReference1), (:linkId, :linkReference2)"
+            );
+    }
+
+    @Test
+    void testLinkTableUpdateReportsRoundTripsSaved() {
+        EntityManager.LinkTableUpdate update = new EntityManager.LinkTableUpdate(250, 0, 251, 2);
+
+        assertThat(update.getRoundTripsSaved()).isEqualTo(249);
+        assertThat(new EntityManager.LinkTableUpdate(0, 0, 1, 1).getRoundTripsSaved()).isZero();
+    }
+}
@@ -0,0 +1,103 @@
+package io.github.erp.repository;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.github.erp.service.dto.PlaceholderDTO;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+
+class KeysetCursorTest {
+
+    private static final Sort BY_INDEX = Sort.by(Sort.Direction.DESC, "placeholderIndex");
+
+    private static final Set<String> SORTABLE = Set.of("placeholderIndex", "placeholderValue");
+
+    @Test
+    void testEmptyTokenStartsTheListing() {
+        KeysetCursor cursor = KeysetCursor.decode("", BY_INDEX, SORTABLE);
+
+        assertThat(cursor.isStart()).isTrue();
+        assertThat(cursor.getSort()).isEqualTo(Sort.by(Sort.Order.desc("placeholderIndex"), Sort.Order.asc("id")));
+    }
+
+    @Test
+    void testTokenRoundTrip() {
+        PlaceholderDTO last = new PlaceholderDTO();
+        last.setId(42L);
+        last.setPlaceholderIndex("a|b");
+
+        KeysetCursor cursor = KeysetCursor.after(last, BY_INDEX);
+        KeysetCursor decoded = KeysetCursor.decode(cursor.encode(), BY_INDEX, SORTABLE);
+
+        assertThat(decoded).isEqualTo(cursor);
+        assertThat(decoded.getId()).isEqualTo(42L);
+        assertThat(decoded.getValue()).isEqualTo("a|b");
+    }
+
+    @Test
+    void testNullSortValueRoundTrip() {
+        PlaceholderDTO last = new PlaceholderDTO();
+        last.setId(7L);
+
+        KeysetCursor decoded = KeysetCursor.decode(KeysetCursor.after(last, BY_INDEX).encode(), BY_INDEX, SORTABLE);
+
+        assertThat(decoded.getValue()).isNull();
+        assertThat(decoded.isStart()).isFalse();
+    }
+
+    @Test
+    void testUnsortedListingIsOrderedById() {
+        KeysetCursor cursor = KeysetCursor.start(Sort.unsorted());
+
+        assertThat(cursor.isSortedById()).isTrue();
+        assertThat(cursor.getSort()).isEqualTo(Sort.by(Sort.Direction.ASC, "id"));
+    }
+
+    @Test
+    void testTokenOfAnotherSortIsRejected() {
+        PlaceholderDTO last = new PlaceholderDTO();
+        last.setId(1L);
+        String token = KeysetCursor.after(last, BY_INDEX).encode();
+
+        assertThatThrownBy(() -> KeysetCursor.decode(token, Sort.by(Sort.Direction.ASC, "placeholderIndex"), SORTABLE))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testMalformedTokenIsRejected() {
+        assertThatThrownBy(() -> KeysetCursor.decode("not a cursor", BY_INDEX, SORTABLE)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testSeveralSortPropertiesAreRejected() {
+        assertThatThrownBy(() -> KeysetCursor.start(Sort.by("placeholderIndex", "placeholderValue")))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testUnsortablePropertiesAreRejected() {
+        assertThatThrownBy(() -> KeysetCursor.decode("", Sort.by("archetype"), SORTABLE)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> KeysetCursor.decode("", Sort.by("unknown"), SORTABLE)).isInstanceOf(IllegalArgumentException.class);
+        assertThat(KeysetCursor.decode("", Sort.by(Sort.Direction.DESC, "id"), SORTABLE).isSortedById()).isTrue();
+    }
+}
@@ -0,0 +1,370 @@
+package io.github.erp.repository;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.erp.IntegrationTest;
+import io.github.erp.domain.AppUser;
+import io.github.erp.domain.Placeholder;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Statement;
+import io.r2dbc.spi.Wrapped;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Query plan regression tests of the repositories. The repository methods run against a dataset large enough for
+ * the planner to prefer the indexes, the statements they issue are recorded and explained, and no plan may read one
+ * of the seeded tables with a sequential scan. Statements without a where clause list whole tables by design and are
+ * not checked.
+ */
+@IntegrationTest
+class QueryPlanIT {
+
+    private static final long BASE_ID = 1_000_000L;
+    private static final int APP_USERS = 10_000;
+    private static final int PLACEHOLDERS_PER_ORGANIZATION = 10;
+
+    private static final Set<String> SEEDED_TABLES = Set.of(
+        "jhi_user",
+        "app_user",
+        "placeholder",
+        OrganizationHierarchyRepository.CLOSURE_TABLE
+    );
+
+    private static final StatementRecorder RECORDER = new StatementRecorder();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    private DatabaseClient db;
+
+    @Autowired
+    private ConnectionFactory connectionFactory;
+
+    @Autowired
+    private PlaceholderRepository placeholderRepository;
+
+    @Autowired
+    private AppUserRepository appUserRepository;
+
+    @Autowired
+    private OrganizationHierarchyRepository organizationHierarchyRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @TestConfiguration
+    static class StatementRecorderConfiguration {
+
+        @Bean
+        static BeanPostProcessor recordingConnectionFactoryPostProcessor() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof ConnectionFactory ? RECORDER.wrap((ConnectionFactory) bean) : bean;
+                }
+            };
+        }
+    }
+
+    /**
+     * Seeds a tree of AppUser where node n belongs to the organisation n / 10, so that a subtree holds a small
+     * share of the table, and ten placeholders per AppUser, each one the archetype of the placeholder a hundred ids
+     * later.
+     */
+    @BeforeEach
+    void seed() {
+        long firstId = BASE_ID + 1;
+        long lastUser = BASE_ID + APP_USERS;
+        long lastPlaceholder = BASE_ID + (long) APP_USERS * PLACEHOLDERS_PER_ORGANIZATION;
+        execute(
+            String.format(
+                "INSERT INTO jhi_user (id, login, email, activated, created_by) " +
+                "SELECT g, 'plan-' || g, 'plan-' || g || '@localhost', true, 'system' FROM generate_series(%d, %d) g",
+                firstId,
+                lastUser
+            )
+        );
+        execute(
+            String.format(
+                "INSERT INTO app_user (id, designation, identifier, is_corporate_account, organization_id, system_user_id) " +
+                "SELECT g, 'plan-' || g, gen_random_uuid(), false, CASE WHEN g - %1$d < 10 THEN NULL ELSE %1$d + (g - %1$d) / 10 END, g " +
+                "FROM generate_series(%2$d, %3$d) g",
+                BASE_ID,
+                firstId,
+                lastUser
+            )
+        );
+        execute(
+            String.format(
+                "INSERT INTO placeholder (id, placeholder_index, placeholder_value, archetype_id, organization_id) " +
+                "SELECT g, 'plan-' || g, 'value', CASE WHEN g - %1$d <= 100 THEN NULL ELSE g - 100 END, %1$d + (g - %1$d - 1) / %2$d + 1 " +
+                "FROM generate_series(%3$d, %4$d) g",
+                BASE_ID,
+                PLACEHOLDERS_PER_ORGANIZATION,
+                firstId,
+                lastPlaceholder
+            )
+        );
+        organizationHierarchyRepository.rebuild().block();
+        execute("ANALYZE jhi_user, app_user, placeholder, " + OrganizationHierarchyRepository.CLOSURE_TABLE);
+    }
+
+    @AfterEach
+    void cleanup() {
+        execute("DELETE FROM placeholder WHERE id > " + BASE_ID);
+        execute("DELETE FROM " + OrganizationHierarchyRepository.CLOSURE_TABLE + " WHERE descendant_id > " + BASE_ID);
+        execute("DELETE FROM app_user WHERE id > " + BASE_ID);
+        execute("DELETE FROM jhi_user WHERE id > " + BASE_ID);
+    }
+
+    @Test
+    void repositoryQueriesDoNotScanSeededTables() throws Exception {
+        long organization = BASE_ID + 55;
+        long leaf = BASE_ID + 5_555;
+        long placeholder = BASE_ID + 50_000;
+        Sort byId = Sort.by(KeysetCursor.ID_PROPERTY);
+        RECORDER.clear();
+
+        placeholderRepository.findById(placeholder).block();
+        placeholderRepository.findOneWithEagerRelationships(placeholder).block();
+        placeholderRepository.findAllAfter(KeysetCursor.after(new Placeholder().id(placeholder), byId), 20).collectList().block();
+        placeholderRepository.streamAll(organization).collectList().block();
+        placeholderRepository.findByArchetype(placeholder).collectList().block();
+        placeholderRepository.findAllWhereArchetypeIsNull().collectList().block();
+        placeholderRepository.findByOrganization(organization).collectList().block();
+        placeholderRepository.findAllWhereOrganizationIsNull().collectList().block();
+        placeholderRepository.lookupByOrganization(organization, "plan-" + (BASE_ID + 541)).collectList().block();
+        placeholderRepository.lookupByOrganization(organization, null).collectList().block();
+        placeholderRepository.findAllInOrganizationSubtree(organization, PageRequest.of(0, 20, byId)).collectList().block();
+        placeholderRepository.findArchetypeChain(placeholder, OrganizationHierarchyRepository.MAX_DEPTH).collectList().block();
+
+        appUserRepository.findById(leaf).block();
+        appUserRepository.findOneWithEagerRelationships(leaf).block();
+        appUserRepository.findAllAfter(KeysetCursor.after(new AppUser().id(leaf), byId), 20).collectList().block();
+        appUserRepository.streamAll(organization).collectList().block();
+        appUserRepository.findByOrganization(organization).collectList().block();
+        appUserRepository.findAllWhereOrganizationIsNull().collectList().block();
+        appUserRepository.findBySystemUser(leaf).collectList().block();
+        appUserRepository.findAllWhereSystemUserIsNull().collectList().block();
+        appUserRepository.findAllInOrganizationSubtree(organization, PageRequest.of(0, 20, byId)).collectList().block();
+        appUserRepository.findAncestors(leaf).collectList().block();
+
+        organizationHierarchyRepository.findParentId(leaf).block();
+        organizationHierarchyRepository.isInSubtree(organization, leaf).block();
+
+        userRepository.findOneWithAuthoritiesByLogin("plan-" + leaf).block();
+        userRepository.findOneWithAuthoritiesByEmailIgnoreCase("PLAN-" + leaf + "@LOCALHOST").block();
+
+        List<RecordedStatement> statements = RECORDER.statements();
+        assertThat(statements).isNotEmpty();
+        List<String> sequentialScans = new ArrayList<>();
+        for (RecordedStatement statement : statements) {
+            if (!statement.isFilteredQuery()) {
+                continue;
+            }
+            for (String table : sequentiallyScannedTables(explain(statement))) {
+                sequentialScans.add(table + " in " + statement.sql);
+            }
+        }
+        assertThat(sequentialScans).isEmpty();
+    }
+
+    private void execute(String sql) {
+        db.sql(sql).then().block();
+    }
+
+    private String explain(RecordedStatement recorded) {
+        return Mono
+            .usingWhen(
+                connectionFactory.create(),
+                connection -> {
+                    Statement statement = connection.createStatement("EXPLAIN (FORMAT JSON) " + recorded.sql);
+                    recorded.replayBindings(statement);
+                    return Flux
+                        .from(statement.execute())
+                        .flatMap(result -> result.map((row, metadata) -> row.get(0, String.class)))
+                        .next();
+                },
+                Connection::close
+            )
+            .block();
+    }
+
+    private List<String> sequentiallyScannedTables(String plan) throws Exception {
+        List<String> tables = new ArrayList<>();
+        collectSequentialScans(objectMapper.readTree(plan).get(0).get("Plan"), tables);
+        return tables;
+    }
+
+    private static void collectSequentialScans(JsonNode node, List<String> tables) {
+        if ("Seq Scan".equals(node.path("Node Type").asText()) && SEEDED_TABLES.contains(node.path("Relation Name").asText())) {
+            tables.add(node.path("Relation Name").asText());
+        }
+        for (JsonNode child : node.path("Plans")) {
+            collectSequentialScans(child, tables);
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * An executed statement and the bind calls made on it, replayed on the explained statement.
+     */
+    static final class RecordedStatement {
+
+        private final String sql;
+        private final List<Method> bindMethods = new ArrayList<>();
+        private final List<Object[]> bindArguments = new ArrayList<>();
+
+        RecordedStatement(String sql) {
+            this.sql = sql;
+        }
+
+        boolean isFilteredQuery() {
+            String normalized = sql.trim().toUpperCase(Locale.ROOT);
+            return (normalized.startsWith("SELECT") || normalized.startsWith("WITH")) && normalized.contains(" WHERE ");
+        }
+
+        void replayBindings(Statement statement) {
+            for (int i = 0; i < bindMethods.size(); i++) {
+                try {
+                    bindMethods.get(i).invoke(statement, bindArguments.get(i));
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException("Could not replay the bindings of " + sql, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Wraps the connection factory of the application to record the statements executed through it.
+     */
+    static final class StatementRecorder {
+
+        private final List<RecordedStatement> statements = new CopyOnWriteArrayList<>();
+
+        void clear() {
+            statements.clear();
+        }
+
+        List<RecordedStatement> statements() {
+            return new ArrayList<>(statements);
+        }
+
+        ConnectionFactory wrap(ConnectionFactory delegate) {
+            InvocationHandler handler = (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "create":
+                        return Mono.from(delegate.create()).map(this::wrap);
+                    case "unwrap":
+                        return delegate;
+                    case "dispose":
+                        if (delegate instanceof Disposable) {
+                            ((Disposable) delegate).dispose();
+                        }
+                        return null;
+                    case "isDisposed":
+                        return delegate instanceof Disposable && ((Disposable) delegate).isDisposed();
+                    default:
+                        return invoke(delegate, method, args);
+                }
+            };
+            return (ConnectionFactory) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] { ConnectionFactory.class, Wrapped.class, Disposable.class },
+                handler
+            );
+        }
+
+        private Connection wrap(Connection delegate) {
+            InvocationHandler handler = (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "createStatement":
+                        return wrap((Statement) invoke(delegate, method, args), (String) args[0]);
+                    case "unwrap":
+                        return delegate;
+                    default:
+                        return invoke(delegate, method, args);
+                }
+            };
+            return (Connection) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] { Connection.class, Wrapped.class },
+                handler
+            );
+        }
+
+        private Statement wrap(Statement delegate, String sql) {
+            RecordedStatement recorded = new RecordedStatement(sql);
+            InvocationHandler handler = (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "bind":
+                    case "bindNull":
+                        recorded.bindMethods.add(method);
+                        recorded.bindArguments.add(args);
+                        invoke(delegate, method, args);
+                        return proxy;
+                    case "add":
+                    case "fetchSize":
+                    case "returnGeneratedValues":
+                        invoke(delegate, method, args);
+                        return proxy;
+                    case "execute":
+                        statements.add(recorded);
+                        return invoke(delegate, method, args);
+                    default:
+                        return invoke(delegate, method, args);
+                }
+            };
+            return (Statement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Statement.class }, handler);
+        }
+    }
+}
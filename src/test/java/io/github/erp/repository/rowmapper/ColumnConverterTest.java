@@ -0,0 +1,125 @@
+package io.github.erp.repository.rowmapper;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.github.erp.config.DatabaseConfiguration;
+import io.r2dbc.spi.ColumnMetadata;
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.RowMetadata;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.r2dbc.convert.MappingR2dbcConverter;
+import org.springframework.data.r2dbc.convert.R2dbcCustomConversions;
+import org.springframework.data.r2dbc.dialect.PostgresDialect;
+import org.springframework.data.r2dbc.mapping.R2dbcMappingContext;
+
+class ColumnConverterTest {
+
+    private ColumnConverter converter;
+
+    private RowMetadata metadata;
+
+    @BeforeEach
+    void setUp() {
+        R2dbcCustomConversions conversions = R2dbcCustomConversions.of(
+            PostgresDialect.INSTANCE,
+            List.of(DatabaseConfiguration.InstantReadConverter.INSTANCE)
+        );
+        converter = new ColumnConverter(conversions, new MappingR2dbcConverter(new R2dbcMappingContext(), conversions));
+        metadata = mock(RowMetadata.class);
+        List<ColumnMetadata> columns = List.of(column("e_id", Long.class), column("e_reset_date", LocalDateTime.class));
+        doReturn(columns).when(metadata).getColumnMetadatas();
+        when(metadata.getColumnMetadata(0)).thenReturn(columns.get(0));
+        when(metadata.getColumnMetadata(1)).thenReturn(columns.get(1));
+    }
+
+    private static ColumnMetadata column(String name, Class<?> javaType) {
+        ColumnMetadata column = mock(ColumnMetadata.class);
+        when(column.getName()).thenReturn(name);
+        doReturn(javaType).when(column).getJavaType();
+        return column;
+    }
+
+    @Test
+    void testCompiledReaderReadsByIndex() {
+        Row row = mock(Row.class);
+        when(row.get(0, Long.class)).thenReturn(42L);
+
+        assertThat(converter.compile(metadata, "E_ID", Long.class).read(row)).isEqualTo(42L);
+        verify(row, never()).get(anyString(), any());
+    }
+
+    @Test
+    void testCompiledReaderConvertsWithoutAskingTheDriverFirst() {
+        LocalDateTime resetDate = LocalDateTime.of(2022, 9, 1, 10, 30);
+        Row row = mock(Row.class);
+        when(row.get(1)).thenReturn(resetDate);
+
+        assertThat(converter.compile(metadata, "e_reset_date", Instant.class).read(row)).isEqualTo(resetDate.toInstant(ZoneOffset.UTC));
+        verify(row, never()).get(anyInt(), any());
+    }
+
+    @Test
+    void testPlansAreCompiledOncePerShape() {
+        AtomicInteger compilations = new AtomicInteger();
+        RowPlanCache<String> plans = new RowPlanCache<>((rowMetadata, prefix) -> prefix + compilations.incrementAndGet());
+
+        assertThat(plans.get(metadata, "e")).isEqualTo("e1");
+        assertThat(plans.get(metadata, "e")).isEqualTo("e1");
+        assertThat(plans.get(metadata, "archetype")).isEqualTo("archetype2");
+
+        RowMetadata sameShape = mock(RowMetadata.class);
+        doReturn(metadata.getColumnMetadatas()).when(sameShape).getColumnMetadatas();
+        assertThat(plans.get(sameShape, "e")).isEqualTo("e1");
+        assertThat(compilations).hasValue(2);
+    }
+
+    @Test
+    void testResultsOfDifferentShapesReadConcurrentlyKeepTheirPlans() {
+        RowPlanCache<String> plans = new RowPlanCache<>((rowMetadata, prefix) -> prefix + rowMetadata.getColumnMetadatas().size());
+        RowMetadata otherShape = mock(RowMetadata.class);
+        doReturn(List.of(metadata.getColumnMetadatas().get(0))).when(otherShape).getColumnMetadatas();
+        plans.get(metadata, "e");
+        plans.get(otherShape, "e");
+        clearInvocations(metadata, otherShape);
+
+        for (int row = 0; row < 10; row++) {
+            assertThat(plans.get(metadata, "e")).isEqualTo("e2");
+            assertThat(plans.get(otherShape, "e")).isEqualTo("e1");
+        }
+        verify(metadata, never()).getColumnMetadatas();
+        verify(otherShape, never()).getColumnMetadatas();
+    }
+}
@@ -0,0 +1,64 @@
+package io.github.erp.repository.search;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+
+class SearchAfterCursorTest {
+
+    private static final Sort BY_INDEX = Sort.by(Sort.Direction.DESC, "placeholderIndex");
+
+    @Test
+    void testEmptyTokenStartsTheSearch() {
+        SearchAfterCursor cursor = SearchAfterCursor.decode("", BY_INDEX);
+
+        assertThat(cursor.isStart()).isTrue();
+        assertThat(cursor.getSortValues()).isEmpty();
+    }
+
+    @Test
+    void testTokenRoundTrip() {
+        SearchAfterCursor cursor = SearchAfterCursor.after("pit==", BY_INDEX, List.of("a|b", 42L, 1.5d));
+
+        SearchAfterCursor decoded = SearchAfterCursor.decode(cursor.encode(), BY_INDEX);
+
+        assertThat(decoded.isStart()).isFalse();
+        assertThat(decoded.getPointInTimeId()).isEqualTo("pit==");
+        assertThat(decoded.getSortValues()).containsExactly("a|b", 42, 1.5d);
+    }
+
+    @Test
+    void testTokenOfAnotherSortIsRejected() {
+        String token = SearchAfterCursor.after("pit", BY_INDEX, List.of("a")).encode();
+
+        assertThatThrownBy(() -> SearchAfterCursor.decode(token, Sort.by(Sort.Direction.ASC, "placeholderIndex")))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testMalformedTokenIsRejected() {
+        assertThatThrownBy(() -> SearchAfterCursor.decode("not a cursor", BY_INDEX)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> SearchAfterCursor.decode("e30", BY_INDEX)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
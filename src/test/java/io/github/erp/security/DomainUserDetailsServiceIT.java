@@ -54,10 +54,15 @@ class DomainUserDetailsServiceIT {
     @Qualifier("userDetailsService")
     private ReactiveUserDetailsService domainUserDetailsService;
 
+    @Autowired
+    private UserDetailsCache userDetailsCache;
+
     @BeforeEach
     public void init() {
         userRepository.deleteAllUserAuthorities().block();
         userRepository.deleteAll().block();
+        // the tests write the users through the repository, which does not evict the cached users
+        userDetailsCache.evictAll();
 
         User userOne = new User();
         userOne.setLogin(USER_ONE_LOGIN);
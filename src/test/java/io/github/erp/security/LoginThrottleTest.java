@@ -0,0 +1,85 @@
+package io.github.erp.security;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.github.erp.config.ApplicationProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class LoginThrottleTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    private MeterRegistry meterRegistry;
+
+    private LoginThrottle loginThrottle;
+
+    @BeforeEach
+    public void setup() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getLoginThrottling().setClientCapacity(3);
+        applicationProperties.getLoginThrottling().setClientPeriod(Duration.ofSeconds(3));
+        applicationProperties.getLoginThrottling().setLoginCapacity(2);
+        applicationProperties.getLoginThrottling().setLoginPeriod(Duration.ofSeconds(10));
+        applicationProperties.getLoginThrottling().setMaxKeys(16);
+        meterRegistry = new SimpleMeterRegistry();
+        loginThrottle = new LoginThrottle(applicationProperties, meterRegistry, now::get);
+    }
+
+    @Test
+    void testAcquireForClientThrottlesPastTheCapacityUntilATokenIsRefilled() {
+        assertThat(loginThrottle.acquireForClient("10.0.0.1")).isEmpty();
+        assertThat(loginThrottle.acquireForClient("10.0.0.1")).isEmpty();
+        assertThat(loginThrottle.acquireForClient("10.0.0.1")).isEmpty();
+        assertThat(loginThrottle.acquireForClient("10.0.0.1")).contains(Duration.ofSeconds(1));
+        assertThat(loginThrottle.acquireForClient("10.0.0.2")).isEmpty();
+
+        now.addAndGet(Duration.ofSeconds(1).toNanos());
+
+        assertThat(loginThrottle.acquireForClient("10.0.0.1")).isEmpty();
+        assertThat(loginThrottle.acquireForClient("10.0.0.1")).isPresent();
+        assertThat(meterRegistry.get("security.login-throttle.attempts").tags("key", "client", "result", "admitted").counter().count())
+            .isEqualTo(5);
+        assertThat(meterRegistry.get("security.login-throttle.attempts").tags("key", "client", "result", "throttled").counter().count())
+            .isEqualTo(2);
+    }
+
+    @Test
+    void testAcquireForLoginIgnoresTheCase() {
+        assertThat(loginThrottle.acquireForLogin("Admin")).isEmpty();
+        assertThat(loginThrottle.acquireForLogin("admin")).isEmpty();
+        assertThat(loginThrottle.acquireForLogin("ADMIN")).contains(Duration.ofSeconds(5));
+        assertThat(loginThrottle.acquireForClient("10.0.0.1")).isEmpty();
+    }
+
+    @Test
+    void testTheLeastRecentlyUsedKeysAreForgotten() {
+        for (int i = 0; i < 1000; i++) {
+            loginThrottle.acquireForLogin("user-" + i);
+        }
+
+        assertThat(meterRegistry.get("security.login-throttle.keys").tags("key", "login").gauge().value()).isLessThanOrEqualTo(16);
+    }
+}
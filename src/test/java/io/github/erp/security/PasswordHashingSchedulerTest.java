@@ -0,0 +1,85 @@
+package io.github.erp.security;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.github.erp.config.ApplicationProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+class PasswordHashingSchedulerTest {
+
+    private MeterRegistry meterRegistry;
+
+    private PasswordHashingScheduler passwordHashingScheduler;
+
+    @BeforeEach
+    public void setup() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getPasswordHashing().setThreads(1);
+        applicationProperties.getPasswordHashing().setQueueCapacity(1);
+        applicationProperties.getPasswordHashing().setRetryAfter(Duration.ofSeconds(2));
+        meterRegistry = new SimpleMeterRegistry();
+        passwordHashingScheduler = new PasswordHashingScheduler(applicationProperties, meterRegistry);
+    }
+
+    @AfterEach
+    public void shutdown() {
+        passwordHashingScheduler.shutdown();
+    }
+
+    @Test
+    void testScheduleRunsOnAHashingThread() {
+        String threadName = passwordHashingScheduler.schedule(() -> Thread.currentThread().getName()).block();
+
+        assertThat(threadName).startsWith("password-hashing-");
+        assertThat(meterRegistry.get("security.password-hashing.time").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void testScheduleIsRejectedWhenTheQueueIsFull() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Mono<Boolean> busy = passwordHashingScheduler.schedule(() -> {
+            started.countDown();
+            return release.await(10, TimeUnit.SECONDS);
+        });
+        busy.subscribe();
+        assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+        passwordHashingScheduler.schedule(() -> true).subscribe();
+
+        assertThat(meterRegistry.get("security.password-hashing.queue").gauge().value()).isEqualTo(1);
+        assertThatThrownBy(() -> passwordHashingScheduler.schedule(() -> true).block())
+            .isInstanceOf(PasswordHashingBusyException.class)
+            .extracting(e -> ((PasswordHashingBusyException) e).getRetryAfter())
+            .isEqualTo(Duration.ofSeconds(2));
+        assertThat(meterRegistry.get("security.password-hashing.rejections").counter().count()).isEqualTo(1);
+
+        release.countDown();
+    }
+}
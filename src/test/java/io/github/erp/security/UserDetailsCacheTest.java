@@ -0,0 +1,145 @@
+package io.github.erp.security;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.github.erp.config.ApplicationProperties;
+import io.github.erp.domain.User;
+import io.github.erp.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+class UserDetailsCacheTest {
+
+    private final Map<Long, User> users = new LinkedHashMap<>();
+
+    private UserRepository userRepository;
+
+    private TransactionalOperator readOnlyTransactionalOperator;
+
+    private ApplicationProperties applicationProperties;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private UserDetailsCache userDetailsCache;
+
+    @BeforeEach
+    void setUp() {
+        users.clear();
+        userRepository = mock(UserRepository.class);
+        when(userRepository.findOneWithAuthoritiesByLogin(anyString()))
+            .thenAnswer(invocation -> {
+                String login = invocation.getArgument(0);
+                return Flux.fromIterable(users.values()).filter(user -> user.getLogin().equals(login)).next();
+            });
+        when(userRepository.findOneWithAuthoritiesByEmailIgnoreCase(anyString()))
+            .thenAnswer(invocation -> {
+                String email = invocation.<String>getArgument(0).toLowerCase(Locale.ENGLISH);
+                return Flux.fromIterable(users.values()).filter(user -> user.getEmail().equals(email)).next();
+            });
+        applicationProperties = new ApplicationProperties();
+        meterRegistry = new SimpleMeterRegistry();
+        readOnlyTransactionalOperator = mock(TransactionalOperator.class);
+        when(readOnlyTransactionalOperator.transactional(any(Mono.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        userDetailsCache = new UserDetailsCache(userRepository, readOnlyTransactionalOperator, applicationProperties, meterRegistry);
+    }
+
+    @Test
+    void testUsersAreCachedUntilEvicted() {
+        user(1L, "john", "john@localhost", "first");
+
+        assertThat(userDetailsCache.findOneWithAuthoritiesByLogin("john").block().getPassword()).isEqualTo("first");
+        assertThat(userDetailsCache.findOneWithAuthoritiesByLogin("john").block().getPassword()).isEqualTo("first");
+        verify(userRepository, times(1)).findOneWithAuthoritiesByLogin(anyString());
+        verify(readOnlyTransactionalOperator, times(1)).transactional(any(Mono.class));
+        assertThat(meterRegistry.counter("security.user-details.cache", "result", "hit").count()).isEqualTo(1);
+
+        user(1L, "john", "john@localhost", "second");
+        userDetailsCache.evict(1L);
+
+        assertThat(userDetailsCache.findOneWithAuthoritiesByLogin("john").block().getPassword()).isEqualTo("second");
+        assertThat(meterRegistry.counter("security.user-details.cache.evictions", "cause", "invalidated").count()).isEqualTo(1);
+    }
+
+    @Test
+    void testEvictionCoversTheLookupsByEmail() {
+        user(1L, "john", "john@localhost", "first");
+
+        assertThat(userDetailsCache.findOneWithAuthoritiesByEmailIgnoreCase("John@Localhost").block().getId()).isEqualTo(1L);
+        assertThat(userDetailsCache.findOneWithAuthoritiesByEmailIgnoreCase("john@localhost").block().getId()).isEqualTo(1L);
+        verify(userRepository, times(1)).findOneWithAuthoritiesByEmailIgnoreCase(anyString());
+
+        userDetailsCache.evictLogin("john");
+        userDetailsCache.findOneWithAuthoritiesByEmailIgnoreCase("john@localhost").block();
+
+        verify(userRepository, times(2)).findOneWithAuthoritiesByEmailIgnoreCase(anyString());
+    }
+
+    @Test
+    void testMissingUsersAreNotCached() {
+        assertThat(userDetailsCache.findOneWithAuthoritiesByLogin("john").blockOptional()).isEmpty();
+
+        user(1L, "john", "john@localhost", "first");
+
+        assertThat(userDetailsCache.findOneWithAuthoritiesByLogin("john").block().getId()).isEqualTo(1L);
+    }
+
+    @Test
+    void testCacheIsBoundedAndCanBeDisabled() {
+        applicationProperties.getUserDetailsCache().setMaxEntries(1);
+        user(1L, "john", "john@localhost", "first");
+        user(2L, "jane", "jane@localhost", "first");
+
+        userDetailsCache.findOneWithAuthoritiesByLogin("john").block();
+        userDetailsCache.findOneWithAuthoritiesByLogin("jane").block();
+
+        assertThat(meterRegistry.get("security.user-details.cache.size").gauge().value()).isEqualTo(1);
+        assertThat(meterRegistry.counter("security.user-details.cache.evictions", "cause", "size").count()).isEqualTo(1);
+
+        applicationProperties.getUserDetailsCache().setTtl(Duration.ZERO);
+        userDetailsCache.evictAll();
+        userDetailsCache.findOneWithAuthoritiesByLogin("john").block();
+
+        assertThat(meterRegistry.get("security.user-details.cache.size").gauge().value()).isZero();
+    }
+
+    private void user(Long id, String login, String email, String password) {
+        User user = new User();
+        user.setId(id);
+        user.setLogin(login);
+        user.setEmail(email);
+        user.setPassword(password);
+        users.put(id, user);
+    }
+}
@@ -0,0 +1,76 @@
+package io.github.erp.security.jwt;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+
+class BloomFilterTest {
+
+    @Test
+    void testAddedValuesAreAlwaysReported() {
+        BloomFilter bloomFilter = new BloomFilter(1000, 0.01);
+        List<String> added = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            added.add(UUID.randomUUID().toString());
+        }
+
+        added.forEach(bloomFilter::add);
+
+        assertThat(added).allMatch(bloomFilter::mightContain);
+    }
+
+    @Test
+    void testFalsePositivesStayNearTheExpectedProbability() {
+        BloomFilter bloomFilter = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            bloomFilter.add(UUID.randomUUID().toString());
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (bloomFilter.mightContain(UUID.randomUUID().toString())) {
+                falsePositives++;
+            }
+        }
+
+        assertThat(bloomFilter.getHashes()).isEqualTo(7);
+        assertThat(falsePositives).isLessThan(2000);
+    }
+
+    @Test
+    void testValuesSharingTheirHashCodeDoNotShareTheirBits() {
+        assertThat("Aa".hashCode()).isEqualTo("BB".hashCode());
+        BloomFilter bloomFilter = new BloomFilter(1000, 0.001);
+        int falsePositives = 0;
+        for (int i = 0; i < 1000; i++) {
+            String suffix = UUID.randomUUID().toString();
+            bloomFilter.add("Aa" + suffix);
+            if (bloomFilter.mightContain("BB" + suffix)) {
+                falsePositives++;
+            }
+        }
+
+        assertThat(falsePositives).isLessThan(20);
+    }
+}
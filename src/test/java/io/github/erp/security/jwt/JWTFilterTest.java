@@ -19,8 +19,14 @@ package io.github.erp.security.jwt;
  */
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
+import io.github.erp.config.ApplicationProperties;
 import io.github.erp.management.SecurityMetersService;
+import io.github.erp.repository.TokenRevocationRepository;
 import io.github.erp.security.AuthoritiesConstants;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
@@ -42,6 +48,10 @@ class JWTFilterTest {
 
     private TokenProvider tokenProvider;
 
+    private TokenRevocationRepository tokenRevocationRepository;
+
+    private TokenRevocationList tokenRevocationList;
+
     private JWTFilter jwtFilter;
 
     @BeforeEach
@@ -52,11 +62,15 @@ class JWTFilterTest {
 
         SecurityMetersService securityMetersService = new SecurityMetersService(new SimpleMeterRegistry());
 
-        tokenProvider = new TokenProvider(jHipsterProperties, securityMetersService);
+        tokenProvider = new TokenProvider(jHipsterProperties, securityMetersService, new ApplicationProperties());
         ReflectionTestUtils.setField(tokenProvider, "key", Keys.hmacShaKeyFor(Decoders.BASE64.decode(base64Secret)));
 
         ReflectionTestUtils.setField(tokenProvider, "tokenValidityInMilliseconds", 60000);
-        jwtFilter = new JWTFilter(tokenProvider);
+        tokenRevocationRepository = mock(TokenRevocationRepository.class);
+        when(tokenRevocationRepository.isTokenRevoked(anyString())).thenReturn(Mono.just(false));
+        tokenRevocationList =
+            new TokenRevocationList(tokenRevocationRepository, new ApplicationProperties(), jHipsterProperties, new SimpleMeterRegistry());
+        jwtFilter = new JWTFilter(tokenProvider, tokenRevocationList);
     }
 
     @Test
@@ -86,6 +100,34 @@ class JWTFilterTest {
             .block();
     }
 
+    @Test
+    void testJWTFilterRevokedToken() {
+        UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
+            "test-user",
+            "test-password",
+            Collections.singletonList(new SimpleGrantedAuthority(AuthoritiesConstants.USER))
+        );
+        String jwt = tokenProvider.createToken(authentication, false);
+        when(tokenRevocationRepository.revokeToken(anyString(), anyString(), any())).thenReturn(Mono.empty());
+        tokenRevocationList.revoke(tokenProvider.authenticate(jwt).orElseThrow()).block();
+        MockServerHttpRequest.BaseBuilder request = MockServerHttpRequest
+            .get("/api/test")
+            .header(JWTFilter.AUTHORIZATION_HEADER, "Bearer " + jwt);
+        MockServerWebExchange exchange = MockServerWebExchange.from(request);
+        jwtFilter
+            .filter(
+                exchange,
+                it ->
+                    Mono
+                        .deferContextual(Mono::just)
+                        .flatMap(c -> ReactiveSecurityContextHolder.getContext())
+                        .map(SecurityContext::getAuthentication)
+                        .doOnSuccess(auth -> assertThat(auth).isNull())
+                        .then()
+            )
+            .block();
+    }
+
     @Test
     void testJWTFilterInvalidToken() {
         String jwt = "wrong_jwt";
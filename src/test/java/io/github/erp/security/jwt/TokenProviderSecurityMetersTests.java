@@ -20,6 +20,7 @@ package io.github.erp.security.jwt;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import io.github.erp.config.ApplicationProperties;
 import io.github.erp.management.SecurityMetersService;
 import io.github.erp.security.AuthoritiesConstants;
 import io.jsonwebtoken.Jwts;
@@ -61,7 +62,7 @@ class TokenProviderSecurityMetersTests {
 
         SecurityMetersService securityMetersService = new SecurityMetersService(meterRegistry);
 
-        tokenProvider = new TokenProvider(jHipsterProperties, securityMetersService);
+        tokenProvider = new TokenProvider(jHipsterProperties, securityMetersService, new ApplicationProperties());
         Key key = Keys.hmacShaKeyFor(Decoders.BASE64.decode(base64Secret));
 
         ReflectionTestUtils.setField(tokenProvider, "key", key);
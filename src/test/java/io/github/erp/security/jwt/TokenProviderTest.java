@@ -20,6 +20,7 @@ package io.github.erp.security.jwt;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import io.github.erp.config.ApplicationProperties;
 import io.github.erp.management.SecurityMetersService;
 import io.github.erp.security.AuthoritiesConstants;
 import io.jsonwebtoken.Jwts;
@@ -54,7 +55,7 @@ class TokenProviderTest {
 
         SecurityMetersService securityMetersService = new SecurityMetersService(new SimpleMeterRegistry());
 
-        tokenProvider = new TokenProvider(jHipsterProperties, securityMetersService);
+        tokenProvider = new TokenProvider(jHipsterProperties, securityMetersService, new ApplicationProperties());
         key = Keys.hmacShaKeyFor(Decoders.BASE64.decode(base64Secret));
 
         ReflectionTestUtils.setField(tokenProvider, "key", key);
@@ -114,7 +115,7 @@ class TokenProviderTest {
 
         SecurityMetersService securityMetersService = new SecurityMetersService(new SimpleMeterRegistry());
 
-        TokenProvider tokenProvider = new TokenProvider(jHipsterProperties, securityMetersService);
+        TokenProvider tokenProvider = new TokenProvider(jHipsterProperties, securityMetersService, new ApplicationProperties());
 
         Key key = (Key) ReflectionTestUtils.getField(tokenProvider, "key");
         assertThat(key).isNotNull().isEqualTo(Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8)));
@@ -128,12 +129,70 @@ class TokenProviderTest {
 
         SecurityMetersService securityMetersService = new SecurityMetersService(new SimpleMeterRegistry());
 
-        TokenProvider tokenProvider = new TokenProvider(jHipsterProperties, securityMetersService);
+        TokenProvider tokenProvider = new TokenProvider(jHipsterProperties, securityMetersService, new ApplicationProperties());
 
         Key key = (Key) ReflectionTestUtils.getField(tokenProvider, "key");
         assertThat(key).isNotNull().isEqualTo(Keys.hmacShaKeyFor(Decoders.BASE64.decode(base64Secret)));
     }
 
+    @Test
+    void testAuthenticateParsesAVerifiedTokenOnce() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        JHipsterProperties jHipsterProperties = new JHipsterProperties();
+        jHipsterProperties
+            .getSecurity()
+            .getAuthentication()
+            .getJwt()
+            .setBase64Secret("fd54a45s65fds737b9aafcb3412e07ed99b267f33413274720ddbb7f6c5e64e9f14075f2d7ed041592f0b7657baf8");
+        TokenProvider cachingTokenProvider = new TokenProvider(
+            jHipsterProperties,
+            new SecurityMetersService(meterRegistry),
+            new ApplicationProperties()
+        );
+        String token = cachingTokenProvider.createToken(createAuthentication(), false);
+
+        Authentication first = cachingTokenProvider.authenticate(token).orElseThrow();
+        Authentication second = cachingTokenProvider.authenticate(token).orElseThrow();
+
+        assertThat(second.getName()).isEqualTo("anonymous");
+        assertThat(second.getCredentials()).isEqualTo(token);
+        assertThat(second.getPrincipal()).isSameAs(first.getPrincipal());
+        assertThat(meterRegistry.get(SecurityMetersService.TOKEN_CACHE_METER_NAME).tag("result", "miss").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get(SecurityMetersService.TOKEN_CACHE_METER_NAME).tag("result", "hit").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get(SecurityMetersService.TOKEN_VERIFICATION_METER_NAME).timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void testAuthenticateSharesTheAuthoritiesOfTheTokens() {
+        Authentication first = tokenProvider.authenticate(tokenProvider.createToken(createAuthentication(), false)).orElseThrow();
+        Authentication second = tokenProvider.authenticate(tokenProvider.createToken(createAuthentication(), true)).orElseThrow();
+
+        assertThat(second.getAuthorities().iterator().next()).isSameAs(first.getAuthorities().iterator().next());
+    }
+
+    @Test
+    void testAuthenticateDetailsTheTokenRevokedBy() {
+        long before = System.currentTimeMillis() / 1000;
+        Authentication first = tokenProvider.authenticate(tokenProvider.createToken(createAuthentication(), false)).orElseThrow();
+        Authentication second = tokenProvider.authenticate(tokenProvider.createToken(createAuthentication(), false)).orElseThrow();
+
+        TokenDetails details = (TokenDetails) first.getDetails();
+        assertThat(details.getId()).isNotEmpty().isNotEqualTo(((TokenDetails) second.getDetails()).getId());
+        assertThat(details.getLogin()).isEqualTo("anonymous");
+        assertThat(details.getIssuedAt()).isBetween(before, System.currentTimeMillis() / 1000);
+        assertThat(details.getExpiresAt()).isGreaterThan(System.currentTimeMillis());
+    }
+
+    @Test
+    void testAuthenticateReturnsEmptyWhenJWTisExpired() {
+        ReflectionTestUtils.setField(tokenProvider, "tokenValidityInMilliseconds", -ONE_MINUTE);
+
+        String token = tokenProvider.createToken(createAuthentication(), false);
+
+        assertThat(tokenProvider.authenticate(token)).isEmpty();
+        assertThat(tokenProvider.authenticate(token)).isEmpty();
+    }
+
     private Authentication createAuthentication() {
         Collection<GrantedAuthority> authorities = new ArrayList<>();
         authorities.add(new SimpleGrantedAuthority(AuthoritiesConstants.ANONYMOUS));
@@ -0,0 +1,134 @@
+package io.github.erp.security.jwt;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.github.erp.config.ApplicationProperties;
+import io.github.erp.repository.TokenRevocationRepository;
+import io.github.erp.repository.TokenRevocationRepository.Revocation;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import tech.jhipster.config.JHipsterProperties;
+
+class TokenRevocationListTest {
+
+    private static final long ISSUED_UNTIL = 1_700_000_000L;
+
+    private TokenRevocationRepository tokenRevocationRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private TokenRevocationList tokenRevocationList;
+
+    @BeforeEach
+    void setUp() {
+        tokenRevocationRepository = mock(TokenRevocationRepository.class);
+        when(tokenRevocationRepository.now()).thenReturn(Mono.just(LocalDateTime.now()));
+        when(tokenRevocationRepository.deleteExpired(any())).thenReturn(Mono.just(0));
+        when(tokenRevocationRepository.findUnexpired(any()))
+            .thenReturn(
+                Flux.just(
+                    new Revocation("revoked", "john", null),
+                    new Revocation(null, "jane", LocalDateTime.ofEpochSecond(ISSUED_UNTIL, 0, ZoneOffset.UTC))
+                )
+            );
+        when(tokenRevocationRepository.findRevokedSince(any())).thenReturn(Flux.empty());
+        when(tokenRevocationRepository.isTokenRevoked(anyString())).thenReturn(Mono.just(false));
+        when(tokenRevocationRepository.isTokenRevoked("revoked")).thenReturn(Mono.just(true));
+        meterRegistry = new SimpleMeterRegistry();
+        tokenRevocationList =
+            new TokenRevocationList(tokenRevocationRepository, new ApplicationProperties(), new JHipsterProperties(), meterRegistry);
+    }
+
+    @Test
+    void testTokensNotInTheFilterAreNotCheckedAgainstTheDatabase() {
+        tokenRevocationList.refresh().block();
+
+        assertThat(tokenRevocationList.isRevoked(token("valid", "john", ISSUED_UNTIL)).block()).isFalse();
+        assertThat(tokenRevocationList.isRevoked(token("revoked", "john", ISSUED_UNTIL)).block()).isTrue();
+        assertThat(tokenRevocationList.isRevoked(token("revoked", "john", ISSUED_UNTIL)).block()).isTrue();
+
+        verify(tokenRevocationRepository, never()).isTokenRevoked("valid");
+        assertThat(meterRegistry.counter("security.token-revocation.database-checks", "result", "revoked").count()).isEqualTo(1);
+        assertThat(meterRegistry.get("security.token-revocation.check").timer().count()).isEqualTo(3);
+    }
+
+    @Test
+    void testTheTokensOfARevokedLoginIssuedUntilTheRevocationAreRevoked() {
+        tokenRevocationList.refresh().block();
+
+        assertThat(tokenRevocationList.isRevoked(token("first", "jane", ISSUED_UNTIL)).block()).isTrue();
+        assertThat(tokenRevocationList.isRevoked(token(null, "jane", null)).block()).isTrue();
+        assertThat(tokenRevocationList.isRevoked(token("second", "jane", ISSUED_UNTIL + 1)).block()).isFalse();
+    }
+
+    @Test
+    void testThePollsAddTheRevocationsOfTheOtherInstances() {
+        tokenRevocationList.refresh().block();
+        when(tokenRevocationRepository.findRevokedSince(any())).thenReturn(Flux.just(new Revocation("elsewhere", "john", null)));
+        when(tokenRevocationRepository.isTokenRevoked("elsewhere")).thenReturn(Mono.just(true));
+
+        tokenRevocationList.refresh().block();
+
+        assertThat(tokenRevocationList.isRevoked(token("elsewhere", "john", ISSUED_UNTIL)).block()).isTrue();
+    }
+
+    @Test
+    void testTheRevocationsOfTheOtherInstancesApplyOnNotice() {
+        tokenRevocationList.refresh().block();
+        when(tokenRevocationRepository.findById(7L)).thenReturn(Mono.just(new Revocation("elsewhere", "john", null)));
+        when(tokenRevocationRepository.findById(8L))
+            .thenReturn(Mono.just(new Revocation(null, "john", LocalDateTime.ofEpochSecond(ISSUED_UNTIL, 0, ZoneOffset.UTC))));
+
+        tokenRevocationList.applyRevocation(7L).block();
+        tokenRevocationList.applyRevocation(8L).block();
+
+        assertThat(tokenRevocationList.isRevoked(token("elsewhere", "john", ISSUED_UNTIL + 1)).block()).isTrue();
+        assertThat(tokenRevocationList.isRevoked(token("valid", "john", ISSUED_UNTIL)).block()).isTrue();
+        verify(tokenRevocationRepository, never()).isTokenRevoked("elsewhere");
+    }
+
+    @Test
+    void testRevokeSessionsAppliesAtOnce() {
+        when(tokenRevocationRepository.revokeSessions(eq("john"), any(), any())).thenReturn(Mono.empty());
+        long issuedAt = System.currentTimeMillis() / 1000;
+
+        tokenRevocationList.revokeSessions("john").block();
+
+        assertThat(tokenRevocationList.isRevoked(token("valid", "john", issuedAt)).block()).isTrue();
+        assertThat(tokenRevocationList.isRevoked(token("valid", "john", issuedAt + 5)).block()).isFalse();
+    }
+
+    private static TokenDetails token(String id, String login, Long issuedAt) {
+        return new TokenDetails(id, login, issuedAt, System.currentTimeMillis() + 60000);
+    }
+}
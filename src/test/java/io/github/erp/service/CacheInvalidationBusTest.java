@@ -0,0 +1,210 @@
+package io.github.erp.service;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.github.erp.domain.AppUser;
+import io.github.erp.domain.Placeholder;
+import io.github.erp.repository.InvalidationChannel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.reactive.AbstractReactiveTransactionManager;
+import org.springframework.transaction.reactive.GenericReactiveTransaction;
+import org.springframework.transaction.reactive.TransactionSynchronizationManager;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+class CacheInvalidationBusTest {
+
+    private final List<String> sent = new ArrayList<>();
+
+    private final List<Long> changedPlaceholders = new ArrayList<>();
+
+    private final AtomicInteger placeholderResyncs = new AtomicInteger();
+
+    private final AtomicInteger appUserResyncs = new AtomicInteger();
+
+    private CacheInvalidationBus cacheInvalidationBus;
+
+    @BeforeEach
+    void setUp() {
+        sent.clear();
+        changedPlaceholders.clear();
+        placeholderResyncs.set(0);
+        appUserResyncs.set(0);
+        InvalidationChannel invalidationChannel = mock(InvalidationChannel.class);
+        when(invalidationChannel.isSupported()).thenReturn(true);
+        when(invalidationChannel.send(anyString())).thenAnswer(invocation -> Mono.fromRunnable(() -> sent.add(invocation.getArgument(0))));
+        when(invalidationChannel.listen(any())).thenReturn(Flux.never());
+        cacheInvalidationBus = new CacheInvalidationBus(invalidationChannel, new SimpleMeterRegistry());
+        cacheInvalidationBus.subscribe(Placeholder.class, changedPlaceholders::add, placeholderResyncs::incrementAndGet);
+        cacheInvalidationBus.subscribe(AppUser.class, id -> {}, appUserResyncs::incrementAndGet);
+        cacheInvalidationBus.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        cacheInvalidationBus.stop();
+    }
+
+    @Test
+    void testChangesAreNumberedAndPublished() {
+        cacheInvalidationBus.publish(Placeholder.class, 5L).block();
+        cacheInvalidationBus.publish(AppUser.class, null).block();
+
+        assertThat(sent).hasSize(2);
+        assertThat(sent.get(0)).endsWith(" 1 Placeholder 5");
+        assertThat(sent.get(1)).endsWith(" 2 AppUser *");
+    }
+
+    @Test
+    void testLocalEvictionsRunOnCommit() {
+        AtomicBoolean evicted = new AtomicBoolean();
+        TransactionalOperator transactionalOperator = TransactionalOperator.create(new NoOpTransactionManager());
+
+        transactionalOperator
+            .transactional(
+                cacheInvalidationBus
+                    .publish(Placeholder.class, 5L, () -> evicted.set(true))
+                    .then(Mono.fromRunnable(() -> assertThat(evicted).isFalse()))
+            )
+            .block();
+
+        assertThat(evicted).isTrue();
+        assertThat(sent).hasSize(1);
+    }
+
+    @Test
+    void testLocalEvictionsAreSkippedOnRollback() {
+        AtomicBoolean evicted = new AtomicBoolean();
+        TransactionalOperator transactionalOperator = TransactionalOperator.create(new NoOpTransactionManager());
+
+        transactionalOperator
+            .transactional(
+                cacheInvalidationBus
+                    .publish(Placeholder.class, 5L, () -> evicted.set(true))
+                    .then(Mono.error(new IllegalStateException("rolled back")))
+            )
+            .onErrorResume(IllegalStateException.class, e -> Mono.empty())
+            .block();
+
+        assertThat(evicted).isFalse();
+        assertThat(sent).isEmpty();
+    }
+
+    @Test
+    void testRemoteChangesAreDispatchedToTheSubscribersOfTheEntity() {
+        cacheInvalidationBus.receive("other 1 Placeholder 5");
+        cacheInvalidationBus.receive("other 2 AppUser *");
+
+        assertThat(changedPlaceholders).containsExactly(5L);
+        assertThat(placeholderResyncs).hasValue(0);
+        assertThat(appUserResyncs).hasValue(1);
+    }
+
+    @Test
+    void testOwnChangesAreIgnored() {
+        cacheInvalidationBus.publish(Placeholder.class, 5L).block();
+
+        cacheInvalidationBus.receive(sent.get(0));
+
+        assertThat(changedPlaceholders).isEmpty();
+    }
+
+    @Test
+    void testGapInTheNumbersDropsTheCaches() {
+        cacheInvalidationBus.receive("other 1 Placeholder 5");
+        cacheInvalidationBus.receive("other 3 Placeholder 6");
+
+        assertThat(changedPlaceholders).containsExactly(5L);
+        assertThat(placeholderResyncs).hasValue(1);
+        assertThat(appUserResyncs).hasValue(1);
+    }
+
+    @Test
+    void testListeningAgainDropsTheCaches() {
+        cacheInvalidationBus.onListening();
+        assertThat(placeholderResyncs).hasValue(0);
+
+        cacheInvalidationBus.receive("other 7 Placeholder 5");
+        cacheInvalidationBus.onListening();
+        // numbering starts over after a reconnection, as the missed invalidations are already caught up with
+        cacheInvalidationBus.receive("other 9 Placeholder 6");
+
+        assertThat(placeholderResyncs).hasValue(1);
+        assertThat(changedPlaceholders).containsExactly(5L, 6L);
+    }
+
+    @Test
+    void testPublishAllDropsTheLocalCaches() {
+        cacheInvalidationBus.publishAll().block();
+
+        assertThat(placeholderResyncs).hasValue(1);
+        assertThat(appUserResyncs).hasValue(1);
+        assertThat(sent.get(0)).endsWith(" 1 * *");
+    }
+
+    @Test
+    void testPublishAllDropsAllTheCaches() {
+        cacheInvalidationBus.receive("other 1 * *");
+
+        assertThat(placeholderResyncs).hasValue(1);
+        assertThat(appUserResyncs).hasValue(1);
+    }
+
+    private static final class NoOpTransactionManager extends AbstractReactiveTransactionManager {
+
+        @Override
+        protected Object doGetTransaction(TransactionSynchronizationManager synchronizationManager) {
+            return new Object();
+        }
+
+        @Override
+        protected Mono<Void> doBegin(
+            TransactionSynchronizationManager synchronizationManager,
+            Object transaction,
+            TransactionDefinition definition
+        ) {
+            return Mono.empty();
+        }
+
+        @Override
+        protected Mono<Void> doCommit(TransactionSynchronizationManager synchronizationManager, GenericReactiveTransaction status) {
+            return Mono.empty();
+        }
+
+        @Override
+        protected Mono<Void> doRollback(TransactionSynchronizationManager synchronizationManager, GenericReactiveTransaction status) {
+            return Mono.empty();
+        }
+    }
+}
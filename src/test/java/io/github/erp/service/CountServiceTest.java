@@ -0,0 +1,101 @@
+package io.github.erp.service;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.github.erp.config.ApplicationProperties;
+import io.github.erp.domain.Placeholder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+class CountServiceTest {
+
+    private final AtomicInteger exactCounts = new AtomicInteger();
+
+    private CountService countService;
+
+    @BeforeEach
+    void setUp() {
+        exactCounts.set(0);
+        countService = new CountService(new ApplicationProperties(), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void testExactCountsAreCachedUntilEvicted() {
+        assertThat(countAll(CountMode.EXACT)).isEqualTo(TotalCount.exact(42));
+        assertThat(countAll(CountMode.EXACT)).isEqualTo(TotalCount.exact(42));
+        assertThat(exactCounts).hasValue(1);
+
+        countService.evict(Placeholder.class);
+
+        assertThat(countAll(CountMode.EXACT)).isEqualTo(TotalCount.exact(42));
+        assertThat(exactCounts).hasValue(2);
+    }
+
+    @Test
+    void testCountStartedBeforeAnEvictionIsNotCached() {
+        Sinks.One<Long> pending = Sinks.one();
+        TotalCount[] result = new TotalCount[1];
+        countService.countAll(Placeholder.class, CountMode.EXACT, pending::asMono, Mono::empty).subscribe(count -> result[0] = count);
+
+        countService.evict(Placeholder.class);
+        pending.tryEmitValue(41L);
+
+        assertThat(result[0]).isEqualTo(TotalCount.exact(41));
+        assertThat(countAll(CountMode.EXACT)).isEqualTo(TotalCount.exact(42));
+    }
+
+    @Test
+    void testEstimateFallsBackToTheExactCount() {
+        assertThat(countService.countAll(Placeholder.class, CountMode.ESTIMATE, exactCount(), () -> Mono.just(40L)).block())
+            .isEqualTo(TotalCount.estimate(40));
+        assertThat(countAll(CountMode.ESTIMATE)).isEqualTo(TotalCount.exact(42));
+    }
+
+    @Test
+    void testNoneSkipsTheCount() {
+        assertThat(countAll(CountMode.NONE)).isEqualTo(TotalCount.none());
+        assertThat(exactCounts).hasValue(0);
+    }
+
+    @Test
+    void testModeResolution() {
+        assertThat(countService.resolveMode(null)).isEqualTo(CountMode.EXACT);
+        assertThat(countService.resolveMode("Estimate")).isEqualTo(CountMode.ESTIMATE);
+        assertThatThrownBy(() -> countService.resolveMode("approximate")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private TotalCount countAll(CountMode mode) {
+        return countService.countAll(Placeholder.class, mode, exactCount(), Mono::empty).block();
+    }
+
+    private Supplier<Mono<Long>> exactCount() {
+        return () -> Mono.fromSupplier(() -> {
+            exactCounts.incrementAndGet();
+            return 42L;
+        });
+    }
+}
@@ -0,0 +1,204 @@
+package io.github.erp.service;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.github.erp.config.ApplicationProperties;
+import io.github.erp.domain.Placeholder;
+import io.github.erp.repository.PlaceholderRepository;
+import io.github.erp.service.dto.PlaceholderDTO;
+import io.github.erp.service.mapper.PlaceholderMapperImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+class PlaceholderLookupServiceTest {
+
+    private final Map<Long, Placeholder> placeholders = new LinkedHashMap<>();
+
+    private PlaceholderRepository placeholderRepository;
+
+    private TransactionalOperator readOnlyTransactionalOperator;
+
+    private ApplicationProperties applicationProperties;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private PlaceholderLookupService placeholderLookupService;
+
+    @BeforeEach
+    void setUp() {
+        placeholders.clear();
+        placeholderRepository = mock(PlaceholderRepository.class);
+        when(placeholderRepository.lookupByOrganization(anyLong(), any()))
+            .thenAnswer(invocation -> {
+                Long organizationId = invocation.getArgument(0);
+                String placeholderIndex = invocation.getArgument(1);
+                return Flux
+                    .fromIterable(placeholders.values())
+                    .filter(placeholder -> organizationId.equals(placeholder.getOrganizationId()))
+                    .filter(placeholder -> placeholderIndex == null || placeholderIndex.equals(placeholder.getPlaceholderIndex()));
+            });
+        when(placeholderRepository.findById(anyLong()))
+            .thenAnswer(invocation -> Mono.justOrEmpty(placeholders.get(invocation.<Long>getArgument(0))));
+        readOnlyTransactionalOperator = mock(TransactionalOperator.class);
+        when(readOnlyTransactionalOperator.transactional(any(Mono.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        applicationProperties = new ApplicationProperties();
+        meterRegistry = new SimpleMeterRegistry();
+        placeholderLookupService =
+            new PlaceholderLookupService(
+                placeholderRepository,
+                new PlaceholderMapperImpl(),
+                readOnlyTransactionalOperator,
+                applicationProperties,
+                meterRegistry
+            );
+    }
+
+    @Test
+    void testLookupsAreCachedUntilTheOrganizationChanges() {
+        placeholder(1L, 10L, "key", "first");
+
+        assertThat(placeholderLookupService.lookup(10L, "key").block().getPlaceholderValue()).isEqualTo("first");
+        assertThat(placeholderLookupService.lookup(10L, "key").block().getPlaceholderValue()).isEqualTo("first");
+        verify(placeholderRepository, times(1)).lookupByOrganization(anyLong(), any());
+        verify(readOnlyTransactionalOperator, times(1)).transactional(any(Mono.class));
+        assertThat(meterRegistry.counter("service.placeholder-lookup.cache", "result", "hit").count()).isEqualTo(1);
+
+        placeholder(1L, 10L, "key", "second");
+        placeholderLookupService.evict(1L, 10L);
+
+        assertThat(placeholderLookupService.lookup(10L, "key").block().getPlaceholderValue()).isEqualTo("second");
+        assertThat(meterRegistry.counter("service.placeholder-lookup.cache.evictions", "cause", "invalidated").count()).isEqualTo(1);
+    }
+
+    @Test
+    void testMissingKeysAreCachedUntilAPlaceholderIsAdded() {
+        assertThat(placeholderLookupService.lookup(10L, "key").blockOptional()).isEmpty();
+        assertThat(placeholderLookupService.lookup(10L, "key").blockOptional()).isEmpty();
+        verify(placeholderRepository, times(1)).lookupByOrganization(anyLong(), any());
+
+        placeholder(1L, 10L, "key", "added");
+        placeholderLookupService.evictOrganization(10L);
+
+        assertThat(placeholderLookupService.lookup(10L, "key").block().getId()).isEqualTo(1L);
+    }
+
+    @Test
+    void testPlaceholderMovedToAnotherOrganizationIsEvictedFromTheFormerOne() {
+        placeholder(1L, 10L, "key", "value");
+        assertThat(placeholderLookupService.lookupAll(10L).collectList().block()).extracting(PlaceholderDTO::getId).containsExactly(1L);
+
+        placeholder(1L, 20L, "key", "value");
+        placeholderLookupService.evict(1L, 20L);
+
+        assertThat(placeholderLookupService.lookupAll(10L).collectList().block()).isEmpty();
+    }
+
+    @Test
+    void testLookupsEmbeddingTheValueOfAnArchetypeAreEvictedWithIt() {
+        placeholder(1L, 20L, "base", "first");
+        placeholder(2L, 10L, "key", null).setArchetype(placeholders.get(1L));
+        placeholder(3L, 30L, "other", "value");
+        assertThat(placeholderLookupService.lookup(10L, "key").block().getArchetype().getPlaceholderValue()).isEqualTo("first");
+        placeholderLookupService.lookup(30L, "other").block();
+
+        placeholder(1L, 20L, "base", "second");
+        placeholders.get(2L).setArchetype(placeholders.get(1L));
+        placeholderLookupService.evict(1L, 20L);
+
+        assertThat(placeholderLookupService.lookup(10L, "key").block().getArchetype().getPlaceholderValue()).isEqualTo("second");
+        placeholderLookupService.lookup(30L, "other").block();
+        verify(placeholderRepository, times(3)).lookupByOrganization(anyLong(), any());
+    }
+
+    @Test
+    void testRemoteWritesEvictTheOrganizationReadBack() {
+        placeholder(1L, 10L, "key", "value");
+        assertThat(placeholderLookupService.lookup(10L, "added").blockOptional()).isEmpty();
+        placeholderLookupService.lookup(10L, "key").block();
+        placeholderLookupService.lookup(20L, "key").blockOptional();
+
+        placeholder(2L, 10L, "added", "value");
+        placeholderLookupService.evictWritten(2L).block();
+
+        assertThat(placeholderLookupService.lookup(10L, "added").block().getId()).isEqualTo(2L);
+        placeholderLookupService.lookup(20L, "key").blockOptional();
+        verify(placeholderRepository, times(4)).lookupByOrganization(anyLong(), any());
+    }
+
+    @Test
+    void testOrganizationLookupServesItsKeys() {
+        placeholder(2L, 10L, "key", "second");
+        placeholder(1L, 10L, "key", "first");
+        placeholder(3L, 10L, "other", "third");
+
+        assertThat(placeholderLookupService.lookupAll(10L).collectList().block())
+            .extracting(PlaceholderDTO::getId)
+            .containsExactly(1L, 2L, 3L);
+        assertThat(placeholderLookupService.lookup(10L, "key").block().getId()).isEqualTo(1L);
+        assertThat(placeholderLookupService.lookup(10L, "missing").blockOptional()).isEmpty();
+        verify(placeholderRepository, times(1)).lookupByOrganization(anyLong(), any());
+    }
+
+    @Test
+    void testLookupsExpire() {
+        applicationProperties.getPlaceholderLookup().setTtl(Duration.ZERO);
+        placeholder(1L, 10L, "key", "value");
+
+        placeholderLookupService.lookup(10L, "key").block();
+        placeholderLookupService.lookup(10L, "key").block();
+
+        verify(placeholderRepository, times(2)).lookupByOrganization(anyLong(), any());
+        assertThat(meterRegistry.counter("service.placeholder-lookup.cache.evictions", "cause", "expired").count()).isEqualTo(1);
+    }
+
+    @Test
+    void testCacheIsBoundedByTheNumberOfPlaceholders() {
+        applicationProperties.getPlaceholderLookup().setMaxEntries(2);
+        placeholder(1L, 10L, "a", "value");
+        placeholder(2L, 10L, "b", "value");
+
+        placeholderLookupService.lookup(10L, "a").block();
+        placeholderLookupService.lookupAll(10L).blockLast();
+
+        assertThat(meterRegistry.get("service.placeholder-lookup.cache.size").gauge().value()).isEqualTo(2);
+        assertThat(meterRegistry.counter("service.placeholder-lookup.cache.evictions", "cause", "size").count()).isEqualTo(1);
+    }
+
+    private Placeholder placeholder(Long id, Long organizationId, String index, String value) {
+        Placeholder placeholder = new Placeholder().id(id).placeholderIndex(index).placeholderValue(value);
+        placeholder.setOrganizationId(organizationId);
+        placeholders.put(id, placeholder);
+        return placeholder;
+    }
+}
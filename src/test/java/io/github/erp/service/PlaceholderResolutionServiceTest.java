@@ -0,0 +1,141 @@
+package io.github.erp.service;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.github.erp.domain.Placeholder;
+import io.github.erp.repository.PlaceholderRepository;
+import io.github.erp.service.dto.PlaceholderDTO;
+import io.github.erp.service.dto.ResolvedPlaceholderDTO;
+import io.github.erp.service.mapper.PlaceholderMapperImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+class PlaceholderResolutionServiceTest {
+
+    private final Map<Long, Placeholder> placeholders = new HashMap<>();
+
+    private PlaceholderRepository placeholderRepository;
+
+    private TransactionalOperator readOnlyTransactionalOperator;
+
+    private PlaceholderResolutionService placeholderResolutionService;
+
+    @BeforeEach
+    void setUp() {
+        placeholders.clear();
+        placeholderRepository = mock(PlaceholderRepository.class);
+        // follows the archetype links the way the recursive query does, repeating the placeholder closing a cycle
+        when(placeholderRepository.findArchetypeChain(anyLong(), anyInt()))
+            .thenAnswer(invocation -> {
+                Flux<Placeholder> chain = Flux.empty();
+                Map<Long, Boolean> visited = new HashMap<>();
+                Placeholder link = placeholders.get(invocation.<Long>getArgument(0));
+                while (link != null) {
+                    chain = chain.concatWithValues(link);
+                    if (visited.put(link.getId(), true) != null) {
+                        break;
+                    }
+                    link = link.getArchetypeId() == null ? null : placeholders.get(link.getArchetypeId());
+                }
+                return chain;
+            });
+        readOnlyTransactionalOperator = mock(TransactionalOperator.class);
+        when(readOnlyTransactionalOperator.transactional(any(Mono.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        placeholderResolutionService =
+            new PlaceholderResolutionService(
+                placeholderRepository,
+                new PlaceholderMapperImpl(),
+                readOnlyTransactionalOperator,
+                new SimpleMeterRegistry()
+            );
+    }
+
+    @Test
+    void testEffectiveValueIsTheNearestValueOfTheChain() {
+        placeholder(1L, null, 2L);
+        placeholder(2L, null, 3L);
+        placeholder(3L, "root", 4L);
+        placeholder(4L, "ignored", null);
+
+        ResolvedPlaceholderDTO resolved = placeholderResolutionService.resolve(1L).block();
+
+        assertThat(resolved.getEffectiveValue()).isEqualTo("root");
+        assertThat(resolved.getValueSourceId()).isEqualTo(3L);
+        assertThat(resolved.isCyclic()).isFalse();
+        assertThat(resolved.getChain()).extracting(PlaceholderDTO::getId).containsExactly(1L, 2L, 3L, 4L);
+    }
+
+    @Test
+    void testCyclesAreDetected() {
+        placeholder(1L, null, 2L);
+        placeholder(2L, null, 1L);
+
+        ResolvedPlaceholderDTO resolved = placeholderResolutionService.resolve(1L).block();
+
+        assertThat(resolved.isCyclic()).isTrue();
+        assertThat(resolved.getEffectiveValue()).isNull();
+        assertThat(resolved.getChain()).extracting(PlaceholderDTO::getId).containsExactly(1L, 2L);
+    }
+
+    @Test
+    void testResolutionsAreCachedUntilALinkChanges() {
+        placeholder(1L, null, 2L);
+        placeholder(2L, "first", null);
+        placeholder(3L, "other", null);
+
+        assertThat(placeholderResolutionService.resolve(1L).block().getEffectiveValue()).isEqualTo("first");
+        assertThat(placeholderResolutionService.resolve(1L).block().getEffectiveValue()).isEqualTo("first");
+        verify(placeholderRepository, times(1)).findArchetypeChain(anyLong(), anyInt());
+        verify(readOnlyTransactionalOperator, times(1)).transactional(any(Mono.class));
+
+        placeholderResolutionService.evict(3L);
+        assertThat(placeholderResolutionService.resolve(1L).block().getEffectiveValue()).isEqualTo("first");
+        verify(placeholderRepository, times(1)).findArchetypeChain(anyLong(), anyInt());
+
+        placeholder(2L, "second", null);
+        placeholderResolutionService.evict(2L);
+        assertThat(placeholderResolutionService.resolve(1L).block().getEffectiveValue()).isEqualTo("second");
+    }
+
+    @Test
+    void testUnknownPlaceholderIsNotResolved() {
+        assertThat(placeholderResolutionService.resolve(1L).blockOptional()).isEmpty();
+    }
+
+    private void placeholder(Long id, String value, Long archetypeId) {
+        Placeholder placeholder = new Placeholder().id(id).placeholderIndex("index-" + id).placeholderValue(value);
+        placeholder.setArchetypeId(archetypeId);
+        placeholders.put(id, placeholder);
+    }
+}
@@ -0,0 +1,219 @@
+package io.github.erp.service;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.github.erp.config.ApplicationProperties;
+import io.github.erp.domain.Placeholder;
+import io.github.erp.repository.AppUserRepository;
+import io.github.erp.repository.PlaceholderRepository;
+import io.github.erp.repository.SearchIndexOutboxRepository;
+import io.github.erp.repository.search.AppUserSearchRepository;
+import io.github.erp.repository.search.PlaceholderSearchRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+class SearchIndexerTest {
+
+    private SearchIndexOutboxRepository outboxRepository;
+
+    private PlaceholderRepository placeholderRepository;
+
+    private PlaceholderSearchRepository placeholderSearchRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private final List<SearchIndexOutboxRepository.Entry> outbox = new ArrayList<>();
+
+    private final List<Object> indexed = new ArrayList<>();
+
+    private final List<Object> removed = new ArrayList<>();
+
+    private final List<Long> failed = new ArrayList<>();
+
+    private SearchIndexer searchIndexer;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        outbox.clear();
+        indexed.clear();
+        removed.clear();
+        failed.clear();
+        outboxRepository = mock(SearchIndexOutboxRepository.class);
+        when(outboxRepository.tryLockDrain()).thenReturn(Mono.just(true));
+        when(outboxRepository.claimFirst(anyInt(), any(), anyInt()))
+            .thenAnswer(invocation -> Flux.fromIterable(new ArrayList<>(outbox)).take(invocation.<Integer>getArgument(0)));
+        when(outboxRepository.recordFailure(anyCollection(), any()))
+            .thenAnswer(invocation -> {
+                failed.addAll(invocation.getArgument(0));
+                return Flux.empty();
+            });
+        when(outboxRepository.deleteAll(anyCollection()))
+            .thenAnswer(invocation ->
+                Mono.fromRunnable(() -> outbox.removeIf(entry -> invocation.<List<Long>>getArgument(0).contains(entry.getId())))
+            );
+        placeholderRepository = mock(PlaceholderRepository.class);
+        placeholderSearchRepository = mock(PlaceholderSearchRepository.class);
+        when(placeholderSearchRepository.saveAll(anyIterable()))
+            .thenAnswer(invocation -> Flux.fromIterable(invocation.<Iterable<Placeholder>>getArgument(0)).doOnNext(indexed::add));
+        when(placeholderSearchRepository.deleteAllById(anyIterable()))
+            .thenAnswer(invocation -> Mono.fromRunnable(() -> invocation.<Iterable<Long>>getArgument(0).forEach(removed::add)));
+        TransactionalOperator transactionalOperator = mock(TransactionalOperator.class);
+        when(transactionalOperator.transactional(any(Mono.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getSearchIndexer().setBatchSize(2);
+        applicationProperties.getSearchIndexer().setMaxRetries(2);
+        applicationProperties.getSearchIndexer().setRetryBackoff(Duration.ofMillis(1));
+        meterRegistry = new SimpleMeterRegistry();
+        searchIndexer =
+            new SearchIndexer(
+                outboxRepository,
+                placeholderRepository,
+                placeholderSearchRepository,
+                mock(AppUserRepository.class),
+                mock(AppUserSearchRepository.class),
+                transactionalOperator,
+                applicationProperties,
+                meterRegistry
+            );
+    }
+
+    @Test
+    void testDrainIndexesTheCurrentStateOfTheQueuedEntities() {
+        Placeholder existing = new Placeholder().id(1L);
+        when(placeholderRepository.findAllById(anyIterable())).thenReturn(Flux.just(existing));
+        queue(Placeholder.class, 1L);
+        queue(Placeholder.class, 1L);
+
+        assertThat(searchIndexer.drainBatch().block()).isEqualTo(2);
+
+        assertThat(indexed).containsExactly(existing);
+        assertThat(removed).isEmpty();
+        assertThat(outbox).isEmpty();
+        assertThat(meterRegistry.counter("service.search-indexer.documents", "operation", "index").count()).isEqualTo(1);
+    }
+
+    @Test
+    void testDrainRemovesTheDeletedEntitiesFromTheIndex() {
+        when(placeholderRepository.findAllById(anyIterable())).thenReturn(Flux.empty());
+        queue(Placeholder.class, 2L);
+
+        searchIndexer.drain().block();
+
+        assertThat(indexed).isEmpty();
+        assertThat(removed).containsExactly(2L);
+        assertThat(outbox).isEmpty();
+    }
+
+    @Test
+    void testDrainReadsBatchesUntilTheOutboxIsEmpty() {
+        when(placeholderRepository.findAllById(anyIterable()))
+            .thenAnswer(invocation -> Flux.fromIterable(invocation.<Iterable<Long>>getArgument(0)).map(id -> new Placeholder().id(id)));
+        for (long id = 1; id <= 5; id++) {
+            queue(Placeholder.class, id);
+        }
+
+        searchIndexer.drain().block();
+
+        assertThat(indexed).hasSize(5);
+        assertThat(outbox).isEmpty();
+    }
+
+    @Test
+    void testFailedBatchIsRetriedThenIndexedOneByOne() {
+        AtomicInteger attempts = new AtomicInteger();
+        when(placeholderRepository.findAllById(anyIterable())).thenReturn(Flux.just(new Placeholder().id(1L)));
+        when(placeholderSearchRepository.saveAll(anyIterable()))
+            .thenReturn(Flux.defer(() -> Flux.error(new IllegalStateException("attempt " + attempts.incrementAndGet()))));
+        queue(Placeholder.class, 1L);
+
+        assertThat(searchIndexer.drainBatch().block()).isEqualTo(1);
+
+        assertThat(attempts).hasValue(4);
+        assertThat(failed).containsExactly(1L);
+        assertThat(outbox).hasSize(1);
+        verify(outboxRepository, never()).deleteAll(anyCollection());
+    }
+
+    @Test
+    void testEntityFailingOnItsOwnDoesNotHoldTheOthersBack() {
+        when(placeholderRepository.findAllById(anyIterable()))
+            .thenAnswer(invocation -> Flux.fromIterable(invocation.<Iterable<Long>>getArgument(0)).map(id -> new Placeholder().id(id)));
+        when(placeholderSearchRepository.saveAll(anyIterable()))
+            .thenAnswer(invocation -> {
+                List<Placeholder> batch = new ArrayList<>();
+                invocation.<Iterable<Placeholder>>getArgument(0).forEach(batch::add);
+                if (batch.stream().anyMatch(placeholder -> placeholder.getId() == 1L)) {
+                    return Flux.error(new IllegalArgumentException("rejected"));
+                }
+                return Flux.fromIterable(batch).doOnNext(indexed::add);
+            });
+        queue(Placeholder.class, 1L);
+        queue(Placeholder.class, 2L);
+
+        searchIndexer.drainBatch().block();
+
+        assertThat(indexed).extracting(placeholder -> ((Placeholder) placeholder).getId()).containsExactly(2L);
+        assertThat(failed).containsExactly(1L);
+        assertThat(outbox).extracting(SearchIndexOutboxRepository.Entry::getEntityId).containsExactly(1L);
+    }
+
+    @Test
+    void testDrainSkipsWhenAnotherInstanceHoldsTheLock() {
+        when(outboxRepository.tryLockDrain()).thenReturn(Mono.just(false));
+        queue(Placeholder.class, 1L);
+
+        assertThat(searchIndexer.drainBatch().block()).isZero();
+
+        verify(outboxRepository, never()).claimFirst(anyInt(), any(), anyInt());
+        assertThat(outbox).hasSize(1);
+    }
+
+    @Test
+    void testEntriesOfAnUnknownTypeAreDropped() {
+        outbox.add(new SearchIndexOutboxRepository.Entry(1L, "Unknown", 1L, 0));
+
+        searchIndexer.drainBatch().block();
+
+        assertThat(outbox).isEmpty();
+        assertThat(indexed).isEmpty();
+    }
+
+    private void queue(Class<?> entityType, Long id) {
+        outbox.add(new SearchIndexOutboxRepository.Entry((long) outbox.size() + 1, entityType.getSimpleName(), id, 0));
+    }
+}
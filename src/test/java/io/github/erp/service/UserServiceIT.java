@@ -30,6 +30,7 @@ import io.github.erp.config.Constants;
 import io.github.erp.domain.User;
 import io.github.erp.repository.UserRepository;
 import io.github.erp.repository.search.UserSearchRepository;
+import io.github.erp.security.AuthoritiesConstants;
 import io.github.erp.service.dto.AdminUserDTO;
 import java.time.Instant;
 import java.time.LocalDateTime;
@@ -37,6 +38,7 @@ import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -207,4 +209,24 @@ class UserServiceIT {
         // Verify Elasticsearch mock
         verify(spiedUserSearchRepository, never()).delete(user);
     }
+
+    @Test
+    void assertThatUpdateUserSynchronizesAuthorities() {
+        AdminUserDTO userDTO = new AdminUserDTO(user);
+        userDTO.setAuthorities(Set.of(AuthoritiesConstants.USER));
+        User created = userService.createUser(userDTO).block();
+
+        userDTO.setId(created.getId());
+        userDTO.setAuthorities(Set.of(AuthoritiesConstants.ADMIN, AuthoritiesConstants.USER));
+        userService.updateUser(userDTO).block();
+        assertThat(userRepository.findOneWithAuthoritiesByLogin(DEFAULT_LOGIN).block().getAuthorities())
+            .extracting("name")
+            .containsExactlyInAnyOrder(AuthoritiesConstants.ADMIN, AuthoritiesConstants.USER);
+
+        userDTO.setAuthorities(Set.of(AuthoritiesConstants.ADMIN));
+        userService.updateUser(userDTO).block();
+        assertThat(userRepository.findOneWithAuthoritiesByLogin(DEFAULT_LOGIN).block().getAuthorities())
+            .extracting("name")
+            .containsExactly(AuthoritiesConstants.ADMIN);
+    }
 }
@@ -29,6 +29,7 @@ import io.github.erp.repository.AuthorityRepository;
 import io.github.erp.repository.UserRepository;
 import io.github.erp.repository.search.UserSearchRepository;
 import io.github.erp.security.AuthoritiesConstants;
+import io.github.erp.security.UserDetailsCache;
 import io.github.erp.service.UserService;
 import io.github.erp.service.dto.AdminUserDTO;
 import io.github.erp.service.dto.PasswordChangeDTO;
@@ -38,6 +39,7 @@ import io.github.erp.web.rest.vm.ManagedUserVM;
 import java.time.Instant;
 import java.util.*;
 import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
@@ -73,6 +75,15 @@ class AccountResourceIT {
     @Autowired
     private WebTestClient accountWebTestClient;
 
+    @Autowired
+    private UserDetailsCache userDetailsCache;
+
+    @BeforeEach
+    public void initTest() {
+        // the tests write the users through the repository, which does not evict the cached users
+        userDetailsCache.evictAll();
+    }
+
     @Test
     @WithUnauthenticatedMockUser
     void testNonAuthenticatedUser() {
@@ -141,6 +152,27 @@ class AccountResourceIT {
             .isEqualTo(AuthoritiesConstants.ADMIN);
     }
 
+    @Test
+    void testGetAccountIsCachedUntilTheUserIsUpdated() {
+        AdminUserDTO user = new AdminUserDTO();
+        user.setLogin(TEST_USER_LOGIN);
+        user.setFirstName("john");
+        user.setEmail("john.doe@jhipster.com");
+        user.setLangKey("en");
+        AdminUserDTO created = new AdminUserDTO(userService.createUser(user).block());
+        accountWebTestClient.get().uri("/api/account").exchange().expectBody().jsonPath("$.firstName").isEqualTo("john");
+
+        // a write bypassing the service leaves the user cached
+        User renamed = userRepository.findOneByLogin(TEST_USER_LOGIN).block();
+        renamed.setFirstName("jane");
+        userRepository.save(renamed).block();
+        accountWebTestClient.get().uri("/api/account").exchange().expectBody().jsonPath("$.firstName").isEqualTo("john");
+
+        created.setFirstName("jane");
+        userService.updateUser(created).block();
+        accountWebTestClient.get().uri("/api/account").exchange().expectBody().jsonPath("$.firstName").isEqualTo("jane");
+    }
+
     @Test
     void testGetUnknownAccount() {
         accountWebTestClient
@@ -98,6 +98,9 @@ class AppUserResourceIT {
     @Autowired
     private AppUserSearchRepository appUserSearchRepository;
 
+    @Autowired
+    private AppUserService appUserService;
+
     @Autowired
     private EntityManager em;
 
@@ -640,8 +643,12 @@ class AppUserResourceIT {
         // Validate the database contains one less item
         List<AppUser> appUserList = appUserRepository.findAll().collectList().block();
         assertThat(appUserList).hasSize(databaseSizeBeforeDelete - 1);
-        int searchDatabaseSizeAfter = IterableUtil.sizeOf(appUserSearchRepository.findAll().collectList().block());
-        assertThat(searchDatabaseSizeAfter).isEqualTo(searchDatabaseSizeBefore - 1);
+        await()
+            .atMost(5, TimeUnit.SECONDS)
+            .untilAsserted(() -> {
+                int searchDatabaseSizeAfter = IterableUtil.sizeOf(appUserSearchRepository.findAll().collectList().block());
+                assertThat(searchDatabaseSizeAfter).isEqualTo(searchDatabaseSizeBefore - 1);
+            });
     }
 
     @Test
@@ -669,4 +676,88 @@ class AppUserResourceIT {
             .jsonPath("$.[*].isCorporateAccount")
             .value(hasItem(DEFAULT_IS_CORPORATE_ACCOUNT.booleanValue()));
     }
+
+    @Test
+    void getAppUserSubtreeAndAncestors() throws Exception {
+        // Initialize a three level organization tree through the service, which maintains the hierarchy
+        AppUserDTO root = saveInOrganization(null);
+        AppUserDTO child = saveInOrganization(root);
+        AppUserDTO grandChild = saveInOrganization(child);
+        AppUserDTO outsider = saveInOrganization(null);
+
+        webTestClient
+            .get()
+            .uri(ENTITY_API_URL_ID + "/subtree?sort=id,asc", root.getId())
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectBody()
+            .jsonPath("$.[*].id")
+            .isEqualTo(List.of(child.getId().intValue(), grandChild.getId().intValue()));
+
+        webTestClient
+            .get()
+            .uri(ENTITY_API_URL_ID + "/ancestors", grandChild.getId())
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectBody()
+            .jsonPath("$.[*].id")
+            .isEqualTo(List.of(child.getId().intValue(), root.getId().intValue()));
+
+        // Moving the child moves its subtree along
+        child.setOrganization(outsider);
+        webTestClient
+            .put()
+            .uri(ENTITY_API_URL_ID, child.getId())
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(TestUtil.convertObjectToJsonBytes(child))
+            .exchange()
+            .expectStatus()
+            .isOk();
+
+        webTestClient
+            .get()
+            .uri(ENTITY_API_URL_ID + "/subtree", root.getId())
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectBody()
+            .jsonPath("$")
+            .isEmpty();
+
+        webTestClient
+            .get()
+            .uri(ENTITY_API_URL_ID + "/ancestors", grandChild.getId())
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectBody()
+            .jsonPath("$.[*].id")
+            .isEqualTo(List.of(child.getId().intValue(), outsider.getId().intValue()));
+    }
+
+    @Test
+    void putAppUserUnderItsOwnSubtree() throws Exception {
+        AppUserDTO root = saveInOrganization(null);
+        AppUserDTO child = saveInOrganization(root);
+
+        root.setOrganization(child);
+        webTestClient
+            .put()
+            .uri(ENTITY_API_URL_ID, root.getId())
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(TestUtil.convertObjectToJsonBytes(root))
+            .exchange()
+            .expectStatus()
+            .isBadRequest();
+
+        assertThat(appUserRepository.findById(root.getId()).block().getOrganizationId()).isNull();
+    }
+
+    private AppUserDTO saveInOrganization(AppUserDTO organization) {
+        AppUserDTO appUserDTO = appUserMapper.toDto(createEntity(em));
+        appUserDTO.setOrganization(organization);
+        return appUserService.save(appUserDTO).block();
+    }
 }
@@ -0,0 +1,142 @@
+package io.github.erp.web.rest;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.github.erp.IntegrationTest;
+import io.github.erp.domain.AppUser;
+import io.github.erp.domain.Placeholder;
+import io.github.erp.repository.EntityManager;
+import io.github.erp.repository.PlaceholderRepository;
+import io.github.erp.security.AuthoritiesConstants;
+import io.github.erp.service.dto.BulkImportReportDTO;
+import io.github.erp.web.util.CsvUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+/**
+ * Integration tests for the {@link BulkLoadResource} REST controller.
+ */
+@IntegrationTest
+@AutoConfigureWebTestClient(timeout = IntegrationTest.DEFAULT_TIMEOUT)
+@WithMockUser(authorities = AuthoritiesConstants.ADMIN)
+class BulkLoadResourceIT {
+
+    private static final String BULK_LOAD_API_URL = "/api/admin/bulk-load/{table}";
+
+    @Autowired
+    private PlaceholderRepository placeholderRepository;
+
+    @Autowired
+    private EntityManager em;
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    private AppUser organization;
+
+    @BeforeEach
+    public void initTest() {
+        PlaceholderResourceIT.deleteEntities(em);
+        organization = em.insert(AppUserResourceIT.createEntity(em)).block();
+    }
+
+    @AfterEach
+    public void cleanup() {
+        PlaceholderResourceIT.deleteEntities(em);
+    }
+
+    @Test
+    void bulkLoadPlaceholders() {
+        String csv =
+            "placeholder_index;placeholder_value;organization_id\n" +
+            "AAAAAAAAAA;first;" +
+            organization.getId() +
+            "\n" +
+            "BBBBBBBBBB;;" +
+            organization.getId() +
+            "\n";
+
+        BulkImportReportDTO report = bulkLoad("placeholder", csv, false);
+
+        assertThat(report.getImported()).isEqualTo(2);
+        assertThat(placeholderRepository.findAll().collectList().block())
+            .extracting(Placeholder::getPlaceholderIndex)
+            .containsExactlyInAnyOrder("AAAAAAAAAA", "BBBBBBBBBB");
+
+        Placeholder first = placeholderRepository
+            .findAll()
+            .filter(placeholder -> "AAAAAAAAAA".equals(placeholder.getPlaceholderIndex()))
+            .blockFirst();
+        String upsert =
+            "id;placeholder_index;placeholder_value;organization_id\n" + first.getId() + ";CCCCCCCCCC;updated;" + organization.getId();
+
+        report = bulkLoad("placeholder", upsert, true);
+
+        assertThat(report.getImported()).isEqualTo(1);
+        assertThat(placeholderRepository.findById(first.getId()).block().getPlaceholderValue()).isEqualTo("updated");
+        assertThat(placeholderRepository.findAll().collectList().block()).hasSize(2);
+    }
+
+    @Test
+    void bulkLoadUnknownColumn() {
+        webTestClient
+            .post()
+            .uri(uriBuilder -> uriBuilder.path(BULK_LOAD_API_URL).queryParam("separator", ";").build("placeholder"))
+            .contentType(CsvUtil.TEXT_CSV)
+            .bodyValue("placeholder_index;unknown\nAAAAAAAAAA;x\n")
+            .exchange()
+            .expectStatus()
+            .isBadRequest();
+    }
+
+    @Test
+    void bulkLoadUnknownTable() {
+        webTestClient
+            .post()
+            .uri(BULK_LOAD_API_URL, "jhi_authority")
+            .contentType(CsvUtil.TEXT_CSV)
+            .bodyValue("name\nROLE_X\n")
+            .exchange()
+            .expectStatus()
+            .isBadRequest();
+    }
+
+    private BulkImportReportDTO bulkLoad(String table, String csv, boolean upsert) {
+        return webTestClient
+            .post()
+            .uri(uriBuilder ->
+                uriBuilder.path(BULK_LOAD_API_URL).queryParam("separator", ";").queryParam("upsert", upsert).build(table)
+            )
+            .contentType(CsvUtil.TEXT_CSV)
+            .bodyValue(csv)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectBody(BulkImportReportDTO.class)
+            .returnResult()
+            .getResponseBody();
+    }
+}
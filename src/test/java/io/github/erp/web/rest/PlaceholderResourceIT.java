@@ -19,8 +19,10 @@ package io.github.erp.web.rest;
  */
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.awaitility.Awaitility.await;
 import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasItems;
 import static org.hamcrest.Matchers.is;
 import static org.mockito.Mockito.*;
 
@@ -30,9 +32,17 @@ import io.github.erp.domain.Placeholder;
 import io.github.erp.repository.EntityManager;
 import io.github.erp.repository.PlaceholderRepository;
 import io.github.erp.repository.search.PlaceholderSearchRepository;
+import io.github.erp.service.AppUserService;
+import io.github.erp.service.CountService;
 import io.github.erp.service.PlaceholderService;
+import io.github.erp.service.dto.AppUserDTO;
+import io.github.erp.service.dto.BulkImportReportDTO;
 import io.github.erp.service.dto.PlaceholderDTO;
+import io.github.erp.service.mapper.AppUserMapper;
 import io.github.erp.service.mapper.PlaceholderMapper;
+import io.github.erp.web.util.CountPaginationUtil;
+import io.github.erp.web.util.CsvUtil;
+import io.github.erp.web.util.KeysetPaginationUtil;
 import java.time.Duration;
 import java.util.List;
 import java.util.Random;
@@ -48,6 +58,7 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -75,6 +86,7 @@ class PlaceholderResourceIT {
     private static final String ENTITY_API_URL = "/api/placeholders";
     private static final String ENTITY_API_URL_ID = ENTITY_API_URL + "/{id}";
     private static final String ENTITY_SEARCH_API_URL = "/api/_search/placeholders";
+    private static final String ENTITY_SUGGEST_API_URL = "/api/_suggest/placeholders";
 
     private static Random random = new Random();
     private static AtomicLong count = new AtomicLong(random.nextInt() + (2 * Integer.MAX_VALUE));
@@ -94,12 +106,21 @@ class PlaceholderResourceIT {
     @Autowired
     private PlaceholderSearchRepository placeholderSearchRepository;
 
+    @Autowired
+    private AppUserService appUserService;
+
+    @Autowired
+    private AppUserMapper appUserMapper;
+
     @Autowired
     private EntityManager em;
 
     @Autowired
     private WebTestClient webTestClient;
 
+    @Autowired
+    private CountService countService;
+
     private Placeholder placeholder;
 
     /**
@@ -155,6 +176,8 @@ class PlaceholderResourceIT {
     @BeforeEach
     public void initTest() {
         deleteEntities(em);
+        // the tests write through the repositories, which do not evict the cached counts
+        countService.evictAll();
         placeholder = createEntity(em);
     }
 
@@ -187,6 +210,67 @@ class PlaceholderResourceIT {
         assertThat(testPlaceholder.getPlaceholderValue()).isEqualTo(DEFAULT_PLACEHOLDER_VALUE);
     }
 
+    @Test
+    void importPlaceholders() throws Exception {
+        int databaseSizeBeforeImport = placeholderRepository.findAll().collectList().block().size();
+        PlaceholderDTO valid = placeholderMapper.toDto(placeholder);
+        PlaceholderDTO duplicate = placeholderMapper.toDto(placeholder);
+        PlaceholderDTO missingIndex = placeholderMapper.toDto(placeholder);
+        missingIndex.setPlaceholderIndex(null);
+
+        BulkImportReportDTO report = webTestClient
+            .post()
+            .uri(ENTITY_API_URL + "/_import?batchSize=2")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(TestUtil.convertObjectToJsonBytes(List.of(valid, duplicate, missingIndex)))
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectBody(BulkImportReportDTO.class)
+            .returnResult()
+            .getResponseBody();
+
+        assertThat(report.getReceived()).isEqualTo(3);
+        assertThat(report.getImported()).isEqualTo(1);
+        assertThat(report.getErrors()).extracting(BulkImportReportDTO.RowError::getRow).containsExactlyInAnyOrder(2L, 3L);
+        assertThat(placeholderRepository.findAll().collectList().block()).hasSize(databaseSizeBeforeImport + 1);
+
+        String csv =
+            CsvUtil.toCsvLine("placeholderIndex", "placeholderValue", "organizationId") +
+            CsvUtil.toCsvLine(UPDATED_PLACEHOLDER_INDEX, "with, comma", placeholder.getOrganizationId()) +
+            CsvUtil.toCsvLine("CCCCCCCCCC", null, "not a number");
+        report =
+            webTestClient
+                .post()
+                .uri(ENTITY_API_URL + "/_import")
+                .contentType(CsvUtil.TEXT_CSV)
+                .bodyValue(csv)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(BulkImportReportDTO.class)
+                .returnResult()
+                .getResponseBody();
+
+        assertThat(report.getImported()).isEqualTo(1);
+        assertThat(report.getErrors()).extracting(BulkImportReportDTO.RowError::getRow).containsExactly(2L);
+        assertThat(placeholderRepository.findAll().collectList().block())
+            .extracting(Placeholder::getPlaceholderValue)
+            .contains("with, comma");
+    }
+
+    @Test
+    void importPlaceholdersWithTooLargeBatchSize() throws Exception {
+        webTestClient
+            .post()
+            .uri(ENTITY_API_URL + "/_import?batchSize=1000000")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(TestUtil.convertObjectToJsonBytes(List.of(placeholderMapper.toDto(placeholder))))
+            .exchange()
+            .expectStatus()
+            .isBadRequest();
+    }
+
     @Test
     void createPlaceholderWithExistingId() throws Exception {
         // Create the Placeholder with an existing ID
@@ -238,6 +322,15 @@ class PlaceholderResourceIT {
         assertThat(searchDatabaseSizeAfter).isEqualTo(searchDatabaseSizeBefore);
     }
 
+    @Test
+    void checkPlaceholderIndexIsUniqueAmongThePlaceholdersWithoutOrganization() {
+        placeholderRepository.save(new Placeholder().placeholderIndex(DEFAULT_PLACEHOLDER_INDEX)).block();
+        placeholderRepository.save(createEntity(em)).block();
+
+        assertThatThrownBy(() -> placeholderRepository.save(new Placeholder().placeholderIndex(DEFAULT_PLACEHOLDER_INDEX)).block())
+            .isInstanceOf(DataIntegrityViolationException.class);
+    }
+
     @Test
     void getAllPlaceholders() {
         // Initialize the database
@@ -262,6 +355,243 @@ class PlaceholderResourceIT {
             .value(hasItem(DEFAULT_PLACEHOLDER_VALUE));
     }
 
+    @Test
+    void getAllPlaceholdersInEachCountMode() {
+        // Initialize the database
+        placeholderRepository.save(placeholder).block();
+        long databaseSize = placeholderRepository.count().block();
+
+        webTestClient
+            .get()
+            .uri(ENTITY_API_URL + "?sort=id,desc&count=exact")
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectHeader()
+            .valueEquals(CountPaginationUtil.TOTAL_COUNT_MODE_HEADER, "exact")
+            .expectHeader()
+            .valueEquals("X-Total-Count", Long.toString(databaseSize));
+
+        webTestClient
+            .get()
+            .uri(ENTITY_API_URL + "?sort=id,desc&count=estimate")
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectHeader()
+            .exists("X-Total-Count")
+            .expectHeader()
+            .exists(CountPaginationUtil.TOTAL_COUNT_MODE_HEADER);
+
+        webTestClient
+            .get()
+            .uri(ENTITY_API_URL + "?sort=id,desc&count=none")
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectHeader()
+            .valueEquals(CountPaginationUtil.TOTAL_COUNT_MODE_HEADER, "none")
+            .expectHeader()
+            .doesNotExist("X-Total-Count")
+            .expectBody()
+            .jsonPath("$.[*].id")
+            .value(hasItem(placeholder.getId().intValue()));
+
+        webTestClient
+            .get()
+            .uri(ENTITY_API_URL + "?count=approximate")
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus()
+            .isBadRequest();
+    }
+
+    @Test
+    void getAllPlaceholdersCountIsCachedUntilAPlaceholderIsCreated() throws Exception {
+        // Initialize the database
+        placeholderRepository.save(placeholder).block();
+        long databaseSize = placeholderRepository.count().block();
+        webTestClient
+            .get()
+            .uri(ENTITY_API_URL + "?sort=id,desc&count=exact")
+            .exchange()
+            .expectHeader()
+            .valueEquals("X-Total-Count", Long.toString(databaseSize));
+
+        // a write bypassing the service leaves the count cached
+        placeholderRepository.save(createUpdatedEntity(em)).block();
+        webTestClient
+            .get()
+            .uri(ENTITY_API_URL + "?sort=id,desc&count=exact")
+            .exchange()
+            .expectHeader()
+            .valueEquals("X-Total-Count", Long.toString(databaseSize));
+
+        webTestClient
+            .post()
+            .uri(ENTITY_API_URL)
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(TestUtil.convertObjectToJsonBytes(placeholderMapper.toDto(createEntity(em))))
+            .exchange()
+            .expectStatus()
+            .isCreated();
+        webTestClient
+            .get()
+            .uri(ENTITY_API_URL + "?sort=id,desc&count=exact")
+            .exchange()
+            .expectHeader()
+            .valueEquals("X-Total-Count", Long.toString(databaseSize + 2));
+    }
+
+    @Test
+    void exportPlaceholdersOfOrganization() {
+        // Initialize the database
+        placeholderRepository.save(placeholder).block();
+        placeholderRepository.save(createUpdatedEntity(em)).block();
+
+        List<PlaceholderDTO> exported = webTestClient
+            .get()
+            .uri(ENTITY_API_URL + "/_export?organizationId={id}", placeholder.getOrganizationId())
+            .accept(MediaType.APPLICATION_NDJSON)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .returnResult(PlaceholderDTO.class)
+            .getResponseBody()
+            .collectList()
+            .block();
+        assertThat(exported).extracting(PlaceholderDTO::getId).containsExactly(placeholder.getId());
+
+        String csv = webTestClient
+            .get()
+            .uri(ENTITY_API_URL + "/_export")
+            .accept(CsvUtil.TEXT_CSV)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectBody(String.class)
+            .returnResult()
+            .getResponseBody();
+        assertThat(csv.split("\r\n"))
+            .hasSize(3)
+            .contains(
+                placeholder.getId() +
+                "," +
+                DEFAULT_PLACEHOLDER_INDEX +
+                "," +
+                DEFAULT_PLACEHOLDER_VALUE +
+                ",,," +
+                placeholder.getOrganizationId() +
+                "," +
+                placeholder.getOrganization().getDesignation()
+            );
+    }
+
+    @Test
+    void exportedCsvImportsBack() {
+        // Initialize the database
+        placeholder.setPlaceholderValue("two\r\nlines, \"quoted\"");
+        placeholderRepository.save(placeholder).block();
+
+        String csv = webTestClient
+            .get()
+            .uri(ENTITY_API_URL + "/_export")
+            .accept(CsvUtil.TEXT_CSV)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectBody(String.class)
+            .returnResult()
+            .getResponseBody();
+        placeholderRepository.deleteAll().block();
+
+        BulkImportReportDTO report = webTestClient
+            .post()
+            .uri(ENTITY_API_URL + "/_import")
+            .contentType(CsvUtil.TEXT_CSV)
+            .bodyValue(csv)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectBody(BulkImportReportDTO.class)
+            .returnResult()
+            .getResponseBody();
+
+        assertThat(report.getImported()).isEqualTo(1);
+        assertThat(report.getErrors()).isEmpty();
+        assertThat(placeholderRepository.findAll().collectList().block())
+            .singleElement()
+            .satisfies(imported -> {
+                assertThat(imported.getPlaceholderIndex()).isEqualTo(DEFAULT_PLACEHOLDER_INDEX);
+                assertThat(imported.getPlaceholderValue()).isEqualTo("two\r\nlines, \"quoted\"");
+                assertThat(imported.getOrganizationId()).isEqualTo(placeholder.getOrganizationId());
+            });
+    }
+
+    @Test
+    void getAllPlaceholdersWithKeysetPagination() {
+        // Initialize the database
+        placeholderRepository.save(placeholder).block();
+        Placeholder otherPlaceholder = createUpdatedEntity(em);
+        placeholderRepository.save(otherPlaceholder).block();
+
+        // Get the first page
+        String nextCursor = webTestClient
+            .get()
+            .uri(ENTITY_API_URL + "?sort=placeholderIndex,asc&size=1&cursor=")
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectHeader()
+            .exists(KeysetPaginationUtil.NEXT_CURSOR_HEADER)
+            .expectBody()
+            .jsonPath("$.length()")
+            .isEqualTo(1)
+            .jsonPath("$[0].placeholderIndex")
+            .isEqualTo(DEFAULT_PLACEHOLDER_INDEX)
+            .returnResult()
+            .getResponseHeaders()
+            .getFirst(KeysetPaginationUtil.NEXT_CURSOR_HEADER);
+
+        // Get the page following the cursor
+        webTestClient
+            .get()
+            .uri(ENTITY_API_URL + "?sort=placeholderIndex,asc&size=1&cursor=" + nextCursor)
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectBody()
+            .jsonPath("$.length()")
+            .isEqualTo(1)
+            .jsonPath("$[0].placeholderIndex")
+            .isEqualTo(UPDATED_PLACEHOLDER_INDEX);
+
+        // A cursor cannot be reused with another sort
+        webTestClient
+            .get()
+            .uri(ENTITY_API_URL + "?sort=placeholderValue,asc&size=1&cursor=" + nextCursor)
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus()
+            .isBadRequest();
+
+        // Only the scalar columns exposed by the placeholders can be sorted by
+        for (String sort : List.of("organization", "organizationId", "unknown")) {
+            webTestClient
+                .get()
+                .uri(ENTITY_API_URL + "?sort=" + sort + ",asc&size=1&cursor=")
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+        }
+    }
+
     @SuppressWarnings({ "unchecked" })
     void getAllPlaceholdersWithEagerRelationshipsIsEnabled() {
         when(placeholderServiceMock.findAllWithEagerRelationships(any())).thenReturn(Flux.empty());
@@ -303,6 +633,149 @@ class PlaceholderResourceIT {
             .value(is(DEFAULT_PLACEHOLDER_VALUE));
     }
 
+    @Test
+    void getPlaceholdersInOrganizationSubtree() {
+        // Initialize an organization with a sub-organization through the service, which maintains the hierarchy
+        AppUserDTO organization = appUserService.save(appUserMapper.toDto(AppUserResourceIT.createEntity(em))).block();
+        AppUserDTO subOrganizationDTO = appUserMapper.toDto(AppUserResourceIT.createEntity(em));
+        subOrganizationDTO.setOrganization(organization);
+        AppUserDTO subOrganization = appUserService.save(subOrganizationDTO).block();
+
+        Placeholder ofOrganization = new Placeholder().placeholderIndex(DEFAULT_PLACEHOLDER_INDEX);
+        ofOrganization.setOrganizationId(organization.getId());
+        placeholderRepository.save(ofOrganization).block();
+        Placeholder ofSubOrganization = new Placeholder().placeholderIndex(UPDATED_PLACEHOLDER_INDEX);
+        ofSubOrganization.setOrganizationId(subOrganization.getId());
+        placeholderRepository.save(ofSubOrganization).block();
+        placeholderRepository.save(placeholder).block();
+
+        webTestClient
+            .get()
+            .uri(ENTITY_API_URL + "/organization-subtree/{organizationId}?sort=id,asc", organization.getId())
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectBody()
+            .jsonPath("$.[*].id")
+            .isEqualTo(List.of(ofOrganization.getId().intValue(), ofSubOrganization.getId().intValue()));
+
+        webTestClient
+            .get()
+            .uri(ENTITY_API_URL + "/organization-subtree/{organizationId}", subOrganization.getId())
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectBody()
+            .jsonPath("$.[*].id")
+            .isEqualTo(List.of(ofSubOrganization.getId().intValue()));
+    }
+
+    @Test
+    void lookupPlaceholder() throws Exception {
+        // Initialize the database
+        placeholderRepository.save(placeholder).block();
+
+        webTestClient
+            .get()
+            .uri(
+                ENTITY_API_URL + "/_lookup?organizationId={organizationId}&placeholderIndex={index}",
+                placeholder.getOrganizationId(),
+                DEFAULT_PLACEHOLDER_INDEX
+            )
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectBody()
+            .jsonPath("$.id")
+            .value(is(placeholder.getId().intValue()))
+            .jsonPath("$.placeholderValue")
+            .value(is(DEFAULT_PLACEHOLDER_VALUE));
+
+        // Update the placeholder, which evicts the cached lookups of its organization
+        PlaceholderDTO updatedPlaceholder = placeholderMapper.toDto(placeholder);
+        updatedPlaceholder.setPlaceholderValue(UPDATED_PLACEHOLDER_VALUE);
+        webTestClient
+            .put()
+            .uri(ENTITY_API_URL_ID, placeholder.getId())
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(TestUtil.convertObjectToJsonBytes(updatedPlaceholder))
+            .exchange()
+            .expectStatus()
+            .isOk();
+
+        webTestClient
+            .get()
+            .uri(ENTITY_API_URL + "/_lookup?organizationId={organizationId}", placeholder.getOrganizationId())
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectBody()
+            .jsonPath("$.[*].placeholderValue")
+            .isEqualTo(List.of(UPDATED_PLACEHOLDER_VALUE));
+
+        webTestClient
+            .get()
+            .uri(
+                ENTITY_API_URL + "/_lookup?organizationId={organizationId}&placeholderIndex={index}",
+                placeholder.getOrganizationId(),
+                "missing"
+            )
+            .exchange()
+            .expectStatus()
+            .isNotFound();
+    }
+
+    @Test
+    void getResolvedPlaceholder() throws Exception {
+        // Initialize the database
+        placeholderRepository.save(placeholder).block();
+        Placeholder child = new Placeholder().placeholderIndex(UPDATED_PLACEHOLDER_INDEX).archetype(placeholder);
+        child.setOrganizationId(placeholder.getOrganizationId());
+        placeholderRepository.save(child).block();
+
+        webTestClient
+            .get()
+            .uri(ENTITY_API_URL_ID + "/resolved", child.getId())
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectBody()
+            .jsonPath("$.effectiveValue")
+            .value(is(DEFAULT_PLACEHOLDER_VALUE))
+            .jsonPath("$.valueSourceId")
+            .value(is(placeholder.getId().intValue()))
+            .jsonPath("$.cyclic")
+            .value(is(false))
+            .jsonPath("$.chain.length()")
+            .value(is(2));
+
+        // Update the archetype, which evicts the resolutions going through it
+        PlaceholderDTO updatedArchetype = placeholderMapper.toDto(placeholder);
+        updatedArchetype.setPlaceholderValue(UPDATED_PLACEHOLDER_VALUE);
+        webTestClient
+            .put()
+            .uri(ENTITY_API_URL_ID, placeholder.getId())
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(TestUtil.convertObjectToJsonBytes(updatedArchetype))
+            .exchange()
+            .expectStatus()
+            .isOk();
+
+        webTestClient
+            .get()
+            .uri(ENTITY_API_URL_ID + "/resolved", child.getId())
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectBody()
+            .jsonPath("$.effectiveValue")
+            .value(is(UPDATED_PLACEHOLDER_VALUE));
+
+        webTestClient.get().uri(ENTITY_API_URL_ID + "/resolved", Long.MAX_VALUE).exchange().expectStatus().isNotFound();
+    }
+
     @Test
     void getNonExistingPlaceholder() {
         // Get the placeholder
@@ -595,8 +1068,12 @@ class PlaceholderResourceIT {
         // Validate the database contains one less item
         List<Placeholder> placeholderList = placeholderRepository.findAll().collectList().block();
         assertThat(placeholderList).hasSize(databaseSizeBeforeDelete - 1);
-        int searchDatabaseSizeAfter = IterableUtil.sizeOf(placeholderSearchRepository.findAll().collectList().block());
-        assertThat(searchDatabaseSizeAfter).isEqualTo(searchDatabaseSizeBefore - 1);
+        await()
+            .atMost(5, TimeUnit.SECONDS)
+            .untilAsserted(() -> {
+                int searchDatabaseSizeAfter = IterableUtil.sizeOf(placeholderSearchRepository.findAll().collectList().block());
+                assertThat(searchDatabaseSizeAfter).isEqualTo(searchDatabaseSizeBefore - 1);
+            });
     }
 
     @Test
@@ -622,4 +1099,148 @@ class PlaceholderResourceIT {
             .jsonPath("$.[*].placeholderValue")
             .value(hasItem(DEFAULT_PLACEHOLDER_VALUE));
     }
+
+    @Test
+    void searchPlaceholderCountsTheMatches() {
+        // Initialize the database
+        String value = "counted" + count.incrementAndGet();
+        for (int i = 0; i < 3; i++) {
+            Placeholder matching = placeholderRepository.save(createEntity(em).placeholderValue(value)).block();
+            placeholderSearchRepository.save(matching).block();
+        }
+
+        // The page and the total of the matches come from the same search
+        webTestClient
+            .get()
+            .uri(ENTITY_SEARCH_API_URL + "?query=placeholderValue:" + value + "&size=2")
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectHeader()
+            .valueEquals("X-Total-Count", "3")
+            .expectHeader()
+            .valueEquals(CountPaginationUtil.TOTAL_COUNT_MODE_HEADER, "exact")
+            .expectBody()
+            .jsonPath("$.length()")
+            .isEqualTo(2);
+
+        // The pages past the max result window are only served with a cursor
+        webTestClient
+            .get()
+            .uri(ENTITY_SEARCH_API_URL + "?query=placeholderValue:" + value + "&size=20&page=500")
+            .exchange()
+            .expectStatus()
+            .isBadRequest();
+    }
+
+    @Test
+    void suggestPlaceholders() {
+        // Initialize the database
+        String term = "suggested" + count.incrementAndGet();
+        for (String placeholderIndex : List.of(term + " alpha", term + " alpine", term + " beta")) {
+            Placeholder suggested = placeholderRepository.save(createEntity(em).placeholderIndex(placeholderIndex)).block();
+            placeholderSearchRepository.save(suggested).block();
+        }
+
+        // Every term typed must match, the last one as a prefix
+        webTestClient
+            .get()
+            .uri(uriBuilder -> uriBuilder.path(ENTITY_SUGGEST_API_URL).queryParam("prefix", term + " alp").build())
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectBody()
+            .jsonPath("$.length()")
+            .isEqualTo(2)
+            .jsonPath("$.[*].value")
+            .value(hasItems(term + " alpha", term + " alpine"));
+
+        // The number of suggestions is limited
+        webTestClient
+            .get()
+            .uri(uriBuilder -> uriBuilder.path(ENTITY_SUGGEST_API_URL).queryParam("prefix", term).queryParam("limit", 1).build())
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectBody()
+            .jsonPath("$.length()")
+            .isEqualTo(1);
+
+        // The suggestions are scoped to the organization
+        webTestClient
+            .get()
+            .uri(uriBuilder -> uriBuilder.path(ENTITY_SUGGEST_API_URL).queryParam("prefix", term).queryParam("organizationId", -1).build())
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectBody()
+            .jsonPath("$.length()")
+            .isEqualTo(0);
+
+        // The prefix is not parsed as a query
+        webTestClient
+            .get()
+            .uri(uriBuilder -> uriBuilder.path(ENTITY_SUGGEST_API_URL).queryParam("prefix", "{prefix}").build(term + " (alp"))
+            .exchange()
+            .expectStatus()
+            .isOk();
+
+        webTestClient
+            .get()
+            .uri(uriBuilder -> uriBuilder.path(ENTITY_SUGGEST_API_URL).queryParam("prefix", term).queryParam("limit", 0).build())
+            .exchange()
+            .expectStatus()
+            .isBadRequest();
+    }
+
+    @Test
+    void searchPlaceholderWithCursorPagination() {
+        // Initialize the database
+        String value = "paged" + count.incrementAndGet();
+        for (int i = 0; i < 3; i++) {
+            Placeholder matching = placeholderRepository.save(createEntity(em).placeholderValue(value)).block();
+            placeholderSearchRepository.save(matching).block();
+        }
+
+        // Get the first page
+        String nextCursor = webTestClient
+            .get()
+            .uri(ENTITY_SEARCH_API_URL + "?query=placeholderValue:" + value + "&sort=id,asc&size=2&cursor=")
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectHeader()
+            .valueEquals("X-Total-Count", "3")
+            .expectHeader()
+            .exists(KeysetPaginationUtil.NEXT_CURSOR_HEADER)
+            .expectBody()
+            .jsonPath("$.length()")
+            .isEqualTo(2)
+            .returnResult()
+            .getResponseHeaders()
+            .getFirst(KeysetPaginationUtil.NEXT_CURSOR_HEADER);
+
+        // Get the last page, which does not see the placeholders indexed since the first one
+        Placeholder later = placeholderRepository.save(createEntity(em).placeholderValue(value)).block();
+        placeholderSearchRepository.save(later).block();
+        webTestClient
+            .get()
+            .uri(ENTITY_SEARCH_API_URL + "?query=placeholderValue:" + value + "&sort=id,asc&size=2&cursor=" + nextCursor)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectHeader()
+            .doesNotExist(KeysetPaginationUtil.NEXT_CURSOR_HEADER)
+            .expectBody()
+            .jsonPath("$.length()")
+            .isEqualTo(1);
+
+        // A cursor cannot be reused with another sort
+        webTestClient
+            .get()
+            .uri(ENTITY_SEARCH_API_URL + "?query=placeholderValue:" + value + "&sort=id,desc&size=2&cursor=" + nextCursor)
+            .exchange()
+            .expectStatus()
+            .isBadRequest();
+    }
 }
@@ -142,4 +142,45 @@ class PublicUserResourceIT {
             .isBadRequest();
         webTestClient.get().uri("/api/users?sort=id,desc").accept(MediaType.APPLICATION_JSON).exchange().expectStatus().isOk();
     }
+
+    @Test
+    void searchPublicUsers() {
+        // Initialize the database
+        userRepository.save(user).block();
+        mockUserSearchRepository.save(user).block();
+
+        // Only the requested page is read, with only the public fields
+        webTestClient
+            .get()
+            .uri("/api/_search/users/login:" + DEFAULT_LOGIN + "?size=1&sort=id,desc")
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectBody()
+            .jsonPath("$.length()")
+            .isEqualTo(1)
+            .jsonPath("$.[0].login")
+            .isEqualTo(DEFAULT_LOGIN)
+            .jsonPath("$.[0].email")
+            .doesNotExist();
+
+        // The pages past the max result window are not served
+        webTestClient
+            .get()
+            .uri("/api/_search/users/login:" + DEFAULT_LOGIN + "?size=20&page=500")
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus()
+            .isBadRequest();
+
+        // Only the id is sortable
+        webTestClient
+            .get()
+            .uri("/api/_search/users/login:" + DEFAULT_LOGIN + "?sort=email,desc")
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus()
+            .isBadRequest();
+    }
 }
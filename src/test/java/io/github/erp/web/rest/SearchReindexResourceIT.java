@@ -0,0 +1,145 @@
+package io.github.erp.web.rest;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import io.github.erp.IntegrationTest;
+import io.github.erp.domain.Placeholder;
+import io.github.erp.repository.EntityManager;
+import io.github.erp.repository.SearchReindexRepository;
+import io.github.erp.repository.search.PlaceholderSearchRepository;
+import io.github.erp.security.AuthoritiesConstants;
+import io.github.erp.service.dto.SearchReindexJobDTO;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.data.elasticsearch.core.IndexInformation;
+import org.springframework.data.elasticsearch.core.ReactiveElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+/**
+ * Integration tests for the {@link SearchReindexResource} REST controller.
+ */
+@IntegrationTest
+@AutoConfigureWebTestClient(timeout = IntegrationTest.DEFAULT_TIMEOUT)
+@WithMockUser(authorities = AuthoritiesConstants.ADMIN)
+class SearchReindexResourceIT {
+
+    private static final String SEARCH_REINDEX_API_URL = "/api/admin/search-reindex";
+
+    @Autowired
+    private PlaceholderSearchRepository placeholderSearchRepository;
+
+    @Autowired
+    private ReactiveElasticsearchOperations operations;
+
+    @Autowired
+    private EntityManager em;
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    private final List<Placeholder> placeholders = new ArrayList<>();
+
+    @BeforeEach
+    public void initTest() {
+        PlaceholderResourceIT.deleteEntities(em);
+        placeholders.clear();
+        // inserted behind the back of the indexer: only a reindex puts them in the search index
+        for (int i = 0; i < 3; i++) {
+            placeholders.add(em.insert(PlaceholderResourceIT.createEntity(em).placeholderIndex("REINDEX" + i)).block());
+        }
+    }
+
+    @AfterEach
+    public void cleanup() {
+        PlaceholderResourceIT.deleteEntities(em);
+    }
+
+    @Test
+    void reindexPlaceholders() {
+        SearchReindexJobDTO started = webTestClient
+            .post()
+            .uri(SEARCH_REINDEX_API_URL + "/{index}", "placeholder")
+            .exchange()
+            .expectStatus()
+            .isAccepted()
+            .expectBody(SearchReindexJobDTO.class)
+            .returnResult()
+            .getResponseBody();
+
+        assertThat(started.getIndex()).isEqualTo("placeholder");
+        assertThat(started.getTargetIndex()).startsWith("placeholder_");
+        assertThat(started.getTotal()).isGreaterThanOrEqualTo(placeholders.size());
+
+        await()
+            .atMost(30, TimeUnit.SECONDS)
+            .untilAsserted(() ->
+                assertThat(findJob("placeholder"))
+                    .extracting(SearchReindexJobDTO::getStatus, SearchReindexJobDTO::getTargetIndex)
+                    .containsExactly(SearchReindexRepository.DONE, started.getTargetIndex())
+            );
+
+        List<String> aliased = operations
+            .indexOps(IndexCoordinates.of("placeholder"))
+            .getInformation()
+            .map(IndexInformation::getName)
+            .collectList()
+            .block();
+        assertThat(aliased).containsExactly(started.getTargetIndex());
+        List<Long> ids = placeholders.stream().map(Placeholder::getId).collect(Collectors.toList());
+        assertThat(placeholderSearchRepository.findAllById(ids).collectList().block()).hasSize(placeholders.size());
+    }
+
+    @Test
+    void reindexUnknownIndex() {
+        webTestClient.post().uri(SEARCH_REINDEX_API_URL + "/{index}", "unknown").exchange().expectStatus().isBadRequest();
+    }
+
+    @Test
+    void cancelIdleReindex() {
+        webTestClient.delete().uri(SEARCH_REINDEX_API_URL + "/{index}", "appuser").exchange().expectStatus().isNotFound();
+    }
+
+    private SearchReindexJobDTO findJob(String index) {
+        return webTestClient
+            .get()
+            .uri(SEARCH_REINDEX_API_URL)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectBodyList(SearchReindexJobDTO.class)
+            .returnResult()
+            .getResponseBody()
+            .stream()
+            .filter(job -> index.equals(job.getIndex()))
+            .findFirst()
+            .orElse(null);
+    }
+}
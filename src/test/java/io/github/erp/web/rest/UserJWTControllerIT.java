@@ -18,15 +18,20 @@ package io.github.erp.web.rest;
  * along with this program. If not, see <http://www.gnu.org/licenses/>.
  */
 
+import static org.assertj.core.api.Assertions.assertThat;
+
 import io.github.erp.IntegrationTest;
 import io.github.erp.config.Constants;
 import io.github.erp.domain.User;
 import io.github.erp.repository.UserRepository;
+import io.github.erp.security.UserDetailsCache;
 import io.github.erp.web.rest.vm.LoginVM;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.http.MediaType;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.test.web.reactive.server.WebTestClient;
 
@@ -46,6 +51,15 @@ class UserJWTControllerIT {
     @Autowired
     private WebTestClient webTestClient;
 
+    @Autowired
+    private UserDetailsCache userDetailsCache;
+
+    @BeforeEach
+    public void initTest() {
+        // the tests write the users through the repository, which does not evict the cached users
+        userDetailsCache.evictAll();
+    }
+
     @Test
     void testAuthorize() throws Exception {
         User user = new User();
@@ -75,6 +89,65 @@ class UserJWTControllerIT {
             .isNotEmpty();
     }
 
+    @Test
+    void testAuthorizeUpgradesAnOutdatedPasswordHash() throws Exception {
+        User user = new User();
+        user.setLogin("user-jwt-controller-upgrade");
+        user.setEmail("user-jwt-controller-upgrade@example.com");
+        user.setActivated(true);
+        user.setPassword(new BCryptPasswordEncoder(4).encode("test"));
+        user.setCreatedBy(Constants.SYSTEM);
+
+        userRepository.save(user).block();
+
+        LoginVM login = new LoginVM();
+        login.setUsername("user-jwt-controller-upgrade");
+        login.setPassword("test");
+        webTestClient
+            .post()
+            .uri("/api/authenticate")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(TestUtil.convertObjectToJsonBytes(login))
+            .exchange()
+            .expectStatus()
+            .isOk();
+
+        String upgradedPassword = userRepository.findOneByLogin("user-jwt-controller-upgrade").block().getPassword();
+        assertThat(upgradedPassword).startsWith("{bcrypt}");
+        assertThat(passwordEncoder.matches("test", upgradedPassword)).isTrue();
+    }
+
+    @Test
+    void testLogoutRevokesTheToken() throws Exception {
+        User user = new User();
+        user.setLogin("user-jwt-controller-logout");
+        user.setEmail("user-jwt-controller-logout@example.com");
+        user.setActivated(true);
+        user.setPassword(passwordEncoder.encode("test"));
+        user.setCreatedBy(Constants.SYSTEM);
+
+        userRepository.save(user).block();
+
+        LoginVM login = new LoginVM();
+        login.setUsername("user-jwt-controller-logout");
+        login.setPassword("test");
+        String authorization = webTestClient
+            .post()
+            .uri("/api/authenticate")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(TestUtil.convertObjectToJsonBytes(login))
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .returnResult(Void.class)
+            .getResponseHeaders()
+            .getFirst("Authorization");
+
+        webTestClient.get().uri("/api/account").header("Authorization", authorization).exchange().expectStatus().isOk();
+        webTestClient.post().uri("/api/logout").header("Authorization", authorization).exchange().expectStatus().isNoContent();
+        webTestClient.get().uri("/api/account").header("Authorization", authorization).exchange().expectStatus().isUnauthorized();
+    }
+
     @Test
     void testAuthorizeWithRememberMe() throws Exception {
         User user = new User();
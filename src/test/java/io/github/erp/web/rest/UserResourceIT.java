@@ -320,6 +320,37 @@ class UserResourceIT {
         userSearchRepository.deleteAll();
     }
 
+    @Test
+    void getAllUsersSortedAndPaged() {
+        // Initialize the database
+        userRepository.save(user).block();
+        User otherUser = createEntity(em);
+        otherUser.setLogin(UPDATED_LOGIN);
+        userRepository.save(otherUser).block();
+        authorityRepository
+            .findById(AuthoritiesConstants.ADMIN)
+            .flatMap(authority -> userRepository.saveUserAuthority(otherUser.getId(), authority.getName()))
+            .then(userRepository.saveUserAuthority(otherUser.getId(), AuthoritiesConstants.USER))
+            .block();
+
+        // Get the second page of users ordered by login
+        List<AdminUserDTO> foundUsers = webTestClient
+            .get()
+            .uri("/api/admin/users?sort=login,desc&page=1&size=1")
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .returnResult(AdminUserDTO.class)
+            .getResponseBody()
+            .collectList()
+            .block();
+
+        assertThat(foundUsers).hasSize(1);
+        assertThat(foundUsers.get(0).getLogin()).isEqualTo(UPDATED_LOGIN);
+        assertThat(foundUsers.get(0).getAuthorities()).containsExactlyInAnyOrder(AuthoritiesConstants.ADMIN, AuthoritiesConstants.USER);
+    }
+
     @Test
     void getUser() {
         // Initialize the database
@@ -0,0 +1,81 @@
+package io.github.erp.web.util;
+
+/*-
+ * Erp Church - Data management for religious institutions
+ * Copyright © 2022 Edwin Njeru (mailnjeru@gmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+class CsvUtilTest {
+
+    @Test
+    void testPlainValuesAreNotQuoted() {
+        assertThat(CsvUtil.toCsvLine(1L, "index", null, true)).isEqualTo("1,index,,true\r\n");
+    }
+
+    @Test
+    void testSpecialCharactersAreQuoted() {
+        assertThat(CsvUtil.toCsvLine("a,b", "say \"hi\"", "two\nlines")).isEqualTo("\"a,b\",\"say \"\"hi\"\"\",\"two\nlines\"\r\n");
+    }
+
+    @Test
+    void testParsedRecordsMatchRenderedOnes() {
+        String line = CsvUtil.toCsvLine("a,b", "say \"hi\"", null, "", 42);
+
+        assertThat(CsvUtil.parseCsvLine(line.substring(0, line.length() - 2))).containsExactly("a,b", "say \"hi\"", null, null, "42");
+        assertThat(CsvUtil.parseCsvLine("\"\",x")).containsExactly("", "x");
+    }
+
+    @Test
+    void testParsedRecordsWithCustomSeparator() {
+        assertThat(CsvUtil.parseCsvLine("1;\"a;b\";;x,y", ';')).containsExactly("1", "a;b", null, "x,y");
+    }
+
+    @Test
+    void testReadRecordsSpanTheLineBreaksOfTheirQuotedValues() {
+        String document =
+            CsvUtil.toCsvLine("placeholderIndex", "placeholderValue") +
+            CsvUtil.toCsvLine("first", "two\r\nlines, \"quoted\"") +
+            "\n" +
+            CsvUtil.toCsvLine("second", "unix\nline") +
+            "last,\"\n\"";
+        byte[] bytes = document.getBytes(StandardCharsets.UTF_8);
+        // the buffers end in the middle of the records
+        Flux<DataBuffer> buffers = Flux
+            .range(0, (bytes.length + 6) / 7)
+            .map(chunk -> Arrays.copyOfRange(bytes, chunk * 7, Math.min(bytes.length, chunk * 7 + 7)))
+            .map(DefaultDataBufferFactory.sharedInstance::wrap);
+
+        List<List<String>> records = CsvUtil.readCsvRecords(buffers).collectList().block();
+
+        assertThat(records)
+            .containsExactly(
+                List.of("placeholderIndex", "placeholderValue"),
+                List.of("first", "two\r\nlines, \"quoted\""),
+                List.of("second", "unix\nline"),
+                List.of("last", "\n")
+            );
+    }
+}